@@ -0,0 +1,36 @@
+package edu.brown.cs.student.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The BenchmarkMain class runs the benchmarks with the gc profiler, so every result has its
+ * allocation rate (gc.alloc.rate.norm is the bytes allocated per operation) next to its throughput.
+ * It takes the same arguments as JMH, for example
+ *
+ * <pre>
+ * mvn -P benchmarks package
+ * java -jar target/benchmarks.jar PlanBenchmarks.serializeSchedule -p weeks=16
+ * </pre>
+ */
+public final class BenchmarkMain {
+
+  private BenchmarkMain() {}
+
+  /**
+   * Runs the benchmarks chosen by the arguments, or all of them.
+   *
+   * @param args JMH's command line arguments.
+   * @throws Exception if the arguments are invalid or a benchmark fails.
+   */
+  public static void main(String[] args) throws Exception {
+    new Runner(
+            new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build())
+        .run();
+  }
+}
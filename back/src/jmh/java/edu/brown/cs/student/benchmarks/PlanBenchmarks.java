@@ -0,0 +1,264 @@
+package edu.brown.cs.student.benchmarks;
+
+import edu.brown.cs.student.main.handlers.GenerateGraphLikePlan;
+import edu.brown.cs.student.main.models.formatters.ScheduleFormatter;
+import edu.brown.cs.student.main.models.formattypes.Day;
+import edu.brown.cs.student.main.models.formattypes.Schedule;
+import edu.brown.cs.student.main.models.formattypes.Week;
+import edu.brown.cs.student.main.models.markov.model.ClampedSampler;
+import edu.brown.cs.student.main.models.markov.model.CompiledMarkovModel;
+import edu.brown.cs.student.main.models.markov.model.Emission;
+import edu.brown.cs.student.main.models.markov.model.ForwardBackward;
+import edu.brown.cs.student.main.models.markov.model.MarkovModel;
+import edu.brown.cs.student.main.models.markov.model.Pin;
+import edu.brown.cs.student.main.models.markov.model.ViterbiDecoder;
+import edu.brown.cs.student.main.models.markov.modelbuilding.ModelBuilder;
+import edu.brown.cs.student.main.models.markov.modelbuilding.Workout;
+import edu.brown.cs.student.main.rowing.distributiongenerators.RowingWorkoutByName;
+import edu.brown.cs.student.main.rowing.modelbuilders.LinearModelBuilder;
+import edu.brown.cs.student.main.rowing.modelbuilders.ModelCache;
+import edu.brown.cs.student.main.rowing.modelbuilders.ScheduleBuilder;
+import edu.brown.cs.student.main.rowing.modelbuilders.VariableModelBuilder;
+import edu.brown.cs.student.main.server.RandomGenerator;
+import edu.brown.cs.student.main.server.serializing.ScheduleJsonWriter;
+import edu.brown.cs.student.main.server.serializing.Serializer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The PlanBenchmarks class measures the throughput of each step of generating a plan, from drawing
+ * a single workout to serializing a finished schedule. Every benchmark runs for each plan length
+ * (in weeks) and each catalog size (the number of workouts in every category of a generated workout
+ * file), so both kinds of growth show up. Run them with the gc profiler, which BenchmarkMain adds,
+ * to see the allocation rate alongside the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlanBenchmarks {
+
+  private static final LocalDate START = LocalDate.of(2023, 4, 27);
+  private static final int MINUTES = 600;
+  private static final Set<Workout> HIGH = Set.of(Workout._30R_20, Workout._6K, Workout._2K);
+  private static final Set<Workout> LOW = Set.of(Workout.UT_2);
+
+  @Param({"1", "4", "16"})
+  public int weeks;
+
+  @Param({"8", "64", "512"})
+  public int catalogSize;
+
+  private Path workoutFile;
+  private String previousWorkoutFile;
+  private LocalDate end;
+  private HashMap<Emission, Double> distribution;
+  private Schedule template;
+  private Schedule generated;
+  private CompiledMarkovModel linear;
+  private ViterbiDecoder decoder;
+  private ClampedSampler clamped;
+  private Map<Integer, Pin> pins;
+  private List<Emission> logged;
+  private List<List<Emission>> candidates;
+
+  /**
+   * Writes a workout file with catalogSize workouts in every category, and points the rowing
+   * distributions at it, then builds the inputs the benchmarks share.
+   *
+   * @throws Exception if the file cannot be written or the inputs cannot be built.
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    this.workoutFile = Files.createTempFile("benchmark-workouts", ".json");
+    Files.writeString(this.workoutFile, workoutFile(this.catalogSize), StandardCharsets.UTF_8);
+    this.previousWorkoutFile = RowingWorkoutByName.WORKOUT_FILE;
+    RowingWorkoutByName.WORKOUT_FILE = this.workoutFile.toString();
+
+    this.end = START.plusDays(7L * this.weeks - 1);
+    this.distribution = new HashMap<>();
+    for (int i = 0; i < this.catalogSize; i++) {
+      this.distribution.put(
+          new Emission("workout " + i, 60.0, "title " + i), 1.0 / this.catalogSize);
+    }
+    this.template = this.schedule();
+    this.generated = this.schedule();
+    MarkovModel linear = new LinearModelBuilder(new RowingWorkoutByName()).build(this.generated);
+    linear.generateFormattedEmissions(
+        this.generated.getLength(), new ScheduleFormatter(this.generated));
+    this.linear = linear.getCompiled();
+    this.decoder = this.linear.decoder();
+    this.logged = new ArrayList<>();
+    for (Week week : this.generated.weeks()) {
+      for (Day day : week.days()) {
+        this.logged.addAll(day.getEmissionsView());
+      }
+    }
+    this.clamped = this.linear.clampedSampler();
+    this.pins = new HashMap<>();
+    for (int position = 0; position < this.logged.size(); position += 20) {
+      this.pins.put(position, Pin.emission(this.logged.get(position)));
+    }
+    this.candidates = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      this.candidates.add(this.linear.generateRandomSequence(this.logged.size()));
+    }
+  }
+
+  /**
+   * Points the rowing distributions back at the workout file they used before, and deletes the
+   * generated one.
+   *
+   * @throws IOException if the generated file cannot be deleted.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    RowingWorkoutByName.WORKOUT_FILE = this.previousWorkoutFile;
+    Files.deleteIfExists(this.workoutFile);
+  }
+
+  /** Draws one workout for every day of the plan from a distribution over the whole catalog. */
+  @Benchmark
+  public void sampleFromDistribution(Blackhole blackhole) throws Exception {
+    for (int day = 0; day < 7 * this.weeks; day++) {
+      blackhole.consume(
+          RandomGenerator.generateRandomFromDistribution(Emission.class, this.distribution));
+    }
+  }
+
+  /** Builds a linear model with a state for every day of the plan, each emitting any workout. */
+  @Benchmark
+  public MarkovModel buildLinearTransitions() throws Exception {
+    ModelBuilder builder = new ModelBuilder();
+    for (int day = 0; day < 7 * this.weeks; day++) {
+      String name = "day " + day;
+      builder.generateNewState(name);
+      builder.setEmissionDistribution(name, this.distribution);
+    }
+    builder.addLinearTransitions();
+    builder.addStartProbability("day 0", 1.0);
+    return builder.build();
+  }
+
+  /** Builds the linear model for a plan's schedule, without the model cache. */
+  @Benchmark
+  public MarkovModel buildLinearModel() throws Exception {
+    return new LinearModelBuilder(new RowingWorkoutByName()).build(this.template);
+  }
+
+  /** Builds the variable model, without the model cache. */
+  @Benchmark
+  public MarkovModel buildVariableModel() throws Exception {
+    return new VariableModelBuilder(new RowingWorkoutByName()).build(LOW, HIGH, MINUTES, 0.2);
+  }
+
+  /** Lays out the days and workout types of a linear schedule. */
+  @Benchmark
+  public Schedule buildSchedule() throws Exception {
+    return this.schedule();
+  }
+
+  /** Generates a whole variable plan, with the model cache as the server uses it. */
+  @Benchmark
+  public Schedule generateGraphLikePlan() throws Exception {
+    return new GenerateGraphLikePlan(ModelCache.shared())
+        .generate(MINUTES, START, this.end, HIGH, LOW, 0.2);
+  }
+
+  /** Serializes a generated plan, as it is sent to the store. */
+  @Benchmark
+  public String serializeSchedule() throws Exception {
+    return Serializer.serializeSchedule(this.generated.flatten());
+  }
+
+  /** Writes a generated plan in the same format as serializeSchedule, as CreatePlan does. */
+  @Benchmark
+  public String writeScheduleJson() {
+    return ScheduleJsonWriter.toFlatJson(this.generated);
+  }
+
+  /** Streams a generated plan in the same format, without ever holding it as a String. */
+  @Benchmark
+  public void streamScheduleJson() throws Exception {
+    ScheduleJsonWriter.writeFlat(this.generated, OutputStream.nullOutputStream());
+  }
+
+  /** Decodes a generated plan's workouts back into the states of its model, as if logged. */
+  @Benchmark
+  public int[] decodeLoggedWorkouts() {
+    return this.decoder.decode(this.logged);
+  }
+
+  /** Scores a thousand candidate plans against their model in parallel, to rank them. */
+  @Benchmark
+  public double[] scoreCandidatePlans() {
+    return ForwardBackward.logLikelihoods(this.linear, this.candidates);
+  }
+
+  /** Generates a plan's workouts around fixed events, one pinned every twenty workouts. */
+  @Benchmark
+  public List<Emission> samplePinnedPlan() throws Exception {
+    return this.clamped.sample(this.logged.size(), this.pins);
+  }
+
+  private Schedule schedule() throws Exception {
+    return new ScheduleBuilder()
+        .minutesWithDates(MINUTES, START, this.end, 0.2, Workout.OVERALL, Workout.UT_2);
+  }
+
+  // Writes a workout file like data/WorkoutData.json, with a number of workouts in every category
+  private static String workoutFile(int size) {
+    StringBuilder json = new StringBuilder("{\"categories\":{");
+    List<String> categories = List.of("overall", "2k", "30r20", "6k");
+    for (int c = 0; c < categories.size(); c++) {
+      if (c > 0) {
+        json.append(',');
+      }
+      json.append('"').append(categories.get(c)).append("\":[");
+      for (int i = 0; i < size; i++) {
+        if (i > 0) {
+          json.append(',');
+        }
+        json.append("{\"emission\":{\"workout\":\"")
+            .append(categories.get(c))
+            .append(" workout ")
+            .append(i)
+            .append("\"},\"minutes\":60.0,\"title\":\"")
+            .append(categories.get(c))
+            .append(' ')
+            .append(i)
+            .append("\",\"probability\":")
+            .append(1.0 / size)
+            .append('}');
+      }
+      json.append(']');
+    }
+    return json.append("}}").toString();
+  }
+}
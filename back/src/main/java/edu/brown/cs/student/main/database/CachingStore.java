@@ -0,0 +1,208 @@
+package edu.brown.cs.student.main.database;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is a ScheduleStore that keeps the answers to reads from another store in memory, so
+ * repeated reads of the same branch (like a user's schedule on every page load) do not go back to
+ * the other store. Every write through this store drops the cached answers it touches, so the
+ * server always reads its own writes; writes made to the other store by anything else are only seen
+ * once a cached answer expires. The cache is bounded by the size of the JSON it holds, evicting the
+ * least recently used answers first. Each answer is kept with its ETag, so it is only hashed when
+ * it is read from the other store.
+ */
+public class CachingStore implements ScheduleStore, AutoCloseable {
+  // system property for the memory, in bytes, the cache may take up (0 turns caching off)
+  public static final String BYTES_PROPERTY = "airobic.store.cache.bytes";
+  public static long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+  public static Duration DEFAULT_EXPIRY = Duration.ofMinutes(5);
+
+  private static final String RANGE = "..";
+
+  private final ScheduleStore delegate;
+  private final Cache<String, Versioned> cache;
+  // counts writes, so a read that raced a write does not cache what it read; only read or changed
+  // while holding this object's lock
+  private long writes;
+
+  // Caches reads from the given store, with the default bounds
+  public CachingStore(ScheduleStore delegate) {
+    this(delegate, DEFAULT_MAX_BYTES, DEFAULT_EXPIRY);
+  }
+
+  // Caches reads from the given store, holding at most maxBytes of JSON, each answer for at most
+  // the expiry
+  public CachingStore(ScheduleStore delegate, long maxBytes, Duration expiry) {
+    this.delegate = delegate;
+    this.cache =
+        CacheBuilder.newBuilder()
+            // Guava splits the weight bound between segments, so a single segment keeps the bound
+            // exact; reads do not lock
+            .concurrencyLevel(1)
+            .maximumWeight(maxBytes)
+            .weigher(
+                (String where, Versioned answer) ->
+                    Math.toIntExact(
+                        Math.min(
+                            Integer.MAX_VALUE,
+                            2L * (where.length() + answer.json().length() + answer.etag().length())
+                                + 64)))
+            .expireAfterWrite(expiry)
+            .recordStats()
+            .build();
+  }
+
+  @Override
+  public void put(String data, String where) throws IOException, InterruptedException {
+    try {
+      this.delegate.put(data, where);
+    } finally {
+      this.invalidate(List.of(normalize(where)));
+    }
+  }
+
+  @Override
+  public void update(String data, String where) throws IOException, InterruptedException {
+    this.update(data, where, false);
+  }
+
+  @Override
+  public void updateLater(String data, String where) throws IOException, InterruptedException {
+    this.update(data, where, true);
+  }
+
+  // Passes an update on to the other store, now or to be sent later, and forgets what it wrote
+  private void update(String data, String where, boolean later)
+      throws IOException, InterruptedException {
+    List<String> written = new ArrayList<>();
+    Object children = JsonTree.parseObject(data);
+    if (children instanceof Map<?, ?> map) {
+      for (Object key : map.keySet()) {
+        written.add(normalize(where + "/" + key));
+      }
+    }
+    try {
+      if (later) {
+        this.delegate.updateLater(data, where);
+      } else {
+        this.delegate.update(data, where);
+      }
+    } finally {
+      this.invalidate(written);
+    }
+  }
+
+  @Override
+  public void delete(String where) throws IOException, InterruptedException {
+    try {
+      this.delegate.delete(where);
+    } finally {
+      this.invalidate(List.of(normalize(where)));
+    }
+  }
+
+  @Override
+  public String get(String where) throws IOException, InterruptedException {
+    return this.getVersioned(where).json();
+  }
+
+  @Override
+  public Versioned getVersioned(String where) throws IOException, InterruptedException {
+    return this.cached(normalize(where), () -> this.delegate.getVersioned(where));
+  }
+
+  // Ranges are cached under their branch's path followed by "first..last", which cannot be a key
+  // in the Realtime Database, as keys cannot contain dots
+  @Override
+  public Versioned getRange(String where, int first, int last)
+      throws IOException, InterruptedException {
+    return this.cached(
+        normalize(where) + "/" + first + RANGE + last,
+        () -> this.delegate.getRange(where, first, last));
+  }
+
+  // Returns the cached answer for a key, or reads and caches it
+  private Versioned cached(String key, Read read) throws IOException, InterruptedException {
+    Versioned answer = this.cache.getIfPresent(key);
+    if (answer != null) {
+      return answer;
+    }
+    long before;
+    synchronized (this) {
+      before = this.writes;
+    }
+    answer = read.read();
+    synchronized (this) {
+      // a write that finished while reading may or may not be in the answer, so it is not cached
+      if (this.writes == before) {
+        this.cache.put(key, answer);
+      }
+    }
+    return answer;
+  }
+
+  // Returns the hit and miss counts of the cache
+  public CacheStats stats() {
+    return this.cache.stats();
+  }
+
+  // Returns the number of cached answers
+  public long size() {
+    return this.cache.size();
+  }
+
+  // Drops every cached answer
+  public void clear() {
+    this.cache.invalidateAll();
+  }
+
+  @Override
+  public void close() throws Exception {
+    this.cache.invalidateAll();
+    if (this.delegate instanceof AutoCloseable closeable) {
+      closeable.close();
+    }
+  }
+
+  // Drops the cached answers for every branch above or below the written paths; a cached range is
+  // dropped by any write to its branch
+  private synchronized void invalidate(List<String> written) {
+    this.writes++;
+    this.cache
+        .asMap()
+        .keySet()
+        .removeIf(
+            cached -> {
+              String branch =
+                  cached.contains(RANGE) ? cached.substring(0, cached.lastIndexOf('/')) : cached;
+              for (String path : written) {
+                if (covers(path, cached) || covers(branch, path)) {
+                  return true;
+                }
+              }
+              return false;
+            });
+  }
+
+  private static String normalize(String where) {
+    return String.join("/", JsonTree.segments(where));
+  }
+
+  /** A read from the other store, for caching. */
+  @FunctionalInterface
+  private interface Read {
+    Versioned read() throws IOException, InterruptedException;
+  }
+
+  // Whether the path above is the path below or one of its parents
+  private static boolean covers(String above, String below) {
+    return above.isEmpty() || below.equals(above) || below.startsWith(above + "/");
+  }
+}
@@ -1,76 +1,279 @@
 package edu.brown.cs.student.main.database;
 
+import edu.brown.cs.student.main.server.Metrics;
 import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 
-/** This class generates database commands which are being run in terminal */
-public class DatabaseCommands {
-  private final String DATABASE = "'https://cs32airobic-default-rtdb.firebaseio.com/";
-  private final String DATABASEWIN = "https://cs32airobic-default-rtdb.firebaseio.com/";
-  private final String END = ".json'";
-  private final String ENDWIN = ".json";
+/**
+ * This class sends commands to the Realtime Database REST API. All instances share one HttpClient,
+ * so connections are reused between requests, and at most MAX_CONCURRENT_REQUESTS requests are in
+ * flight at once; requests over that limit wait for a permit. Asynchronous requests never wait on
+ * the caller's thread, but queue up and are sent as permits are released. Every request has a
+ * timeout. The limit and timeouts are read from the airobic.database.* properties at startup.
+ */
+public class DatabaseCommands implements ScheduleStore {
+  public static final String DEFAULT_DATABASE = "https://cs32airobic-default-rtdb.firebaseio.com/";
+  // system property for pointing the server at a different database (or a local stand-in)
+  public static final String DATABASE_PROPERTY = "airobic.database.url";
+  // system properties for the request limit, and the timeouts in milliseconds
+  public static final String MAX_REQUESTS_PROPERTY = "airobic.database.max.requests";
+  public static final String CONNECT_TIMEOUT_PROPERTY = "airobic.database.connect.timeout";
+  public static final String REQUEST_TIMEOUT_PROPERTY = "airobic.database.request.timeout";
+  public static final int MAX_CONCURRENT_REQUESTS = Integer.getInteger(MAX_REQUESTS_PROPERTY, 32);
+  public static final Duration CONNECT_TIMEOUT =
+      Duration.ofMillis(Long.getLong(CONNECT_TIMEOUT_PROPERTY, 5_000));
+  public static final Duration REQUEST_TIMEOUT =
+      Duration.ofMillis(Long.getLong(REQUEST_TIMEOUT_PROPERTY, 10_000));
+
+  private static final String END = ".json";
+  private static final HttpClient CLIENT =
+      HttpClient.newBuilder()
+          .version(HttpClient.Version.HTTP_1_1)
+          .connectTimeout(CONNECT_TIMEOUT)
+          .build();
+  private static final Semaphore PERMITS = new Semaphore(MAX_CONCURRENT_REQUESTS);
+  // asynchronous requests waiting for a permit, started in order as permits are released
+  private static final Queue<Runnable> WAITING = new ConcurrentLinkedQueue<>();
 
   // https://console.firebase.google.com/u/1/project/cs32airobic/database/cs32airobic-default-rtdb/data/~2F
 
+  private final String database;
+
+  // Uses the database from the airobic.database.url property, or the project database by default
+  public DatabaseCommands() {
+    this(System.getProperty(DATABASE_PROPERTY, DEFAULT_DATABASE));
+  }
+
+  // Uses the database at the given base url
+  public DatabaseCommands(String database) {
+    this.database = database.endsWith("/") ? database : database + "/";
+  }
+
   // This method puts in information in the database, but deletes everything else in the current
   // branch
+  @Override
   public void put(String data, String where) throws IOException, InterruptedException {
-    if (System.getProperty("os.name").toLowerCase().contains("win")) {
-      String PUT = "curl -X PUT -d '";
-      String s = PUT + data + "' " + this.DATABASEWIN + where + this.ENDWIN;
-      System.out.println(s);
-      new TerminalCommand(PUT + data + "' " + this.DATABASEWIN + where + this.ENDWIN).run();
-    } else {
-      String PUT = "curl -X PUT -d '";
-      String s = PUT + data + "' " + this.DATABASE + where + this.END;
-      System.out.println(s);
-      new TerminalCommand(PUT + data + "' " + this.DATABASE + where + this.END).run();
-    }
+    this.send(this.request(where).PUT(body(data)).build());
   }
 
   // This method updates or adds information in the database, without deleting the current
   // information
+  @Override
   public void update(String data, String where) throws IOException, InterruptedException {
-    if (System.getProperty("os.name").toLowerCase().contains("win")) {
-      String UPDATE = "curl -X PATCH -d \"";
-      String newData = data.replaceAll("\"", "\\\\" + "\"");
-      String s = UPDATE + newData + "\" " + this.DATABASEWIN + where + this.ENDWIN;
-      System.out.println(s);
-      new TerminalCommand(s).run();
-    } else {
-      String UPDATE = "curl -X PATCH -d '";
-      String s = UPDATE + data + "' " + this.DATABASE + where + this.END;
-      System.out.println(s);
-      new TerminalCommand(UPDATE + data + "' " + this.DATABASE + where + this.END).run();
-    }
+    this.send(this.request(where).method("PATCH", body(data)).build());
   }
 
   // This method deletes the specific branch in the database
+  @Override
   public void delete(String where) throws IOException, InterruptedException {
-    if (System.getProperty("os.name").toLowerCase().contains("win")) {
-      String DELETE = "curl -X DELETE ";
-      String s = DELETE + this.DATABASEWIN + where + this.ENDWIN;
-      System.out.println(s);
-      new TerminalCommand(DELETE + this.DATABASEWIN + where + this.ENDWIN).run();
-    } else {
-      String DELETE = "curl -X DELETE ";
-      String s = DELETE + this.DATABASE + where + this.END;
-      System.out.println(s);
-      new TerminalCommand(DELETE + this.DATABASE + where + this.END).run();
-    }
+    this.send(this.request(where).DELETE().build());
   }
 
-  // This method returns the information from a specific branch in the database
+  // This method returns the information from a specific branch in the database ("null" if the
+  // branch is empty)
+  @Override
   public String get(String where) throws IOException, InterruptedException {
-    if (System.getProperty("os.name").toLowerCase().contains("win")) {
-      String GET = "curl ";
-      String s = GET + this.DATABASEWIN + where + this.ENDWIN;
-      System.out.println(s);
-      return new TerminalCommand(s).get();
-    } else {
-      String GET = "curl ";
-      String s = GET + this.DATABASE + where + this.END;
-      System.out.println(s);
-      return new TerminalCommand(GET + this.DATABASE + where + this.END).get();
+    return this.send(this.request(where).GET().build());
+  }
+
+  // This method returns the children of a branch with index keys from first to last, asking the
+  // database for only those children
+  @Override
+  public Versioned getRange(String where, int first, int last)
+      throws IOException, InterruptedException {
+    first = Math.max(0, first);
+    last = Math.min(JsonTree.MAX_INDEX, last);
+    if (first > last) {
+      return Versioned.of("[]");
+    }
+    // ordered by key, index keys compare as numbers, so the database filters to the range itself
+    String query = "?orderBy=%22%24key%22&startAt=%22" + first + "%22&endAt=%22" + last + "%22";
+    String json = this.send(this.request(where, query).GET().build());
+    // filtered answers are objects keyed by index, in no particular order
+    return Versioned.of(JsonTree.range(JsonTree.parse(json), first, last));
+  }
+
+  // This method returns the keys of the children of a branch, asking the database for a shallow
+  // read, which answers with true in place of every child's value
+  @Override
+  public List<String> keys(String where) throws IOException, InterruptedException {
+    String json = this.send(this.request(where, "?shallow=true").GET().build());
+    return JsonTree.keys(JsonTree.parse(json));
+  }
+
+  // Asynchronous version of put; never blocks, even when every request permit is taken
+  public CompletableFuture<Void> putAsync(String data, String where) {
+    return this.sendAsync(this.request(where).PUT(body(data)).build()).thenApply(body -> null);
+  }
+
+  // Asynchronous version of update; never blocks, even when every request permit is taken
+  public CompletableFuture<Void> updateAsync(String data, String where) {
+    return this.sendAsync(this.request(where).method("PATCH", body(data)).build())
+        .thenApply(body -> null);
+  }
+
+  // Asynchronous version of delete; never blocks, even when every request permit is taken
+  public CompletableFuture<Void> deleteAsync(String where) {
+    return this.sendAsync(this.request(where).DELETE().build()).thenApply(body -> null);
+  }
+
+  // Asynchronous version of get; never blocks, even when every request permit is taken
+  public CompletableFuture<String> getAsync(String where) {
+    return this.sendAsync(this.request(where).GET().build());
+  }
+
+  // Builds a request for a branch of the database, with the shared timeout
+  private HttpRequest.Builder request(String where) {
+    return this.request(where, "");
+  }
+
+  // Builds a request for a branch of the database with a query string, like "?orderBy=..."
+  private HttpRequest.Builder request(String where, String query) {
+    return HttpRequest.newBuilder(URI.create(this.database + encodePath(where) + END + query))
+        .timeout(REQUEST_TIMEOUT)
+        .header("Content-Type", "application/json; charset=utf-8");
+  }
+
+  // Sends a request once a permit is free, and returns the body of a successful response
+  private String send(HttpRequest request) throws IOException, InterruptedException {
+    PERMITS.acquire();
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      String body = checked(request, CLIENT.send(request, HttpResponse.BodyHandlers.ofString()));
+      failed = false;
+      return body;
+    } finally {
+      release();
+      record(request, start, failed);
+    }
+  }
+
+  // Queues a request to be sent once a permit is free, releasing the permit when the response
+  // arrives; the returned future fails if the request does
+  private CompletableFuture<String> sendAsync(HttpRequest request) {
+    CompletableFuture<String> result = new CompletableFuture<>();
+    WAITING.add(
+        () -> {
+          long start = System.nanoTime();
+          try {
+            CLIENT
+                .sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .whenComplete(
+                    (response, error) -> {
+                      release();
+                      record(request, start, error != null || response.statusCode() / 100 != 2);
+                      if (error != null) {
+                        result.completeExceptionally(error);
+                        return;
+                      }
+                      try {
+                        result.complete(checked(request, response));
+                      } catch (IOException e) {
+                        result.completeExceptionally(e);
+                      }
+                    });
+          } catch (RuntimeException e) {
+            release();
+            result.completeExceptionally(e);
+          }
+        });
+    startWaiting();
+    return result;
+  }
+
+  // Gives a permit back, and hands it on to a waiting asynchronous request if there is one
+  private static void release() {
+    PERMITS.release();
+    startWaiting();
+  }
+
+  // Starts waiting asynchronous requests for as long as there are free permits. Whoever queues a
+  // request or releases a permit calls this afterwards, so no request is left waiting on a free
+  // permit.
+  private static void startWaiting() {
+    while (!WAITING.isEmpty() && PERMITS.tryAcquire()) {
+      Runnable next = WAITING.poll();
+      if (next == null) {
+        PERMITS.release();
+      } else {
+        next.run();
+      }
+    }
+  }
+
+  // Records how long a request took once it had a permit, and whether it failed, in the shared
+  // metrics
+  private static void record(HttpRequest request, long start, boolean failed) {
+    Metrics metrics = Metrics.shared();
+    metrics
+        .histogram(
+            "airobic_db_request_seconds",
+            "Time taken by database requests.",
+            "method",
+            request.method())
+        .observeNanos(System.nanoTime() - start);
+    if (failed) {
+      metrics
+          .counter(
+              "airobic_db_errors_total",
+              "Database requests that failed or were rejected.",
+              "method",
+              request.method())
+          .increment();
+    }
+  }
+
+  // Returns the body of a response, or throws if the database rejected the request
+  private static String checked(HttpRequest request, HttpResponse<String> response)
+      throws IOException {
+    if (response.statusCode() / 100 != 2) {
+      throw new IOException(
+          "Database "
+              + request.method()
+              + " "
+              + request.uri()
+              + " failed with status "
+              + response.statusCode()
+              + ": "
+              + response.body());
+    }
+    return response.body();
+  }
+
+  private static HttpRequest.BodyPublisher body(String data) {
+    return HttpRequest.BodyPublishers.ofString(data, StandardCharsets.UTF_8);
+  }
+
+  // Percent-encodes everything in a database path except unreserved characters and slashes, so
+  // names with spaces or query characters stay inside the path
+  private static String encodePath(String where) {
+    StringBuilder encoded = new StringBuilder();
+    for (byte b : where.getBytes(StandardCharsets.UTF_8)) {
+      char c = (char) (b & 0xff);
+      if ((c >= 'a' && c <= 'z')
+          || (c >= 'A' && c <= 'Z')
+          || (c >= '0' && c <= '9')
+          || c == '-'
+          || c == '_'
+          || c == '.'
+          || c == '~'
+          || c == '/') {
+        encoded.append(c);
+      } else {
+        encoded.append('%').append(String.format("%02X", b & 0xff));
+      }
     }
+    return encoded.toString();
   }
 }
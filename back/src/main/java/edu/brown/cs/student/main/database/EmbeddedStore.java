@@ -0,0 +1,297 @@
+package edu.brown.cs.student.main.database;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import edu.brown.cs.student.main.server.Log;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class is a ScheduleStore kept in a single local file, so the server can run on one machine
+ * with no outside database. The whole tree is held in memory (see JsonTree), so reads never touch
+ * the disk. Every write is first appended to the file as one line, ["PUT"|"PATCH"|"DELETE", path,
+ * value], and then applied in memory; on start up the file is replayed. Once COMPACT_AFTER lines
+ * have been appended, the file is rewritten as a single PUT of the whole tree, so it does not grow
+ * forever. Writes are flushed to the operating system before they return, so they survive the
+ * server crashing; with SYNC_WRITES they are also forced to the disk, so they survive the machine
+ * crashing. A torn last line, from a crash in the middle of a write, is dropped on start up; any
+ * other line that cannot be read is skipped and logged, so the rest of the file is still replayed.
+ * A write that fails part way through is cut back off the file, so the next one does not land on
+ * the end of a torn line; if even that fails, the store refuses every later write.
+ */
+public class EmbeddedStore implements ScheduleStore, AutoCloseable {
+  // system property for the file the embedded store is kept in
+  public static final String FILE_PROPERTY = "airobic.store.file";
+  public static final String DEFAULT_FILE = "data/store.log";
+  public static int COMPACT_AFTER = 10_000;
+  public static boolean SYNC_WRITES = false;
+
+  private static final String PUT = "PUT";
+  private static final String PATCH = "PATCH";
+  private static final String DELETE = "DELETE";
+  private static final JsonAdapter<List<Object>> RECORD =
+      new Moshi.Builder()
+          .build()
+          .<List<Object>>adapter(Types.newParameterizedType(List.class, Object.class))
+          .serializeNulls();
+
+  private final Path file;
+  private final JsonTree tree;
+  private final ReadWriteLock lock;
+  private FileOutputStream out;
+  private BufferedWriter log;
+  // the length of the file up to the end of its last whole line
+  private long length;
+  private IOException failed;
+  private int records;
+
+  // Opens the store kept in the file from the airobic.store.file property, or data/store.log
+  public EmbeddedStore() throws IOException {
+    this(System.getProperty(FILE_PROPERTY, DEFAULT_FILE));
+  }
+
+  // Opens the store kept in the given file, creating the file if it does not exist yet
+  public EmbeddedStore(String filename) throws IOException {
+    this.file = Path.of(filename).toAbsolutePath().normalize();
+    this.tree = new JsonTree();
+    this.lock = new ReentrantReadWriteLock();
+    if (this.file.getParent() != null) {
+      Files.createDirectories(this.file.getParent());
+    }
+    this.replay();
+    this.open();
+  }
+
+  @Override
+  public void put(String data, String where) throws IOException {
+    Object value = JsonTree.parse(data);
+    this.write(PUT, where, value);
+  }
+
+  @Override
+  public void update(String data, String where) throws IOException {
+    // checked before logging, so a rejected update is never replayed
+    Object children = JsonTree.parseObject(data);
+    this.write(PATCH, where, children);
+  }
+
+  @Override
+  public void delete(String where) throws IOException {
+    this.write(DELETE, where, null);
+  }
+
+  @Override
+  public String get(String where) {
+    this.lock.readLock().lock();
+    try {
+      return this.tree.get(where);
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public List<String> keys(String where) {
+    this.lock.readLock().lock();
+    try {
+      return this.tree.keys(where);
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Versioned getRange(String where, int first, int last) {
+    String json;
+    this.lock.readLock().lock();
+    try {
+      json = this.tree.getRange(where, first, last);
+    } finally {
+      this.lock.readLock().unlock();
+    }
+    return Versioned.of(json);
+  }
+
+  // The number of lines in the file since it was last compacted
+  public int records() {
+    this.lock.readLock().lock();
+    try {
+      return this.records;
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  // Rewrites the file as a single PUT of the whole tree. The new file is written and forced to the
+  // disk next to the old one, and only then moved over it, so a crash or failure part way through
+  // leaves the old file in place and still open for writes
+  public void compact() throws IOException {
+    this.lock.writeLock().lock();
+    try {
+      Path compacted = this.file.resolveSibling(this.file.getFileName() + ".compact");
+      try (FileOutputStream stream = new FileOutputStream(compacted.toFile());
+          BufferedWriter writer =
+              new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+        if (this.tree.root() != null) {
+          writer.write(RECORD.toJson(Arrays.asList(PUT, "", this.tree.root())));
+          writer.newLine();
+        }
+        writer.flush();
+        stream.getFD().sync();
+      }
+      try {
+        this.log.close();
+        Files.move(
+            compacted,
+            this.file,
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        this.records = this.tree.root() == null ? 0 : 1;
+      } finally {
+        this.open();
+      }
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.lock.writeLock().lock();
+    try {
+      this.log.close();
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  // Appends a write to the file and then applies it in memory, compacting if the file is due. The
+  // write is already durable by then, so a failed compaction is logged rather than thrown, and is
+  // tried again on the next write
+  private void write(String operation, String where, Object value) throws IOException {
+    String line = RECORD.toJson(Arrays.asList(operation, where, value));
+    this.lock.writeLock().lock();
+    try {
+      if (this.failed != null) {
+        throw new IOException("The store in " + this.file + " failed to write.", this.failed);
+      }
+      try {
+        this.log.write(line);
+        this.log.newLine();
+        this.log.flush();
+        if (SYNC_WRITES) {
+          this.out.getFD().sync();
+        }
+        this.length = this.out.getChannel().size();
+      } catch (IOException e) {
+        this.rollBack(e);
+        throw e;
+      }
+      this.apply(operation, where, value);
+      this.records++;
+      if (this.records >= COMPACT_AFTER) {
+        try {
+          this.compact();
+        } catch (IOException e) {
+          Log.shared().warn("compaction_failed", "file", this.file, "error", e.getMessage());
+        }
+      }
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  // Cuts whatever part of a failed write reached the file back off it, and reopens it. The writer
+  // is dropped rather than closed, as closing it would flush the rest of the line
+  private void rollBack(IOException cause) {
+    try {
+      this.out.close();
+      try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.WRITE)) {
+        channel.truncate(this.length);
+      }
+      this.open();
+    } catch (IOException e) {
+      cause.addSuppressed(e);
+      this.failed = cause;
+      Log.shared().error("store_failed", "file", this.file, "error", e.getMessage());
+    }
+  }
+
+  private void apply(String operation, String where, Object value) throws IOException {
+    switch (operation) {
+      case PUT -> this.tree.put(where, value);
+      case PATCH -> this.tree.update(where, value);
+      case DELETE -> this.tree.delete(where);
+      default -> throw new IOException("Unknown operation " + operation + " in " + this.file);
+    }
+  }
+
+  // Reads the file back into memory, dropping a torn last line and skipping any other corrupt one
+  private void replay() throws IOException {
+    if (!Files.exists(this.file)) {
+      return;
+    }
+    String contents = Files.readString(this.file, StandardCharsets.UTF_8);
+    List<String> lines = contents.lines().toList();
+    for (int i = 0; i < lines.size(); i++) {
+      List<Object> record;
+      try {
+        record = RECORD.fromJson(lines.get(i));
+        if (record == null
+            || record.size() != 3
+            || !List.of(PUT, PATCH, DELETE).contains(record.get(0))
+            || !(record.get(1) instanceof String)) {
+          throw new JsonDataException("expected [operation, path, value]");
+        }
+      } catch (IOException | JsonDataException e) {
+        if (i == lines.size() - 1) {
+          // the server stopped part way through this write, which was never acknowledged
+          Files.write(this.file, lines.subList(0, i), StandardCharsets.UTF_8);
+          return;
+        }
+        // left in the file until it is next compacted, so it can still be looked at
+        Log.shared()
+            .warn("store_line_skipped", "file", this.file, "line", i + 1, "error", e.getMessage());
+        this.records++;
+        continue;
+      }
+      String operation = (String) record.get(0);
+      Object value =
+          PATCH.equals(operation)
+              ? JsonTree.normalizeObject(record.get(2))
+              : JsonTree.normalize(record.get(2));
+      this.apply(operation, (String) record.get(1), value);
+      this.records++;
+    }
+    if (!contents.isEmpty() && !contents.endsWith("\n")) {
+      // the last write was cut off just before its line ended, so the line is ended here
+      Files.write(this.file, lines, StandardCharsets.UTF_8);
+    }
+  }
+
+  private void open() throws IOException {
+    this.out = new FileOutputStream(this.file.toFile(), true);
+    this.log = this.writer(this.out);
+    this.length = this.out.getChannel().size();
+  }
+
+  // Wraps the file in the writer lines are appended through; tests override it to fail writes
+  protected BufferedWriter writer(OutputStream stream) {
+    return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,298 @@
+package edu.brown.cs.student.main.database;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.Moshi;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An in-memory JSON tree that behaves like the Realtime Database: values are read and written by
+ * slash separated paths, writing null (or an empty object) deletes a value and any parents left
+ * empty, arrays are stored as objects keyed by index (and read back as arrays while their keys are
+ * dense), whole numbers are kept as integers, and keys are kept in the database's order. This class
+ * is not thread safe.
+ */
+public final class JsonTree {
+
+  // The Realtime Database orders keys that are integers numerically, before all other keys, which
+  // are ordered as strings
+  public static final Comparator<String> KEY_ORDER =
+      (a, b) -> {
+        boolean aInt = isIndex(a);
+        boolean bInt = isIndex(b);
+        if (aInt && bInt) {
+          return Long.compare(Long.parseLong(a), Long.parseLong(b));
+        } else if (aInt != bInt) {
+          return aInt ? -1 : 1;
+        }
+        return a.compareTo(b);
+      };
+
+  // the largest key that is an index (see isIndex)
+  public static final int MAX_INDEX = 999_999_999;
+
+  private static final JsonAdapter<Object> JSON = new Moshi.Builder().build().adapter(Object.class);
+
+  private Object root;
+
+  public JsonTree() {
+    this.root = null;
+  }
+
+  // Returns the JSON stored at a path, or "null" if nothing is stored there
+  public String get(String where) {
+    return toJson(this.find(segments(where)));
+  }
+
+  // Returns the children of the value at a path whose keys are indices from first to last
+  // (inclusive), as a JSON array in index order, leaving out missing children
+  public String getRange(String where, int first, int last) {
+    return range(this.find(segments(where)), first, last);
+  }
+
+  // Returns the keys of the children of the value at a path, in key order
+  public List<String> keys(String where) {
+    return keys(this.find(segments(where)));
+  }
+
+  // Returns the value stored at a path in its stored form (TreeMaps for objects), or null
+  public Object find(List<String> where) {
+    Object node = this.root;
+    for (String key : where) {
+      if (!(node instanceof TreeMap<?, ?> map)) {
+        return null;
+      }
+      node = map.get(key);
+    }
+    return node;
+  }
+
+  // Replaces the value at a path with an already parsed value (see parse)
+  public void put(String where, Object value) {
+    this.set(segments(where), value);
+  }
+
+  // Replaces each child named in already parsed children (see parseObject), leaving other children
+  // alone; child names may themselves be paths, as in a multi-path update
+  public void update(String where, Object children) throws IOException {
+    if (children == null) {
+      return;
+    }
+    if (!(children instanceof TreeMap<?, ?> map)) {
+      throw new IOException("An update must be a JSON object, but was " + toJson(children));
+    }
+    List<String> base = segments(where);
+    for (Map.Entry<?, ?> child : map.entrySet()) {
+      List<String> path = new ArrayList<>(base);
+      path.addAll(segments((String) child.getKey()));
+      this.set(path, child.getValue());
+    }
+  }
+
+  // Deletes the value at a path
+  public void delete(String where) {
+    this.set(segments(where), null);
+  }
+
+  // Returns the stored form of the whole tree (null if it is empty)
+  public Object root() {
+    return this.root;
+  }
+
+  private void set(List<String> where, Object value) {
+    this.root = setIn(this.root, where, 0, value);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object setIn(Object node, List<String> where, int depth, Object value) {
+    if (depth == where.size()) {
+      return value;
+    }
+    TreeMap<String, Object> map;
+    if (node instanceof TreeMap) {
+      map = (TreeMap<String, Object>) node;
+    } else if (value == null) {
+      // nothing is stored below a leaf, so there is nothing to delete
+      return node;
+    } else {
+      map = new TreeMap<>(KEY_ORDER);
+    }
+    String key = where.get(depth);
+    Object child = setIn(map.get(key), where, depth + 1, value);
+    if (child == null) {
+      map.remove(key);
+    } else {
+      map.put(key, child);
+    }
+    return map.isEmpty() ? null : map;
+  }
+
+  // Returns a deep copy of a value in its stored form
+  static Object copy(Object value) {
+    if (!(value instanceof TreeMap<?, ?> map)) {
+      return value;
+    }
+    TreeMap<String, Object> copied = new TreeMap<>(KEY_ORDER);
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      copied.put((String) entry.getKey(), copy(entry.getValue()));
+    }
+    return copied;
+  }
+
+  // Parses JSON into its stored form: objects and arrays become TreeMaps, empty objects and nulls
+  // are dropped, and whole numbers become Longs
+  public static Object parse(String json) throws IOException {
+    return normalize(read(json));
+  }
+
+  // Parses a JSON object (or null) into the children of an update, each in its stored form; unlike
+  // parse, children that are null are kept, as they delete what they name
+  public static Object parseObject(String json) throws IOException {
+    return normalizeObject(read(json));
+  }
+
+  // Turns an object read by Moshi into the children of an update (see parseObject)
+  static Object normalizeObject(Object parsed) throws IOException {
+    if (parsed == null) {
+      return null;
+    }
+    if (!(parsed instanceof Map<?, ?> map)) {
+      throw new IOException("An update must be a JSON object, but was " + JSON.toJson(parsed));
+    }
+    TreeMap<String, Object> children = new TreeMap<>(KEY_ORDER);
+    for (Map.Entry<?, ?> child : map.entrySet()) {
+      children.put((String) child.getKey(), normalize(child.getValue()));
+    }
+    return children;
+  }
+
+  private static Object read(String json) throws IOException {
+    try {
+      return JSON.fromJson(json);
+    } catch (JsonDataException e) {
+      throw new IOException("Invalid JSON: " + e.getMessage(), e);
+    }
+  }
+
+  // Writes a value in its stored form back out as JSON, turning dense index keyed objects back
+  // into arrays
+  public static String toJson(Object value) {
+    return JSON.toJson(render(value));
+  }
+
+  // Writes the children of a value in its stored form whose keys are indices from first to last
+  // (inclusive) out as a JSON array in index order; indices sort before all other keys, in order,
+  // so only the children in the range are visited
+  @SuppressWarnings("unchecked")
+  public static String range(Object value, int first, int last) {
+    first = Math.max(0, first);
+    last = Math.min(MAX_INDEX, last);
+    List<Object> children = new ArrayList<>();
+    if (value instanceof TreeMap<?, ?> && first <= last) {
+      TreeMap<String, Object> map = (TreeMap<String, Object>) value;
+      for (Object child :
+          map.subMap(Integer.toString(first), true, Integer.toString(last), true).values()) {
+        children.add(render(child));
+      }
+    }
+    return JSON.toJson(children);
+  }
+
+  // Returns the keys of the children of a value in its stored form, in key order (empty if it is
+  // not an object)
+  public static List<String> keys(Object value) {
+    List<String> keys = new ArrayList<>();
+    if (value instanceof TreeMap<?, ?> map) {
+      for (Object key : map.keySet()) {
+        keys.add((String) key);
+      }
+    }
+    return keys;
+  }
+
+  // Splits a path into its keys, ignoring empty keys (so "users/", "/users" and "users" match)
+  public static List<String> segments(String where) {
+    List<String> keys = new ArrayList<>();
+    for (String key : where.split("/")) {
+      if (!key.isEmpty()) {
+        keys.add(key);
+      }
+    }
+    return keys;
+  }
+
+  // Turns a value read by Moshi into its stored form (see parse)
+  static Object normalize(Object value) {
+    if (value instanceof Map<?, ?> map) {
+      TreeMap<String, Object> normalized = new TreeMap<>(KEY_ORDER);
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        Object child = normalize(entry.getValue());
+        if (child != null) {
+          normalized.put((String) entry.getKey(), child);
+        }
+      }
+      return normalized.isEmpty() ? null : normalized;
+    } else if (value instanceof List<?> list) {
+      TreeMap<String, Object> normalized = new TreeMap<>(KEY_ORDER);
+      for (int i = 0; i < list.size(); i++) {
+        Object child = normalize(list.get(i));
+        if (child != null) {
+          normalized.put(Integer.toString(i), child);
+        }
+      }
+      return normalized.isEmpty() ? null : normalized;
+    } else if (value instanceof Double number
+        && number == Math.rint(number)
+        && Math.abs(number) < 1e15) {
+      return number.longValue();
+    }
+    return value;
+  }
+
+  private static Object render(Object value) {
+    if (!(value instanceof TreeMap<?, ?> map)) {
+      return value;
+    }
+    // like the Realtime Database, objects whose keys are all indices, with at least half of the
+    // indices present, are read back as arrays
+    boolean array = true;
+    long max = -1;
+    for (Object key : map.keySet()) {
+      if (!isIndex((String) key)) {
+        array = false;
+        break;
+      }
+      max = Math.max(max, Long.parseLong((String) key));
+    }
+    if (array && max < 2L * map.size()) {
+      List<Object> list = new ArrayList<>();
+      for (int i = 0; i <= max; i++) {
+        list.add(render(map.get(Integer.toString(i))));
+      }
+      return list;
+    }
+    Map<String, Object> rendered = new LinkedHashMap<>();
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      rendered.put((String) entry.getKey(), render(entry.getValue()));
+    }
+    return rendered;
+  }
+
+  private static boolean isIndex(String key) {
+    if (key.isEmpty() || key.length() > 9 || (key.length() > 1 && key.charAt(0) == '0')) {
+      return false;
+    }
+    for (int i = 0; i < key.length(); i++) {
+      if (key.charAt(i) < '0' || key.charAt(i) > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+}
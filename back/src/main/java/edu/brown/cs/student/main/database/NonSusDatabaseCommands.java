@@ -1,5 +1,6 @@
 package edu.brown.cs.student.main.database;
 
+import edu.brown.cs.student.main.server.Log;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -28,7 +29,7 @@ public class NonSusDatabaseCommands {
     try (BufferedReader br =
         new BufferedReader(new InputStreamReader(con.getInputStream(), StandardCharsets.UTF_8))) {
       String response = br.lines().findFirst().orElse("");
-      System.out.println(response);
+      Log.shared().payload("database_response", response);
     }
   }
 
@@ -46,7 +47,7 @@ public class NonSusDatabaseCommands {
     try (BufferedReader br =
         new BufferedReader(new InputStreamReader(con.getInputStream(), StandardCharsets.UTF_8))) {
       String response = br.lines().findFirst().orElse("");
-      System.out.println(response);
+      Log.shared().payload("database_response", response);
     }
   }
 
@@ -55,7 +56,7 @@ public class NonSusDatabaseCommands {
     HttpURLConnection con = (HttpURLConnection) url.openConnection();
     con.setRequestMethod("DELETE");
     int status = con.getResponseCode();
-    System.out.println("Response Code: " + status);
+    Log.shared().debug("database_response", "status", status);
   }
 
   public String get(String where) throws IOException {
@@ -67,7 +68,7 @@ public class NonSusDatabaseCommands {
     try (BufferedReader br =
         new BufferedReader(new InputStreamReader(con.getInputStream(), StandardCharsets.UTF_8))) {
       String response = br.lines().findFirst().orElse("");
-      System.out.println(response);
+      Log.shared().payload("database_response", response);
       return response;
     }
   }
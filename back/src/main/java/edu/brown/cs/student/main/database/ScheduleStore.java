@@ -0,0 +1,101 @@
+package edu.brown.cs.student.main.database;
+
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * This interface is where the server keeps users, their schedules and their workout data. Data is
+ * JSON text, stored in one tree and addressed by slash separated paths (like
+ * "users/alan/schedule"), with the same meaning as the Realtime Database REST API.
+ */
+public interface ScheduleStore {
+
+  // This method puts in information in the store, but deletes everything else in the current
+  // branch
+  void put(String data, String where) throws IOException, InterruptedException;
+
+  // This method updates or adds information in the store, without deleting the current
+  // information; the keys of data may themselves be paths
+  void update(String data, String where) throws IOException, InterruptedException;
+
+  // This method updates information like update, but lets the store send it a little later in a
+  // batch with other updates (reads still see it at once), so it may be lost if the server stops
+  // first. It is for frequent writes that can stand that, like logged workout data. By default it
+  // is the same as update
+  default void updateLater(String data, String where) throws IOException, InterruptedException {
+    this.update(data, where);
+  }
+
+  // This method deletes the specific branch in the store
+  void delete(String where) throws IOException, InterruptedException;
+
+  // This method returns the information from a specific branch in the store ("null" if the branch
+  // is empty)
+  String get(String where) throws IOException, InterruptedException;
+
+  // This method returns the information from a specific branch in the store along with an ETag for
+  // it, which changes whenever the information does
+  default Versioned getVersioned(String where) throws IOException, InterruptedException {
+    return Versioned.of(this.get(where));
+  }
+
+  // This method returns the children of a branch whose keys are indices from first to last
+  // (inclusive), like the days of a schedule, as a JSON array in index order along with an ETag for
+  // it; missing children are left out. By default the whole branch is read, so stores should read
+  // only the children asked for when they can
+  default Versioned getRange(String where, int first, int last)
+      throws IOException, InterruptedException {
+    return Versioned.of(JsonTree.range(JsonTree.parse(this.get(where)), first, last));
+  }
+
+  // This method returns the keys of the children of a branch, like the usernames under "users", in
+  // key order and without their values (empty if the branch is empty or is not an object). By
+  // default the whole branch is read, so stores should read only the keys when they can
+  default List<String> keys(String where) throws IOException, InterruptedException {
+    return JsonTree.keys(JsonTree.parse(this.get(where)));
+  }
+
+  /**
+   * The JSON of a branch of the store, with an ETag identifying that exact JSON.
+   *
+   * @param json - the JSON of the branch ("null" if it is empty).
+   * @param etag - a quoted hash of the JSON, as an HTTP ETag header value.
+   */
+  record Versioned(String json, String etag) {
+
+    /**
+     * Tags the JSON of a branch with a hash of its contents.
+     *
+     * @param json - the JSON of the branch.
+     * @return the tagged JSON.
+     */
+    public static Versioned of(String json) {
+      return new Versioned(
+          json, "\"" + Hashing.murmur3_128().hashString(json, StandardCharsets.UTF_8) + "\"");
+    }
+
+    /**
+     * Checks an If-None-Match header value against this ETag.
+     *
+     * @param ifNoneMatch - the header value, which may list several tags, or be null.
+     * @return true if the client already has this exact JSON.
+     */
+    public boolean matches(String ifNoneMatch) {
+      if (ifNoneMatch == null) {
+        return false;
+      }
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+        if (tag.startsWith("W/")) {
+          tag = tag.substring(2);
+        }
+        if (tag.equals("*") || tag.equals(this.etag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package edu.brown.cs.student.main.database;
 
+import edu.brown.cs.student.main.server.Log;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
@@ -20,16 +21,15 @@ public class TerminalCommand {
     String os = System.getProperty("os.name").toLowerCase();
     // In case user uses Windows
     if (os.contains("win")) {
-      System.out.println("Windows get");
       command = new String[] {"cmd.exe", "/c", this.input};
     }
-    System.out.println(this.input);
+    Log.shared().payload("terminal_command", this.input);
     ProcessBuilder builder = new ProcessBuilder(command);
     Process process = builder.start();
     InputStream is = process.getInputStream();
     BufferedReader reader = new BufferedReader(new InputStreamReader(is));
     String r = reader.readLine();
-    System.out.println(r);
+    Log.shared().payload("terminal_response", r);
     return r;
   }
 
@@ -40,7 +40,6 @@ public class TerminalCommand {
     String os = System.getProperty("os.name").toLowerCase();
     // In case user uses Windows
     if (os.contains("win")) {
-      System.out.println("Windows run");
       command = new String[] {"cmd.exe", "/c", this.input};
     }
     ProcessBuilder builder = new ProcessBuilder(command);
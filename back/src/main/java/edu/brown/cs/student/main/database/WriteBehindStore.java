@@ -0,0 +1,469 @@
+package edu.brown.cs.student.main.database;
+
+import edu.brown.cs.student.main.server.Log;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is a ScheduleStore that holds back updates made with updateLater and sends them to
+ * another store in batches; updates made with update are sent at once, so they are stored by the
+ * time the call returns. Held updates are grouped by the first two keys of the paths they write (so
+ * by user, for "users/{username}/..."), and each group is sent as a single multi-path update once
+ * the window has passed since its first held update. Updates to the same path are merged, so a
+ * burst of writes to one schedule becomes one request. Reads see held updates, so a caller always
+ * reads its own writes. Puts, deletes and updates are not held, but any held updates they touch are
+ * sent first, so writes reach the other store in order. A group that fails to send is kept and
+ * tried again, backing off up to MAX_BACKOFF, until it has failed MAX_ATTEMPTS times in a row; it
+ * is then dropped and logged, so an update the other store will never take does not block the
+ * writes after it. Closing the store sends everything still held, going on past any group that
+ * fails.
+ */
+public class WriteBehindStore implements ScheduleStore, AutoCloseable {
+  // system property for the batching window in milliseconds (0 turns batching off)
+  public static final String WINDOW_PROPERTY = "airobic.store.window";
+  public static final Duration DEFAULT_WINDOW = Duration.ofMillis(200);
+  public static Duration MAX_BACKOFF = Duration.ofSeconds(30);
+  public static int MAX_ATTEMPTS = 5;
+  public static int FLUSH_THREADS = 4;
+
+  // the number of keys in a group's path
+  private static final int GROUP_DEPTH = 2;
+
+  private final ScheduleStore delegate;
+  private final long windowMillis;
+  private final ScheduledExecutorService flusher;
+  // held updates by group path; only read or changed while holding this object's lock
+  private final Map<String, Batch> batches;
+  private boolean closed;
+
+  // metrics, only read or changed while holding this object's lock
+  private long writes;
+  private long flushes;
+  private long failures;
+  private long dropped;
+  private long totalFlushNanos;
+  private long maxFlushNanos;
+
+  // Holds updates for the given store for the default window
+  public WriteBehindStore(ScheduleStore delegate) {
+    this(delegate, DEFAULT_WINDOW);
+  }
+
+  // Holds updates for the given store for the given window
+  public WriteBehindStore(ScheduleStore delegate, Duration window) {
+    this.delegate = delegate;
+    this.windowMillis = Math.max(1, window.toMillis());
+    this.flusher =
+        Executors.newScheduledThreadPool(
+            FLUSH_THREADS,
+            runnable -> {
+              Thread thread = new Thread(runnable, "write-behind-flusher");
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.batches = new HashMap<>();
+  }
+
+  // Sends the update at once, after any held updates it touches
+  @Override
+  public void update(String data, String where) throws IOException, InterruptedException {
+    this.flushTouching(where);
+    this.delegate.update(data, where);
+  }
+
+  // Holds the update, to be sent with the other updates to its group
+  @Override
+  public void updateLater(String data, String where) throws IOException, InterruptedException {
+    Object children = JsonTree.parseObject(data);
+    if (!(children instanceof Map<?, ?> map) || map.isEmpty()) {
+      return;
+    }
+    List<String> base = JsonTree.segments(where);
+    synchronized (this) {
+      if (!this.closed) {
+        this.hold(base, map);
+        return;
+      }
+    }
+    this.delegate.update(data, where);
+  }
+
+  // Adds each child of an update to the held updates of its group, scheduling a send for any
+  // group that does not have one yet
+  private void hold(List<String> base, Map<?, ?> children) throws IOException {
+    Map<List<String>, Object> writes = new LinkedHashMap<>();
+    for (Map.Entry<?, ?> child : children.entrySet()) {
+      List<String> path = new ArrayList<>(base);
+      path.addAll(JsonTree.segments((String) child.getKey()));
+      if (path.isEmpty()) {
+        throw new IOException("An update cannot replace the whole store");
+      }
+      writes.put(path, child.getValue());
+    }
+    for (Map.Entry<List<String>, Object> write : writes.entrySet()) {
+      List<String> path = write.getKey();
+      int split = Math.min(GROUP_DEPTH, path.size());
+      String group = String.join("/", path.subList(0, split));
+      Batch batch = this.batches.computeIfAbsent(group, key -> new Batch());
+      merge(batch.pending, String.join("/", path.subList(split, path.size())), write.getValue());
+      if (!batch.scheduled) {
+        batch.scheduled = true;
+        this.flushLater(group, this.windowMillis);
+      }
+    }
+    this.writes++;
+  }
+
+  @Override
+  public void put(String data, String where) throws IOException, InterruptedException {
+    this.flushTouching(where);
+    this.delegate.put(data, where);
+  }
+
+  @Override
+  public void delete(String where) throws IOException, InterruptedException {
+    this.flushTouching(where);
+    this.delegate.delete(where);
+  }
+
+  // Reads from the other store and lays any held updates over the result; if a held update
+  // replaces the whole branch, the other store is not read at all
+  @Override
+  public String get(String where) throws IOException, InterruptedException {
+    String path = String.join("/", JsonTree.segments(where));
+    List<Map.Entry<String, Object>> overlay = this.held(path);
+    if (overlay.isEmpty()) {
+      return this.delegate.get(where);
+    }
+    int start = 0;
+    for (int i = 0; i < overlay.size(); i++) {
+      if (covers(overlay.get(i).getKey(), path)) {
+        start = i;
+      }
+    }
+    JsonTree tree = new JsonTree();
+    if (!covers(overlay.get(start).getKey(), path)) {
+      tree.put("", JsonTree.parse(this.delegate.get(where)));
+    }
+    for (Map.Entry<String, Object> written : overlay.subList(start, overlay.size())) {
+      if (covers(written.getKey(), path)) {
+        JsonTree value = new JsonTree();
+        value.put("", written.getValue());
+        tree.put("", value.find(JsonTree.segments(relative(written.getKey(), path))));
+      } else {
+        tree.put(relative(path, written.getKey()), written.getValue());
+      }
+    }
+    return JsonTree.toJson(tree.root());
+  }
+
+  // Reads a range from the other store, unless updates to the branch are held, in which case the
+  // branch is read with them laid over it
+  @Override
+  public Versioned getRange(String where, int first, int last)
+      throws IOException, InterruptedException {
+    if (this.held(String.join("/", JsonTree.segments(where))).isEmpty()) {
+      return this.delegate.getRange(where, first, last);
+    }
+    return Versioned.of(JsonTree.range(JsonTree.parse(this.get(where)), first, last));
+  }
+
+  // Returns the held updates (those being sent first) that write a path, or a branch above or
+  // below it, in the order they were made
+  private List<Map.Entry<String, Object>> held(String path) {
+    List<Map.Entry<String, Object>> overlay = new ArrayList<>();
+    synchronized (this) {
+      for (Map.Entry<String, Batch> batch : this.batches.entrySet()) {
+        String group = batch.getKey();
+        if (covers(group, path) || covers(path, group)) {
+          if (batch.getValue().inflight != null) {
+            addAll(overlay, group, batch.getValue().inflight);
+          }
+          addAll(overlay, group, batch.getValue().pending);
+        }
+      }
+    }
+    overlay.removeIf(written -> !covers(written.getKey(), path) && !covers(path, written.getKey()));
+    return overlay;
+  }
+
+  // Sends every held update now, returning once they have all been sent
+  public void flush() throws IOException, InterruptedException {
+    List<String> groups;
+    synchronized (this) {
+      groups = new ArrayList<>(this.batches.keySet());
+    }
+    for (String group : groups) {
+      this.flush(group);
+    }
+  }
+
+  // Returns the current queue depth, and counts and timings of the updates sent so far
+  public synchronized Metrics metrics() {
+    int depth = 0;
+    for (Batch batch : this.batches.values()) {
+      depth += batch.pending.size();
+    }
+    return new Metrics(
+        depth,
+        this.writes,
+        this.flushes,
+        this.failures,
+        this.dropped,
+        this.flushes == 0 ? 0 : this.totalFlushNanos / 1e6 / this.flushes,
+        this.maxFlushNanos / 1e6);
+  }
+
+  // Sends everything still held, and then stops holding updates and closes the other store. A
+  // group that fails to send is logged and the groups after it are still sent; the first failure
+  // is thrown once the other store has been closed
+  @Override
+  public void close() throws Exception {
+    List<String> groups;
+    synchronized (this) {
+      this.closed = true;
+      groups = new ArrayList<>(this.batches.keySet());
+    }
+    this.flusher.shutdownNow();
+    Exception failure = null;
+    try {
+      for (String group : groups) {
+        try {
+          this.flush(group);
+        } catch (IOException e) {
+          Log.shared().error("write_behind_lost", "group", group, "error", e.getMessage());
+          if (failure == null) {
+            failure = e;
+          } else {
+            failure.addSuppressed(e);
+          }
+        }
+      }
+    } finally {
+      if (this.delegate instanceof AutoCloseable closeable) {
+        try {
+          closeable.close();
+        } catch (Exception e) {
+          if (failure == null) {
+            failure = e;
+          } else {
+            failure.addSuppressed(e);
+          }
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  // Sends the held updates of every group a write to a path would touch
+  private void flushTouching(String where) throws IOException, InterruptedException {
+    String path = String.join("/", JsonTree.segments(where));
+    List<String> groups = new ArrayList<>();
+    synchronized (this) {
+      for (String group : this.batches.keySet()) {
+        if (covers(group, path) || covers(path, group)) {
+          groups.add(group);
+        }
+      }
+    }
+    for (String group : groups) {
+      this.flush(group);
+    }
+  }
+
+  private void flushLater(String group, long delayMillis) {
+    this.flusher.schedule(
+        () -> {
+          synchronized (this) {
+            Batch batch = this.batches.get(group);
+            if (batch != null) {
+              batch.scheduled = false;
+            }
+          }
+          try {
+            this.flush(group);
+          } catch (IOException e) {
+            // the updates are held again, and another attempt has been scheduled
+            Log.shared().warn("write_behind_failed", "group", group, "error", e.getMessage());
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        },
+        delayMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  // Sends a group's held updates as one multi-path update, after any send of the group already
+  // under way. If the send fails, the updates are held again, under any newer ones
+  private void flush(String group) throws IOException, InterruptedException {
+    Batch batch;
+    LinkedHashMap<String, Object> sending;
+    synchronized (this) {
+      batch = this.batches.get(group);
+      if (batch == null) {
+        return;
+      }
+      while (batch.inflight != null) {
+        this.wait();
+      }
+      if (batch.pending.isEmpty()) {
+        if (!batch.scheduled && this.batches.get(group) == batch) {
+          this.batches.remove(group);
+        }
+        return;
+      }
+      sending = batch.pending;
+      batch.inflight = sending;
+      batch.pending = new LinkedHashMap<>();
+    }
+    List<String> keys = JsonTree.segments(group);
+    String parent = String.join("/", keys.subList(0, keys.size() - 1));
+    String last = keys.get(keys.size() - 1);
+    StringBuilder body = new StringBuilder("{");
+    for (Map.Entry<String, Object> written : sending.entrySet()) {
+      if (body.length() > 1) {
+        body.append(',');
+      }
+      String key = written.getKey().isEmpty() ? last : last + "/" + written.getKey();
+      body.append(JsonTree.toJson(key)).append(':').append(JsonTree.toJson(written.getValue()));
+    }
+    body.append('}');
+
+    long start = System.nanoTime();
+    boolean sent = false;
+    boolean dropped = false;
+    try {
+      this.delegate.update(body.toString(), parent);
+      sent = true;
+    } catch (IOException e) {
+      // only this flush can be sending the group, so its attempts cannot change meanwhile
+      synchronized (this) {
+        dropped = batch.attempts + 1 >= MAX_ATTEMPTS;
+      }
+      if (!dropped) {
+        throw e;
+      }
+      Log.shared()
+          .error(
+              "write_behind_dropped",
+              "group",
+              group,
+              "attempts",
+              MAX_ATTEMPTS,
+              "error",
+              e.getMessage(),
+              "updates",
+              body);
+    } finally {
+      long elapsed = System.nanoTime() - start;
+      synchronized (this) {
+        batch.inflight = null;
+        if (sent) {
+          this.flushes++;
+          this.totalFlushNanos += elapsed;
+          this.maxFlushNanos = Math.max(this.maxFlushNanos, elapsed);
+          batch.attempts = 0;
+        } else if (dropped) {
+          this.failures++;
+          this.dropped++;
+          batch.attempts = 0;
+        } else {
+          this.failures++;
+          batch.attempts++;
+          LinkedHashMap<String, Object> held = new LinkedHashMap<>(sending);
+          for (Map.Entry<String, Object> newer : batch.pending.entrySet()) {
+            merge(held, newer.getKey(), newer.getValue());
+          }
+          batch.pending = held;
+        }
+        if (batch.pending.isEmpty()) {
+          if (!batch.scheduled && this.batches.get(group) == batch) {
+            this.batches.remove(group);
+          }
+        } else if (!batch.scheduled && !this.closed) {
+          // updates held while sending (or held again after a failure) get their own send, backing
+          // off after each failure
+          batch.scheduled = true;
+          long backoff = this.windowMillis << Math.min(batch.attempts, 20);
+          this.flushLater(group, Math.min(backoff, MAX_BACKOFF.toMillis()));
+        }
+        this.notifyAll();
+      }
+    }
+  }
+
+  // Adds a write to a group's held updates. A write under a held path is merged into that path's
+  // value, and a write over held paths replaces them, so held paths never overlap (which a
+  // multi-path update requires)
+  private static void merge(LinkedHashMap<String, Object> held, String path, Object value) {
+    for (Map.Entry<String, Object> written : held.entrySet()) {
+      if (covers(written.getKey(), path)) {
+        JsonTree tree = new JsonTree();
+        tree.put("", written.getValue());
+        tree.put(relative(written.getKey(), path), value);
+        written.setValue(tree.root());
+        return;
+      }
+    }
+    held.keySet().removeIf(written -> covers(path, written));
+    held.put(path, value);
+  }
+
+  private static void addAll(
+      List<Map.Entry<String, Object>> overlay, String group, Map<String, Object> held) {
+    for (Map.Entry<String, Object> written : held.entrySet()) {
+      String path = written.getKey().isEmpty() ? group : group + "/" + written.getKey();
+      // copied, as held values are changed in place when newer updates are merged into them
+      overlay.add(new AbstractMap.SimpleEntry<>(path, JsonTree.copy(written.getValue())));
+    }
+  }
+
+  // Whether the path above is the path below or one of its parents
+  private static boolean covers(String above, String below) {
+    return above.isEmpty() || below.equals(above) || below.startsWith(above + "/");
+  }
+
+  // The path below, relative to the path above it
+  private static String relative(String above, String below) {
+    return above.isEmpty() ? below : below.substring(Math.min(below.length(), above.length() + 1));
+  }
+
+  /**
+   * A snapshot of how the store is batching.
+   *
+   * @param queueDepth - the number of held paths waiting to be sent.
+   * @param writes - the number of updates taken so far.
+   * @param flushes - the number of batches sent so far.
+   * @param failures - the number of times a batch failed to send.
+   * @param dropped - the number of batches dropped after failing MAX_ATTEMPTS times in a row.
+   * @param meanFlushMillis - the mean time taken to send a batch.
+   * @param maxFlushMillis - the longest time taken to send a batch.
+   */
+  public record Metrics(
+      int queueDepth,
+      long writes,
+      long flushes,
+      long failures,
+      long dropped,
+      double meanFlushMillis,
+      double maxFlushMillis) {}
+
+  // The held updates of one group
+  private static final class Batch {
+    private LinkedHashMap<String, Object> pending = new LinkedHashMap<>();
+    private LinkedHashMap<String, Object> inflight;
+    private boolean scheduled;
+    private int attempts;
+  }
+}
@@ -1,6 +1,7 @@
 package edu.brown.cs.student.main.handlers;
 
 import edu.brown.cs.student.main.database.DatabaseCommands;
+import edu.brown.cs.student.main.database.ScheduleStore;
 import edu.brown.cs.student.main.server.serializing.Serializer;
 import java.util.HashMap;
 import java.util.Objects;
@@ -11,6 +12,18 @@ import spark.Route;
 /** This class adds a new user to the database */
 public class AddNewUser implements Route {
 
+  private final ScheduleStore store;
+
+  // Uses the Realtime Database
+  public AddNewUser() {
+    this(new DatabaseCommands());
+  }
+
+  // Uses the given store
+  public AddNewUser(ScheduleStore store) {
+    this.store = store;
+  }
+
   @Override
   public Object handle(Request request, Response response) throws Exception {
     String username = request.queryParams("username");
@@ -20,17 +33,17 @@ public class AddNewUser implements Route {
       output.put("message", "ERROR: Invalid input.");
     } else {
       String where = "users/" + username + "/valid";
-      String valid = new DatabaseCommands().get(where);
+      String valid = this.store.get(where);
       if (Objects.equals(valid, "\"true\"")) {
         output.put("result", "error_bad_request");
         output.put("message", "ERROR: User already exists.");
       } else {
         String info = "{\"" + username + "\":{\"schedule\":\"\",\"valid\":\"true\"}}";
-        new DatabaseCommands().update(info, "users");
+        this.store.update(info, "users");
         output.put("result", "success");
         output.put("message", "Successfully added " + username);
       }
     }
-    return Serializer.serialize(output);
+    return Serializer.respond(request, response, output);
   }
 }
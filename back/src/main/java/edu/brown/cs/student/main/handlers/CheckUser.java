@@ -1,6 +1,7 @@
 package edu.brown.cs.student.main.handlers;
 
 import edu.brown.cs.student.main.database.DatabaseCommands;
+import edu.brown.cs.student.main.database.ScheduleStore;
 import edu.brown.cs.student.main.server.serializing.Serializer;
 import java.util.HashMap;
 import java.util.Objects;
@@ -11,6 +12,18 @@ import spark.Route;
 /** This class checks if the user already exists in the database */
 public class CheckUser implements Route {
 
+  private final ScheduleStore store;
+
+  // Uses the Realtime Database
+  public CheckUser() {
+    this(new DatabaseCommands());
+  }
+
+  // Uses the given store
+  public CheckUser(ScheduleStore store) {
+    this.store = store;
+  }
+
   @Override
   public Object handle(Request request, Response response) throws Exception {
     String username = request.queryParams("username");
@@ -20,7 +33,7 @@ public class CheckUser implements Route {
       output.put("message", "ERROR: Invalid input.");
     } else {
       String where = "users/" + username + "/valid";
-      String valid = new DatabaseCommands().get(where);
+      String valid = this.store.get(where);
       if (Objects.equals(valid, "\"true\"")) {
         output.put("result", "success");
         output.put("message", "True");
@@ -29,6 +42,6 @@ public class CheckUser implements Route {
         output.put("message", "False");
       }
     }
-    return Serializer.serialize(output);
+    return Serializer.respond(request, response, output);
   }
 }
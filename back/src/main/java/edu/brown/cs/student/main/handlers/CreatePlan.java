@@ -1,8 +1,12 @@
 package edu.brown.cs.student.main.handlers;
 
 import edu.brown.cs.student.main.database.DatabaseCommands;
+import edu.brown.cs.student.main.database.ScheduleStore;
 import edu.brown.cs.student.main.models.formattypes.Schedule;
 import edu.brown.cs.student.main.models.markov.modelbuilding.Workout;
+import edu.brown.cs.student.main.server.Log;
+import edu.brown.cs.student.main.server.Metrics;
+import edu.brown.cs.student.main.server.serializing.ScheduleJsonWriter;
 import edu.brown.cs.student.main.server.serializing.Serializer;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -10,6 +14,8 @@ import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import spark.Request;
 import spark.Response;
 import spark.Route;
@@ -17,6 +23,29 @@ import spark.Route;
 /** This class calls the Model builders and generates a workout plan for the user */
 public class CreatePlan implements Route {
 
+  private static final Log LOG = Log.shared();
+  private static final Metrics.Histogram SERIALIZATION_TIME = Metrics.stage("serialization");
+  private static final Metrics.Histogram DB_WRITE_TIME = Metrics.stage("db_write");
+
+  private final ScheduleStore store;
+  private final PlanJobs jobs;
+
+  // Uses the Realtime Database
+  public CreatePlan() {
+    this(new DatabaseCommands());
+  }
+
+  // Uses the given store, generating plans on the shared PlanJobs
+  public CreatePlan(ScheduleStore store) {
+    this(store, PlanJobs.shared());
+  }
+
+  // Uses the given store, generating plans on the given PlanJobs
+  public CreatePlan(ScheduleStore store, PlanJobs jobs) {
+    this.store = store;
+    this.jobs = jobs;
+  }
+
   @Override
   public Object handle(Request request, Response response) throws Exception {
     String username = request.queryParams("username");
@@ -35,16 +64,9 @@ public class CreatePlan implements Route {
         || model == null) {
       output.put("result", "error_bad_request");
       output.put("message", "ERROR: Invalid input.");
-      return Serializer.serialize(output);
+      return Serializer.respond(request, response, output);
     }
     // Error checking
-    System.out.println(username);
-    System.out.println(startDate);
-    System.out.println(endDate);
-    System.out.println(model);
-    System.out.println(hoursPerWeek);
-    System.out.println(goal);
-
     DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     LocalDate parsedStart;
     LocalDate parsedEnd;
@@ -54,124 +76,182 @@ public class CreatePlan implements Route {
     } catch (DateTimeParseException e) {
       output.put("result", "error_bad_request");
       output.put("message", "ERROR: Invalid input (start date).");
-      return Serializer.serialize(output);
+      return Serializer.respond(request, response, output);
     }
     try {
       parsedEnd = LocalDate.parse(endDate, formatter);
     } catch (DateTimeParseException e) {
       output.put("result", "error_bad_request");
       output.put("message", "ERROR: Invalid input (end date).");
-      return Serializer.serialize(output);
+      return Serializer.respond(request, response, output);
     }
     try {
       parsedMinutes = Integer.parseInt(hoursPerWeek);
     } catch (NumberFormatException e) {
       output.put("result", "error_bad_request");
       output.put("message", "ERROR: Invalid input (hours per week).");
-      return Serializer.serialize(output);
+      return Serializer.respond(request, response, output);
     }
-    // Adding the sport to the database
+    LOG.info(
+        "plan_requested",
+        "username",
+        username,
+        "model",
+        model,
+        "start",
+        parsedStart,
+        "end",
+        parsedEnd,
+        "minutes",
+        parsedMinutes,
+        "goal",
+        goal);
 
-    System.out.println(username);
-    System.out.println(parsedStart);
-    System.out.println(parsedEnd);
-    System.out.println(model);
-    System.out.println(parsedMinutes);
-    System.out.println(goal);
-
-    new DatabaseCommands().update("{\"sport\":\"" + sport + "\"}", "users/" + username);
-    // Handling the goal oriented model
+    // Checking the model (and goal) before queueing anything
     switch (model) {
+      case "model1", "model2" -> {}
       case "model3" -> {
         if (goal == null) {
           output.put("result", "error_bad_request");
           output.put("message", "ERROR: Invalid input (no goal).");
-        } else {
-          if (Workout.of(goal) == Workout.NONE || Workout.of(goal) == Workout.UT_2) {
-            output.put("result", "error_bad_request");
-            output.put("message", "ERROR: Invalid input (wrong goal).");
-          } else {
-            System.out.println("Reached this line!");
-            try {
-              Schedule built =
-                  new GenerateLinearPlan()
-                      .generate(
-                          parsedMinutes,
-                          parsedStart,
-                          parsedEnd,
-                          Workout.of(goal),
-                          Workout.UT_2,
-                          0.2);
-              new DatabaseCommands()
-                  .update(
-                      Serializer.serializeSchedule(built.flatten()),
-                      "users/" + username + "/schedule");
-            } catch (Exception e) {
-              System.out.println(e.getMessage());
-              output.put("result", "error_bad_request");
-              output.put("message", "ERROR: Server output: " + e.getMessage());
-              return Serializer.serialize(output);
-            }
-            System.out.println("Reached this giga line!");
-            output.put("result", "success");
-            output.put("message", "Successfully updated " + username);
-          }
+          return Serializer.respond(request, response, output);
+        }
+        if (Workout.of(goal) == Workout.NONE || Workout.of(goal) == Workout.UT_2) {
+          output.put("result", "error_bad_request");
+          output.put("message", "ERROR: Invalid input (wrong goal).");
+          return Serializer.respond(request, response, output);
+        }
+      }
+        // Handling invalid models
+      default -> {
+        output.put("result", "error_bad_request");
+        output.put("message", "ERROR: Invalid input (model).");
+        return Serializer.respond(request, response, output);
+      }
+    }
+
+    PlanJobs.Job job;
+    try {
+      job =
+          this.jobs.submit(
+              username,
+              () -> {
+                this.generate(username, sport, model, goal, parsedMinutes, parsedStart, parsedEnd);
+                return null;
+              });
+    } catch (RejectedExecutionException e) {
+      output.put("result", "error_busy");
+      output.put("message", "ERROR: Too many plans are being generated, try again later.");
+      return Serializer.respond(request, response, output);
+    }
+    // With async=true, the plan is generated in the background, and its progress can be polled
+    // at plan-status with the returned job id
+    if ("true".equals(request.queryParams("async"))) {
+      output.put("result", "success");
+      output.put("message", "Generating plan for " + username);
+      output.put("job", job.id());
+      return Serializer.respond(request, response, output);
+    }
+    try {
+      job.await();
+    } catch (ExecutionException e) {
+      LOG.warn("plan_failed", "username", username, "error", e.getCause().getMessage());
+      output.put("result", "error_bad_request");
+      output.put("message", "ERROR: Server output: " + e.getCause().getMessage());
+      return Serializer.respond(request, response, output);
+    }
+    output.put("result", "success");
+    output.put("message", "Successfully updated " + username);
+    return Serializer.respond(request, response, output);
+  }
+
+  /**
+   * Generates a plan with one of the models and stores it as the user's schedule, along with their
+   * sport. Runs on one of the PlanJobs threads.
+   *
+   * @param username - the user the plan is for.
+   * @param sport - the user's sport.
+   * @param model - the model to generate the plan with (model1, model2 or model3).
+   * @param goal - the goal workout, for model3.
+   * @param minutes - the minutes to train per week.
+   * @param start - the first day of the plan.
+   * @param end - the last day of the plan.
+   * @throws Exception if the plan cannot be generated or stored.
+   */
+  private void generate(
+      String username,
+      String sport,
+      String model,
+      String goal,
+      int minutes,
+      LocalDate start,
+      LocalDate end)
+      throws Exception {
+    this.store.update("{\"sport\":\"" + sport + "\"}", "users/" + username);
+    String where = "users/" + username + "/schedule";
+    switch (model) {
+        // Handling the goal oriented model
+      case "model3" -> {
+        Schedule built =
+            new GenerateLinearPlan()
+                .generate(minutes, start, end, Workout.of(goal), Workout.UT_2, 0.2);
+        String json = serialize(built);
+        long writeStart = System.nanoTime();
+        try {
+          this.store.update(json, where);
+        } finally {
+          DB_WRITE_TIME.observeNanos(System.nanoTime() - writeStart);
         }
-        return Serializer.serialize(output);
       }
         // Handling the classic linear model
       case "model1" -> {
+        Schedule built =
+            new GenerateLinearPlan()
+                .generate(minutes, start, end, Workout.OVERALL, Workout.UT_2, 0.2);
+        String json = serialize(built);
+        LOG.payload("plan_generated", json, "username", username);
+        long writeStart = System.nanoTime();
         try {
-          Schedule built =
-              new GenerateLinearPlan()
-                  .generate(
-                      parsedMinutes, parsedStart, parsedEnd, Workout.OVERALL, Workout.UT_2, 0.2);
-          System.out.println(Serializer.serializeSchedule(built.flatten()));
-          new DatabaseCommands()
-              .put(
-                  Serializer.serializeSchedule(built.flatten()), "users/" + username + "/schedule");
-        } catch (Exception e) {
-          System.out.println(e.getMessage());
-          output.put("result", "error_bad_request");
-          output.put("message", "ERROR: Server output: " + e.getMessage());
-          return Serializer.serialize(output);
+          this.store.put(json, where);
+        } finally {
+          DB_WRITE_TIME.observeNanos(System.nanoTime() - writeStart);
         }
-        output.put("result", "success");
-        output.put("message", "Successfully updated " + username);
-        return Serializer.serialize(output);
       }
         // Handling the variable model
       case "model2" -> {
+        Set<Workout> high = new HashSet<>();
+        high.add(Workout._30R_20);
+        high.add(Workout._6K);
+        high.add(Workout._2K);
+        Set<Workout> low = new HashSet<>();
+        low.add(Workout.UT_2);
+        Schedule built = new GenerateGraphLikePlan().generate(minutes, start, end, high, low, 0.2);
+        String json = serialize(built);
+        LOG.payload("plan_generated", json, "username", username);
+        long writeStart = System.nanoTime();
         try {
-          Set<Workout> high = new HashSet<>();
-          high.add(Workout._30R_20);
-          high.add(Workout._6K);
-          high.add(Workout._2K);
-          Set<Workout> low = new HashSet<>();
-          low.add(Workout.UT_2);
-          Schedule built =
-              new GenerateGraphLikePlan()
-                  .generate(parsedMinutes, parsedStart, parsedEnd, high, low, 0.2);
-          System.out.println(Serializer.serializeSchedule(built.flatten()));
-          new DatabaseCommands()
-              .put(
-                  Serializer.serializeSchedule(built.flatten()), "users/" + username + "/schedule");
-        } catch (Exception e) {
-          System.out.println(e.getMessage());
-          output.put("result", "error_bad_request");
-          output.put("message", "ERROR: Server output: " + e.getMessage());
-          return Serializer.serialize(output);
+          this.store.put(json, where);
+        } finally {
+          DB_WRITE_TIME.observeNanos(System.nanoTime() - writeStart);
         }
-        output.put("result", "success");
-        output.put("message", "Successfully updated " + username);
-        return Serializer.serialize(output);
-      }
-        // Handling invalid models
-      default -> {
-        output.put("result", "error_bad_request");
-        output.put("message", "ERROR: Invalid input (model).");
-        return Serializer.serialize(output);
       }
+      default -> throw new IllegalArgumentException("Unknown model " + model);
+    }
+  }
+
+  /**
+   * Serializes a generated plan for the store, recording the time taken as the serialization stage.
+   *
+   * @param built - the generated plan.
+   * @return the plan's JSON.
+   */
+  private static String serialize(Schedule built) {
+    long start = System.nanoTime();
+    try {
+      // the same JSON as Serializer.serializeSchedule(built.flatten()), without copying every day
+      return ScheduleJsonWriter.toFlatJson(built);
+    } finally {
+      SERIALIZATION_TIME.observeNanos(System.nanoTime() - start);
     }
   }
 }
@@ -1,6 +1,7 @@
 package edu.brown.cs.student.main.handlers;
 
 import edu.brown.cs.student.main.database.DatabaseCommands;
+import edu.brown.cs.student.main.database.ScheduleStore;
 import edu.brown.cs.student.main.server.serializing.Serializer;
 import java.io.IOException;
 import java.util.HashMap;
@@ -11,7 +12,17 @@ import spark.Route;
 /** This class deletes the user from the database */
 public class DeleteUser implements Route {
 
-  public DeleteUser() throws IOException, InterruptedException {}
+  private final ScheduleStore store;
+
+  // Uses the Realtime Database
+  public DeleteUser() throws IOException, InterruptedException {
+    this(new DatabaseCommands());
+  }
+
+  // Uses the given store
+  public DeleteUser(ScheduleStore store) {
+    this.store = store;
+  }
 
   @Override
   public Object handle(Request request, Response response) throws Exception {
@@ -21,10 +32,10 @@ public class DeleteUser implements Route {
       output.put("result", "error_bad_request");
       output.put("message", "ERROR: Invalid input.");
     } else {
-      new DatabaseCommands().delete("users/" + username);
+      this.store.delete("users/" + username);
       output.put("result", "success");
       output.put("message", "Successfully deleted " + username);
     }
-    return Serializer.serialize(output);
+    return Serializer.respond(request, response, output);
   }
 }
@@ -1,19 +1,20 @@
 package edu.brown.cs.student.main.handlers;
 
 import edu.brown.cs.student.main.models.exceptions.*;
-import edu.brown.cs.student.main.models.formatters.DefaultFormatter;
 import edu.brown.cs.student.main.models.formattypes.Day;
 import edu.brown.cs.student.main.models.formattypes.Schedule;
 import edu.brown.cs.student.main.models.formattypes.Week;
+import edu.brown.cs.student.main.models.markov.model.BudgetSampler;
 import edu.brown.cs.student.main.models.markov.model.Emission;
 import edu.brown.cs.student.main.models.markov.model.MarkovModel;
 import edu.brown.cs.student.main.models.markov.modelbuilding.Workout;
-import edu.brown.cs.student.main.rowing.distributiongenerators.RowingWorkoutByName;
-import edu.brown.cs.student.main.rowing.modelbuilders.VariableModelBuilder;
+import edu.brown.cs.student.main.rowing.modelbuilders.ModelCache;
+import edu.brown.cs.student.main.server.Metrics;
 import java.io.IOException;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -27,7 +28,26 @@ import java.util.Set;
  */
 public class GenerateGraphLikePlan {
 
-  public static int MAX_WORKOUTS = 20;
+  private static final Metrics.Histogram SAMPLING_TIME = Metrics.stage("sampling");
+  // how many minutes under or over its budget a week's workouts may add up to, when they can
+  public static int MINUTES_TOLERANCE = 15;
+
+  private final ModelCache models;
+
+  /** The constructor for the GenerateGraphLikePlan class, which uses the shared model cache. */
+  public GenerateGraphLikePlan() {
+    this(ModelCache.shared());
+  }
+
+  /**
+   * The constructor for the GenerateGraphLikePlan class, which takes in the cache to get variable
+   * models from.
+   *
+   * @param models - the cache of built models.
+   */
+  public GenerateGraphLikePlan(ModelCache models) {
+    this.models = models;
+  }
 
   /**
    * This method generates a variable plan using the VariableModelBuilder, being careful to account
@@ -73,9 +93,12 @@ public class GenerateGraphLikePlan {
               + endDate.format(formatter));
     }
 
-    VariableModelBuilder builder = new VariableModelBuilder(new RowingWorkoutByName());
     MarkovModel varModel =
-        builder.build(lowIntensityLabels, highIntensityLabels, minutes, highIntensityPercent);
+        this.models.getVariableModel(
+            lowIntensityLabels, highIntensityLabels, minutes, highIntensityPercent);
+    long samplingStart = System.nanoTime();
+    // one sampler serves every week, as its table covers every budget up to the largest
+    BudgetSampler sampler = varModel.getCompiled().budgetSampler(MINUTES_TOLERANCE);
 
     // this schedule building requires a significant amount of special casing to keep Sundays as
     // rest days.
@@ -99,7 +122,8 @@ public class GenerateGraphLikePlan {
                   6),
               startDate,
               endDate,
-              varModel));
+              sampler));
+      SAMPLING_TIME.observeNanos(System.nanoTime() - samplingStart);
       return new Schedule("schedule", weeks, weeks.get(0));
     }
 
@@ -110,13 +134,13 @@ public class GenerateGraphLikePlan {
                 minutes * (DayOfWeek.SUNDAY.getValue() - startDate.getDayOfWeek().getValue()), 6),
             startDate,
             firstSunday,
-            varModel));
+            sampler));
 
     LocalDate currDate = firstSunday;
 
     // adds inner weeks
     while (currDate.plusDays(6).isBefore(endDate)) {
-      weeks.add(this.generateWeek(minutes, currDate.plusDays(1), currDate.plusDays(7), varModel));
+      weeks.add(this.generateWeek(minutes, currDate.plusDays(1), currDate.plusDays(7), sampler));
       currDate = currDate.plusDays(7);
     }
 
@@ -130,29 +154,32 @@ public class GenerateGraphLikePlan {
                   6),
               currDate.plusDays(1),
               endDate,
-              varModel));
+              sampler));
     }
 
+    SAMPLING_TIME.observeNanos(System.nanoTime() - samplingStart);
     return new Schedule("schedule", weeks, ((weeks.size() <= 1) ? weeks.get(0) : weeks.get(1)));
   }
 
   /**
-   * This method generates a singular week using the variable model.
+   * This method generates a singular week using the variable model. Its workouts are drawn in one
+   * walk through the model that adds up to within MINUTES_TOLERANCE of the minutes for the week (or
+   * as near to them as the model's workouts can add up to), with no workouts generated beyond those
+   * the week needs.
    *
    * @param minutes - the minutes the caller wants to work out during this week, roughly.
    * @param startDay - the start date of the week.
    * @param endDay - the end date of the week.
-   * @param model - the variable MarkovModel.
+   * @param sampler - the sampler for walks through the model that fill a budget.
    * @return the built Week.
-   * @throws InvalidDistributionException if the MarkovModel has any invalid distributions.
-   * @throws FormatterFailureException if the MarkovModel emissions cannot be read into the Week.
    * @throws InvalidScheduleException if there are any issues constructing Schedule components, like
    *     Days.
    */
-  private Week generateWeek(int minutes, LocalDate startDay, LocalDate endDay, MarkovModel model)
-      throws InvalidDistributionException, FormatterFailureException, InvalidScheduleException {
+  private Week generateWeek(
+      int minutes, LocalDate startDay, LocalDate endDay, BudgetSampler sampler)
+      throws InvalidScheduleException {
 
-    List<Emission> totalWeekEmissions = new ArrayList<>();
+    ArrayDeque<Emission> totalWeekEmissions = new ArrayDeque<>();
     List<Day> days = new ArrayList<>();
 
     // number of days that include workouts
@@ -175,25 +202,15 @@ public class GenerateGraphLikePlan {
               new ArrayList<>()));
     }
 
-    List<Emission> potentialWorkouts =
-        model.generateFormattedEmissions(MAX_WORKOUTS, new DefaultFormatter());
-
-    // assigns workouts from the Emissions generated on the line above to a new list, that will
-    // comply with the
-    // minutes constraint.
-    while (minutes > 0) {
-      assert (potentialWorkouts.size() > 0);
-      Emission nextWorkout = potentialWorkouts.remove(0);
-      totalWeekEmissions.add(nextWorkout);
-      minutes -= nextWorkout.getTime();
-    }
+    // draws the week's workouts in one walk that adds up to the minutes constraint
+    totalWeekEmissions.addAll(sampler.sample(minutes));
 
     // adding emissions in, distributing in a similar way to DistributeWorkouts in teh
     // ScheduleBuilder class.
     while (totalWeekEmissions.size() > numDays) {
       for (int i = 0; i < numDays; i++) {
         days.get(i).incrementNumWorkouts();
-        days.get(i).addWorkout(totalWeekEmissions.remove(0));
+        days.get(i).addWorkout(totalWeekEmissions.poll());
       }
     }
 
@@ -202,7 +219,7 @@ public class GenerateGraphLikePlan {
     float cumulativeCounter = 0;
     while (w < numDays) {
       days.get(w).incrementNumWorkouts();
-      days.get(w).addWorkout(totalWeekEmissions.remove(0));
+      days.get(w).addWorkout(totalWeekEmissions.poll());
       cumulativeCounter += ((float) numDays / remainingWorkouts);
       w = Math.toIntExact(Math.round(Math.floor(cumulativeCounter)));
     }
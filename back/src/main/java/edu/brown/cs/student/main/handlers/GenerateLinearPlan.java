@@ -5,14 +5,20 @@ import edu.brown.cs.student.main.models.exceptions.InvalidDistributionException;
 import edu.brown.cs.student.main.models.exceptions.InvalidScheduleException;
 import edu.brown.cs.student.main.models.exceptions.NoWorkoutTypeException;
 import edu.brown.cs.student.main.models.formatters.ScheduleFormatter;
+import edu.brown.cs.student.main.models.formattypes.Day;
 import edu.brown.cs.student.main.models.formattypes.Schedule;
+import edu.brown.cs.student.main.models.formattypes.Week;
+import edu.brown.cs.student.main.models.markov.model.Emission;
 import edu.brown.cs.student.main.models.markov.model.MarkovModel;
+import edu.brown.cs.student.main.models.markov.model.Pin;
 import edu.brown.cs.student.main.models.markov.modelbuilding.Workout;
-import edu.brown.cs.student.main.rowing.distributiongenerators.RowingWorkoutByName;
-import edu.brown.cs.student.main.rowing.modelbuilders.LinearModelBuilder;
+import edu.brown.cs.student.main.rowing.modelbuilders.ModelCache;
 import edu.brown.cs.student.main.rowing.modelbuilders.ScheduleBuilder;
+import edu.brown.cs.student.main.server.Metrics;
 import java.io.IOException;
 import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * The GenerateLinearPlan class generates a linear plan given the type of workouts the user wants to
@@ -21,9 +27,29 @@ import java.time.LocalDate;
  */
 public class GenerateLinearPlan {
 
+  private static final Metrics.Histogram SAMPLING_TIME = Metrics.stage("sampling");
+
+  private final ModelCache models;
+
+  /** The constructor for the GenerateLinearPlan class, which uses the shared model cache. */
+  public GenerateLinearPlan() {
+    this(ModelCache.shared());
+  }
+
+  /**
+   * The constructor for the GenerateLinearPlan class, which takes in the cache to get linear models
+   * from.
+   *
+   * @param models - the cache of built models.
+   */
+  public GenerateLinearPlan(ModelCache models) {
+    this.models = models;
+  }
+
   /**
    * The generate method takes in the constraints with which the schedule should be built, and
-   * builds the schedule using the ScheduleBuilder and MarkovModel classes.
+   * builds the schedule using the ScheduleBuilder and MarkovModel classes. The model is only built
+   * if no schedule with the same example week has been generated recently.
    *
    * @param minutes - the amount of time the caller has.
    * @param startDate - the start date of the caller's workout program.
@@ -50,6 +76,48 @@ public class GenerateLinearPlan {
       double highIntensityPercent)
       throws IOException, InvalidDistributionException, InvalidScheduleException,
           NoWorkoutTypeException, FormatterFailureException {
+    return this.generate(
+        minutes,
+        startDate,
+        endDate,
+        highIntensityLabel,
+        lowIntensityLabel,
+        highIntensityPercent,
+        Map.of());
+  }
+
+  /**
+   * This generate method builds the schedule as the one above does, but with fixed events, such as
+   * a 2k test or a race, pinned as the first workout of their dates. The rest of the schedule is
+   * generated around them, as the model would have generated it given the events.
+   *
+   * @param minutes - the amount of time the caller has.
+   * @param startDate - the start date of the caller's workout program.
+   * @param endDate - the end date of the caller's workout program.
+   * @param highIntensityLabel - the type of high intensity workouts the caller wants to do.
+   * @param lowIntensityLabel - the type of low intensity workouts the caller wants to do.
+   * @param highIntensityPercent - the percentage of high intensity work the caller wants.
+   * @param events - the workout to do on each date with a fixed event.
+   * @return the built Schedule
+   * @throws IOException if the workout files can't be read.
+   * @throws InvalidDistributionException if there are invalid distributions involved when building
+   *     the model.
+   * @throws InvalidScheduleException if there are problems building a schedule given the
+   *     constraints, or an event is on a date with no workouts in the schedule.
+   * @throws NoWorkoutTypeException if the high or low intensity labels are not found.
+   * @throws FormatterFailureException if there is an issue reading MarkovModel results into a
+   *     schedule.
+   */
+  public Schedule generate(
+      int minutes,
+      LocalDate startDate,
+      LocalDate endDate,
+      Workout highIntensityLabel,
+      Workout lowIntensityLabel,
+      double highIntensityPercent,
+      Map<LocalDate, Emission> events)
+      throws IOException, InvalidDistributionException, InvalidScheduleException,
+          NoWorkoutTypeException, FormatterFailureException {
 
     ScheduleBuilder builder = new ScheduleBuilder();
     Schedule toBuild =
@@ -60,8 +128,48 @@ public class GenerateLinearPlan {
             highIntensityPercent,
             highIntensityLabel,
             lowIntensityLabel);
-    MarkovModel model = new LinearModelBuilder(new RowingWorkoutByName()).build(toBuild);
-    model.generateFormattedEmissions(toBuild.getLength(), new ScheduleFormatter(toBuild));
+    MarkovModel model = this.models.getLinearModel(toBuild);
+    Map<Integer, Pin> pins = pins(toBuild, events);
+    long start = System.nanoTime();
+    try {
+      // plans without events keep to the alias sampler, which is faster than the clamped one
+      if (pins.isEmpty()) {
+        model.generateFormattedEmissions(toBuild.getLength(), new ScheduleFormatter(toBuild));
+      } else {
+        model.generateFormattedEmissions(toBuild.getLength(), pins, new ScheduleFormatter(toBuild));
+      }
+    } finally {
+      SAMPLING_TIME.observeNanos(System.nanoTime() - start);
+    }
     return toBuild;
   }
+
+  /**
+   * Finds the position of each event in the sequence of workouts that fills a schedule, which is
+   * that of the first workout on its date.
+   *
+   * @param schedule - the schedule to fill.
+   * @param events - the workout to do on each date with a fixed event.
+   * @return the pin for each event, by position.
+   * @throws InvalidScheduleException if an event is on a date with no workouts in the schedule.
+   */
+  private static Map<Integer, Pin> pins(Schedule schedule, Map<LocalDate, Emission> events)
+      throws InvalidScheduleException {
+    Map<Integer, Pin> pins = new HashMap<>();
+    int position = 0;
+    for (Week week : schedule.weeks()) {
+      for (Day day : week.days()) {
+        Emission event = day.getDate().map(events::get).orElse(null);
+        if (event != null && day.getNumberOfWorkouts() > 0) {
+          pins.put(position, Pin.emission(event));
+        }
+        position += day.getNumberOfWorkouts();
+      }
+    }
+    if (pins.size() != events.size()) {
+      throw new InvalidScheduleException(
+          "An event was on a date with no workouts in the schedule.", schedule);
+    }
+    return pins;
+  }
 }
@@ -0,0 +1,28 @@
+package edu.brown.cs.student.main.handlers;
+
+import edu.brown.cs.student.main.server.Metrics;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/** This class serves the server's metrics in the Prometheus text format, for scraping */
+public class GetMetrics implements Route {
+
+  private final Metrics metrics;
+
+  // Serves the metrics shared by the whole server
+  public GetMetrics() {
+    this(Metrics.shared());
+  }
+
+  // Serves the given metrics
+  public GetMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public Object handle(Request request, Response response) {
+    response.type("text/plain; version=0.0.4; charset=utf-8");
+    return this.metrics.render();
+  }
+}
@@ -1,29 +1,148 @@
 package edu.brown.cs.student.main.handlers;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Types;
 import edu.brown.cs.student.main.database.DatabaseCommands;
+import edu.brown.cs.student.main.database.JsonTree;
+import edu.brown.cs.student.main.database.ScheduleStore;
+import edu.brown.cs.student.main.server.Log;
 import edu.brown.cs.student.main.server.serializing.Serializer;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.HashMap;
+import java.util.Optional;
 import spark.Request;
 import spark.Response;
 import spark.Route;
 
-/** This class returns the user workout schedule after it has been generated */
+/**
+ * This class returns the user workout schedule after it has been generated. The whole schedule is
+ * returned unless a range of days is asked for, either by date (from and to, as yyyy-MM-dd, both
+ * inclusive and either may be left out) or by week (week, counting from 0 at the first day of the
+ * schedule). A schedule has one day for every date from its first to its last, stored in order, so
+ * a date's day is found from how many days it is after the first, and only the days in the range
+ * are read from the store. The message sent for each version of a schedule is kept, by ETag, so a
+ * schedule read again is not unescaped again.
+ */
 public class GetUserWorkouts implements Route {
+  // the memory, in bytes, the kept messages may take up
+  public static long MAX_CACHED_BYTES = 16L * 1024 * 1024;
+
+  private static final Log LOG = Log.shared();
+  private static final DateTimeFormatter PARAMETER_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+  private static final JsonAdapter<Optional<LocalDate>> STORED_DATE =
+      Serializer.moshi().adapter(Types.newParameterizedType(Optional.class, LocalDate.class));
+
+  private final ScheduleStore store;
+  private final Cache<String, String> messages;
+
+  // Uses the Realtime Database
+  public GetUserWorkouts() {
+    this(new DatabaseCommands());
+  }
+
+  // Uses the given store
+  public GetUserWorkouts(ScheduleStore store) {
+    this.store = store;
+    this.messages =
+        CacheBuilder.newBuilder()
+            .maximumWeight(MAX_CACHED_BYTES)
+            .weigher(
+                (String etag, String message) ->
+                    Math.toIntExact(
+                        Math.min(Integer.MAX_VALUE, 2L * (etag.length() + message.length()) + 64)))
+            .build();
+  }
 
   @Override
   public Object handle(Request request, Response response) throws Exception {
     String username = request.queryParams("username");
+    String from = request.queryParams("from");
+    String to = request.queryParams("to");
+    String week = request.queryParams("week");
     HashMap<String, Object> output = new HashMap<>();
     if (username == null) {
       output.put("result", "error_bad_request");
       output.put("message", "ERROR: Invalid input.");
+      return Serializer.respond(request, response, output);
+    }
+    String where = "users/" + username + "/schedule";
+    ScheduleStore.Versioned schedule;
+    if (from == null && to == null && week == null) {
+      schedule = this.store.getVersioned(where);
     } else {
-      String where = "users/" + username + "/schedule";
-      String workoutJSON = new DatabaseCommands().get(where);
-      System.out.println(workoutJSON);
-      output.put("result", "success");
-      output.put("message", workoutJSON.replace("\\", ""));
+      int[] range;
+      try {
+        range = this.range(where, from, to, week);
+      } catch (DateTimeParseException | NumberFormatException e) {
+        output.put("result", "error_bad_request");
+        output.put("message", "ERROR: Invalid input (from, to or week).");
+        return Serializer.respond(request, response, output);
+      }
+      // sent in the same shape as a whole schedule, so the front end reads both alike
+      ScheduleStore.Versioned days = this.store.getRange(where + "/days", range[0], range[1]);
+      schedule = ScheduleStore.Versioned.of("{\"days\":" + days.json() + "}");
+    }
+    // clients revalidate every time, and get a 304 with no body if their copy is current
+    response.header("ETag", schedule.etag());
+    response.header("Cache-Control", "no-cache");
+    if (schedule.matches(request.headers("If-None-Match"))) {
+      response.status(304);
+      return "";
     }
-    return Serializer.serialize(output);
+    String workoutJSON = schedule.json();
+    LOG.payload("schedule_read", workoutJSON, "username", username);
+    String message = this.messages.getIfPresent(schedule.etag());
+    if (message == null) {
+      message = workoutJSON.replace("\\", "");
+      this.messages.put(schedule.etag(), message);
+    }
+    output.put("result", "success");
+    output.put("message", message);
+    return Serializer.respond(request, response, output);
+  }
+
+  /**
+   * Finds the indices of the first and last days asked for in a schedule, reading only the date of
+   * its first day. A week takes precedence over dates.
+   *
+   * @param where - the path of the schedule in the store.
+   * @param from - the first date asked for, or null for the start of the schedule.
+   * @param to - the last date asked for, or null for the end of the schedule.
+   * @param week - the week asked for, or null if dates were asked for.
+   * @return the indices of the first and last days, which may be past either end of the schedule.
+   * @throws DateTimeParseException if a date is not formatted as yyyy-MM-dd.
+   * @throws NumberFormatException if the week is not a number.
+   * @throws IOException if the first day cannot be read from the store.
+   * @throws InterruptedException if interrupted while reading from the store.
+   */
+  private int[] range(String where, String from, String to, String week)
+      throws IOException, InterruptedException {
+    if (week != null) {
+      long first = 7L * Integer.parseInt(week);
+      return new int[] {clamp(first), clamp(first + 6)};
+    }
+    LocalDate fromDate = from == null ? null : LocalDate.parse(from, PARAMETER_DATE);
+    LocalDate toDate = to == null ? null : LocalDate.parse(to, PARAMETER_DATE);
+    String stored = this.store.get(where + "/days/0/date");
+    Optional<LocalDate> start =
+        "null".equals(stored) ? Optional.empty() : STORED_DATE.fromJson(stored);
+    if (start == null || start.isEmpty()) {
+      // there is no schedule, so every range is empty
+      return new int[] {0, -1};
+    }
+    long first = fromDate == null ? 0 : ChronoUnit.DAYS.between(start.get(), fromDate);
+    long last = toDate == null ? JsonTree.MAX_INDEX : ChronoUnit.DAYS.between(start.get(), toDate);
+    return new int[] {clamp(first), clamp(last)};
+  }
+
+  // Keeps an index within the indices the store can hold, so it can be passed as an int
+  private static int clamp(long index) {
+    return (int) Math.max(-1, Math.min(JsonTree.MAX_INDEX, index));
   }
 }
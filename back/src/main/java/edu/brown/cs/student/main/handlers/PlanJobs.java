@@ -0,0 +1,193 @@
+package edu.brown.cs.student.main.handlers;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The PlanJobs class runs plan generations on their own threads, off the request threads. At most a
+ * fixed number of plans are generated at once, since generating is CPU-heavy, and at most a fixed
+ * number more wait in a queue; past that, new plans are rejected rather than queued without bound.
+ * Each plan is a Job, with an id that can be used to look it up (and poll its status) until a while
+ * after it finishes.
+ */
+public class PlanJobs {
+
+  public static int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+  public static int DEFAULT_QUEUE = 64;
+  public static Duration KEEP_FINISHED = Duration.ofHours(1);
+  public static int MAX_JOBS = 10_000;
+
+  private static final PlanJobs SHARED = new PlanJobs(DEFAULT_THREADS, DEFAULT_QUEUE);
+
+  private final ThreadPoolExecutor executor;
+  private final Cache<String, Job> jobs;
+
+  /**
+   * The constructor for the PlanJobs class, which takes in its bounds.
+   *
+   * @param threads - the number of plans that may be generated at once.
+   * @param queue - the number of plans that may wait to be generated.
+   */
+  public PlanJobs(int threads, int queue) {
+    AtomicInteger count = new AtomicInteger();
+    this.executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queue),
+            runnable -> {
+              Thread thread = new Thread(runnable, "plan-generator-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.jobs =
+        CacheBuilder.newBuilder().expireAfterWrite(KEEP_FINISHED).maximumSize(MAX_JOBS).build();
+  }
+
+  /**
+   * Returns the jobs shared by the whole server.
+   *
+   * @return the shared PlanJobs.
+   */
+  public static PlanJobs shared() {
+    return SHARED;
+  }
+
+  /**
+   * Queues a plan to be generated.
+   *
+   * @param username - the user the plan is for.
+   * @param generation - generates the plan and stores it.
+   * @return the queued job.
+   * @throws RejectedExecutionException if the queue is full.
+   */
+  public Job submit(String username, Callable<?> generation) {
+    Job job = new Job(UUID.randomUUID().toString(), username);
+    this.jobs.put(job.id(), job);
+    try {
+      this.executor.execute(
+          () -> {
+            job.status = Status.RUNNING;
+            try {
+              generation.call();
+              job.finish(null);
+            } catch (Exception e) {
+              job.finish(e);
+            } finally {
+              // finished jobs are kept for KEEP_FINISHED after they finish
+              this.jobs.put(job.id(), job);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      this.jobs.invalidate(job.id());
+      throw e;
+    }
+    return job;
+  }
+
+  /**
+   * Looks up a job by its id.
+   *
+   * @param id - the id of the job.
+   * @return the job, or null if there is no such job (or it finished too long ago).
+   */
+  public Job get(String id) {
+    return this.jobs.getIfPresent(id);
+  }
+
+  /**
+   * Returns the number of plans waiting to be generated.
+   *
+   * @return the number of queued jobs.
+   */
+  public int queued() {
+    return this.executor.getQueue().size();
+  }
+
+  /**
+   * Returns the number of plans being generated.
+   *
+   * @return the number of running jobs.
+   */
+  public int running() {
+    return this.executor.getActiveCount();
+  }
+
+  /** Where a job is in its life. */
+  public enum Status {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED
+  }
+
+  /** A single plan generation. */
+  public static final class Job {
+    private final String id;
+    private final String username;
+    private final CompletableFuture<Void> done;
+    private volatile Status status;
+    private volatile String error;
+
+    private Job(String id, String username) {
+      this.id = id;
+      this.username = username;
+      this.done = new CompletableFuture<>();
+      this.status = Status.QUEUED;
+    }
+
+    public String id() {
+      return this.id;
+    }
+
+    public String username() {
+      return this.username;
+    }
+
+    public Status status() {
+      return this.status;
+    }
+
+    /**
+     * Returns the message of the exception the job failed with.
+     *
+     * @return the message, or null if the job has not failed.
+     */
+    public String error() {
+      return this.error;
+    }
+
+    /**
+     * Waits for the job to finish.
+     *
+     * @throws ExecutionException if the job failed, wrapping the exception it failed with.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void await() throws ExecutionException, InterruptedException {
+      this.done.get();
+    }
+
+    private void finish(Exception failure) {
+      if (failure == null) {
+        this.status = Status.DONE;
+        this.done.complete(null);
+      } else {
+        this.error = failure.getMessage();
+        this.status = Status.FAILED;
+        this.done.completeExceptionally(failure);
+      }
+    }
+  }
+}
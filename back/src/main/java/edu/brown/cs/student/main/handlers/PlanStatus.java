@@ -0,0 +1,45 @@
+package edu.brown.cs.student.main.handlers;
+
+import edu.brown.cs.student.main.server.serializing.Serializer;
+import java.util.HashMap;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/** This class returns the status of a plan being generated with create-plan?async=true */
+public class PlanStatus implements Route {
+
+  private final PlanJobs jobs;
+
+  // Looks up plans on the shared PlanJobs
+  public PlanStatus() {
+    this(PlanJobs.shared());
+  }
+
+  // Looks up plans on the given PlanJobs
+  public PlanStatus(PlanJobs jobs) {
+    this.jobs = jobs;
+  }
+
+  @Override
+  public Object handle(Request request, Response response) throws Exception {
+    String id = request.queryParams("job");
+    HashMap<String, Object> output = new HashMap<>();
+    PlanJobs.Job job = id == null ? null : this.jobs.get(id);
+    if (job == null) {
+      output.put("result", "error_bad_request");
+      output.put("message", "ERROR: Invalid input (job).");
+      return Serializer.respond(request, response, output);
+    }
+    output.put("result", "success");
+    output.put("job", job.id());
+    output.put("status", job.status().name().toLowerCase());
+    switch (job.status()) {
+      case QUEUED -> output.put("message", "Waiting to generate plan for " + job.username());
+      case RUNNING -> output.put("message", "Generating plan for " + job.username());
+      case DONE -> output.put("message", "Successfully updated " + job.username());
+      case FAILED -> output.put("message", "ERROR: Server output: " + job.error());
+    }
+    return Serializer.respond(request, response, output);
+  }
+}
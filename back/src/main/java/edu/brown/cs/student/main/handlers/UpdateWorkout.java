@@ -1,6 +1,7 @@
 package edu.brown.cs.student.main.handlers;
 
 import edu.brown.cs.student.main.database.DatabaseCommands;
+import edu.brown.cs.student.main.database.ScheduleStore;
 import edu.brown.cs.student.main.server.serializing.Serializer;
 import java.util.HashMap;
 import spark.Request;
@@ -10,6 +11,18 @@ import spark.Route;
 /** This class updates the workout data for a specific workout after user completes it */
 public class UpdateWorkout implements Route {
 
+  private final ScheduleStore store;
+
+  // Uses the Realtime Database
+  public UpdateWorkout() {
+    this(new DatabaseCommands());
+  }
+
+  // Uses the given store
+  public UpdateWorkout(ScheduleStore store) {
+    this.store = store;
+  }
+
   @Override
   public Object handle(Request request, Response response) throws Exception {
     String username = request.queryParams("username");
@@ -27,7 +40,7 @@ public class UpdateWorkout implements Route {
         || distance == null) {
       output.put("result", "error_bad_request");
       output.put("message", "ERROR: Invalid input.");
-      return Serializer.serialize(output);
+      return Serializer.respond(request, response, output);
     }
     String info =
         "{\"rpe\":\""
@@ -39,9 +52,10 @@ public class UpdateWorkout implements Route {
             + distance
             + "\"}";
     String where = "users/" + username + "/schedule/days/" + day + "/workouts/" + workout + "/data";
-    new DatabaseCommands().update(info, where);
+    // logged data is written often, so it may be sent in a batch shortly after the response
+    this.store.updateLater(info, where);
     output.put("result", "success");
     output.put("message", "Successfully added workout data");
-    return Serializer.serialize(output);
+    return Serializer.respond(request, response, output);
   }
 }
@@ -6,6 +6,7 @@ import edu.brown.cs.student.main.models.formattypes.Day;
 import edu.brown.cs.student.main.models.formattypes.Schedule;
 import edu.brown.cs.student.main.models.formattypes.Week;
 import edu.brown.cs.student.main.models.markov.model.Emission;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -33,7 +34,8 @@ public class ScheduleFormatter implements EmissionFormatter<Schedule> {
 
   /**
    * The particular implementation of formatEmissions for this class. In particular, it sequentially
-   * loads each Emission into the first available Schedule slot.
+   * loads each Emission into the first available Schedule slot. The list of Emissions is read in
+   * order, and is left unchanged.
    *
    * @param emissions - the results of the MarkovModel.
    * @return the filled in Schedule.
@@ -48,10 +50,11 @@ public class ScheduleFormatter implements EmissionFormatter<Schedule> {
           emissions);
     }
 
+    Iterator<Emission> next = emissions.iterator();
     for (Week week : this.schedule.weeks()) {
       for (Day day : week.days()) {
         for (int i = 0; i < day.getNumberOfWorkouts(); i++) {
-          day.addWorkout(emissions.remove(0));
+          day.addWorkout(next.next());
         }
       }
     }
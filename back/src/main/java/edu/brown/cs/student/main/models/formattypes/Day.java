@@ -6,6 +6,7 @@ import edu.brown.cs.student.main.models.markov.modelbuilding.Workout;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -104,6 +105,16 @@ public class Day {
     return copied;
   }
 
+  /**
+   * Returns a read-only view of the emissions list, for reading a day without copying every
+   * emission (Emissions cannot be changed, so the view is safe to share).
+   *
+   * @return the read-only view.
+   */
+  public List<Emission> getEmissionsView() {
+    return Collections.unmodifiableList(this.workouts);
+  }
+
   /**
    * Returns a defensive copy of the optional date object.
    *
@@ -137,6 +148,15 @@ public class Day {
     return this.numberOfWorkouts;
   }
 
+  /**
+   * This method returns the type of this Day, as it is serialized.
+   *
+   * @return the type, usually day.
+   */
+  public String getType() {
+    return this.type;
+  }
+
   /**
    * This method returns the day of the week of this Day.
    *
@@ -172,6 +192,16 @@ public class Day {
     this.date = Optional.of(date);
   }
 
+  /**
+   * Returns a read-only view of the workout plans for this day, for reading a day without copying
+   * them.
+   *
+   * @return the read-only view.
+   */
+  public List<WorkoutDescription> getPlanView() {
+    return Collections.unmodifiableList(this.workoutPlan);
+  }
+
   /**
    * This method returns a copied list of the workout plans for this day.
    *
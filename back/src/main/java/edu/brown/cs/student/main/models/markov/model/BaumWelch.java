@@ -0,0 +1,261 @@
+package edu.brown.cs.student.main.models.markov.model;
+
+import edu.brown.cs.student.main.models.exceptions.InvalidDistributionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The BaumWelch class re-estimates the start, transition and emission probabilities of a
+ * CompiledMarkovModel from logged sequences of workouts, such as every athlete's season, by
+ * expectation maximization. Each iteration's E-step runs forward/backward over every sequence in
+ * parallel on a fork join pool: each task sums what its sequences expect into its own counts, and
+ * the counts of sibling tasks are merged as they join, so no counts are shared between threads. The
+ * M-step then normalizes the merged counts into the next model. The log likelihood of the sequences
+ * rises from one iteration to the next (but for the slight pull of smoothing), and training stops
+ * once it improves by less than a tolerance.
+ *
+ * <p>The states, their emissions, and which probabilities are 0 never change: SMOOTHING extra
+ * counts are shared out over every distribution in proportion to its previous probabilities, so a
+ * state nobody was seen in keeps its distributions rather than having them flattened, and workouts
+ * nobody logged shrink rather than being dropped. Workouts are matched by description, as they are
+ * by ForwardBackward, and a state's new probability for a workout is split between its emissions of
+ * that workout in the proportions they had before. A logged workout the model does not have is
+ * treated as unseen, so it is learned from the transitions around it alone, and a sequence the
+ * model cannot produce (with a workout no state could have emitted where it was done) is left out,
+ * as is its log likelihood. Which sequences those are never changes between iterations, as no
+ * probability of 0 ever changes.
+ */
+public final class BaumWelch {
+
+  // the extra counts shared out over each distribution, in proportion to its previous probabilities
+  public static double SMOOTHING = 1.0;
+  // the fewest sequences a fork join task runs the E-step over without splitting
+  public static int BATCH_THRESHOLD = 64;
+
+  private BaumWelch() {}
+
+  /**
+   * Trains a model on logged sequences of workouts.
+   *
+   * @param initial - the model to start from, whose states and emissions are kept.
+   * @param sequences - the logged sequences, each in the order its workouts were done.
+   * @param maxIterations - the most iterations to run.
+   * @param tolerance - the smallest improvement in log likelihood that keeps training going.
+   * @param pool - the pool to run the E-steps on.
+   * @return the trained model, with the log likelihood of the sequences before each iteration.
+   * @throws InvalidDistributionException if a re-estimated distribution is not valid.
+   */
+  public static Result train(
+      CompiledMarkovModel initial,
+      List<List<Emission>> sequences,
+      int maxIterations,
+      double tolerance,
+      ForkJoinPool pool)
+      throws InvalidDistributionException {
+    // workout ids never change between iterations, so each workout is looked up only once
+    List<int[]> observed = new ArrayList<>(sequences.size());
+    for (List<Emission> sequence : sequences) {
+      int[] workouts = new int[sequence.size()];
+      for (int t = 0; t < workouts.length; t++) {
+        int workout = initial.workoutId(sequence.get(t));
+        workouts[t] = workout < 0 ? ForwardBackward.MISSING : workout;
+      }
+      observed.add(workouts);
+    }
+    if (observed.isEmpty()) {
+      // there is nothing to learn from, and smoothing alone would flatten every distribution
+      return new Result(initial, List.of());
+    }
+
+    CompiledMarkovModel model = initial;
+    List<Double> history = new ArrayList<>();
+    for (int i = 0; i < maxIterations; i++) {
+      Counts counts = pool.invoke(new EStep(model, observed, 0, observed.size()));
+      history.add(counts.logLikelihood);
+      int size = history.size();
+      if (size > 1 && history.get(size - 1) - history.get(size - 2) < tolerance) {
+        break;
+      }
+      model = maximize(model, counts);
+    }
+    return new Result(model, history);
+  }
+
+  /**
+   * Trains a model on logged sequences of workouts, running the E-steps on the common pool.
+   *
+   * @param initial - the model to start from, whose states and emissions are kept.
+   * @param sequences - the logged sequences, each in the order its workouts were done.
+   * @param maxIterations - the most iterations to run.
+   * @param tolerance - the smallest improvement in log likelihood that keeps training going.
+   * @return the trained model, with the log likelihood of the sequences before each iteration.
+   * @throws InvalidDistributionException if a re-estimated distribution is not valid.
+   */
+  public static Result train(
+      CompiledMarkovModel initial,
+      List<List<Emission>> sequences,
+      int maxIterations,
+      double tolerance)
+      throws InvalidDistributionException {
+    return train(initial, sequences, maxIterations, tolerance, ForkJoinPool.commonPool());
+  }
+
+  // The M-step, which normalizes the merged counts (plus smoothing) into the next model
+  private static CompiledMarkovModel maximize(CompiledMarkovModel model, Counts counts)
+      throws InvalidDistributionException {
+    int n = model.getNumberOfStates();
+    int workouts = model.getNumberOfWorkouts();
+    double[] start = new double[n];
+    for (int s = 0; s < n; s++) {
+      start[s] = smoothed(model.getStartProbability(s), counts.start[s]);
+    }
+    normalize(start, model.startProbabilities());
+
+    double[][] transitions = new double[n][n];
+    for (int from = 0; from < n; from++) {
+      for (int to = 0; to < n; to++) {
+        transitions[from][to] =
+            smoothed(model.getTransitionProbability(from, to), counts.transitions[from * n + to]);
+      }
+      normalize(transitions[from], model.transitionMatrix()[from]);
+    }
+
+    double[][] emissions = new double[n][];
+    double[] previous = model.workoutProbabilities();
+    for (int s = 0; s < n; s++) {
+      emissions[s] = new double[model.getNumberOfEmissions(s)];
+      for (int e = 0; e < emissions[s].length; e++) {
+        int workout = s * workouts + model.workoutId(model.getEmission(s, e));
+        // the emission's share of its workout's probability is kept
+        emissions[s][e] =
+            previous[workout] == 0
+                ? 0
+                : smoothed(previous[workout], counts.workouts[workout])
+                    * model.getEmissionProbability(s, e)
+                    / previous[workout];
+      }
+      double[] before = new double[emissions[s].length];
+      for (int e = 0; e < before.length; e++) {
+        before[e] = model.getEmissionProbability(s, e);
+      }
+      normalize(emissions[s], before);
+    }
+    return model.withProbabilities(start, transitions, emissions);
+  }
+
+  // Adds an outcome's share of the smoothing to its expected count
+  private static double smoothed(double probability, double count) {
+    return count + SMOOTHING * probability;
+  }
+
+  // Scales counts to sum to 1, or copies the previous distribution if they sum to 0 (which only
+  // happens without smoothing)
+  private static void normalize(double[] counts, double[] previous) {
+    double sum = 0;
+    for (double count : counts) {
+      sum += count;
+    }
+    if (sum == 0) {
+      System.arraycopy(previous, 0, counts, 0, counts.length);
+      return;
+    }
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] /= sum;
+    }
+  }
+
+  /**
+   * What training produced.
+   *
+   * @param model - the trained model.
+   * @param logLikelihoods - the log likelihood of the sequences under the model at the start of
+   *     each iteration, the last being that of the trained model (unless training stopped after
+   *     maxIterations, when the trained model has not been scored).
+   */
+  public record Result(CompiledMarkovModel model, List<Double> logLikelihoods) {
+
+    /**
+     * The constructor for the Result record, which makes its list read-only.
+     *
+     * @param model - the trained model.
+     * @param logLikelihoods - the log likelihood of the sequences at the start of each iteration.
+     */
+    public Result {
+      logLikelihoods = List.copyOf(logLikelihoods);
+    }
+  }
+
+  /**
+   * The expected counts of an E-step, indexed like the model's tables: how often each state starts
+   * a sequence, transitions to each state (by from * states + to), and emits each workout (by state
+   * * workouts + workout).
+   */
+  static final class Counts {
+    final double[] start;
+    final double[] transitions;
+    final double[] workouts;
+    double logLikelihood;
+
+    Counts(int states, int workouts) {
+      this.start = new double[states];
+      this.transitions = new double[states * states];
+      this.workouts = new double[states * workouts];
+      this.logLikelihood = 0;
+    }
+
+    // Adds another task's counts to these
+    void merge(Counts other) {
+      add(this.start, other.start);
+      add(this.transitions, other.transitions);
+      add(this.workouts, other.workouts);
+      this.logLikelihood += other.logLikelihood;
+    }
+
+    private static void add(double[] into, double[] from) {
+      for (int i = 0; i < into.length; i++) {
+        into[i] += from[i];
+      }
+    }
+  }
+
+  /** Runs the E-step over a range of sequences, splitting it in half until it is small enough. */
+  private static final class EStep extends RecursiveTask<Counts> {
+    private static final long serialVersionUID = 1L;
+
+    private final CompiledMarkovModel model;
+    private final List<int[]> sequences;
+    private final int from;
+    private final int to;
+
+    private EStep(CompiledMarkovModel model, List<int[]> sequences, int from, int to) {
+      this.model = model;
+      this.sequences = sequences;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Counts compute() {
+      if (this.to - this.from <= Math.max(1, BATCH_THRESHOLD)) {
+        Counts counts =
+            new Counts(this.model.getNumberOfStates(), this.model.getNumberOfWorkouts());
+        ForwardBackward engine = this.model.forwardBackward();
+        for (int i = this.from; i < this.to; i++) {
+          double logLikelihood = engine.accumulate(this.sequences.get(i), counts);
+          if (logLikelihood > Double.NEGATIVE_INFINITY) {
+            counts.logLikelihood += logLikelihood;
+          }
+        }
+        return counts;
+      }
+      int middle = (this.from + this.to) >>> 1;
+      EStep left = new EStep(this.model, this.sequences, this.from, middle);
+      left.fork();
+      Counts counts = new EStep(this.model, this.sequences, middle, this.to).compute();
+      counts.merge(left.join());
+      return counts;
+    }
+  }
+}
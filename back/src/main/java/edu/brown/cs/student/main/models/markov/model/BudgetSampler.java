@@ -0,0 +1,240 @@
+package edu.brown.cs.student.main.models.markov.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The BudgetSampler class draws walks through a CompiledMarkovModel whose workouts add up to
+ * exactly a total near a minutes budget, so a week can be filled without overshooting it. The total
+ * is drawn from those within a tolerance of the budget, in proportion to how likely a walk is to
+ * add up to each, or is the nearest total a walk can add up to if none within the tolerance can be.
+ * The walk is then drawn from exactly the distribution of the model's walks that add up to that
+ * total, rather than by generating walks and throwing away the ones that do not fit.
+ *
+ * <p>It does this with a table, over every state and number of minutes, of the probability that a
+ * walk from that state has workouts adding up to exactly that many minutes at some point. Each step
+ * then picks a workout, and the state after it, in proportion to its probability times the
+ * probability of still adding up to the total, so each walk takes time linear in its length.
+ * Workouts are counted to the nearest minute (and as at least one minute), and the table is only
+ * grown as far as the largest budget asked for, taking O(M * (S^2 + E)) time for M minutes, S
+ * states and E emissions, so one sampler serves every budget up to it.
+ *
+ * <p>A sampler is not thread safe, but any number of samplers may sample from the same model.
+ */
+public final class BudgetSampler {
+
+  private final CompiledMarkovModel model;
+  private final int states;
+  private final int tolerance;
+  // the minutes of each emission of each state, by state id
+  private final int[][] minutes;
+  private final int longest;
+  // the probability of a walk from each state adding up to each number of minutes, and of one
+  // adding up to it after transitioning from each state, indexed by minutes * states + state
+  private double[] reach;
+  private double[] afterTransition;
+  private int computed;
+
+  /**
+   * The constructor for the BudgetSampler class, which takes in the model to sample from and how
+   * far from its budget a walk may add up to. Use CompiledMarkovModel.budgetSampler to get one.
+   *
+   * @param model - the compiled model to sample from.
+   * @param tolerance - how many minutes under or over its budget a walk may add up to.
+   */
+  BudgetSampler(CompiledMarkovModel model, int tolerance) {
+    if (tolerance < 0) {
+      throw new IllegalArgumentException("The tolerance of a budget cannot be negative.");
+    }
+    this.model = model;
+    this.states = model.getNumberOfStates();
+    this.tolerance = tolerance;
+    this.minutes = new int[this.states][];
+    int longest = 1;
+    for (int s = 0; s < this.states; s++) {
+      this.minutes[s] = new int[model.getNumberOfEmissions(s)];
+      for (int e = 0; e < this.minutes[s].length; e++) {
+        this.minutes[s][e] = (int) Math.max(1, Math.round(model.getEmission(s, e).getTime()));
+        longest = Math.max(longest, this.minutes[s][e]);
+      }
+    }
+    this.longest = longest;
+    this.reach = new double[0];
+    this.afterTransition = new double[0];
+    this.computed = -1;
+  }
+
+  /**
+   * Draws a walk through the model whose workouts add up to exactly a total near a budget: one
+   * within the tolerance of it if a walk can add up to one, and otherwise the nearest total a walk
+   * can add up to.
+   *
+   * @param budget - the minutes the workouts should add up to.
+   * @return the walk's workouts, in order, which are none if the budget is not positive or the
+   *     model has no states.
+   */
+  public List<Emission> sample(int budget) {
+    List<Emission> walk = new ArrayList<>();
+    if (budget <= 0 || this.states == 0) {
+      return walk;
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int total = this.pickTotal(budget, random);
+
+    double[] weights = new double[this.states];
+    for (int s = 0; s < this.states; s++) {
+      weights[s] = this.model.getStartProbability(s) * this.reach[total * this.states + s];
+    }
+    int state = pick(weights, random);
+    double[][] transitions = this.model.transitionMatrix();
+    int remaining = total;
+    while (true) {
+      int[] lengths = this.minutes[state];
+      double[] choices = new double[lengths.length];
+      for (int e = 0; e < lengths.length; e++) {
+        choices[e] =
+            this.model.getEmissionProbability(state, e)
+                * this.afterEmitting(state, lengths[e], remaining);
+      }
+      int emission = pick(choices, random);
+      walk.add(this.model.getEmission(state, emission));
+      remaining -= lengths[emission];
+      if (remaining == 0) {
+        return walk;
+      }
+      double[] row = transitions[state];
+      for (int to = 0; to < this.states; to++) {
+        weights[to] = row[to] * this.reach[remaining * this.states + to];
+      }
+      state = pick(weights, random);
+    }
+  }
+
+  /**
+   * Returns the probability of a walk through the model having workouts that add up to exactly a
+   * number of minutes at some point.
+   *
+   * @param total - the number of minutes.
+   * @return the probability, which is 1 for 0 minutes and 0 for fewer.
+   */
+  public double probability(int total) {
+    if (total <= 0) {
+      return total == 0 ? 1 : 0;
+    }
+    this.ensureComputed(total);
+    return this.fromStart(total);
+  }
+
+  /**
+   * Returns how many minutes under or over its budget a walk may add up to.
+   *
+   * @return the tolerance, in minutes.
+   */
+  public int getTolerance() {
+    return this.tolerance;
+  }
+
+  // Picks the total a walk will add up to: one within the tolerance of the budget, in proportion
+  // to its probability, or else the nearest with any probability. Every walk that passes the
+  // budget adds up to one of the totals less than the longest workout past it, so one is found.
+  private int pickTotal(int budget, ThreadLocalRandom random) {
+    int lowest = Math.max(1, budget - this.tolerance);
+    int highest = budget + this.tolerance;
+    this.ensureComputed(Math.max(highest, budget + this.longest));
+    double[] weights = new double[highest - lowest + 1];
+    for (int total = lowest; total <= highest; total++) {
+      weights[total - lowest] = this.fromStart(total);
+    }
+    int picked = pick(weights, random);
+    if (picked >= 0) {
+      return lowest + picked;
+    }
+    for (int distance = this.tolerance + 1; ; distance++) {
+      boolean under = budget - distance > 0 && this.fromStart(budget - distance) > 0;
+      boolean over = this.fromStart(budget + distance) > 0;
+      if (under && over) {
+        return random.nextBoolean() ? budget - distance : budget + distance;
+      } else if (under || over) {
+        return under ? budget - distance : budget + distance;
+      }
+    }
+  }
+
+  // The probability of a walk from a random start state adding up to a number of minutes
+  private double fromStart(int total) {
+    double sum = 0;
+    for (int s = 0; s < this.states; s++) {
+      sum += this.model.getStartProbability(s) * this.reach[total * this.states + s];
+    }
+    return sum;
+  }
+
+  // The probability of a walk adding up to some minutes, once a state emits a workout of some
+  // length: it has if the workout is exactly that long, and may go on to if it is shorter
+  private double afterEmitting(int state, int length, int remaining) {
+    if (length >= remaining) {
+      return length == remaining ? 1 : 0;
+    }
+    return this.afterTransition[(remaining - length) * this.states + state];
+  }
+
+  // Grows the tables up to a number of minutes; each row only depends on those before it
+  private void ensureComputed(int total) {
+    if (total <= this.computed) {
+      return;
+    }
+    int n = this.states;
+    double[][] transitions = this.model.transitionMatrix();
+    int capacity = Math.max(total, this.computed * 2) + 1;
+    if (this.reach.length < capacity * n) {
+      this.reach = Arrays.copyOf(this.reach, Math.multiplyExact(capacity, n));
+      this.afterTransition = Arrays.copyOf(this.afterTransition, capacity * n);
+    }
+    for (int r = Math.max(1, this.computed + 1); r <= total; r++) {
+      int row = r * n;
+      for (int s = 0; s < n; s++) {
+        int[] lengths = this.minutes[s];
+        double sum = 0;
+        for (int e = 0; e < lengths.length; e++) {
+          sum += this.model.getEmissionProbability(s, e) * this.afterEmitting(s, lengths[e], r);
+        }
+        this.reach[row + s] = sum;
+      }
+      for (int from = 0; from < n; from++) {
+        double[] transition = transitions[from];
+        double sum = 0;
+        for (int to = 0; to < n; to++) {
+          sum += transition[to] * this.reach[row + to];
+        }
+        this.afterTransition[row + from] = sum;
+      }
+    }
+    this.computed = total;
+  }
+
+  // Picks an index in proportion to its weight, or returns -1 if every weight is 0
+  private static int pick(double[] weights, ThreadLocalRandom random) {
+    double sum = 0;
+    for (double weight : weights) {
+      sum += weight;
+    }
+    if (sum <= 0) {
+      return -1;
+    }
+    double target = random.nextDouble() * sum;
+    int last = -1;
+    for (int i = 0; i < weights.length; i++) {
+      if (weights[i] > 0) {
+        last = i;
+        target -= weights[i];
+        if (target < 0) {
+          return i;
+        }
+      }
+    }
+    // only reached through rounding, so the last possible index is taken
+    return last;
+  }
+}
@@ -0,0 +1,226 @@
+package edu.brown.cs.student.main.models.markov.model;
+
+import edu.brown.cs.student.main.models.exceptions.InvalidDistributionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The ClampedSampler class generates sequences from a CompiledMarkovModel with some positions
+ * pinned, such as a 2k test on a given day, filling in the rest of the sequence around them. It
+ * runs forward filtering, backward sampling: a scaled forward pass finds the probability of each
+ * state at each position given every pin up to it, and states are then drawn from the last position
+ * back, each given the state after it. The free positions are drawn from exactly the model's
+ * distribution given the pins, with nothing regenerated or thrown away, in O(T * S^2) time for T
+ * positions and S states, and the buffers are kept and only grown between runs.
+ *
+ * <p>A pinned workout is matched to the model as it is by ViterbiDecoder: by description, with a
+ * workout that no state it can be in can emit (such as a race the catalog does not have) placed as
+ * it is, and the rest of the sequence drawn from the transitions alone around it.
+ *
+ * <p>A sampler is not thread safe, but any number of samplers may sample from the same model.
+ */
+public final class ClampedSampler {
+
+  private final CompiledMarkovModel model;
+  private final int states;
+  private final int workouts;
+  // the scaled forward variables, indexed by position * states + state
+  private double[] alpha;
+  // the id of the state and workout pinned at each position, or -1 if there is none
+  private int[] requiredStates;
+  private int[] requiredWorkouts;
+  private final double[] weights;
+
+  /**
+   * The constructor for the ClampedSampler class, which takes in the model to sample from. Use
+   * CompiledMarkovModel.clampedSampler to get one.
+   *
+   * @param model - the compiled model to sample from.
+   */
+  ClampedSampler(CompiledMarkovModel model) {
+    this.model = model;
+    this.states = model.getNumberOfStates();
+    this.workouts = model.getNumberOfWorkouts();
+    this.alpha = new double[0];
+    this.requiredStates = new int[0];
+    this.requiredWorkouts = new int[0];
+    this.weights = new double[this.states];
+  }
+
+  /**
+   * Generates a sequence of Emissions with some positions pinned. Pinned workouts are emitted as
+   * they are, and every other workout is drawn from the state sampled for its position.
+   *
+   * @param length - the length of the sequence.
+   * @param pins - what is fixed at each pinned position, which counts from 0.
+   * @return the generated Emissions.
+   * @throws InvalidDistributionException if no sequence of states can meet every pin.
+   */
+  public List<Emission> sample(int length, Map<Integer, Pin> pins)
+      throws InvalidDistributionException {
+    int[] path = this.sampleStates(length, pins);
+    List<Emission> sequence = new ArrayList<>(length);
+    for (int t = 0; t < length; t++) {
+      Pin pin = pins.get(t);
+      sequence.add(
+          pin != null && pin.emission() != null ? pin.emission() : this.model.emitFrom(path[t]));
+    }
+    return sequence;
+  }
+
+  /**
+   * Draws the ids of the states of a sequence with some positions pinned.
+   *
+   * @param length - the length of the sequence.
+   * @param pins - what is fixed at each pinned position, which counts from 0.
+   * @return the id of the state drawn for each position.
+   * @throws InvalidDistributionException if no sequence of states can meet every pin.
+   */
+  public int[] sampleStates(int length, Map<Integer, Pin> pins)
+      throws InvalidDistributionException {
+    if (length == 0) {
+      return new int[0];
+    }
+    this.ensureCapacity(length);
+    this.readPins(length, pins);
+    this.forward(length);
+
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int n = this.states;
+    double[][] transitions = this.model.transitionMatrix();
+    int[] path = new int[length];
+    path[length - 1] = pick(this.alpha, (length - 1) * n, n, random);
+    for (int t = length - 2; t >= 0; t--) {
+      int step = t * n;
+      int next = path[t + 1];
+      for (int s = 0; s < n; s++) {
+        this.weights[s] = this.alpha[step + s] * transitions[s][next];
+      }
+      path[t] = pick(this.weights, 0, n, random);
+    }
+    return path;
+  }
+
+  // Reads the pins into the state and workout ids required at each position
+  private void readPins(int length, Map<Integer, Pin> pins) {
+    Arrays.fill(this.requiredStates, 0, length, -1);
+    Arrays.fill(this.requiredWorkouts, 0, length, -1);
+    for (Map.Entry<Integer, Pin> pinned : pins.entrySet()) {
+      int t = pinned.getKey();
+      if (t < 0 || t >= length) {
+        throw new IllegalArgumentException(
+            "Position " + t + " was pinned in a sequence of length " + length + ".");
+      }
+      Pin pin = pinned.getValue();
+      if (pin.state() != null) {
+        this.requiredStates[t] = this.stateId(pin.state());
+      }
+      if (pin.emission() != null) {
+        this.requiredWorkouts[t] = this.model.workoutId(pin.emission());
+      }
+    }
+  }
+
+  // Finds the id of a state of the model, which is matched by identity, as it is when compiling
+  private int stateId(HiddenState state) {
+    for (int s = 0; s < this.states; s++) {
+      if (this.model.getState(s) == state) {
+        return s;
+      }
+    }
+    throw new IllegalArgumentException("Hidden state " + state + " is not a state of the model.");
+  }
+
+  // Runs the scaled forward pass, keeping only the states each position's pins allow
+  private void forward(int length) throws InvalidDistributionException {
+    int n = this.states;
+    double[] alpha = this.alpha;
+    double[] start = this.model.startProbabilities();
+    double[][] transitions = this.model.transitionMatrix();
+    double[] probabilities = this.model.workoutProbabilities();
+    for (int t = 0; t < length; t++) {
+      int step = t * n;
+      if (t == 0) {
+        System.arraycopy(start, 0, alpha, 0, n);
+      } else {
+        int previous = step - n;
+        Arrays.fill(alpha, step, step + n, 0);
+        // walks the transition matrix row by row, skipping states that cannot have been reached
+        for (int from = 0; from < n; from++) {
+          double weight = alpha[previous + from];
+          if (weight == 0) {
+            continue;
+          }
+          double[] row = transitions[from];
+          for (int to = 0; to < n; to++) {
+            alpha[step + to] += weight * row[to];
+          }
+        }
+      }
+      int state = this.requiredStates[t];
+      if (state >= 0) {
+        for (int s = 0; s < n; s++) {
+          if (s != state) {
+            alpha[step + s] = 0;
+          }
+        }
+      }
+      int workout = this.requiredWorkouts[t];
+      double sum = 0;
+      for (int s = 0; s < n; s++) {
+        sum += alpha[step + s] * (workout < 0 ? 1 : probabilities[s * this.workouts + workout]);
+      }
+      if (sum > 0 && workout >= 0) {
+        for (int s = 0; s < n; s++) {
+          alpha[step + s] *= probabilities[s * this.workouts + workout];
+        }
+      } else if (sum == 0) {
+        // no state it can be in could have emitted the workout, so it is placed as it is
+        for (int s = 0; s < n; s++) {
+          sum += alpha[step + s];
+        }
+      }
+      if (sum == 0) {
+        throw new InvalidDistributionException(
+            "No sequence of states could meet the pins up to position " + t + ".", new HashMap());
+      }
+      for (int s = 0; s < n; s++) {
+        alpha[step + s] /= sum;
+      }
+    }
+  }
+
+  // Picks an index in a range of weights in proportion to its weight, which must not all be 0
+  private static int pick(double[] weights, int from, int count, ThreadLocalRandom random) {
+    double sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += weights[from + i];
+    }
+    double target = random.nextDouble() * sum;
+    int last = 0;
+    for (int i = 0; i < count; i++) {
+      if (weights[from + i] > 0) {
+        last = i;
+        target -= weights[from + i];
+        if (target < 0) {
+          return i;
+        }
+      }
+    }
+    // only reached through rounding, so the last possible index is taken
+    return last;
+  }
+
+  private void ensureCapacity(int length) {
+    if (this.requiredStates.length < length) {
+      int capacity = Math.max(length, this.requiredStates.length * 2);
+      this.requiredStates = new int[capacity];
+      this.requiredWorkouts = new int[capacity];
+      this.alpha = new double[Math.multiplyExact(capacity, this.states)];
+    }
+  }
+}
@@ -0,0 +1,409 @@
+package edu.brown.cs.student.main.models.markov.model;
+
+import edu.brown.cs.student.main.models.exceptions.InvalidDistributionException;
+import edu.brown.cs.student.main.server.AliasSampler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The CompiledMarkovModel class is an index-based snapshot of a MarkovModel, built for fast random
+ * generation. Each HiddenState is given a dense integer id, transitions are stored in a primitive
+ * transition matrix, and emissions in a per-state Emission table, each paired with an AliasSampler
+ * over the same indices. Generation is then a tight loop over ints, with no hashing of HiddenStates
+ * (whose equals method is expensive) and no re-validation of distributions. The same tables are
+ * also kept by workout, with every distinct workout given a dense id, and as log probabilities, for
+ * decoding and scoring logged workouts (see ViterbiDecoder and ForwardBackward).
+ */
+public final class CompiledMarkovModel {
+
+  private final HiddenState[] states;
+  private final double[] startProbabilities;
+  private final double[][] transitionMatrix;
+  private final Emission[][] emissionTable;
+  private final double[][] emissionProbabilities;
+
+  private final AliasSampler<HiddenState> startSampler;
+  private final List<AliasSampler<HiddenState>> transitionSamplers;
+  private final List<AliasSampler<Emission>> emissionSamplers;
+
+  // workouts are matched by their descriptions, as plans scale the time of the workouts they emit
+  private final HashMap<String, Integer> workoutIds;
+  private final double[] logStartProbabilities;
+  // row major, indexed by from * states + to
+  private final double[] logTransitions;
+  // row major, indexed by state * workouts + workout
+  private final double[] workoutProbabilities;
+  private final double[] logWorkoutProbabilities;
+
+  /**
+   * The constructor for the CompiledMarkovModel class, which takes in the already indexed tables.
+   * Use compile to build one from a start distribution.
+   *
+   * @param states - the states of the model, by id.
+   * @param startProbabilities - the start probability of each state, by id.
+   * @param transitionMatrix - the probability of transitioning from the state with the row id to
+   *     the state with the column id.
+   * @param emissionTable - the emissions of each state, by state id.
+   * @param emissionProbabilities - the probability of each emission in emissionTable.
+   * @throws InvalidDistributionException if any of the tables do not form a valid distribution.
+   */
+  private CompiledMarkovModel(
+      HiddenState[] states,
+      double[] startProbabilities,
+      double[][] transitionMatrix,
+      Emission[][] emissionTable,
+      double[][] emissionProbabilities)
+      throws InvalidDistributionException {
+    this.states = states;
+    this.startProbabilities = startProbabilities;
+    this.transitionMatrix = transitionMatrix;
+    this.emissionTable = emissionTable;
+    this.emissionProbabilities = emissionProbabilities;
+
+    List<HiddenState> stateList = Arrays.asList(states);
+    this.startSampler = new AliasSampler<>(stateList, startProbabilities);
+    this.transitionSamplers = new ArrayList<>(states.length);
+    this.emissionSamplers = new ArrayList<>(states.length);
+    for (int s = 0; s < states.length; s++) {
+      this.transitionSamplers.add(new AliasSampler<>(stateList, transitionMatrix[s]));
+      this.emissionSamplers.add(
+          new AliasSampler<>(Arrays.asList(emissionTable[s]), emissionProbabilities[s]));
+    }
+
+    int n = states.length;
+    this.workoutIds = new HashMap<>();
+    for (Emission[] emissions : emissionTable) {
+      for (Emission emission : emissions) {
+        this.workoutIds.putIfAbsent(emission.getWorkout(), this.workoutIds.size());
+      }
+    }
+    int workouts = this.workoutIds.size();
+    this.logStartProbabilities = new double[n];
+    this.logTransitions = new double[n * n];
+    this.workoutProbabilities = new double[n * workouts];
+    for (int s = 0; s < n; s++) {
+      this.logStartProbabilities[s] = Math.log(startProbabilities[s]);
+      for (int t = 0; t < n; t++) {
+        this.logTransitions[s * n + t] = Math.log(transitionMatrix[s][t]);
+      }
+      for (int e = 0; e < emissionTable[s].length; e++) {
+        int workout = this.workoutIds.get(emissionTable[s][e].getWorkout());
+        this.workoutProbabilities[s * workouts + workout] += emissionProbabilities[s][e];
+      }
+    }
+    this.logWorkoutProbabilities = new double[n * workouts];
+    for (int i = 0; i < this.workoutProbabilities.length; i++) {
+      this.logWorkoutProbabilities[i] = Math.log(this.workoutProbabilities[i]);
+    }
+  }
+
+  /**
+   * Returns a model with the same states, emissions and workout ids as this one, but with new
+   * probabilities, as a training step produces.
+   *
+   * @param startProbabilities - the start probability of each state, by id.
+   * @param transitionMatrix - the transition probabilities, by the ids of the two states.
+   * @param emissionProbabilities - the probability of each emission in each state's table.
+   * @return the new model.
+   * @throws InvalidDistributionException if any of the tables do not form a valid distribution.
+   */
+  CompiledMarkovModel withProbabilities(
+      double[] startProbabilities, double[][] transitionMatrix, double[][] emissionProbabilities)
+      throws InvalidDistributionException {
+    return new CompiledMarkovModel(
+        this.states,
+        startProbabilities,
+        transitionMatrix,
+        this.emissionTable,
+        emissionProbabilities);
+  }
+
+  /**
+   * Compiles a start distribution (and the states reachable from it) into a CompiledMarkovModel.
+   * States are keyed by identity while compiling, so two distinct states that happen to be equal
+   * are still treated as distinct states, just as they are by MarkovModel. Every state is frozen
+   * first, so compiling reads each state's already validated distributions.
+   *
+   * @param startDistribution - the start distribution of the model; its keys are the states.
+   * @return the compiled model.
+   * @throws InvalidDistributionException if a state transitions to a state that is not in the start
+   *     distribution, or if any distribution is not valid.
+   */
+  public static CompiledMarkovModel compile(Map<HiddenState, Double> startDistribution)
+      throws InvalidDistributionException {
+    int n = startDistribution.size();
+    HiddenState[] states = new HiddenState[n];
+    double[] start = new double[n];
+    IdentityHashMap<HiddenState, Integer> ids = new IdentityHashMap<>();
+    for (HiddenState state : startDistribution.keySet()) {
+      state.freeze();
+      states[ids.size()] = state;
+      start[ids.size()] = startDistribution.get(state);
+      ids.put(state, ids.size());
+    }
+
+    double[][] transitions = new double[n][n];
+    Emission[][] emissions = new Emission[n][];
+    double[][] emissionProbs = new double[n][];
+    for (int s = 0; s < n; s++) {
+      FrozenDistribution<HiddenState> row = states[s].frozenTransitions();
+      for (int t = 0; t < row.size(); t++) {
+        Integer destId = ids.get(row.outcome(t));
+        if (destId == null) {
+          throw new InvalidDistributionException(
+              "Hidden state "
+                  + states[s]
+                  + " can transition to a state that is not in the start distribution.",
+              row.toHashMap());
+        }
+        transitions[s][destId] += row.probability(t);
+      }
+
+      FrozenDistribution<Emission> emissionDist = states[s].frozenEmissions();
+      emissions[s] = new Emission[emissionDist.size()];
+      emissionProbs[s] = new double[emissionDist.size()];
+      for (int e = 0; e < emissionDist.size(); e++) {
+        emissions[s][e] = emissionDist.outcome(e);
+        emissionProbs[s][e] = emissionDist.probability(e);
+      }
+    }
+
+    return new CompiledMarkovModel(states, start, transitions, emissions, emissionProbs);
+  }
+
+  /**
+   * Generates a random list of Emissions, selecting a start state and then emitting/transitioning
+   * len times.
+   *
+   * @param len - the length of the sequence of Emissions to be generated.
+   * @return the generated list of Emissions.
+   */
+  public List<Emission> generateRandomSequence(int len) {
+    List<Emission> sequence = new ArrayList<>(len);
+    EmissionCursor cursor = this.cursor();
+    for (int i = 0; i < len; i++) {
+      sequence.add(cursor.next());
+    }
+    return sequence;
+  }
+
+  /**
+   * Starts a new lazy walk through the model from a randomly selected start state. Emissions are
+   * only generated as they are pulled from the cursor.
+   *
+   * @return the new cursor.
+   */
+  public EmissionCursor cursor() {
+    return new EmissionCursor(this, this.startSampler.sampleIndex());
+  }
+
+  /**
+   * Creates a decoder for finding the most likely states behind logged workouts. A decoder keeps
+   * its buffers between decodes, so callers that decode many sequences should keep one per thread.
+   *
+   * @return the new decoder.
+   */
+  public ViterbiDecoder decoder() {
+    return new ViterbiDecoder(this);
+  }
+
+  /**
+   * Creates an engine for scoring logged workouts against this model. An engine keeps its buffers
+   * between runs, so callers that score many sequences should keep one per thread, or use
+   * ForwardBackward.logLikelihoods to score them in parallel.
+   *
+   * @return the new engine.
+   */
+  public ForwardBackward forwardBackward() {
+    return new ForwardBackward(this);
+  }
+
+  /**
+   * Creates a sampler for drawing walks whose workouts add up to a minutes budget. A sampler keeps
+   * its table between budgets, so callers that fill many budgets should keep one.
+   *
+   * @param tolerance - how many minutes under or over its budget a walk may end.
+   * @return the new sampler.
+   */
+  public BudgetSampler budgetSampler(int tolerance) {
+    return new BudgetSampler(this, tolerance);
+  }
+
+  /**
+   * Creates a sampler for generating sequences with some positions pinned. A sampler keeps its
+   * buffers between runs, so callers that generate many sequences should keep one per thread.
+   *
+   * @return the new sampler.
+   */
+  public ClampedSampler clampedSampler() {
+    return new ClampedSampler(this);
+  }
+
+  /**
+   * Draws an Emission from the emission distribution of a given state.
+   *
+   * @param id - the id of the state.
+   * @return the emitted workout.
+   */
+  Emission emitFrom(int id) {
+    return this.emissionTable[id][this.emissionSamplers.get(id).sampleIndex()];
+  }
+
+  /**
+   * Draws the next state from the transition distribution of a given state.
+   *
+   * @param id - the id of the state.
+   * @return the id of the next state.
+   */
+  int transitionFrom(int id) {
+    return this.transitionSamplers.get(id).sampleIndex();
+  }
+
+  /**
+   * Returns a rough estimate of the memory this model takes up, in bytes, counting the transition
+   * matrix, the emission tables, the alias samplers built over both, and their log probabilities.
+   * Emissions themselves are counted at a flat size, as their Strings may be shared with other
+   * models.
+   *
+   * @return the estimated size of the model in bytes.
+   */
+  public long estimatedBytes() {
+    long n = this.states.length;
+    // each transition row is stored as probabilities, their logs, and an alias sampler
+    long bytes = n * n * (Double.BYTES * 3 + Integer.BYTES) + n * 64;
+    for (Emission[] emissions : this.emissionTable) {
+      bytes += emissions.length * (Double.BYTES * 2 + Integer.BYTES + 64L);
+    }
+    bytes += (long) this.logWorkoutProbabilities.length * Double.BYTES * 2;
+    bytes += this.workoutIds.size() * 48L;
+    return bytes;
+  }
+
+  /**
+   * Returns the number of states in the model.
+   *
+   * @return the number of states.
+   */
+  public int getNumberOfStates() {
+    return this.states.length;
+  }
+
+  /**
+   * Returns the state with a given id.
+   *
+   * @param id - the id of the state.
+   * @return the state.
+   */
+  public HiddenState getState(int id) {
+    return this.states[id];
+  }
+
+  /**
+   * Returns the probability of starting in a given state.
+   *
+   * @param id - the id of the state.
+   * @return the start probability.
+   */
+  public double getStartProbability(int id) {
+    return this.startProbabilities[id];
+  }
+
+  /**
+   * Returns the probability of transitioning from one state to another.
+   *
+   * @param from - the id of the origin state.
+   * @param to - the id of the destination state.
+   * @return the transition probability.
+   */
+  public double getTransitionProbability(int from, int to) {
+    return this.transitionMatrix[from][to];
+  }
+
+  /**
+   * Returns the number of emissions the state with a given id can produce.
+   *
+   * @param id - the id of the state.
+   * @return the number of emissions in the state's emission table.
+   */
+  public int getNumberOfEmissions(int id) {
+    return this.emissionTable[id].length;
+  }
+
+  /**
+   * Returns an emission from a state's emission table.
+   *
+   * @param id - the id of the state.
+   * @param index - the index of the emission in the state's table.
+   * @return the emission.
+   */
+  public Emission getEmission(int id, int index) {
+    return this.emissionTable[id][index];
+  }
+
+  /**
+   * Returns the probability of a state producing an emission from its emission table.
+   *
+   * @param id - the id of the state.
+   * @param index - the index of the emission in the state's table.
+   * @return the emission probability.
+   */
+  public double getEmissionProbability(int id, int index) {
+    return this.emissionProbabilities[id][index];
+  }
+
+  /**
+   * Returns the number of distinct workouts (by description) that the model's states can emit.
+   *
+   * @return the number of workouts.
+   */
+  public int getNumberOfWorkouts() {
+    return this.workoutIds.size();
+  }
+
+  /**
+   * Returns the id of the workout an Emission is, matching on its description alone, so a logged
+   * workout matches whatever time it took.
+   *
+   * @param emission - the Emission.
+   * @return the id of its workout, or -1 if no state of the model can emit it.
+   */
+  public int workoutId(Emission emission) {
+    Integer id = emission == null ? null : this.workoutIds.get(emission.getWorkout());
+    return id == null ? -1 : id;
+  }
+
+  // The start probability of each state, by id
+  double[] startProbabilities() {
+    return this.startProbabilities;
+  }
+
+  // The transition probabilities, by the ids of the origin and destination states
+  double[][] transitionMatrix() {
+    return this.transitionMatrix;
+  }
+
+  // The probability of each state emitting each workout, indexed by state * workouts + workout
+  double[] workoutProbabilities() {
+    return this.workoutProbabilities;
+  }
+
+  // The log of the start probability of each state, by id
+  double[] logStartProbabilities() {
+    return this.logStartProbabilities;
+  }
+
+  // The log of the transition probabilities, indexed by from * states + to
+  double[] logTransitions() {
+    return this.logTransitions;
+  }
+
+  // The log of the probability of each state emitting each workout, indexed by
+  // state * workouts + workout
+  double[] logWorkoutProbabilities() {
+    return this.logWorkoutProbabilities;
+  }
+}
@@ -79,6 +79,15 @@ public class Emission {
     return this.workout;
   }
 
+  /**
+   * Returns the title of the workout of this instance.
+   *
+   * @return the title, as a string.
+   */
+  public String getTitle() {
+    return this.title;
+  }
+
   /**
    * Overridden equals method, so Emissions are compared by their fields.
    *
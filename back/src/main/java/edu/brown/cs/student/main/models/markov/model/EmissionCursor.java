@@ -0,0 +1,88 @@
+package edu.brown.cs.student.main.models.markov.model;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The EmissionCursor class is a lazy, pull-based walk through a CompiledMarkovModel. It picks a
+ * start state when it is created, and each call to next emits a workout from the current state and
+ * then transitions, so Emissions are only generated as they are needed. The walk never ends, so
+ * hasNext is always true; callers stop pulling once they have what they need (for example, once a
+ * week's minutes budget is met). A cursor is not thread safe, but any number of cursors may walk
+ * the same model at once.
+ */
+public final class EmissionCursor implements Iterator<Emission> {
+
+  private final CompiledMarkovModel model;
+  private int state;
+  private int generated;
+
+  /**
+   * The constructor for the EmissionCursor class, which takes in the model to walk and its start
+   * state. Use CompiledMarkovModel.cursor to get one.
+   *
+   * @param model - the compiled model to generate Emissions from.
+   * @param startState - the id of the state to start in.
+   */
+  EmissionCursor(CompiledMarkovModel model, int startState) {
+    this.model = model;
+    this.state = startState;
+    this.generated = 0;
+  }
+
+  /**
+   * Always returns true, as a MarkovModel can keep emitting forever.
+   *
+   * @return true.
+   */
+  @Override
+  public boolean hasNext() {
+    return true;
+  }
+
+  /**
+   * Emits a workout from the current state, and then transitions to the next state.
+   *
+   * @return the emitted workout.
+   */
+  @Override
+  public Emission next() {
+    Emission emission = this.model.emitFrom(this.state);
+    this.state = this.model.transitionFrom(this.state);
+    this.generated++;
+    return emission;
+  }
+
+  /**
+   * Returns the state the next Emission will be emitted from.
+   *
+   * @return the current state.
+   */
+  public HiddenState currentState() {
+    return this.model.getState(this.state);
+  }
+
+  /**
+   * Returns the number of Emissions this cursor has generated so far.
+   *
+   * @return the number of calls to next.
+   */
+  public int generated() {
+    return this.generated;
+  }
+
+  /**
+   * Returns the rest of the walk as an (infinite) ordered Stream, which should be bounded with
+   * limit or takeWhile. The stream pulls from this cursor, so the two should not be used together.
+   *
+   * @return the stream of Emissions.
+   */
+  public Stream<Emission> stream() {
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL),
+        false);
+  }
+}
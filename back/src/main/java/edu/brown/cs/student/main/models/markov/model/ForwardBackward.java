@@ -0,0 +1,370 @@
+package edu.brown.cs.student.main.models.markov.model;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The ForwardBackward class scores sequences of workouts against a CompiledMarkovModel with the
+ * forward/backward algorithm: how likely the model is to produce a sequence (its log likelihood),
+ * and how likely each state is at each step given the whole sequence (its posteriors). Generated
+ * plans can then be ranked and filtered by plausibility without being regenerated. The forward and
+ * backward variables are rescaled to sum to 1 at every step, so long sequences do not underflow,
+ * and the log likelihood is the sum of the logs of the scales. Each run takes O(T * S^2) time for T
+ * workouts and S states, and the buffers are kept and only grown between runs.
+ *
+ * <p>Workouts are matched to the model by description, as they are by ViterbiDecoder. Unlike the
+ * decoder, which steps over a workout no state can emit, a sequence with a workout that no state it
+ * can be in at that point could have emitted (including one the model does not have at all) cannot
+ * be produced by the model, so its log likelihood is negative infinity and it has no posteriors.
+ *
+ * <p>An engine is not thread safe, but any number of engines may score with the same model, and
+ * logLikelihoods scores a batch of sequences in parallel.
+ */
+public final class ForwardBackward {
+
+  // the fewest sequences a fork join task scores without splitting
+  public static int BATCH_THRESHOLD = 64;
+
+  // workout ids for a step whose workout was not seen, so any workout could have been there, and
+  // for a step whose workout the model does not have
+  static final int MISSING = -1;
+  private static final int UNMATCHED = -2;
+
+  private final CompiledMarkovModel model;
+  private final int states;
+  private final int workouts;
+  // the scaled forward and backward variables, indexed by step * states + state
+  private double[] alpha;
+  private double[] beta;
+  private double[] scales;
+  // the id of the workout at each step, or MISSING or UNMATCHED
+  private int[] observed;
+  // the emission and scale of the next step, folded into one weight per state by backward
+  private final double[] weights;
+  private int length;
+  private double logLikelihood;
+
+  /**
+   * The constructor for the ForwardBackward class, which takes in the model to score with. Use
+   * CompiledMarkovModel.forwardBackward to get one.
+   *
+   * @param model - the compiled model to score with.
+   */
+  ForwardBackward(CompiledMarkovModel model) {
+    this.model = model;
+    this.states = model.getNumberOfStates();
+    this.workouts = model.getNumberOfWorkouts();
+    this.alpha = new double[0];
+    this.beta = new double[0];
+    this.scales = new double[0];
+    this.observed = new int[0];
+    this.weights = new double[this.states];
+    this.length = 0;
+    this.logLikelihood = Double.NEGATIVE_INFINITY;
+  }
+
+  /**
+   * Scores a batch of sequences in parallel on a fork join pool. Each task keeps one engine for all
+   * of the sequences it scores.
+   *
+   * @param model - the compiled model to score with.
+   * @param sequences - the sequences of workouts to score.
+   * @param pool - the pool to score on.
+   * @return the log likelihood of each sequence, in the same order.
+   */
+  public static double[] logLikelihoods(
+      CompiledMarkovModel model, List<List<Emission>> sequences, ForkJoinPool pool) {
+    double[] scores = new double[sequences.size()];
+    pool.invoke(new ScoreTask(model, sequences, scores, 0, sequences.size()));
+    return scores;
+  }
+
+  /**
+   * Scores a batch of sequences in parallel on the common fork join pool.
+   *
+   * @param model - the compiled model to score with.
+   * @param sequences - the sequences of workouts to score.
+   * @return the log likelihood of each sequence, in the same order.
+   */
+  public static double[] logLikelihoods(CompiledMarkovModel model, List<List<Emission>> sequences) {
+    return logLikelihoods(model, sequences, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Returns the log of the probability of the model producing a sequence of workouts, running only
+   * the forward pass.
+   *
+   * @param logged - the workouts, in order.
+   * @return the log likelihood, which is 0 for an empty sequence, and negative infinity for one the
+   *     model cannot produce.
+   */
+  public double logLikelihood(List<Emission> logged) {
+    this.forward(this.observe(logged));
+    return this.logLikelihood;
+  }
+
+  /**
+   * Returns the probability of each state at each step of a sequence of workouts, given the whole
+   * sequence. The log likelihood of the sequence is kept, for getLogLikelihood.
+   *
+   * @param logged - the workouts, in order.
+   * @return the posterior of each state (by id) at each step, each row summing to 1, or none if the
+   *     model cannot produce the sequence.
+   */
+  public double[][] posteriors(List<Emission> logged) {
+    this.forward(this.observe(logged));
+    this.backward();
+    int n = this.states;
+    double[][] posteriors = new double[this.length][n];
+    for (int t = 0; t < this.length; t++) {
+      double sum = 0;
+      for (int s = 0; s < n; s++) {
+        posteriors[t][s] = this.alpha[t * n + s] * this.beta[t * n + s];
+        sum += posteriors[t][s];
+      }
+      for (int s = 0; s < n; s++) {
+        posteriors[t][s] /= sum;
+      }
+    }
+    return posteriors;
+  }
+
+  /**
+   * Returns the log likelihood of the last sequence scored.
+   *
+   * @return the log likelihood, or negative infinity if nothing has been scored.
+   */
+  public double getLogLikelihood() {
+    return this.logLikelihood;
+  }
+
+  /**
+   * Runs the forward and backward passes over a sequence of workout ids, and adds what they expect
+   * of the sequence to a Baum-Welch E-step's counts: how often each state starts the sequence,
+   * emits each workout, and transitions to each other state. Nothing is added for a sequence the
+   * model cannot produce.
+   *
+   * @param workouts - the id of each workout in the model (see workoutId), or MISSING for a step
+   *     whose workout is treated as unseen.
+   * @param counts - the counts to add to, sized for the model.
+   * @return the log likelihood of the sequence, or negative infinity if the model cannot produce
+   *     it.
+   */
+  double accumulate(int[] workouts, BaumWelch.Counts counts) {
+    this.ensureCapacity(workouts.length);
+    System.arraycopy(workouts, 0, this.observed, 0, workouts.length);
+    this.forward(workouts.length);
+    this.backward();
+    int n = this.states;
+    double[][] transitions = this.model.transitionMatrix();
+    double[] probabilities = this.model.workoutProbabilities();
+    for (int t = 0; t < this.length; t++) {
+      int step = t * n;
+      // scaled as they are, alpha times beta is already the posterior of each state
+      if (t == 0) {
+        for (int s = 0; s < n; s++) {
+          counts.start[s] += this.alpha[s] * this.beta[s];
+        }
+      }
+      int workout = this.observed[t];
+      if (workout >= 0) {
+        for (int s = 0; s < n; s++) {
+          counts.workouts[s * this.workouts + workout] +=
+              this.alpha[step + s] * this.beta[step + s];
+        }
+      }
+      if (t == this.length - 1) {
+        break;
+      }
+      int next = step + n;
+      int nextWorkout = this.observed[t + 1];
+      for (int to = 0; to < n; to++) {
+        double emission = nextWorkout < 0 ? 1 : probabilities[to * this.workouts + nextWorkout];
+        this.weights[to] = emission * this.beta[next + to] / this.scales[t + 1];
+      }
+      for (int from = 0; from < n; from++) {
+        double weight = this.alpha[step + from];
+        if (weight == 0) {
+          continue;
+        }
+        double[] row = transitions[from];
+        int countRow = from * n;
+        for (int to = 0; to < n; to++) {
+          counts.transitions[countRow + to] += weight * row[to] * this.weights[to];
+        }
+      }
+    }
+    return this.logLikelihood;
+  }
+
+  // Fills observed with the id of each logged workout, returning how many there are
+  private int observe(List<Emission> logged) {
+    this.ensureCapacity(logged.size());
+    for (int t = 0; t < logged.size(); t++) {
+      int workout = this.model.workoutId(logged.get(t));
+      this.observed[t] = workout < 0 ? UNMATCHED : workout;
+    }
+    return logged.size();
+  }
+
+  // Runs the scaled forward pass over the first length workouts in observed, filling alpha and
+  // scales. If the model cannot produce them, the log likelihood is negative infinity and the
+  // length is 0, so there is nothing for backward to run over
+  private void forward(int length) {
+    this.length = length;
+    this.logLikelihood = 0;
+    if (length == 0) {
+      return;
+    } else if (this.states == 0) {
+      this.logLikelihood = Double.NEGATIVE_INFINITY;
+      this.length = 0;
+      return;
+    }
+    int n = this.states;
+    double[] alpha = this.alpha;
+    double[] start = this.model.startProbabilities();
+    double[][] transitions = this.model.transitionMatrix();
+    for (int t = 0; t < length; t++) {
+      int step = t * n;
+      if (t == 0) {
+        System.arraycopy(start, 0, alpha, 0, n);
+      } else {
+        int previous = step - n;
+        for (int to = 0; to < n; to++) {
+          alpha[step + to] = 0;
+        }
+        // walks the transition matrix row by row, skipping states that cannot have been reached
+        for (int from = 0; from < n; from++) {
+          double weight = alpha[previous + from];
+          if (weight == 0) {
+            continue;
+          }
+          double[] row = transitions[from];
+          for (int to = 0; to < n; to++) {
+            alpha[step + to] += weight * row[to];
+          }
+        }
+      }
+      double scale = this.emit(step, this.observed[t]);
+      if (scale == 0) {
+        // no state it can be in could have emitted the workout, or it cannot be in any state
+        this.logLikelihood = Double.NEGATIVE_INFINITY;
+        this.length = 0;
+        return;
+      }
+      this.scales[t] = scale;
+      this.logLikelihood += Math.log(scale);
+      for (int s = 0; s < n; s++) {
+        alpha[step + s] /= scale;
+      }
+    }
+  }
+
+  // Multiplies the forward variables at a step by the probability of each state emitting a
+  // workout (by 1 if it is MISSING, and by 0 if it is UNMATCHED), without changing them if the
+  // product would be all 0, and returns the sum of the product
+  private double emit(int step, int workout) {
+    double sum = 0;
+    if (workout == UNMATCHED) {
+      return 0;
+    } else if (workout == MISSING) {
+      for (int s = 0; s < this.states; s++) {
+        sum += this.alpha[step + s];
+      }
+      return sum;
+    }
+    double[] probabilities = this.model.workoutProbabilities();
+    for (int s = 0; s < this.states; s++) {
+      sum += this.alpha[step + s] * probabilities[s * this.workouts + workout];
+    }
+    if (sum > 0) {
+      for (int s = 0; s < this.states; s++) {
+        this.alpha[step + s] *= probabilities[s * this.workouts + workout];
+      }
+    }
+    return sum;
+  }
+
+  // Runs the scaled backward pass over the last forward pass, filling beta
+  private void backward() {
+    int n = this.states;
+    double[] beta = this.beta;
+    double[][] transitions = this.model.transitionMatrix();
+    double[] probabilities = this.model.workoutProbabilities();
+    if (this.length == 0) {
+      return;
+    }
+    int last = (this.length - 1) * n;
+    for (int s = 0; s < n; s++) {
+      beta[last + s] = 1;
+    }
+    double[] weights = this.weights;
+    for (int t = this.length - 2; t >= 0; t--) {
+      int step = t * n;
+      int next = step + n;
+      int workout = this.observed[t + 1];
+      for (int to = 0; to < n; to++) {
+        double emission = workout < 0 ? 1 : probabilities[to * this.workouts + workout];
+        weights[to] = emission * beta[next + to] / this.scales[t + 1];
+      }
+      for (int from = 0; from < n; from++) {
+        double[] row = transitions[from];
+        double sum = 0;
+        for (int to = 0; to < n; to++) {
+          sum += row[to] * weights[to];
+        }
+        beta[step + from] = sum;
+      }
+    }
+  }
+
+  private void ensureCapacity(int length) {
+    if (this.observed.length < length) {
+      int capacity = Math.max(length, this.observed.length * 2);
+      this.observed = new int[capacity];
+      this.scales = new double[capacity];
+      this.alpha = new double[Math.multiplyExact(capacity, this.states)];
+      this.beta = new double[this.alpha.length];
+    }
+  }
+
+  /** Scores a range of a batch, splitting it in half until it is at most BATCH_THRESHOLD long. */
+  private static final class ScoreTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final CompiledMarkovModel model;
+    private final List<List<Emission>> sequences;
+    private final double[] scores;
+    private final int from;
+    private final int to;
+
+    private ScoreTask(
+        CompiledMarkovModel model,
+        List<List<Emission>> sequences,
+        double[] scores,
+        int from,
+        int to) {
+      this.model = model;
+      this.sequences = sequences;
+      this.scores = scores;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.to - this.from <= Math.max(1, BATCH_THRESHOLD)) {
+        ForwardBackward engine = this.model.forwardBackward();
+        for (int i = this.from; i < this.to; i++) {
+          this.scores[i] = engine.logLikelihood(this.sequences.get(i));
+        }
+        return;
+      }
+      int middle = (this.from + this.to) >>> 1;
+      invokeAll(
+          new ScoreTask(this.model, this.sequences, this.scores, this.from, middle),
+          new ScoreTask(this.model, this.sequences, this.scores, middle, this.to));
+    }
+  }
+}
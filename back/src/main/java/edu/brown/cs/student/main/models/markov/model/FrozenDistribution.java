@@ -0,0 +1,130 @@
+package edu.brown.cs.student.main.models.markov.model;
+
+import edu.brown.cs.student.main.models.exceptions.InvalidDistributionException;
+import edu.brown.cs.student.main.server.AliasSampler;
+import edu.brown.cs.student.main.server.RandomGenerator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The FrozenDistribution class is an immutable probability distribution. It is validated and
+ * normalized exactly once, when it is built, and keeps an AliasSampler for constant time draws, so
+ * sampling from it does no validation work at all. HiddenStates freeze their distributions into
+ * this class when a MarkovModel is built from them.
+ *
+ * @param <T> the type of the outcomes of the distribution.
+ */
+public final class FrozenDistribution<T> {
+
+  private final List<T> outcomes;
+  private final double[] probabilities;
+  private final AliasSampler<T> sampler;
+
+  /**
+   * The constructor for the FrozenDistribution class, which takes in already validated outcomes and
+   * weights, and normalizes the weights so they sum to exactly 1.
+   *
+   * @param outcomes - the outcomes of the distribution.
+   * @param weights - the weight of each outcome, by index.
+   * @throws InvalidDistributionException if the sampler cannot be built from the weights.
+   */
+  private FrozenDistribution(List<T> outcomes, double[] weights)
+      throws InvalidDistributionException {
+    double sum = 0;
+    for (double weight : weights) {
+      sum += weight;
+    }
+    this.outcomes = List.copyOf(outcomes);
+    this.probabilities = new double[weights.length];
+    for (int i = 0; i < weights.length; i++) {
+      this.probabilities[i] = weights[i] / sum;
+    }
+    this.sampler = new AliasSampler<>(this.outcomes, this.probabilities);
+  }
+
+  /**
+   * Validates and freezes a probability distribution stored as a Map.
+   *
+   * @param type - the type of the outputs of the distribution.
+   * @param distribution - the distribution to freeze.
+   * @return the frozen distribution.
+   * @param <T> the type of the outputs of the distribution.
+   * @throws InvalidDistributionException if the distribution is not valid.
+   */
+  public static <T> FrozenDistribution<T> of(Class<T> type, Map<T, Double> distribution)
+      throws InvalidDistributionException {
+    HashMap<T, Double> copy = new HashMap<>(distribution);
+    RandomGenerator.validateDistribution(type, copy);
+    List<T> outcomes = new ArrayList<>(copy.size());
+    double[] weights = new double[copy.size()];
+    int i = 0;
+    for (T key : copy.keySet()) {
+      outcomes.add(key);
+      weights[i++] = copy.get(key);
+    }
+    return new FrozenDistribution<>(outcomes, weights);
+  }
+
+  /**
+   * Draws a random outcome from the distribution, in constant time.
+   *
+   * @return the drawn outcome.
+   */
+  public T sample() {
+    return this.sampler.sample();
+  }
+
+  /**
+   * Draws the index of a random outcome from the distribution, in constant time.
+   *
+   * @return the index of the drawn outcome.
+   */
+  public int sampleIndex() {
+    return this.sampler.sampleIndex();
+  }
+
+  /**
+   * Returns the number of outcomes in the distribution.
+   *
+   * @return the number of outcomes.
+   */
+  public int size() {
+    return this.outcomes.size();
+  }
+
+  /**
+   * Returns the outcome at a given index.
+   *
+   * @param index - the index of the outcome.
+   * @return the outcome.
+   */
+  public T outcome(int index) {
+    return this.outcomes.get(index);
+  }
+
+  /**
+   * Returns the (normalized) probability of the outcome at a given index.
+   *
+   * @param index - the index of the outcome.
+   * @return the probability of the outcome.
+   */
+  public double probability(int index) {
+    return this.probabilities[index];
+  }
+
+  /**
+   * Returns a mutable copy of this distribution as a HashMap, the format the rest of the models
+   * module uses for distributions that are still being built.
+   *
+   * @return the copied distribution.
+   */
+  public HashMap<T, Double> toHashMap() {
+    HashMap<T, Double> map = new HashMap<>();
+    for (int i = 0; i < this.outcomes.size(); i++) {
+      map.merge(this.outcomes.get(i), this.probabilities[i], Double::sum);
+    }
+    return map;
+  }
+}
@@ -3,6 +3,7 @@ package edu.brown.cs.student.main.models.markov.model;
 import com.squareup.moshi.Json;
 import edu.brown.cs.student.main.models.exceptions.InvalidDistributionException;
 import edu.brown.cs.student.main.server.RandomGenerator;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Objects;
 import java.util.Set;
@@ -12,12 +13,19 @@ import java.util.Set;
  * represents. In particular, this class contains a state distribution (for transitioning) and an
  * emission distribution (for outputting workouts). When MarkovModel runs, it has its current
  * HiddenState emit a workout based on its distribution, and then transition.
+ *
+ * <p>A HiddenState is mutable until it is frozen (which happens when a MarkovModel is built from
+ * it). Freezing validates both distributions once and stores them as FrozenDistributions, after
+ * which emitting and transitioning do no validation work, and the add/fill methods throw.
  */
 public class HiddenState {
 
   private final HashMap<HiddenState, Double> transitionDistribution;
   private final HashMap<Emission, Double> emissionDistribution;
   private final String name;
+  private FrozenDistribution<HiddenState> frozenTransitions;
+  private FrozenDistribution<Emission> frozenEmissions;
+  private boolean frozen;
 
   /**
    * The constructor for the HiddenState class, which takes in the name of the state, its
@@ -36,34 +44,72 @@ public class HiddenState {
       throw new InvalidDistributionException(
           "Missing one of the distributions when generating a hidden state (null).", new HashMap());
     }
-    this.transitionDistribution = transitionDistribution;
-    this.emissionDistribution = emissionDistribution;
+    this.transitionDistribution = new HashMap<>(transitionDistribution);
+    this.emissionDistribution = new HashMap<>(emissionDistribution);
     this.name = name;
+    this.frozen = false;
   }
 
   /**
-   * This method emits a workout from the HiddenState's emission distribution.
+   * Validates both distributions of this state and freezes them, so that the state can no longer be
+   * modified and sampling from it does no further validation. Distributions that are already frozen
+   * (because they were sampled from, or filled with a FrozenDistribution) are kept as they are.
+   * Freezing an already frozen state does nothing.
+   *
+   * @throws InvalidDistributionException if either of the distributions (emission or transition) is
+   *     not valid; the state is left unfrozen in this case.
+   */
+  public void freeze() throws InvalidDistributionException {
+    if (this.frozen) {
+      return;
+    }
+    if (this.frozenTransitions == null) {
+      this.frozenTransitions =
+          FrozenDistribution.of(HiddenState.class, this.transitionDistribution);
+    }
+    if (this.frozenEmissions == null) {
+      this.frozenEmissions = FrozenDistribution.of(Emission.class, this.emissionDistribution);
+    }
+    this.frozen = true;
+  }
+
+  /**
+   * Returns whether this state has been frozen.
+   *
+   * @return true if the state is frozen, and so can no longer be modified.
+   */
+  public boolean isFrozen() {
+    return this.frozen;
+  }
+
+  /**
+   * This method emits a workout from the HiddenState's emission distribution. The distribution is
+   * validated and frozen the first time it is used after a change (or when the state is frozen), so
+   * repeated calls take constant time.
    *
    * @return the emitted workout.
    * @throws InvalidDistributionException if the emission distribution is not a valid distribution.
    */
   public Emission emit() throws InvalidDistributionException {
-    RandomGenerator.validateDistribution(Emission.class, this.emissionDistribution);
-    return RandomGenerator.generateRandomFromDistribution(
-        Emission.class, this.emissionDistribution);
+    if (this.frozenEmissions == null) {
+      this.frozenEmissions = FrozenDistribution.of(Emission.class, this.emissionDistribution);
+    }
+    return this.frozenEmissions.sample();
   }
 
   /**
    * This method returns the resulting HiddenState from a transition call, as generated by the
-   * transition distribution.
+   * transition distribution. Like emit, the distribution is only validated once per change.
    *
    * @return the transitioned HiddenState.
    * @throws InvalidDistributionException if the transition distribution was not valid.
    */
   public HiddenState transition() throws InvalidDistributionException {
-    RandomGenerator.validateDistribution(HiddenState.class, this.transitionDistribution);
-    return RandomGenerator.generateRandomFromDistribution(
-        HiddenState.class, this.transitionDistribution);
+    if (this.frozenTransitions == null) {
+      this.frozenTransitions =
+          FrozenDistribution.of(HiddenState.class, this.transitionDistribution);
+    }
+    return this.frozenTransitions.sample();
   }
 
   /**
@@ -74,7 +120,29 @@ public class HiddenState {
    * @return the set of potential states to transition to.
    */
   public Set<HiddenState> potentialStates() {
-    return this.transitionDistribution.keySet();
+    return Collections.unmodifiableSet(this.transitionDistribution.keySet());
+  }
+
+  /**
+   * Returns the frozen transition distribution, for compiling the state into a CompiledMarkovModel.
+   *
+   * @return the frozen transition distribution.
+   * @throws IllegalStateException if the state has not been frozen.
+   */
+  FrozenDistribution<HiddenState> frozenTransitions() {
+    this.checkFrozen();
+    return this.frozenTransitions;
+  }
+
+  /**
+   * Returns the frozen emission distribution, for compiling the state into a CompiledMarkovModel.
+   *
+   * @return the frozen emission distribution.
+   * @throws IllegalStateException if the state has not been frozen.
+   */
+  FrozenDistribution<Emission> frozenEmissions() {
+    this.checkFrozen();
+    return this.frozenEmissions;
   }
 
   /**
@@ -83,9 +151,12 @@ public class HiddenState {
    *
    * @param state - the state to add a transition to.
    * @param prob - the probability of transition to the new state.
+   * @throws IllegalStateException if the state has been frozen.
    */
   public void addTransition(HiddenState state, Double prob) {
+    this.checkMutable();
     this.transitionDistribution.put(state, prob);
+    this.frozenTransitions = null;
   }
 
   /**
@@ -93,14 +164,17 @@ public class HiddenState {
    *
    * @param transitions - the new distribution of transitions.
    * @throws InvalidDistributionException if the new distribution is not valid.
+   * @throws IllegalStateException if the state has been frozen.
    */
   public void fillTransitions(HashMap<HiddenState, Double> transitions)
       throws InvalidDistributionException {
+    this.checkMutable();
     RandomGenerator.validateDistribution(HiddenState.class, transitions);
     this.transitionDistribution.clear();
     for (HiddenState key : transitions.keySet()) {
       this.transitionDistribution.put(key, transitions.get(key));
     }
+    this.frozenTransitions = null;
   }
 
   /**
@@ -109,9 +183,12 @@ public class HiddenState {
    *
    * @param emission - the emission to add to the distribution.
    * @param prob - the probability of emitting the new emission.
+   * @throws IllegalStateException if the state has been frozen.
    */
   public void addEmission(Emission emission, Double prob) {
+    this.checkMutable();
     this.emissionDistribution.put(emission, prob);
+    this.frozenEmissions = null;
   }
 
   /**
@@ -119,14 +196,32 @@ public class HiddenState {
    *
    * @param emissions - the new distribution of emissions.
    * @throws InvalidDistributionException if the new distribution is not valid.
+   * @throws IllegalStateException if the state has been frozen.
    */
   public void fillEmissions(HashMap<Emission, Double> emissions)
       throws InvalidDistributionException {
+    this.checkMutable();
     RandomGenerator.validateDistribution(Emission.class, emissions);
     this.emissionDistribution.clear();
     for (Emission key : emissions.keySet()) {
       this.emissionDistribution.put(key, emissions.get(key));
     }
+    this.frozenEmissions = null;
+  }
+
+  /**
+   * This method replaces the current emission distribution with an already frozen one, which is
+   * used as is rather than being validated and frozen again (so shared FrozenDistributions, like
+   * those of a WorkoutCatalog, are not rebuilt for every state that emits them).
+   *
+   * @param emissions - the new, frozen distribution of emissions.
+   * @throws IllegalStateException if the state has been frozen.
+   */
+  public void fillEmissions(FrozenDistribution<Emission> emissions) {
+    this.checkMutable();
+    this.emissionDistribution.clear();
+    this.emissionDistribution.putAll(emissions.toHashMap());
+    this.frozenEmissions = emissions;
   }
 
   /**
@@ -141,6 +236,39 @@ public class HiddenState {
     RandomGenerator.validateDistribution(Emission.class, this.emissionDistribution);
   }
 
+  /**
+   * Throws if this state has been frozen, for guarding the methods that modify its distributions.
+   *
+   * @throws IllegalStateException if the state has been frozen.
+   */
+  private void checkMutable() {
+    if (this.frozen) {
+      throw new IllegalStateException(
+          "Hidden state " + this.name + " is frozen, so its distributions cannot be modified.");
+    }
+  }
+
+  /**
+   * Throws if this state has not been frozen yet, for guarding access to its frozen distributions.
+   *
+   * @throws IllegalStateException if the state has not been frozen.
+   */
+  private void checkFrozen() {
+    if (!this.frozen) {
+      throw new IllegalStateException(
+          "Hidden state " + this.name + " must be frozen before it is compiled.");
+    }
+  }
+
+  /**
+   * Returns the name of this state, which is the workout category it stands for in our models.
+   *
+   * @return the name.
+   */
+  public String getName() {
+    return this.name;
+  }
+
   /**
    * Overridden equals method, so each HiddenState is compared on the basis of its fields. Uses
    * flattened transition distribution (keys on HiddenState names instead of HiddenStates) to avoid
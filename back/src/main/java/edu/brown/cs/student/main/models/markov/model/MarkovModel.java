@@ -5,30 +5,35 @@ import edu.brown.cs.student.main.models.exceptions.FormatterFailureException;
 import edu.brown.cs.student.main.models.exceptions.InvalidDistributionException;
 import edu.brown.cs.student.main.models.formatters.EmissionFormatter;
 import edu.brown.cs.student.main.server.RandomGenerator;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * The MarkovModel class, which takes in a start distribution of hidden states. This model can
- * generate sequences of emissions from these hidden states, but may be updated in the future to
- * support more complex tasks (such as finding the most likely sequence of states, or the most
- * likely outcome using the forward/backward algorithm).
+ * generate sequences of emissions from these hidden states, find the most likely sequence of states
+ * behind a sequence of logged emissions (see ViterbiDecoder), score how likely a sequence of
+ * emissions is with the forward/backward algorithm (see ForwardBackward), and generate sequences
+ * around emissions pinned in place (see ClampedSampler).
  */
 public class MarkovModel {
 
   private final Set<HiddenState> states;
   private final HashMap<HiddenState, Double> startDistribution;
+  private final CompiledMarkovModel compiled;
 
   /**
    * The constructor for the MarkovModel class, which takes in a start distribution and validates
-   * it.
+   * it. Every state is then frozen, so its distributions are validated exactly once, and the model
+   * is compiled into a CompiledMarkovModel, which does all of the random generation. A built model
+   * is never modified, so it may be shared between threads.
    *
    * @param startDistribution - the start distribution for this model.
    * @throws InvalidDistributionException if the start distribution is not a valid probability
-   *     distribution.
+   *     distribution, or if any state has an invalid distribution.
    */
   public MarkovModel(@Json(name = "startdist") HashMap<HiddenState, Double> startDistribution)
       throws InvalidDistributionException {
@@ -36,16 +41,18 @@ public class MarkovModel {
       throw new InvalidDistributionException(
           "Start distribution was missing when generating a new MarkovModel.", new HashMap());
     }
-    this.states = startDistribution.keySet();
-    this.startDistribution = startDistribution;
-    RandomGenerator.validateDistribution(HiddenState.class, startDistribution);
+    this.startDistribution = new HashMap<>(startDistribution);
+    this.states = this.startDistribution.keySet();
+    RandomGenerator.validateDistribution(HiddenState.class, this.startDistribution);
     this.checkStateDistributions();
+    this.compiled = CompiledMarkovModel.compile(this.startDistribution);
   }
 
   /**
    * This method verifies that all states in the listed start distribution include all other states
    * in their transition distribution, for guaranteed success during random generation. Also ensures
-   * that all potential states have valid transition and emission distributions.
+   * that all potential states have valid transition and emission distributions, freezing them so
+   * they cannot be changed once the model is built.
    *
    * @throws InvalidDistributionException if a state has a transition distribution with the wrong
    *     keys or either of its distributions are invalid.
@@ -60,7 +67,7 @@ public class MarkovModel {
                 + "contained foreign states or did not contain all states relevant to the start distribution.",
             this.startDistribution);
       }
-      state.checkDistributions();
+      state.freeze();
     }
   }
 
@@ -84,25 +91,92 @@ public class MarkovModel {
     return formatter.formatEmissions(this.generateRandomSequence(len));
   }
 
+  /**
+   * Generates a sequence of the given length with some positions pinned, such as a 2k test on a
+   * given day, and returns the result of the formatter formatting it. The rest of the sequence is
+   * drawn from the model given the pins (see ClampedSampler), so it fits around them as if the
+   * model had generated them itself.
+   *
+   * @param len - the length of the sequence to generate.
+   * @param pins - what is fixed at each pinned position of the sequence, which counts from 0.
+   * @param formatter - the strategy for formatting the emissions.
+   * @return the formatted emissions.
+   * @param <T> the object type that the formatter returns.
+   * @throws InvalidDistributionException if no sequence of states can meet every pin.
+   * @throws FormatterFailureException if the formatter is unable to format the sequence of
+   *     emissions.
+   */
+  public <T> T generateFormattedEmissions(
+      int len, Map<Integer, Pin> pins, EmissionFormatter<T> formatter)
+      throws InvalidDistributionException, FormatterFailureException {
+    return formatter.formatEmissions(this.compiled.clampedSampler().sample(len, pins));
+  }
+
   /**
    * This method generates a random list of Emissions based on the hidden states in the model. It
-   * selects a start state, then emits/transitions between states len times.
+   * selects a start state, then emits/transitions between states len times, using the compiled
+   * version of the model.
    *
    * @param len - the length of the sequence of Emissions to be generated.
    * @return the generated list of Emissions.
-   * @throws InvalidDistributionException if random generation cannot generate a number; most likely
-   *     the result of a probability distribution not summing to 1. This condition will most often
-   *     be pre-checked.
    */
-  private List<Emission> generateRandomSequence(int len) throws InvalidDistributionException {
-    HiddenState currState =
-        RandomGenerator.generateRandomFromDistribution(HiddenState.class, this.startDistribution);
-    ArrayList<Emission> sequence = new ArrayList<>();
-    for (int i = 0; i < len; i++) {
-      sequence.add(currState.emit());
-      currState = currState.transition();
-    }
-    return sequence;
+  private List<Emission> generateRandomSequence(int len) {
+    return this.compiled.generateRandomSequence(len);
+  }
+
+  /**
+   * Starts a lazy walk through the model, which generates Emissions only as they are pulled. Useful
+   * when the caller does not know up front how many Emissions it needs.
+   *
+   * @return a new cursor over the model's Emissions.
+   */
+  public EmissionCursor emissions() {
+    return this.compiled.cursor();
+  }
+
+  /**
+   * Returns a lazy, infinite Stream of Emissions from a new walk through the model. It should be
+   * bounded with limit or takeWhile.
+   *
+   * @return the stream of Emissions.
+   */
+  public Stream<Emission> emissionStream() {
+    return this.compiled.cursor().stream();
+  }
+
+  /**
+   * Finds the most likely sequence of states behind a sequence of logged workouts, such as the
+   * workouts an athlete actually did, which tells where they are in the plan's cycle. Callers that
+   * decode many sequences should keep a decoder from getCompiled().decoder() instead, which reuses
+   * its buffers.
+   *
+   * @param logged - the logged workouts, in the order they were done.
+   * @return the most likely state of each workout, in the same order.
+   */
+  public List<HiddenState> mostLikelyStates(List<Emission> logged) {
+    return this.compiled.decoder().mostLikelyStates(logged);
+  }
+
+  /**
+   * Returns the log of the probability of this model producing a sequence of workouts, such as a
+   * generated plan, so plans can be ranked by how plausible they are. Callers that score many
+   * sequences should use ForwardBackward.logLikelihoods instead, which scores them in parallel.
+   *
+   * @param workouts - the workouts, in order.
+   * @return the log likelihood of the sequence, or negative infinity if this model cannot produce
+   *     it.
+   */
+  public double logLikelihood(List<Emission> workouts) {
+    return this.compiled.forwardBackward().logLikelihood(workouts);
+  }
+
+  /**
+   * Returns the compiled, index-based version of this model.
+   *
+   * @return the CompiledMarkovModel backing this model.
+   */
+  public CompiledMarkovModel getCompiled() {
+    return this.compiled;
   }
 
   /**
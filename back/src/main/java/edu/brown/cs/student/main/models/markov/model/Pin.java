@@ -0,0 +1,44 @@
+package edu.brown.cs.student.main.models.markov.model;
+
+/**
+ * A Pin fixes part of what a MarkovModel generates at one position of a sequence, such as a 2k test
+ * on the day of a race: the state the model must be in there, the workout it must emit there, or
+ * both. See ClampedSampler.
+ *
+ * @param state - the state the model must be in, or null if it may be in any.
+ * @param emission - the workout the model must emit, or null if it may emit any.
+ */
+public record Pin(HiddenState state, Emission emission) {
+
+  /**
+   * The constructor for the Pin record, which checks that it fixes something.
+   *
+   * @param state - the state the model must be in, or null if it may be in any.
+   * @param emission - the workout the model must emit, or null if it may emit any.
+   */
+  public Pin {
+    if (state == null && emission == null) {
+      throw new IllegalArgumentException("A pin must fix a state, a workout, or both.");
+    }
+  }
+
+  /**
+   * Pins the state the model must be in.
+   *
+   * @param state - the state.
+   * @return the pin.
+   */
+  public static Pin state(HiddenState state) {
+    return new Pin(state, null);
+  }
+
+  /**
+   * Pins the workout the model must emit.
+   *
+   * @param emission - the workout.
+   * @return the pin.
+   */
+  public static Pin emission(Emission emission) {
+    return new Pin(null, emission);
+  }
+}
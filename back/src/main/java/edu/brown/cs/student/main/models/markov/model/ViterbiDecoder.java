@@ -0,0 +1,174 @@
+package edu.brown.cs.student.main.models.markov.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The ViterbiDecoder class finds the most likely sequence of states behind a sequence of logged
+ * workouts, which locates where an athlete is in their plan's cycle without regenerating the plan.
+ * It runs the Viterbi algorithm in log space, so long sequences do not underflow, over the
+ * primitive tables of a CompiledMarkovModel, in O(T * S^2) time for T workouts and S states. Its
+ * buffers are kept and only grown between decodes, so decoding allocates nothing but the returned
+ * path.
+ *
+ * <p>Logged workouts are matched to the model by their descriptions. A workout that no state can
+ * emit says nothing about the state it was logged in, so it is decoded from the transitions alone,
+ * as is a workout that no state reachable at that point can emit (an athlete going off script).
+ *
+ * <p>A decoder is not thread safe, but any number of decoders may decode with the same model.
+ */
+public final class ViterbiDecoder {
+
+  private final CompiledMarkovModel model;
+  private final int states;
+  private final int workouts;
+  private double[] scores;
+  private double[] next;
+  // the best previous state of each state at each step, indexed by step * states + state
+  private int[] backpointers;
+  private int[] observed;
+  private double logProbability;
+
+  /**
+   * The constructor for the ViterbiDecoder class, which takes in the model to decode with. Use
+   * CompiledMarkovModel.decoder to get one.
+   *
+   * @param model - the compiled model to decode with.
+   */
+  ViterbiDecoder(CompiledMarkovModel model) {
+    this.model = model;
+    this.states = model.getNumberOfStates();
+    this.workouts = model.getNumberOfWorkouts();
+    this.scores = new double[this.states];
+    this.next = new double[this.states];
+    this.backpointers = new int[0];
+    this.observed = new int[0];
+    this.logProbability = Double.NEGATIVE_INFINITY;
+  }
+
+  /**
+   * Finds the most likely states behind a sequence of logged workouts.
+   *
+   * @param logged - the logged workouts, in the order they were done.
+   * @return the most likely state of each workout, in the same order, or none if no sequence of
+   *     states could be behind them.
+   */
+  public List<HiddenState> mostLikelyStates(List<Emission> logged) {
+    int[] path = this.decode(logged);
+    List<HiddenState> states = new ArrayList<>(path.length);
+    for (int id : path) {
+      states.add(this.model.getState(id));
+    }
+    return states;
+  }
+
+  /**
+   * Finds the ids of the most likely states behind a sequence of logged workouts. Ties between
+   * equally likely paths go to the states with the lowest ids.
+   *
+   * @param logged - the logged workouts, in the order they were done.
+   * @return the id of the most likely state of each workout, in the same order, or none if no
+   *     sequence of states could be behind them.
+   */
+  public int[] decode(List<Emission> logged) {
+    int length = logged.size();
+    if (length == 0 || this.states == 0) {
+      this.logProbability = length == 0 ? 0 : Double.NEGATIVE_INFINITY;
+      return new int[0];
+    }
+    this.ensureCapacity(length);
+    for (int t = 0; t < length; t++) {
+      this.observed[t] = this.model.workoutId(logged.get(t));
+    }
+
+    double[] logStart = this.model.logStartProbabilities();
+    double[] logTransitions = this.model.logTransitions();
+    System.arraycopy(logStart, 0, this.scores, 0, this.states);
+    this.emit(this.scores, this.observed[0]);
+
+    int n = this.states;
+    for (int t = 1; t < length; t++) {
+      double[] scores = this.scores;
+      double[] next = this.next;
+      int step = t * n;
+      Arrays.fill(next, Double.NEGATIVE_INFINITY);
+      // left over from earlier decodes until each state is reached
+      Arrays.fill(this.backpointers, step, step + n, -1);
+      // walks the transition matrix row by row, skipping states that cannot have been reached
+      for (int from = 0; from < n; from++) {
+        double score = scores[from];
+        if (score == Double.NEGATIVE_INFINITY) {
+          continue;
+        }
+        int row = from * n;
+        for (int to = 0; to < n; to++) {
+          double candidate = score + logTransitions[row + to];
+          if (candidate > next[to]) {
+            next[to] = candidate;
+            this.backpointers[step + to] = from;
+          }
+        }
+      }
+      this.emit(next, this.observed[t]);
+      this.next = scores;
+      this.scores = next;
+    }
+
+    int last = 0;
+    for (int s = 1; s < n; s++) {
+      if (this.scores[s] > this.scores[last]) {
+        last = s;
+      }
+    }
+    this.logProbability = this.scores[last];
+    if (this.logProbability == Double.NEGATIVE_INFINITY) {
+      return new int[0];
+    }
+    int[] path = new int[length];
+    path[length - 1] = last;
+    for (int t = length - 1; t > 0; t--) {
+      path[t - 1] = this.backpointers[t * n + path[t]];
+    }
+    return path;
+  }
+
+  /**
+   * Returns the log of the joint probability of the last decoded path and the workouts behind it,
+   * leaving out the workouts that were decoded from the transitions alone.
+   *
+   * @return the log probability, or negative infinity if nothing has been decoded.
+   */
+  public double getLogProbability() {
+    return this.logProbability;
+  }
+
+  // Adds the log probability of each state emitting a workout to its score, unless the workout is
+  // unknown or no state it can be in could have emitted it
+  private void emit(double[] scores, int workout) {
+    if (workout < 0) {
+      return;
+    }
+    double[] logWorkouts = this.model.logWorkoutProbabilities();
+    boolean possible = false;
+    for (int s = 0; s < this.states; s++) {
+      if (scores[s] + logWorkouts[s * this.workouts + workout] > Double.NEGATIVE_INFINITY) {
+        possible = true;
+        break;
+      }
+    }
+    if (possible) {
+      for (int s = 0; s < this.states; s++) {
+        scores[s] += logWorkouts[s * this.workouts + workout];
+      }
+    }
+  }
+
+  private void ensureCapacity(int length) {
+    if (this.observed.length < length) {
+      int capacity = Math.max(length, this.observed.length * 2);
+      this.observed = new int[capacity];
+      this.backpointers = new int[Math.multiplyExact(capacity, this.states)];
+    }
+  }
+}
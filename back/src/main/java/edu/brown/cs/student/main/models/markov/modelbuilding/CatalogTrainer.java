@@ -0,0 +1,238 @@
+package edu.brown.cs.student.main.models.markov.modelbuilding;
+
+import com.squareup.moshi.JsonWriter;
+import edu.brown.cs.student.main.database.JsonTree;
+import edu.brown.cs.student.main.database.ScheduleStore;
+import edu.brown.cs.student.main.models.exceptions.InvalidDistributionException;
+import edu.brown.cs.student.main.models.markov.model.BaumWelch;
+import edu.brown.cs.student.main.models.markov.model.CompiledMarkovModel;
+import edu.brown.cs.student.main.models.markov.model.Emission;
+import edu.brown.cs.student.main.server.Log;
+import edu.brown.cs.student.main.server.Server;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import okio.BufferedSink;
+import okio.Okio;
+
+/**
+ * The CatalogTrainer class retrains a workout file, like data/WorkoutData.json, from the workouts
+ * athletes actually logged. Its model has one state for each workout category, emitting that
+ * category's workouts, and starts from uniform transitions; Baum-Welch then re-estimates every
+ * state's transitions and emissions from each user's logged workouts (those UpdateWorkout has added
+ * data to), in the order of their schedules. The new file is written in the same format, so
+ * WorkoutCatalog can load it, with the learned start and transition probabilities added alongside
+ * the categories for review (the catalog itself only reads the categories). Workouts that are not
+ * in the file, like the generated UT2 sessions, are scored from the transitions alone. Run it
+ * offline, against the store chosen by the airobic.store property:
+ *
+ * <pre>
+ * java ... CatalogTrainer data/WorkoutData.json data/TrainedWorkoutData.json [iterations]
+ * </pre>
+ */
+public final class CatalogTrainer {
+
+  public static final int DEFAULT_ITERATIONS = 50;
+  public static final double TOLERANCE = 1e-4;
+
+  private CatalogTrainer() {}
+
+  /**
+   * Trains a workout file on the logged workouts in the store and writes the trained file.
+   *
+   * @param args the workout file to start from, the file to write, and optionally the most
+   *     iterations to run (50 by default).
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.out.println("Usage: CatalogTrainer workout-file output-file [iterations]");
+      return;
+    }
+    int iterations = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ITERATIONS;
+    ScheduleStore store = Server.openBackingStore();
+    try {
+      BaumWelch.Result result = train(args[0], store, Path.of(args[1]), iterations);
+      System.out.println(
+          "Trained for "
+              + result.logLikelihoods().size()
+              + " iterations; log likelihood "
+              + result.logLikelihoods());
+    } finally {
+      if (store instanceof AutoCloseable closeable) {
+        closeable.close();
+      }
+    }
+  }
+
+  /**
+   * Trains a workout file on the logged workouts in a store and writes the trained file.
+   *
+   * @param workoutFile - the workout file to start from.
+   * @param store - the store to read users' logged workouts from.
+   * @param output - the file to write; it is replaced in one step, so a catalog watching it never
+   *     reads half of it.
+   * @param iterations - the most iterations to run.
+   * @return what training produced.
+   * @throws IOException if either file or the store cannot be read or written.
+   * @throws InterruptedException if interrupted while reading from the store.
+   * @throws InvalidDistributionException if the workout file does not form a valid model.
+   */
+  public static BaumWelch.Result train(
+      String workoutFile, ScheduleStore store, Path output, int iterations)
+      throws IOException, InterruptedException, InvalidDistributionException {
+    CompiledMarkovModel initial;
+    try (WorkoutCatalog catalog = new WorkoutCatalog(workoutFile)) {
+      initial = initialModel(catalog.current());
+    }
+    List<List<Emission>> sequences = loggedSequences(store);
+    long start = System.nanoTime();
+    BaumWelch.Result result = BaumWelch.train(initial, sequences, iterations, TOLERANCE);
+    Log.shared()
+        .info(
+            "catalog_trained",
+            "sequences",
+            sequences.size(),
+            "iterations",
+            result.logLikelihoods().size(),
+            "millis",
+            (System.nanoTime() - start) / 1_000_000);
+    write(result.model(), output);
+    return result;
+  }
+
+  /**
+   * Builds the model to train from a version of a workout file: one state for each category, each
+   * emitting its category's workouts, with uniform start and transition probabilities.
+   *
+   * @param catalog - the version of the workout file.
+   * @return the compiled model.
+   * @throws InvalidDistributionException if the file has no categories.
+   */
+  public static CompiledMarkovModel initialModel(WorkoutCatalog.Snapshot catalog)
+      throws InvalidDistributionException {
+    ModelBuilder builder = new ModelBuilder();
+    TreeSet<String> categories = new TreeSet<>(catalog.distributions().keySet());
+    for (String category : categories) {
+      builder.generateNewState(category);
+      builder.setEmissionDistribution(category, catalog.distributions().get(category));
+    }
+    for (String from : categories) {
+      for (String to : categories) {
+        builder.addTransition(from, to, 1.0 / categories.size());
+      }
+      builder.addStartProbability(from, 1.0 / categories.size());
+    }
+    return builder.compile();
+  }
+
+  /**
+   * Reads every user's logged workouts from a store, in one read of every user: the workouts of
+   * their schedule that have data, in order of day and then of workout. Users who have logged
+   * nothing are left out.
+   *
+   * @param store - the store to read from.
+   * @return each user's logged workouts.
+   * @throws IOException if the store cannot be read.
+   * @throws InterruptedException if interrupted while reading from the store.
+   */
+  public static List<List<Emission>> loggedSequences(ScheduleStore store)
+      throws IOException, InterruptedException {
+    List<List<Emission>> sequences = new ArrayList<>();
+    for (Object user : children(JsonTree.parse(store.get("users")))) {
+      Object schedule = user instanceof Map<?, ?> fields ? fields.get("schedule") : null;
+      Object days = schedule instanceof Map<?, ?> fields ? fields.get("days") : null;
+      List<Emission> logged = new ArrayList<>();
+      // stored objects are TreeMaps in the database's key order, so days and workouts are in order
+      for (Object day : children(days)) {
+        Object workouts = day instanceof Map<?, ?> map ? map.get("workouts") : null;
+        for (Object workout : children(workouts)) {
+          if (workout instanceof Map<?, ?> fields && fields.get("data") != null) {
+            Object time = fields.get("time") != null ? fields.get("time") : fields.get("minutes");
+            logged.add(
+                new Emission(
+                    (String) fields.get("workout"),
+                    time instanceof Number number ? number.doubleValue() : 0,
+                    (String) fields.get("title")));
+          }
+        }
+      }
+      if (!logged.isEmpty()) {
+        sequences.add(logged);
+      }
+    }
+    return sequences;
+  }
+
+  /**
+   * Writes a trained model as a workout file, with the start and transition probabilities of each
+   * category alongside the categories.
+   *
+   * @param model - the trained model, with one state for each category.
+   * @param output - the file to write, which is replaced in one step.
+   * @throws IOException if the file cannot be written.
+   */
+  public static void write(CompiledMarkovModel model, Path output) throws IOException {
+    // categories are written in order of name, so retraining the same data gives the same file
+    TreeMap<String, Integer> ids = new TreeMap<>();
+    for (int s = 0; s < model.getNumberOfStates(); s++) {
+      ids.put(model.getState(s).getName(), s);
+    }
+    Path absolute = output.toAbsolutePath();
+    Path temporary = Files.createTempFile(absolute.getParent(), "catalog", ".json");
+    try {
+      try (BufferedSink sink = Okio.buffer(Okio.sink(temporary));
+          JsonWriter json = JsonWriter.of(sink)) {
+        json.setIndent("  ");
+        json.beginObject();
+        json.name("categories").beginObject();
+        for (Map.Entry<String, Integer> category : ids.entrySet()) {
+          int s = category.getValue();
+          json.name(category.getKey()).beginArray();
+          for (int e = 0; e < model.getNumberOfEmissions(s); e++) {
+            Emission emission = model.getEmission(s, e);
+            json.beginObject();
+            json.name("emission").beginObject().name("workout").value(emission.getWorkout());
+            json.endObject();
+            json.name("minutes").value(emission.getTime());
+            json.name("title").value(emission.getTitle());
+            json.name("probability").value(model.getEmissionProbability(s, e));
+            json.endObject();
+          }
+          json.endArray();
+        }
+        json.endObject();
+        json.name("start").beginObject();
+        for (Map.Entry<String, Integer> category : ids.entrySet()) {
+          json.name(category.getKey()).value(model.getStartProbability(category.getValue()));
+        }
+        json.endObject();
+        json.name("transitions").beginObject();
+        for (Map.Entry<String, Integer> from : ids.entrySet()) {
+          json.name(from.getKey()).beginObject();
+          for (Map.Entry<String, Integer> to : ids.entrySet()) {
+            json.name(to.getKey())
+                .value(model.getTransitionProbability(from.getValue(), to.getValue()));
+          }
+          json.endObject();
+        }
+        json.endObject();
+        json.endObject();
+      }
+      Files.move(
+          temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  // Returns the children of a stored object, in key order (none if it is not an object)
+  private static List<Object> children(Object value) {
+    return value instanceof Map<?, ?> map ? new ArrayList<>(map.values()) : List.of();
+  }
+}
@@ -1,7 +1,9 @@
 package edu.brown.cs.student.main.models.markov.modelbuilding;
 
 import edu.brown.cs.student.main.models.exceptions.InvalidDistributionException;
+import edu.brown.cs.student.main.models.markov.model.CompiledMarkovModel;
 import edu.brown.cs.student.main.models.markov.model.Emission;
+import edu.brown.cs.student.main.models.markov.model.FrozenDistribution;
 import edu.brown.cs.student.main.models.markov.model.HiddenState;
 import edu.brown.cs.student.main.models.markov.model.MarkovModel;
 import edu.brown.cs.student.main.server.RandomGenerator;
@@ -45,6 +47,18 @@ public class ModelBuilder {
     return new MarkovModel(this.startDist);
   }
 
+  /**
+   * Builds a MarkovModel from the current data (see build), and returns its compiled, index-based
+   * version for callers that only need fast random generation.
+   *
+   * @return the CompiledMarkovModel, if successful.
+   * @throws InvalidDistributionException if there are any problems with any of the distributions
+   *     associated with the new MarkovModel (including state distributions).
+   */
+  public CompiledMarkovModel compile() throws InvalidDistributionException {
+    return this.build().getCompiled();
+  }
+
   /**
    * Generates a new HiddenState, and puts it into the nameMap.
    *
@@ -74,7 +88,6 @@ public class ModelBuilder {
           "State: " + originName + "was not a registered state " + "to add transitions to.",
           potentialStates);
     }
-    RandomGenerator.validateDistribution(HiddenState.class, potentialStates);
     this.nameMap.get(originName).fillTransitions(potentialStates);
   }
 
@@ -87,7 +100,6 @@ public class ModelBuilder {
    */
   public void setStateDistribution(HiddenState origin, HashMap<HiddenState, Double> potentialStates)
       throws InvalidDistributionException {
-    RandomGenerator.validateDistribution(HiddenState.class, potentialStates);
     origin.fillTransitions(potentialStates);
   }
 
@@ -144,7 +156,6 @@ public class ModelBuilder {
               + "to fill its emission distribution.",
           potentialEmissions);
     }
-    RandomGenerator.validateDistribution(Emission.class, potentialEmissions);
     this.nameMap.get(originName).fillEmissions(potentialEmissions);
   }
 
@@ -158,10 +169,31 @@ public class ModelBuilder {
   public void setEmissionDistribution(
       HiddenState origin, HashMap<Emission, Double> potentialEmissions)
       throws InvalidDistributionException {
-    RandomGenerator.validateDistribution(Emission.class, potentialEmissions);
     origin.fillEmissions(potentialEmissions);
   }
 
+  /**
+   * This method sets the emission distribution of a given HiddenState to an already frozen
+   * distribution, which is shared rather than copied.
+   *
+   * @param originName - the name of the state for the new distribution.
+   * @param potentialEmissions - the new, frozen emission distribution.
+   * @throws InvalidDistributionException if the state name is not registered.
+   */
+  public void setEmissionDistribution(
+      String originName, FrozenDistribution<Emission> potentialEmissions)
+      throws InvalidDistributionException {
+    if (this.nameMap.get(originName) == null) {
+      throw new InvalidDistributionException(
+          "State: "
+              + originName
+              + "was not a registered state "
+              + "to fill its emission distribution.",
+          potentialEmissions.toHashMap());
+    }
+    this.nameMap.get(originName).fillEmissions(potentialEmissions);
+  }
+
   /**
    * This method adds an emission to a state's emission distribution.
    *
@@ -0,0 +1,229 @@
+package edu.brown.cs.student.main.models.markov.modelbuilding;
+
+import edu.brown.cs.student.main.models.exceptions.InvalidDistributionException;
+import edu.brown.cs.student.main.models.exceptions.NoWorkoutTypeException;
+import edu.brown.cs.student.main.models.markov.model.Emission;
+import edu.brown.cs.student.main.models.markov.model.FrozenDistribution;
+import edu.brown.cs.student.main.server.Log;
+import edu.brown.cs.student.main.server.Metrics;
+import edu.brown.cs.student.main.server.serializing.Serializer;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The WorkoutCatalog class keeps one of our workout files loaded in memory, with every emission
+ * distribution in it already validated and frozen. The file is read once, and then watched: when it
+ * changes, it is read again and the new version is swapped in atomically, so workouts can be edited
+ * without restarting the server. Callers take a Snapshot, which never changes, so a model is always
+ * built from a single version of the file. If an edited file cannot be read, the previous version
+ * is kept.
+ */
+public class WorkoutCatalog implements AutoCloseable {
+
+  private static final Map<Path, WorkoutCatalog> SHARED = new HashMap<>();
+  // shared by every catalog, so snapshots of different files never have the same version, and
+  // models cached by version are never shared between them
+  private static final AtomicLong VERSIONS = new AtomicLong();
+
+  private final Path file;
+  private final AtomicReference<Snapshot> current;
+  private WatchService watcher;
+
+  /**
+   * The constructor for the WorkoutCatalog class, which takes in a workout file and loads it. The
+   * file is not watched until watch is called.
+   *
+   * @param filename - the workout file to load.
+   * @throws IOException if the file cannot be read, or does not hold valid distributions.
+   */
+  public WorkoutCatalog(String filename) throws IOException {
+    this.file = Path.of(filename).toAbsolutePath().normalize();
+    this.current = new AtomicReference<>(this.load());
+  }
+
+  /**
+   * Returns the catalog shared by the whole server for a given workout file, loading it and
+   * starting to watch it the first time it is requested.
+   *
+   * @param filename - the workout file.
+   * @return the shared catalog for the file.
+   * @throws IOException if the file cannot be read the first time it is requested.
+   */
+  public static synchronized WorkoutCatalog shared(String filename) throws IOException {
+    Path path = Path.of(filename).toAbsolutePath().normalize();
+    WorkoutCatalog catalog = SHARED.get(path);
+    if (catalog == null) {
+      catalog = new WorkoutCatalog(filename);
+      catalog.watch();
+      SHARED.put(path, catalog);
+    }
+    return catalog;
+  }
+
+  /**
+   * Returns the currently loaded version of the catalog. Never reads the file.
+   *
+   * @return the current snapshot.
+   */
+  public Snapshot current() {
+    return this.current.get();
+  }
+
+  /**
+   * Reads the file again and swaps in the new version, keeping the previous version if the file
+   * cannot be read.
+   *
+   * @return true if a new version was swapped in.
+   */
+  public synchronized boolean reload() {
+    try {
+      this.current.set(this.load());
+      return true;
+    } catch (IOException | RuntimeException e) {
+      Log.shared().warn("catalog_kept", "file", this.file, "error", e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Starts watching the file for changes on a background (daemon) thread, reloading the catalog
+   * every time the file is modified. Calling watch more than once does nothing.
+   *
+   * @throws IOException if the directory of the file cannot be watched.
+   */
+  public synchronized void watch() throws IOException {
+    if (this.watcher != null) {
+      return;
+    }
+    WatchService service = FileSystems.getDefault().newWatchService();
+    this.file
+        .getParent()
+        .register(
+            service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    this.watcher = service;
+    Thread thread = new Thread(() -> this.watchLoop(service), "workout-catalog-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Stops watching the file. The currently loaded version stays available. */
+  @Override
+  public synchronized void close() throws IOException {
+    if (this.watcher != null) {
+      this.watcher.close();
+      this.watcher = null;
+    }
+  }
+
+  /**
+   * The body of the watching thread, which waits for events in the file's directory and reloads
+   * when one of them is about the file. Ends when the WatchService is closed.
+   *
+   * @param service - the WatchService the file's directory is registered with.
+   */
+  private void watchLoop(WatchService service) {
+    try {
+      while (true) {
+        WatchKey key = service.take();
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.context() instanceof Path changedFile
+              && changedFile.equals(this.file.getFileName())) {
+            changed = true;
+          }
+        }
+        // one write often produces several events, so they are handled together
+        if (changed) {
+          this.reload();
+        }
+        if (!key.reset()) {
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException e) {
+      // closed by close, so there is nothing left to watch
+    }
+  }
+
+  /**
+   * Reads the file, and validates and freezes every distribution in it, recording the time taken as
+   * the catalog_load stage.
+   *
+   * @return the loaded snapshot, with a new version number.
+   * @throws IOException if the file cannot be read or holds an invalid distribution.
+   */
+  private Snapshot load() throws IOException {
+    long start = System.nanoTime();
+    WorkoutDistributionByName.WorkoutDistMap map;
+    try (InputStream in = new FileInputStream(this.file.toFile())) {
+      map = Serializer.getDeserializedResponse(WorkoutDistributionByName.WorkoutDistMap.class, in);
+    }
+    if (map == null || map.allData() == null) {
+      throw new IOException("Workout file " + this.file + " has no workout categories.");
+    }
+    Map<String, FrozenDistribution<Emission>> distributions = new HashMap<>();
+    try {
+      for (String category : map.allData().keySet()) {
+        distributions.put(category, FrozenDistribution.of(Emission.class, map.getDist(category)));
+      }
+    } catch (InvalidDistributionException | NoWorkoutTypeException e) {
+      throw new IOException("Workout file " + this.file + " is invalid: " + e.getMessage(), e);
+    }
+    Metrics.stage("catalog_load").observeNanos(System.nanoTime() - start);
+    return new Snapshot(VERSIONS.incrementAndGet(), distributions);
+  }
+
+  /**
+   * A single, unchanging version of the catalog.
+   *
+   * @param version - the version number, which increases every time any workout file is loaded, so
+   *     it also tells snapshots of different files apart.
+   * @param distributions - the frozen emission distribution of each workout category.
+   */
+  public record Snapshot(long version, Map<String, FrozenDistribution<Emission>> distributions) {
+
+    /**
+     * The constructor for the Snapshot record, which makes its map read-only.
+     *
+     * @param version - the version number.
+     * @param distributions - the frozen emission distribution of each workout category.
+     */
+    public Snapshot {
+      distributions = Collections.unmodifiableMap(new HashMap<>(distributions));
+    }
+
+    /**
+     * Gets the frozen emission distribution of a given Workout type.
+     *
+     * @param workout - the Workout type to key on.
+     * @return the frozen emission distribution.
+     * @throws NoWorkoutTypeException if the workout type is not in this version of the catalog.
+     */
+    public FrozenDistribution<Emission> get(Workout workout) throws NoWorkoutTypeException {
+      FrozenDistribution<Emission> distribution = this.distributions.get(Workout.value(workout));
+      if (distribution == null) {
+        throw new NoWorkoutTypeException(
+            "Type: "
+                + Workout.value(workout)
+                + "was not found in the loaded set of workout"
+                + "distributions.");
+      }
+      return distribution;
+    }
+  }
+}
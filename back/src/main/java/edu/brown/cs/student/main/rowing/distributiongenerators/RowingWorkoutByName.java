@@ -1,28 +1,35 @@
 package edu.brown.cs.student.main.rowing.distributiongenerators;
 
+import edu.brown.cs.student.main.models.exceptions.InvalidDistributionException;
 import edu.brown.cs.student.main.models.exceptions.NoWorkoutTypeException;
 import edu.brown.cs.student.main.models.formattypes.Day.WorkoutDescription;
 import edu.brown.cs.student.main.models.markov.model.Emission;
+import edu.brown.cs.student.main.models.markov.model.FrozenDistribution;
 import edu.brown.cs.student.main.models.markov.modelbuilding.Workout;
-import edu.brown.cs.student.main.models.markov.modelbuilding.WorkoutDistributionByName;
+import edu.brown.cs.student.main.models.markov.modelbuilding.WorkoutCatalog;
 import java.io.IOException;
 import java.util.HashMap;
 
 /**
- * This class reads in the main rowing workout file, and uses the WorkoutDistributionByName class to
- * access emission distributions based on Workout keys.
+ * This class gets emission distributions for rowing workouts from the shared WorkoutCatalog of the
+ * main rowing workout file, so the file is only read once (and again when it is edited), rather
+ * than every time an instance is made. Each instance uses the version of the catalog that was
+ * current when it was made.
  */
 public class RowingWorkoutByName implements SportWorkoutByName {
-  WorkoutDistributionByName distributions;
+
+  public static String WORKOUT_FILE = "./data/WorkoutData.json";
+
+  private final WorkoutCatalog.Snapshot distributions;
 
   /**
-   * The constructor for the RowingWorkoutByName class, which initializes a
-   * WorkoutDistributionByName class with the rowing workout file.
+   * The constructor for the RowingWorkoutByName class, which takes the current version of the
+   * rowing WorkoutCatalog.
    *
-   * @throws IOException if the workout file cannot be read.
+   * @throws IOException if the workout file cannot be read (only possible the first time).
    */
   public RowingWorkoutByName() throws IOException {
-    this.distributions = new WorkoutDistributionByName("./data/WorkoutData.json");
+    this.distributions = WorkoutCatalog.shared(WORKOUT_FILE).current();
   }
 
   /**
@@ -36,18 +43,40 @@ public class RowingWorkoutByName implements SportWorkoutByName {
    */
   public HashMap<Emission, Double> getEmissionDist(WorkoutDescription name)
       throws NoWorkoutTypeException {
-    try {
-      return this.distributions.generateEmissionDistribution(name.workoutType());
-    } catch (NoWorkoutTypeException e) {
-      // special case: UT2 distributions are dynamically generated. A showcase of how distributions
-      // could either
-      // be stored statically in a file or generated dynamically based on constraints passed in by a
-      // larger wrapper
-      // class, like WorkoutDescription.
-      if (name.workoutType().equals(Workout.UT_2)) {
-        return UT2DistributionGenerator.getLowIntensityDistributionByTime(name.minutes());
-      }
-      throw new NoWorkoutTypeException(e.getMessage());
+    // special case: UT2 distributions are dynamically generated. A showcase of how distributions
+    // could either be stored statically in a file or generated dynamically based on constraints
+    // passed in by a larger wrapper class, like WorkoutDescription.
+    if (name.workoutType() == Workout.UT_2) {
+      return UT2DistributionGenerator.getLowIntensityDistributionByTime(name.minutes());
     }
+    return this.distributions.get(name.workoutType()).toHashMap();
+  }
+
+  /**
+   * This method returns the frozen Emission distribution of a rowing workout. Distributions from
+   * the workout file are shared as they are, as are the prebuilt UT2 distributions.
+   *
+   * @param name - the type of Workout distribution wanted.
+   * @return the frozen distribution.
+   * @throws NoWorkoutTypeException if the Workout type was not found in the rowing workout file.
+   * @throws InvalidDistributionException if a generated distribution is not valid.
+   */
+  @Override
+  public FrozenDistribution<Emission> getFrozenEmissionDist(WorkoutDescription name)
+      throws NoWorkoutTypeException, InvalidDistributionException {
+    if (name.workoutType() == Workout.UT_2) {
+      return UT2DistributionGenerator.getFrozenLowIntensityDistributionByTime(name.minutes());
+    }
+    return this.distributions.get(name.workoutType());
+  }
+
+  /**
+   * Returns the version of the workout catalog this instance uses, so models built from different
+   * versions of the workout file can be told apart.
+   *
+   * @return the catalog version.
+   */
+  public long version() {
+    return this.distributions.version();
   }
 }
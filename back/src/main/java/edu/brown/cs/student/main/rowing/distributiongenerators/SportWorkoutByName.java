@@ -1,8 +1,10 @@
 package edu.brown.cs.student.main.rowing.distributiongenerators;
 
+import edu.brown.cs.student.main.models.exceptions.InvalidDistributionException;
 import edu.brown.cs.student.main.models.exceptions.NoWorkoutTypeException;
 import edu.brown.cs.student.main.models.formattypes.Day;
 import edu.brown.cs.student.main.models.markov.model.Emission;
+import edu.brown.cs.student.main.models.markov.model.FrozenDistribution;
 import java.util.HashMap;
 
 /**
@@ -23,4 +25,20 @@ public interface SportWorkoutByName {
    */
   HashMap<Emission, Double> getEmissionDist(Day.WorkoutDescription name)
       throws NoWorkoutTypeException;
+
+  /**
+   * Gets an emission distribution as a FrozenDistribution, which model builders can share between
+   * states without validating it again. By default this freezes the result of getEmissionDist;
+   * implementations with pre-loaded distributions should return them directly.
+   *
+   * @param name - the description of the emission distribution requested.
+   * @return the resulting frozen emission distribution.
+   * @throws NoWorkoutTypeException if the workout description contains a workout that the
+   *     SportWorkoutByName instance does not have access to.
+   * @throws InvalidDistributionException if the distribution is not valid.
+   */
+  default FrozenDistribution<Emission> getFrozenEmissionDist(Day.WorkoutDescription name)
+      throws NoWorkoutTypeException, InvalidDistributionException {
+    return FrozenDistribution.of(Emission.class, this.getEmissionDist(name));
+  }
 }
@@ -1,11 +1,17 @@
 package edu.brown.cs.student.main.rowing.distributiongenerators;
 
+import edu.brown.cs.student.main.models.exceptions.InvalidDistributionException;
 import edu.brown.cs.student.main.models.markov.model.Emission;
+import edu.brown.cs.student.main.models.markov.model.FrozenDistribution;
+import edu.brown.cs.student.main.rowing.modelbuilders.ScheduleBuilder;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * The UT2DistributionGenerator generates an emission distribution for the UT2 workout type given
- * how long each UT2 workout should be.
+ * how long each UT2 workout should be. Distributions for every length a schedule can ask for are
+ * built once, when the class is loaded, and shared; other lengths are generated when requested.
  */
 public class UT2DistributionGenerator {
 
@@ -27,13 +33,25 @@ public class UT2DistributionGenerator {
         }
       };
 
+  // the shortest and longest UT2 sessions the schedule and variable model builders produce: low
+  // intensity sessions are at least MIN_LOW_LENGTH, and are longest with the most high intensity
+  // sessions, as each one only takes HIGH_LENGTH of the maximum minutes but a whole session away.
+  public static final int MIN_TABLE_LENGTH = ScheduleBuilder.MIN_LOW_LENGTH;
+  public static final int MAX_TABLE_LENGTH = longestLowLength();
+
+  private static final List<FrozenDistribution<Emission>> TABLES = buildTables();
+
   /**
    * This method gets a UT2 emission distribution given a number of minutes each workout should be.
+   * Lengths covered by the prebuilt tables are copied from them, so their Emissions are shared.
    *
    * @param minutes - the length of each UT2 workout.
    * @return the completed emission distribution.
    */
   public static HashMap<Emission, Double> getLowIntensityDistributionByTime(int minutes) {
+    if (minutes >= MIN_TABLE_LENGTH && minutes <= MAX_TABLE_LENGTH) {
+      return TABLES.get(minutes - MIN_TABLE_LENGTH).toHashMap();
+    }
     HashMap<Emission, Double> newDist = new HashMap<>();
     // generates an emission for each number of intervals, and loads it into the emission
     // distribution to be returned.
@@ -45,6 +63,72 @@ public class UT2DistributionGenerator {
     return newDist;
   }
 
+  /**
+   * This method gets a UT2 emission distribution given a number of minutes each workout should be,
+   * as a FrozenDistribution. Lengths between MIN_TABLE_LENGTH and MAX_TABLE_LENGTH are served from
+   * the shared, prebuilt tables.
+   *
+   * @param minutes - the length of each UT2 workout.
+   * @return the frozen emission distribution.
+   * @throws InvalidDistributionException if intervalsProbability is not a valid distribution.
+   */
+  public static FrozenDistribution<Emission> getFrozenLowIntensityDistributionByTime(int minutes)
+      throws InvalidDistributionException {
+    if (minutes >= MIN_TABLE_LENGTH && minutes <= MAX_TABLE_LENGTH) {
+      return TABLES.get(minutes - MIN_TABLE_LENGTH);
+    }
+    return FrozenDistribution.of(Emission.class, getLowIntensityDistributionByTime(minutes));
+  }
+
+  /**
+   * Builds the frozen UT2 distribution of every length between MIN_TABLE_LENGTH and
+   * MAX_TABLE_LENGTH. Neighbouring lengths often round down to the same intervals, so each distinct
+   * Emission is only built once and shared between the tables.
+   *
+   * @return the distributions, indexed by length minus MIN_TABLE_LENGTH.
+   */
+  private static List<FrozenDistribution<Emission>> buildTables() {
+    HashMap<String, Emission> emissions = new HashMap<>();
+    List<FrozenDistribution<Emission>> tables = new ArrayList<>();
+    for (int minutes = MIN_TABLE_LENGTH; minutes <= MAX_TABLE_LENGTH; minutes++) {
+      HashMap<Emission, Double> dist = new HashMap<>();
+      for (int i = MIN_INTERVALS; i < MAX_INTERVALS + 1; i++) {
+        int numIntervals = i;
+        int intervalLength = Math.floorDiv(minutes, i);
+        Emission emission =
+            emissions.computeIfAbsent(
+                numIntervals + "x" + intervalLength,
+                key -> produceLowIntensityEmission(numIntervals, intervalLength));
+        dist.put(emission, intervalsProbability.get(i));
+      }
+      try {
+        tables.add(FrozenDistribution.of(Emission.class, dist));
+      } catch (InvalidDistributionException e) {
+        throw new IllegalStateException("UT2 interval probabilities are not a distribution.", e);
+      }
+    }
+    return List.copyOf(tables);
+  }
+
+  /**
+   * Finds the longest UT2 session ScheduleBuilder.minutes can ask for. With some number of high
+   * intensity sessions, the high intensity minutes are at least that many times HIGH_LENGTH, and
+   * the rest of the maximum minutes are split between the remaining sessions of the week.
+   *
+   * @return the longest length, in minutes.
+   */
+  private static int longestLowLength() {
+    int longest = ScheduleBuilder.MIN_LOW_LENGTH;
+    for (int numHigh = 0; numHigh <= ScheduleBuilder.MAX_HIGH_WORKOUTS; numHigh++) {
+      longest =
+          Math.max(
+              longest,
+              (ScheduleBuilder.MAX_MINUTES - numHigh * ScheduleBuilder.HIGH_LENGTH)
+                  / (ScheduleBuilder.MAX_WORKOUTS_PER_WEEK - numHigh));
+    }
+    return longest;
+  }
+
   /**
    * A helper method to generate the emissions associated with the distribution returned in
    * getLowIntensityDistributionByTime.
@@ -65,7 +65,8 @@ public class LinearModelBuilder {
       for (WorkoutDescription intensity : day.getPlanCopy()) {
         builder.generateNewState(this.encodeDay(day.getDay(), workoutCounter));
         builder.setEmissionDistribution(
-            this.encodeDay(day.getDay(), workoutCounter), this.dists.getEmissionDist(intensity));
+            this.encodeDay(day.getDay(), workoutCounter),
+            this.dists.getFrozenEmissionDist(intensity));
       }
     }
 
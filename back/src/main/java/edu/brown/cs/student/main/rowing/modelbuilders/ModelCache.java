@@ -0,0 +1,227 @@
+package edu.brown.cs.student.main.rowing.modelbuilders;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import edu.brown.cs.student.main.models.exceptions.InvalidDistributionException;
+import edu.brown.cs.student.main.models.exceptions.InvalidScheduleException;
+import edu.brown.cs.student.main.models.exceptions.NoWorkoutTypeException;
+import edu.brown.cs.student.main.models.formattypes.Day;
+import edu.brown.cs.student.main.models.formattypes.Day.WorkoutDescription;
+import edu.brown.cs.student.main.models.formattypes.Schedule;
+import edu.brown.cs.student.main.models.markov.model.MarkovModel;
+import edu.brown.cs.student.main.models.markov.modelbuilding.Workout;
+import edu.brown.cs.student.main.rowing.distributiongenerators.RowingWorkoutByName;
+import edu.brown.cs.student.main.server.Metrics;
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The ModelCache class holds built MarkovModels, keyed by the parameters they were built from, so
+ * that plans with the same parameters share one model instead of rebuilding it (and re-reading the
+ * workout files) on every request. Built models are never modified, so sharing them between request
+ * threads is safe. Concurrent requests for a model that is not cached yet wait on a single build,
+ * rather than all building their own. Keys include the version of the workout catalog the model was
+ * built from, so models built before the workout file was edited are no longer used. Versions are
+ * never repeated between workout files, so models built from different files are never shared.
+ *
+ * <p>The cache is bounded both by an estimate of the memory its models take up and by its number of
+ * entries, evicting the least recently used models first. Hit and miss counts are recorded and
+ * available through stats.
+ */
+public class ModelCache {
+
+  public static long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+  public static int DEFAULT_MAX_ENTRIES = 512;
+
+  private static final ModelCache SHARED = new ModelCache(DEFAULT_MAX_BYTES, DEFAULT_MAX_ENTRIES);
+  private static final Metrics.Histogram BUILD_TIME = Metrics.stage("model_build");
+
+  private final Cache<Object, MarkovModel> cache;
+
+  /**
+   * The constructor for the ModelCache class, which takes in its bounds. Each model is weighed at
+   * its estimated size, but never less than maxBytes / maxEntries, so that the cache can hold at
+   * most maxEntries models.
+   *
+   * @param maxBytes - the estimated memory, in bytes, the cached models may take up.
+   * @param maxEntries - the maximum number of models the cache may hold.
+   */
+  public ModelCache(long maxBytes, int maxEntries) {
+    long minWeight = Math.max(1, maxBytes / Math.max(1, maxEntries));
+    this.cache =
+        CacheBuilder.newBuilder()
+            // Guava splits the weight bound between segments, so a single segment keeps the
+            // entry bound exact; reads do not lock, and models are built outside the segment lock
+            .concurrencyLevel(1)
+            .maximumWeight(maxBytes)
+            .weigher(
+                (Object key, MarkovModel model) ->
+                    Math.toIntExact(
+                        Math.min(
+                            Integer.MAX_VALUE,
+                            Math.max(minWeight, model.getCompiled().estimatedBytes()))))
+            .recordStats()
+            .build();
+  }
+
+  /**
+   * Returns the cache shared by all plan generators in the server.
+   *
+   * @return the shared ModelCache.
+   */
+  public static ModelCache shared() {
+    return SHARED;
+  }
+
+  /**
+   * Gets the variable model for a set of parameters, building it with a VariableModelBuilder if it
+   * is not cached. See VariableModelBuilder.build for the parameters.
+   *
+   * @param lowWorkouts - the set of low intensity workouts that make up the low intensity states.
+   * @param highWorkouts - the set of high intensity workouts that make up the high intensity
+   *     states.
+   * @param minutes - the number of minutes the caller has in their schedule per week.
+   * @param highPercent - the percentage of high intensity work the caller wants to do.
+   * @return the (possibly shared) built model.
+   * @throws IOException if the workout files cannot be read.
+   * @throws InvalidDistributionException if any distributions in the model are invalid.
+   * @throws InvalidScheduleException if the minutes are out of bounds.
+   * @throws NoWorkoutTypeException if either set of workouts is null or empty.
+   */
+  public MarkovModel getVariableModel(
+      Set<Workout> lowWorkouts, Set<Workout> highWorkouts, int minutes, double highPercent)
+      throws IOException, InvalidDistributionException, InvalidScheduleException,
+          NoWorkoutTypeException {
+    if (lowWorkouts == null || highWorkouts == null) {
+      // let the builder report the missing sets, as they cannot be used in a key
+      return new VariableModelBuilder(new RowingWorkoutByName())
+          .build(lowWorkouts, highWorkouts, minutes, highPercent);
+    }
+    RowingWorkoutByName dists = new RowingWorkoutByName();
+    VariableKey key =
+        new VariableKey(
+            dists.version(),
+            Set.copyOf(lowWorkouts),
+            Set.copyOf(highWorkouts),
+            minutes,
+            highPercent);
+    return this.get(
+        key,
+        () ->
+            new VariableModelBuilder(dists).build(lowWorkouts, highWorkouts, minutes, highPercent));
+  }
+
+  /**
+   * Gets the linear model for a schedule framework, building it with a LinearModelBuilder if it is
+   * not cached. Linear models only depend on the example week of the schedule and the day the
+   * schedule starts on, so schedules of different lengths share their model.
+   *
+   * @param schedule - the framework for the schedule that the model should fill.
+   * @return the (possibly shared) built model.
+   * @throws IOException if the workout files cannot be read.
+   * @throws InvalidDistributionException if any distributions in the model are invalid.
+   * @throws InvalidScheduleException if the schedule does not have enough information to build the
+   *     model.
+   * @throws NoWorkoutTypeException if a workout type in the schedule has no distribution.
+   */
+  public MarkovModel getLinearModel(Schedule schedule)
+      throws IOException, InvalidDistributionException, InvalidScheduleException,
+          NoWorkoutTypeException {
+    if (schedule.example() == null
+        || schedule.weeks().size() < 1
+        || schedule.weeks().get(0).days().size() < 1) {
+      // let the builder report the malformed schedule
+      return new LinearModelBuilder(new RowingWorkoutByName()).build(schedule);
+    }
+    List<DayKey> week = new ArrayList<>();
+    for (Day day : schedule.example().days()) {
+      week.add(new DayKey(day.getDay(), day.getNumberOfWorkouts(), day.getPlanCopy()));
+    }
+    RowingWorkoutByName dists = new RowingWorkoutByName();
+    LinearKey key =
+        new LinearKey(dists.version(), week, schedule.weeks().get(0).days().get(0).getDay());
+    return this.get(key, () -> new LinearModelBuilder(dists).build(schedule));
+  }
+
+  /**
+   * Returns the hit and miss statistics of the cache.
+   *
+   * @return a snapshot of the cache statistics.
+   */
+  public CacheStats stats() {
+    return this.cache.stats();
+  }
+
+  /**
+   * Returns the number of models currently cached.
+   *
+   * @return the number of cached models.
+   */
+  public long size() {
+    return this.cache.size();
+  }
+
+  /** Removes every model from the cache. */
+  public void clear() {
+    this.cache.invalidateAll();
+  }
+
+  /**
+   * Gets a model from the cache, building it with the loader if it is missing, and rethrows any
+   * exception the loader threw with its original type. The time taken, whether or not the model was
+   * cached, is recorded as the model_build stage of the plan.
+   *
+   * @param key - the key of the model.
+   * @param loader - the method for building the model.
+   * @return the cached or newly built model.
+   */
+  private MarkovModel get(Object key, ModelLoader loader)
+      throws IOException, InvalidDistributionException, InvalidScheduleException,
+          NoWorkoutTypeException {
+    long start = System.nanoTime();
+    try {
+      return this.cache.get(key, loader::load);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException io) {
+        throw io;
+      } else if (cause instanceof InvalidDistributionException distribution) {
+        throw distribution;
+      } else if (cause instanceof InvalidScheduleException schedule) {
+        throw schedule;
+      } else if (cause instanceof NoWorkoutTypeException noWorkout) {
+        throw noWorkout;
+      }
+      throw new IllegalStateException("Unexpected failure when building a model.", cause);
+    } finally {
+      BUILD_TIME.observeNanos(System.nanoTime() - start);
+    }
+  }
+
+  /** A method for building a model on a cache miss. */
+  @FunctionalInterface
+  private interface ModelLoader {
+    MarkovModel load()
+        throws IOException, InvalidDistributionException, InvalidScheduleException,
+            NoWorkoutTypeException;
+  }
+
+  /** The key of a variable model: the catalog version, and every parameter of the build method. */
+  private record VariableKey(
+      long version,
+      Set<Workout> lowWorkouts,
+      Set<Workout> highWorkouts,
+      int minutes,
+      double highPercent) {}
+
+  /** The key of a linear model: the catalog version, the example week, and the start day. */
+  private record LinearKey(long version, List<DayKey> week, DayOfWeek startDay) {}
+
+  /** The parts of a Day that a LinearModelBuilder reads. */
+  private record DayKey(DayOfWeek day, int numberOfWorkouts, List<WorkoutDescription> plan) {}
+}
@@ -115,14 +115,15 @@ public class VariableModelBuilder {
     for (Workout wo : lowWorkouts) {
       builder.generateNewState(Workout.value(wo));
       builder.setEmissionDistribution(
-          Workout.value(wo), this.dists.getEmissionDist(new Day.WorkoutDescription(wo, lowLength)));
+          Workout.value(wo),
+          this.dists.getFrozenEmissionDist(new Day.WorkoutDescription(wo, lowLength)));
     }
 
     // generates emission distribution for all low intensity workouts
     for (Workout wo : highWorkouts) {
       builder.generateNewState(Workout.value(wo));
       builder.setEmissionDistribution(
-          Workout.value(wo), this.dists.getEmissionDist(new Day.WorkoutDescription(wo, 60)));
+          Workout.value(wo), this.dists.getFrozenEmissionDist(new Day.WorkoutDescription(wo, 60)));
     }
 
     // generates transition distribution for all workouts
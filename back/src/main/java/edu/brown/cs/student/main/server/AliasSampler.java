@@ -0,0 +1,167 @@
+package edu.brown.cs.student.main.server;
+
+import edu.brown.cs.student.main.models.exceptions.InvalidDistributionException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The AliasSampler class is a precompiled version of a probability distribution, built using Vose's
+ * alias method. Building the sampler is linear in the size of the distribution, but every draw
+ * afterwards takes constant time and allocates nothing, unlike walking the cumulative distribution
+ * of a HashMap on every call (as RandomGenerator.generateRandomFromDistribution does). Instances
+ * are immutable, and so may be shared between threads.
+ *
+ * @param <T> the type of the outcomes of the distribution.
+ */
+public final class AliasSampler<T> {
+
+  private final List<T> outcomes;
+  private final double[] probability;
+  private final int[] alias;
+
+  /**
+   * The constructor for the AliasSampler class, which takes in a list of outcomes and their
+   * associated (non-negative) weights, and builds the alias tables. Weights are normalized by their
+   * sum, so they do not need to sum to exactly 1.
+   *
+   * @param outcomes - the outcomes of the distribution.
+   * @param weights - the weight of each outcome, by index.
+   * @throws InvalidDistributionException if the lists do not match in length, if a weight is
+   *     negative or not finite, or if no outcome has a positive weight.
+   */
+  public AliasSampler(List<T> outcomes, double[] weights) throws InvalidDistributionException {
+    if (outcomes.size() != weights.length) {
+      throw new InvalidDistributionException(
+          "Outcomes and weights did not match in length when building an alias sampler.",
+          new HashMap());
+    }
+    int n = weights.length;
+    double sum = 0;
+    for (int i = 0; i < n; i++) {
+      if (!Double.isFinite(weights[i])) {
+        throw new InvalidDistributionException(
+            "The probability associated with the output " + outcomes.get(i) + " was not finite.",
+            new HashMap());
+      }
+      if (weights[i] < 0) {
+        throw new InvalidDistributionException(
+            "The probability associated with the output " + outcomes.get(i) + " was negative.",
+            new HashMap());
+      }
+      sum += weights[i];
+    }
+    if (n == 0 || sum <= 0) {
+      throw new InvalidDistributionException(
+          "No output of the distribution had a positive probability.", new HashMap());
+    }
+
+    this.outcomes = List.copyOf(outcomes);
+    this.probability = new double[n];
+    this.alias = new int[n];
+
+    // Vose's method: scale every weight so the average is 1, then repeatedly pair an under-full
+    // column with an over-full one, so each column holds at most two outcomes.
+    double[] scaled = new double[n];
+    int[] small = new int[n];
+    int[] large = new int[n];
+    int numSmall = 0;
+    int numLarge = 0;
+    for (int i = 0; i < n; i++) {
+      scaled[i] = weights[i] * n / sum;
+      if (scaled[i] < 1.0) {
+        small[numSmall++] = i;
+      } else {
+        large[numLarge++] = i;
+      }
+    }
+
+    while (numSmall > 0 && numLarge > 0) {
+      int less = small[--numSmall];
+      int more = large[--numLarge];
+      this.probability[less] = scaled[less];
+      this.alias[less] = more;
+      scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+      if (scaled[more] < 1.0) {
+        small[numSmall++] = more;
+      } else {
+        large[numLarge++] = more;
+      }
+    }
+
+    // whatever is left over is only off from 1 by floating point error
+    while (numLarge > 0) {
+      int more = large[--numLarge];
+      this.probability[more] = 1.0;
+      this.alias[more] = more;
+    }
+    while (numSmall > 0) {
+      int less = small[--numSmall];
+      this.probability[less] = 1.0;
+      this.alias[less] = less;
+    }
+  }
+
+  /**
+   * Builds an AliasSampler from a probability distribution stored as a HashMap, after validating it
+   * with RandomGenerator.validateDistribution.
+   *
+   * @param type - the type of the outputs of the distribution.
+   * @param distribution - the probability distribution of outputs, stored as a HashMap.
+   * @return the compiled sampler.
+   * @param <T> the type of the outputs of the distribution.
+   * @throws InvalidDistributionException if the distribution is not valid.
+   */
+  public static <T> AliasSampler<T> of(Class<T> type, HashMap<T, Double> distribution)
+      throws InvalidDistributionException {
+    RandomGenerator.validateDistribution(type, distribution);
+    List<T> outcomes = new ArrayList<>(distribution.size());
+    double[] weights = new double[distribution.size()];
+    int i = 0;
+    for (T key : distribution.keySet()) {
+      outcomes.add(key);
+      weights[i++] = distribution.get(key);
+    }
+    return new AliasSampler<>(outcomes, weights);
+  }
+
+  /**
+   * Draws the index of a random outcome, in constant time.
+   *
+   * @return the index of the drawn outcome.
+   */
+  public int sampleIndex() {
+    ThreadLocalRandom r = ThreadLocalRandom.current();
+    int column = r.nextInt(this.probability.length);
+    return r.nextDouble() < this.probability[column] ? column : this.alias[column];
+  }
+
+  /**
+   * Draws a random outcome, in constant time.
+   *
+   * @return the drawn outcome.
+   */
+  public T sample() {
+    return this.outcomes.get(this.sampleIndex());
+  }
+
+  /**
+   * Returns the outcome stored at a given index.
+   *
+   * @param index - the index of the outcome.
+   * @return the outcome.
+   */
+  public T outcome(int index) {
+    return this.outcomes.get(index);
+  }
+
+  /**
+   * Returns the number of outcomes of this sampler.
+   *
+   * @return the number of outcomes.
+   */
+  public int size() {
+    return this.outcomes.size();
+  }
+}
@@ -0,0 +1,233 @@
+package edu.brown.cs.student.main.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import spark.Request;
+import spark.Response;
+
+/**
+ * The Compression class compresses response bodies with gzip or deflate, whichever the client
+ * prefers in its Accept-Encoding header. Schedules are long, repetitive JSON, so they shrink to a
+ * small fraction of their size. Bodies shorter than MIN_BYTES are sent as they are, as compressing
+ * them saves little and costs a Deflater. Handlers stream their bodies (see Serializer.respond), so
+ * the choice is made while the body is written: the first MIN_BYTES are held back, and the body is
+ * only compressed once it grows past them. Bodies returned as Strings are compressed by the after
+ * filter instead.
+ */
+public final class Compression {
+
+  // system property setting the smallest body, in bytes, that is compressed
+  public static final String MIN_BYTES_PROPERTY = "airobic.compression.min.bytes";
+  public static final int DEFAULT_MIN_BYTES = 1024;
+  public static final String GZIP = "gzip";
+  public static final String DEFLATE = "deflate";
+  public static int MIN_BYTES = Integer.getInteger(MIN_BYTES_PROPERTY, DEFAULT_MIN_BYTES);
+
+  private Compression() {}
+
+  /**
+   * Opens the body of a response, which is compressed if the client accepts it and the body is long
+   * enough. Headers must be set before this is called. Closing the returned stream finishes the
+   * body but leaves the response's own stream open.
+   *
+   * @param request - the request being answered.
+   * @param response - the response to write the body of.
+   * @return the stream to write the body to.
+   * @throws IOException if the response's stream cannot be opened.
+   */
+  public static OutputStream body(Request request, Response response) throws IOException {
+    return body(request.headers("Accept-Encoding"), response.raw(), MIN_BYTES);
+  }
+
+  /**
+   * Opens the body of a response, given the client's Accept-Encoding header.
+   *
+   * @param acceptEncoding - the request's Accept-Encoding header, which may be null.
+   * @param response - the response to write the body of.
+   * @param minBytes - the smallest body that is compressed.
+   * @return the stream to write the body to.
+   * @throws IOException if the response's stream cannot be opened.
+   */
+  public static OutputStream body(String acceptEncoding, HttpServletResponse response, int minBytes)
+      throws IOException {
+    // the body depends on Accept-Encoding whether or not this one is compressed
+    response.addHeader("Vary", "Accept-Encoding");
+    String encoding = negotiate(acceptEncoding);
+    if (encoding == null || response.containsHeader("Content-Encoding")) {
+      return new Unclosed(response.getOutputStream());
+    }
+    return new Body(encoding, response, minBytes);
+  }
+
+  /**
+   * The after filter, which compresses bodies that routes returned as Strings (like the metrics),
+   * if they are long enough. Streamed bodies have already been sent by then, so are left alone.
+   *
+   * @param request - the request being answered.
+   * @param response - the response, whose body is sent here if it is compressed.
+   * @throws IOException if the response cannot be written to.
+   */
+  public static void after(Request request, Response response) throws IOException {
+    String body = response.body();
+    if (body == null || response.raw().isCommitted()) {
+      return;
+    } else if (body.length() < MIN_BYTES || negotiate(request.headers("Accept-Encoding")) == null) {
+      response.header("Vary", "Accept-Encoding");
+      return;
+    }
+    try (OutputStream out = body(request, response)) {
+      out.write(body.getBytes(StandardCharsets.UTF_8));
+    }
+    // the body has been sent, so Spark has nothing left to write
+    response.body("");
+  }
+
+  /**
+   * Chooses the encoding to send a body in from an Accept-Encoding header, like "gzip, deflate, br"
+   * or "deflate;q=1, gzip;q=0.5". Encodings with q=0 are refused, and "*" stands for any encoding
+   * not named. Ties go to gzip.
+   *
+   * @param acceptEncoding - the header, which may be null.
+   * @return GZIP, DEFLATE, or null if the body should not be compressed.
+   */
+  public static String negotiate(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return null;
+    }
+    double gzip = -1;
+    double deflate = -1;
+    double any = -1;
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.split(";");
+      double quality = 1;
+      for (int i = 1; i < parts.length; i++) {
+        String parameter = parts[i].trim();
+        if (parameter.startsWith("q=")) {
+          try {
+            quality = Double.parseDouble(parameter.substring(2));
+          } catch (NumberFormatException e) {
+            quality = 0;
+          }
+        }
+      }
+      switch (parts[0].trim().toLowerCase(Locale.ROOT)) {
+        case "gzip", "x-gzip" -> gzip = quality;
+        case DEFLATE -> deflate = quality;
+        case "*" -> any = quality;
+        default -> {}
+      }
+    }
+    gzip = gzip < 0 ? any : gzip;
+    deflate = deflate < 0 ? any : deflate;
+    if (gzip > 0 && gzip >= deflate) {
+      return GZIP;
+    } else if (deflate > 0) {
+      return DEFLATE;
+    }
+    return null;
+  }
+
+  /**
+   * A body that holds back its first bytes until it knows whether it is long enough to compress.
+   * Flushing does not decide, as serializers flush when they finish; closing does.
+   */
+  private static final class Body extends OutputStream {
+    private final String encoding;
+    private final HttpServletResponse response;
+    private final int minBytes;
+    private ByteArrayOutputStream held;
+    private OutputStream out;
+
+    private Body(String encoding, HttpServletResponse response, int minBytes) {
+      this.encoding = encoding;
+      this.response = response;
+      this.minBytes = minBytes;
+      this.held = new ByteArrayOutputStream(Math.min(minBytes, 8192));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      this.write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      if (this.out == null && this.held.size() + length >= this.minBytes) {
+        this.compress();
+      }
+      if (this.out == null) {
+        this.held.write(bytes, offset, length);
+      } else {
+        this.out.write(bytes, offset, length);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (this.out != null) {
+        this.out.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (this.held == null) {
+        return;
+      } else if (this.out == null) {
+        // too short to compress, so it is sent as it is, with its length known
+        this.response.setContentLength(this.held.size());
+        OutputStream raw = this.response.getOutputStream();
+        this.held.writeTo(raw);
+        raw.flush();
+      } else {
+        this.out.close();
+      }
+      this.held = null;
+    }
+
+    // Starts compressing, sending the bytes held back so far first
+    private void compress() throws IOException {
+      this.response.setHeader("Content-Encoding", this.encoding);
+      // the compressed bytes differ from the JSON the ETag was made from, but mean the same thing,
+      // which is what a weak ETag says; If-None-Match compares the two alike
+      String etag = this.response.getHeader("ETag");
+      if (etag != null && !etag.startsWith("W/")) {
+        this.response.setHeader("ETag", "W/" + etag);
+      }
+      OutputStream raw = new Unclosed(this.response.getOutputStream());
+      this.out =
+          GZIP.equals(this.encoding)
+              ? new GZIPOutputStream(raw, 8192)
+              : new DeflaterOutputStream(raw);
+      this.held.writeTo(this.out);
+      this.held.reset();
+    }
+  }
+
+  /**
+   * The response's own stream, which is flushed rather than closed when the body is finished, so
+   * that Spark can still finish the response.
+   */
+  private static final class Unclosed extends FilterOutputStream {
+    private Unclosed(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      this.out.write(bytes, offset, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.out.flush();
+    }
+  }
+}
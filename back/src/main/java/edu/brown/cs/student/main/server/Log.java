@@ -0,0 +1,290 @@
+package edu.brown.cs.student.main.server;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Log class writes leveled, structured log lines without making the threads that log wait on
+ * the output. Logging formats nothing; it only puts an entry in a fixed-size ring buffer, and a
+ * single writer thread formats the entries and writes them out in batches. If the buffer is full,
+ * entries are dropped (and counted) rather than blocking a request. Each line is an event name
+ * followed by key=value fields, like
+ *
+ * <pre>
+ * time=2023-04-27T14:03:12.518Z level=INFO event=plan_requested username=alexfake model=model1
+ * </pre>
+ *
+ * Lines below the level in the airobic.log.level property (INFO by default) are skipped. Payloads,
+ * like whole schedules, are only logged for the fraction of calls set by the airobic.log.payloads
+ * property, which is 0 by default, and are cut off at MAX_PAYLOAD_CHARS.
+ */
+public final class Log {
+
+  // system property setting the lowest level logged: DEBUG, INFO (the default), WARN or ERROR
+  public static final String LEVEL_PROPERTY = "airobic.log.level";
+  // system property setting the fraction of payloads logged, from 0 (the default) to 1
+  public static final String PAYLOAD_PROPERTY = "airobic.log.payloads";
+  public static int CAPACITY = 8192;
+  public static int MAX_PAYLOAD_CHARS = 4096;
+
+  private static final Log SHARED =
+      new Log(
+          Level.valueOf(System.getProperty(LEVEL_PROPERTY, "INFO").toUpperCase()),
+          Double.parseDouble(System.getProperty(PAYLOAD_PROPERTY, "0")),
+          CAPACITY,
+          System.out);
+
+  static {
+    Metrics.shared()
+        .counter(
+            "airobic_log_dropped_total",
+            "Log lines dropped because the log buffer was full.",
+            SHARED::dropped);
+  }
+
+  private final Level threshold;
+  private final double payloadRate;
+  private final BlockingQueue<Entry> ring;
+  private final Appendable out;
+  private final LongAdder dropped;
+
+  /**
+   * The constructor for the Log class, which starts its writer thread.
+   *
+   * @param threshold - the lowest level to log.
+   * @param payloadRate - the fraction of payloads to log, from 0 to 1.
+   * @param capacity - the number of entries the ring buffer holds before dropping them.
+   * @param out - where the lines are written.
+   */
+  public Log(Level threshold, double payloadRate, int capacity, Appendable out) {
+    this.threshold = threshold;
+    this.payloadRate = payloadRate;
+    this.ring = new ArrayBlockingQueue<>(capacity);
+    this.out = out;
+    this.dropped = new LongAdder();
+    Thread writer = new Thread(this::write, "log-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Returns the log shared by the whole server, which writes to standard output.
+   *
+   * @return the shared Log.
+   */
+  public static Log shared() {
+    return SHARED;
+  }
+
+  /**
+   * Returns whether lines at a level are logged, for skipping work done only to log.
+   *
+   * @param level - the level.
+   * @return true if lines at the level are logged.
+   */
+  public boolean enabled(Level level) {
+    return level.compareTo(this.threshold) >= 0;
+  }
+
+  /**
+   * Logs an event for debugging.
+   *
+   * @param event - the name of the event, like "plan_requested".
+   * @param fields - pairs of field names and values.
+   */
+  public void debug(String event, Object... fields) {
+    this.log(Level.DEBUG, event, fields);
+  }
+
+  /**
+   * Logs an event in the normal running of the server.
+   *
+   * @param event - the name of the event.
+   * @param fields - pairs of field names and values.
+   */
+  public void info(String event, Object... fields) {
+    this.log(Level.INFO, event, fields);
+  }
+
+  /**
+   * Logs something that went wrong but was handled.
+   *
+   * @param event - the name of the event.
+   * @param fields - pairs of field names and values.
+   */
+  public void warn(String event, Object... fields) {
+    this.log(Level.WARN, event, fields);
+  }
+
+  /**
+   * Logs something that went wrong and was not handled.
+   *
+   * @param event - the name of the event.
+   * @param fields - pairs of field names and values.
+   */
+  public void error(String event, Object... fields) {
+    this.log(Level.ERROR, event, fields);
+  }
+
+  /**
+   * Logs an event at a level, if the level is enabled. Returns without waiting for the line to be
+   * written, dropping it if the ring buffer is full.
+   *
+   * @param level - the level of the event.
+   * @param event - the name of the event.
+   * @param fields - pairs of field names and values.
+   */
+  public void log(Level level, String event, Object... fields) {
+    if (this.enabled(level)
+        && !this.ring.offer(new Entry(System.currentTimeMillis(), level, event, fields, null))) {
+      this.dropped.increment();
+    }
+  }
+
+  /**
+   * Logs a payload, like a whole schedule, at the INFO level for a sampled fraction of calls (none,
+   * by default).
+   *
+   * @param event - the name of the event.
+   * @param payload - the payload, which is cut off at MAX_PAYLOAD_CHARS.
+   * @param fields - pairs of field names and values.
+   */
+  public void payload(String event, String payload, Object... fields) {
+    if (this.payloadRate <= 0
+        || !this.enabled(Level.INFO)
+        || ThreadLocalRandom.current().nextDouble() >= this.payloadRate) {
+      return;
+    }
+    if (payload != null && payload.length() > MAX_PAYLOAD_CHARS) {
+      payload =
+          payload.substring(0, MAX_PAYLOAD_CHARS) + "... (" + payload.length() + " characters)";
+    }
+    Object[] withPayload = new Object[fields.length + 2];
+    System.arraycopy(fields, 0, withPayload, 0, fields.length);
+    withPayload[fields.length] = "payload";
+    withPayload[fields.length + 1] = payload;
+    this.log(Level.INFO, event, withPayload);
+  }
+
+  /**
+   * Returns the number of lines dropped because the ring buffer was full.
+   *
+   * @return the number of dropped lines.
+   */
+  public long dropped() {
+    return this.dropped.sum();
+  }
+
+  /**
+   * Waits until every line logged before this call has been written.
+   *
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public void flush() throws InterruptedException {
+    CountDownLatch written = new CountDownLatch(1);
+    this.ring.put(new Entry(0, null, null, null, written));
+    written.await();
+  }
+
+  // Runs on the writer thread, writing everything in the ring buffer in one go whenever it has
+  // entries
+  private void write() {
+    List<Entry> entries = new ArrayList<>();
+    StringBuilder lines = new StringBuilder();
+    while (true) {
+      try {
+        entries.add(this.ring.take());
+      } catch (InterruptedException e) {
+        return;
+      }
+      this.ring.drainTo(entries);
+      for (Entry entry : entries) {
+        if (entry.written == null) {
+          format(lines, entry);
+        }
+      }
+      try {
+        this.out.append(lines);
+        if (this.out instanceof Flushable flushable) {
+          flushable.flush();
+        }
+      } catch (IOException e) {
+        // there is nowhere left to report it, so the lines are lost
+      }
+      for (Entry entry : entries) {
+        if (entry.written != null) {
+          entry.written.countDown();
+        }
+      }
+      entries.clear();
+      lines.setLength(0);
+    }
+  }
+
+  private static void format(StringBuilder line, Entry entry) {
+    line.append("time=").append(Instant.ofEpochMilli(entry.millis));
+    line.append(" level=").append(entry.level);
+    line.append(" event=");
+    value(line, entry.event);
+    for (int i = 0; i + 1 < entry.fields.length; i += 2) {
+      line.append(' ').append(entry.fields[i]).append('=');
+      value(line, entry.fields[i + 1]);
+    }
+    line.append('\n');
+  }
+
+  // Writes a field value, quoting it if it is empty or has spaces, quotes or equals signs in it
+  private static void value(StringBuilder line, Object value) {
+    String text = String.valueOf(value);
+    boolean quote = text.isEmpty();
+    for (int i = 0; i < text.length() && !quote; i++) {
+      char c = text.charAt(i);
+      quote = c <= ' ' || c == '"' || c == '=' || c == '\\';
+    }
+    if (!quote) {
+      line.append(text);
+      return;
+    }
+    line.append('"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '"' -> line.append("\\\"");
+        case '\\' -> line.append("\\\\");
+        case '\n' -> line.append("\\n");
+        case '\r' -> line.append("\\r");
+        case '\t' -> line.append("\\t");
+        default -> line.append(c);
+      }
+    }
+    line.append('"');
+  }
+
+  /** The levels of log lines, from least to most severe. */
+  public enum Level {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR
+  }
+
+  /**
+   * One line waiting in the ring buffer, or a marker that a flush is waiting on.
+   *
+   * @param millis - the time of the event.
+   * @param level - the level of the event.
+   * @param event - the name of the event.
+   * @param fields - pairs of field names and values.
+   * @param written - counted down once the lines before it are written, for flush markers only.
+   */
+  private record Entry(
+      long millis, Level level, String event, Object[] fields, CountDownLatch written) {}
+}
@@ -0,0 +1,302 @@
+package edu.brown.cs.student.main.server;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import spark.Route;
+
+/**
+ * The Metrics class is a registry of counters, gauges and latency histograms, which it renders in
+ * the Prometheus text format for the /metrics route. Recording is cheap enough for every request:
+ * counters and histogram buckets are LongAdders, so threads recording at once do not contend, and
+ * nothing is allocated or locked. Histograms have fixed buckets (see BUCKETS), from which
+ * Prometheus estimates percentiles such as the p99. Metrics are named, and may be labelled with
+ * pairs of label names and values; asking for the same name and labels again returns the same
+ * metric, so call sites can keep them in static fields.
+ */
+public final class Metrics {
+
+  // the upper bounds of the histogram buckets, in seconds
+  public static final double[] BUCKETS = {
+    0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30
+  };
+  public static final String STAGE = "airobic_plan_stage_seconds";
+
+  private static final Metrics SHARED = new Metrics();
+
+  private final Map<String, Family> families;
+
+  public Metrics() {
+    this.families = new ConcurrentSkipListMap<>();
+  }
+
+  /**
+   * Returns the registry shared by the whole server, which is what /metrics shows.
+   *
+   * @return the shared Metrics.
+   */
+  public static Metrics shared() {
+    return SHARED;
+  }
+
+  /**
+   * Returns the shared histogram for one stage of plan generation.
+   *
+   * @param stage - the stage, like "model_build" or "db_write".
+   * @return the histogram of the stage's latency.
+   */
+  public static Histogram stage(String stage) {
+    return SHARED.histogram(STAGE, "Time taken by each stage of plan generation.", "stage", stage);
+  }
+
+  /**
+   * Wraps a route so that the time taken by every request, and every request that throws, is
+   * recorded in the shared registry under the route's name.
+   *
+   * @param name - the name of the route.
+   * @param route - the route to time.
+   * @return the timed route.
+   */
+  public static Route timed(String name, Route route) {
+    Histogram latency =
+        SHARED.histogram(
+            "airobic_http_request_seconds", "Time taken to handle requests.", "route", name);
+    Counter errors =
+        SHARED.counter(
+            "airobic_http_errors_total", "Requests that failed with an exception.", "route", name);
+    return (request, response) -> {
+      long start = System.nanoTime();
+      try {
+        return route.handle(request, response);
+      } catch (Exception e) {
+        errors.increment();
+        throw e;
+      } finally {
+        latency.observeNanos(System.nanoTime() - start);
+      }
+    };
+  }
+
+  /**
+   * Returns the histogram with a name and labels, registering it if it is new.
+   *
+   * @param name - the name of the histogram, which should end in _seconds.
+   * @param help - a description of the histogram.
+   * @param labels - pairs of label names and values.
+   * @return the histogram.
+   */
+  public Histogram histogram(String name, String help, String... labels) {
+    Family family = this.family(name, help, "histogram");
+    return (Histogram) family.children.computeIfAbsent(labels(labels), key -> new Histogram());
+  }
+
+  /**
+   * Returns the counter with a name and labels, registering it if it is new.
+   *
+   * @param name - the name of the counter, which should end in _total.
+   * @param help - a description of the counter.
+   * @param labels - pairs of label names and values.
+   * @return the counter.
+   */
+  public Counter counter(String name, String help, String... labels) {
+    Family family = this.family(name, help, "counter");
+    return (Counter) family.children.computeIfAbsent(labels(labels), key -> new Counter());
+  }
+
+  /**
+   * Registers a counter whose value is read from elsewhere (like a cache's hit count) whenever the
+   * metrics are rendered, replacing any counter with the same name and labels.
+   *
+   * @param name - the name of the counter, which should end in _total.
+   * @param help - a description of the counter.
+   * @param value - reads the counter's current value.
+   * @param labels - pairs of label names and values.
+   */
+  public void counter(String name, String help, LongSupplier value, String... labels) {
+    Family family = this.family(name, help, "counter");
+    family.children.put(
+        labels(labels),
+        (out, metric, labelled) -> sample(out, metric, labelled, value.getAsLong()));
+  }
+
+  /**
+   * Registers a gauge whose value is read whenever the metrics are rendered, replacing any gauge
+   * with the same name and labels.
+   *
+   * @param name - the name of the gauge.
+   * @param help - a description of the gauge.
+   * @param value - reads the gauge's current value.
+   * @param labels - pairs of label names and values.
+   */
+  public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+    Family family = this.family(name, help, "gauge");
+    family.children.put(
+        labels(labels),
+        (out, metric, labelled) -> sample(out, metric, labelled, value.getAsDouble()));
+  }
+
+  /**
+   * Renders every metric in the Prometheus text exposition format (version 0.0.4).
+   *
+   * @return the rendered metrics.
+   */
+  public String render() {
+    StringBuilder out = new StringBuilder();
+    for (Map.Entry<String, Family> entry : this.families.entrySet()) {
+      Family family = entry.getValue();
+      out.append("# HELP ").append(entry.getKey()).append(' ').append(family.help).append('\n');
+      out.append("# TYPE ").append(entry.getKey()).append(' ').append(family.type).append('\n');
+      for (Map.Entry<String, Metric> child : family.children.entrySet()) {
+        child.getValue().render(out, entry.getKey(), child.getKey());
+      }
+    }
+    return out.toString();
+  }
+
+  private Family family(String name, String help, String type) {
+    Family family = this.families.computeIfAbsent(name, key -> new Family(help, type));
+    if (!family.type.equals(type)) {
+      throw new IllegalArgumentException(name + " is a " + family.type + ", not a " + type);
+    }
+    return family;
+  }
+
+  // Renders label pairs as the inside of a Prometheus label set, like route="adduser"
+  private static String labels(String... labels) {
+    if (labels.length % 2 != 0) {
+      throw new IllegalArgumentException("Labels must come in name and value pairs");
+    }
+    StringBuilder out = new StringBuilder();
+    for (int i = 0; i < labels.length; i += 2) {
+      if (i > 0) {
+        out.append(',');
+      }
+      out.append(labels[i]).append("=\"");
+      for (char c : labels[i + 1].toCharArray()) {
+        switch (c) {
+          case '\\' -> out.append("\\\\");
+          case '"' -> out.append("\\\"");
+          case '\n' -> out.append("\\n");
+          default -> out.append(c);
+        }
+      }
+      out.append('"');
+    }
+    return out.toString();
+  }
+
+  private static void sample(StringBuilder out, String metric, String labels, double value) {
+    out.append(metric);
+    if (!labels.isEmpty()) {
+      out.append('{').append(labels).append('}');
+    }
+    out.append(' ').append(format(value)).append('\n');
+  }
+
+  // Formats a value without an exponent, as 0.0005 rather than 5.0E-4
+  private static String format(double value) {
+    if (Double.isNaN(value)) {
+      return "NaN";
+    } else if (Double.isInfinite(value)) {
+      return value > 0 ? "+Inf" : "-Inf";
+    }
+    return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+  }
+
+  /** Something that can render its samples. */
+  @FunctionalInterface
+  private interface Metric {
+    void render(StringBuilder out, String name, String labels);
+  }
+
+  /** All the metrics with one name. */
+  private static final class Family {
+    private final String help;
+    private final String type;
+    private final Map<String, Metric> children;
+
+    private Family(String help, String type) {
+      this.help = help;
+      this.type = type;
+      this.children = new ConcurrentSkipListMap<>();
+    }
+  }
+
+  /** A count that only goes up. */
+  public static final class Counter implements Metric {
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+      this.count.increment();
+    }
+
+    public long get() {
+      return this.count.sum();
+    }
+
+    @Override
+    public void render(StringBuilder out, String name, String labels) {
+      sample(out, name, labels, this.count.sum());
+    }
+  }
+
+  /** A latency histogram with the fixed BUCKETS. */
+  public static final class Histogram implements Metric {
+    // buckets[i] counts observations in (BUCKETS[i - 1], BUCKETS[i]], and the last counts the rest
+    private final LongAdder[] buckets;
+    private final DoubleAdder sum;
+
+    private Histogram() {
+      this.buckets = new LongAdder[BUCKETS.length + 1];
+      for (int i = 0; i < this.buckets.length; i++) {
+        this.buckets[i] = new LongAdder();
+      }
+      this.sum = new DoubleAdder();
+    }
+
+    /**
+     * Records one observation.
+     *
+     * @param nanos - the time observed, in nanoseconds.
+     */
+    public void observeNanos(long nanos) {
+      double seconds = nanos / 1e9;
+      int bucket = 0;
+      while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) {
+        bucket++;
+      }
+      this.buckets[bucket].increment();
+      this.sum.add(seconds);
+    }
+
+    /**
+     * Returns the number of observations.
+     *
+     * @return the count.
+     */
+    public long count() {
+      long count = 0;
+      for (LongAdder bucket : this.buckets) {
+        count += bucket.sum();
+      }
+      return count;
+    }
+
+    @Override
+    public void render(StringBuilder out, String name, String labels) {
+      String prefix = labels.isEmpty() ? "" : labels + ",";
+      long cumulative = 0;
+      for (int i = 0; i < this.buckets.length; i++) {
+        cumulative += this.buckets[i].sum();
+        String le = i < BUCKETS.length ? format(BUCKETS[i]) : "+Inf";
+        sample(out, name + "_bucket", prefix + "le=\"" + le + "\"", cumulative);
+      }
+      sample(out, name + "_sum", labels, this.sum.sum());
+      sample(out, name + "_count", labels, cumulative);
+    }
+  }
+}
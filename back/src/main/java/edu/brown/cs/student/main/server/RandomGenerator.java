@@ -58,7 +58,8 @@ public class RandomGenerator {
   /**
    * This static method generates a random object of type T from a probability distribution stored
    * in a HashMap (T to probability as a double). Chooses a random number between 0 and 1 and finds
-   * what outcome that number corresponds to on the cumulative distribution function.
+   * what outcome that number corresponds to on the cumulative distribution function. For
+   * distributions that are drawn from repeatedly, an AliasSampler should be built once instead.
    *
    * @param type - the type of the outputs of the distribution
    * @param distribution - the probability distribution of outputs, stored as a HashMap
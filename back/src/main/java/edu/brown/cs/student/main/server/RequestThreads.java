@@ -0,0 +1,149 @@
+package edu.brown.cs.student.main.server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+
+/**
+ * The RequestThreads class chooses the threads the server runs requests on. By default, requests
+ * run on Spark's pool of platform threads, so at most that many requests (200) are handled at once,
+ * even though most of them spend their time waiting on the database. On Java 21 or later, requests
+ * can instead each run on their own virtual thread, so the number handled at once is limited by the
+ * database (see DatabaseCommands.MAX_CONCURRENT_REQUESTS) and the plan generators (see PlanJobs),
+ * not by a thread pool. The server is built for Java 17, so virtual threads are looked up when the
+ * server starts, and the platform pool is kept if they are not available.
+ */
+public final class RequestThreads {
+
+  // system property choosing the threads requests run on: "platform" (the default) or "virtual"
+  public static final String MODE_PROPERTY = "airobic.server.threads";
+  public static final String PLATFORM = "platform";
+  public static final String VIRTUAL = "virtual";
+
+  private RequestThreads() {}
+
+  /**
+   * Makes Spark run requests on the threads chosen by the airobic.server.threads property. Must be
+   * called before the first route is added.
+   *
+   * @return the mode in use, which is PLATFORM if virtual threads were asked for but are not
+   *     available.
+   */
+  public static String configure() {
+    return configure(System.getProperty(MODE_PROPERTY, PLATFORM));
+  }
+
+  /**
+   * Makes Spark run requests on the given kind of thread. Must be called before the first route is
+   * added.
+   *
+   * @param mode - PLATFORM or VIRTUAL.
+   * @return the mode in use, which is PLATFORM if virtual threads were asked for but are not
+   *     available.
+   */
+  public static String configure(String mode) {
+    if (!VIRTUAL.equals(mode)) {
+      return PLATFORM;
+    }
+    ThreadFactory factory = virtualThreadFactory("request-");
+    if (factory == null) {
+      Log.shared()
+          .warn(
+              "virtual_threads_unavailable",
+              "message",
+              "Virtual threads need Java 21 or later, so requests run on platform threads.");
+      return PLATFORM;
+    }
+    EmbeddedServers.add(
+        EmbeddedServers.defaultIdentifier(),
+        new EmbeddedJettyFactory().withThreadPool(new ThreadPerTaskPool(factory)));
+    return VIRTUAL;
+  }
+
+  /**
+   * Returns a factory for virtual threads, if the running Java has them.
+   *
+   * @param prefix - the prefix of the threads' names, which are numbered from 0.
+   * @return the factory, or null if virtual threads are not available.
+   */
+  public static ThreadFactory virtualThreadFactory(String prefix) {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Method name = builderClass.getMethod("name", String.class, long.class);
+      builder = name.invoke(builder, prefix, 0L);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // before Java 21 there is no Thread.ofVirtual, or it is a preview that is not enabled
+      return null;
+    }
+  }
+
+  /**
+   * A Jetty ThreadPool that runs every task on a new thread from a factory, rather than keeping a
+   * fixed set of threads. Meant for virtual threads, which are cheap enough to make per request.
+   */
+  public static class ThreadPerTaskPool extends AbstractLifeCycle implements ThreadPool {
+    private final ThreadFactory factory;
+    private final AtomicInteger threads;
+    private final CountDownLatch stopped;
+
+    /**
+     * The constructor for the ThreadPerTaskPool class.
+     *
+     * @param factory - makes the thread for each task.
+     */
+    public ThreadPerTaskPool(ThreadFactory factory) {
+      this.factory = factory;
+      this.threads = new AtomicInteger();
+      this.stopped = new CountDownLatch(1);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      this.threads.incrementAndGet();
+      this.factory
+          .newThread(
+              () -> {
+                try {
+                  task.run();
+                } finally {
+                  this.threads.decrementAndGet();
+                }
+              })
+          .start();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+      this.stopped.countDown();
+      super.doStop();
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+      this.stopped.await();
+    }
+
+    @Override
+    public int getThreads() {
+      return this.threads.get();
+    }
+
+    // a new thread is made for every task, so none are ever idle, and the pool never runs low
+    @Override
+    public int getIdleThreads() {
+      return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+      return false;
+    }
+  }
+}
@@ -1,14 +1,27 @@
 package edu.brown.cs.student.main.server;
 
 import static spark.Spark.after;
+import static spark.Spark.before;
 
+import edu.brown.cs.student.main.database.CachingStore;
+import edu.brown.cs.student.main.database.DatabaseCommands;
+import edu.brown.cs.student.main.database.EmbeddedStore;
+import edu.brown.cs.student.main.database.ScheduleStore;
+import edu.brown.cs.student.main.database.WriteBehindStore;
 import edu.brown.cs.student.main.handlers.*;
+import edu.brown.cs.student.main.models.markov.modelbuilding.WorkoutCatalog;
+import edu.brown.cs.student.main.rowing.distributiongenerators.RowingWorkoutByName;
+import edu.brown.cs.student.main.rowing.modelbuilders.ModelCache;
 import java.io.IOException;
+import java.time.Duration;
 import spark.Spark;
 
 /** The Server class represents the main entry point for running the server. */
 public class Server {
 
+  // system property choosing where data is kept: "firebase" (the default) or "embedded"
+  public static final String STORE_PROPERTY = "airobic.store";
+
   /**
    * The main method initializes and starts the server, setting up necessary endpoints and handlers.
    *
@@ -16,40 +29,186 @@ public class Server {
    */
   public static void main(String[] args) throws IOException, InterruptedException {
 
+    // Load the workout catalog before taking requests, so no request has to read the workout file.
+    WorkoutCatalog.shared(RowingWorkoutByName.WORKOUT_FILE);
+
+    // Open the store chosen by the airobic.store property, shared by every handler.
+    ScheduleStore store = openStore();
+    // Send anything the store is still holding, then write out the log, before the server exits.
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(
+                () -> {
+                  if (store instanceof AutoCloseable closeable) {
+                    try {
+                      closeable.close();
+                    } catch (Exception e) {
+                      Log.shared().error("store_close_failed", "error", e.getMessage());
+                    }
+                  }
+                  try {
+                    Log.shared().flush();
+                  } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                  }
+                }));
+
+    // Report the plan generators' queue and the model cache in the metrics.
+    registerMetrics(Metrics.shared());
+
+    // Choose the threads requests run on (set by the airobic.server.threads property).
+    String threads = RequestThreads.configure();
+
     // Set the port number for the server to listen on.
     Spark.port(3235);
 
     // Set the headers for cross-origin resource sharing (CORS) to allow any origin and any method.
-    after(
+    // They are set before each request is handled, as handlers stream their responses, which can
+    // send the headers before an after filter would run.
+    before(
         (request, response) -> {
           response.header("Access-Control-Allow-Origin", "*");
           response.header("Access-Control-Allow-Methods", "*");
+          response.header("Access-Control-Expose-Headers", "ETag");
         });
 
-    Spark.get("adduser", new AddNewUser());
+    Spark.get("adduser", Metrics.timed("adduser", new AddNewUser(store)));
     // localhost:3235/adduser?username=alexfake
-    Spark.get("deleteuser", new DeleteUser());
+    Spark.get("deleteuser", Metrics.timed("deleteuser", new DeleteUser(store)));
     // localhost:3235/deleteuser?username=alexfake
-    Spark.get("create-plan", new CreatePlan());
+    Spark.get("create-plan", Metrics.timed("create-plan", new CreatePlan(store)));
     // localhost:3235/create-plan?username=alexfake&sport=rowing&startDate=27Apr2023&endDate=29Apr2023&hoursPerWeek=10&model=linear&goal=2k
-    Spark.get("getuserworkouts", new GetUserWorkouts());
+    Spark.get("plan-status", Metrics.timed("plan-status", new PlanStatus()));
+    // localhost:3235/plan-status?job=(the job id returned by create-plan&async=true)
+    Spark.get("getuserworkouts", Metrics.timed("getuserworkouts", new GetUserWorkouts(store)));
     // localhost:3235/getuserworkouts?username=alexfake
-    Spark.get("checkuser", new CheckUser());
+    // localhost:3235/getuserworkouts?username=alexfake&week=0 (or &from=2023-04-27&to=2023-05-03)
+    Spark.get("checkuser", Metrics.timed("checkuser", new CheckUser(store)));
     // localhost:3235/checkuser?username=alexfake
-    Spark.get("updateworkout", new UpdateWorkout());
+    Spark.get("updateworkout", Metrics.timed("updateworkout", new UpdateWorkout(store)));
     // localhost:3235/updateworkout?username=alexfake&day=0&workout=0&rpe=10&split=2:20.0&distance=6000
 
+    Spark.get("metrics", new GetMetrics());
+    // localhost:3235/metrics
+
+    // Compress long bodies returned as Strings; handlers that stream their bodies compress them as
+    // they write them (see Compression).
+    after(Compression::after);
+
     // Initialize and start the Spark server.
     Spark.init();
     Spark.awaitInitialization();
 
-    // Print a message to indicate that the server has started successfully.
-    System.out.println("Server started.");
+    // Log a message to indicate that the server has started successfully.
+    Log.shared().info("server_started", "port", Spark.port(), "threads", threads);
 
-    // Print a message to indicate that the server will not work for Windows.
+    // Log a message to indicate that the server will not work for Windows.
     String os = System.getProperty("os.name").toLowerCase();
     if (os.contains("win")) {
-      System.out.println("This code will not work for Windows");
+      Log.shared()
+          .warn("unsupported_os", "os", os, "message", "This code will not work for Windows");
+    }
+  }
+
+  /**
+   * Opens the store chosen by the airobic.store property: the embedded store kept in the file from
+   * the airobic.store.file property for "embedded", or the Realtime Database otherwise. Updates
+   * made with updateLater (logged workout data) are batched for the window in the
+   * airobic.store.window property (in milliseconds), unless it is 0, and reads are cached in up to
+   * airobic.store.cache.bytes of memory, unless it is 0.
+   *
+   * @return the store for the handlers to share.
+   * @throws IOException if the embedded store's file cannot be read.
+   */
+  static ScheduleStore openStore() throws IOException {
+    ScheduleStore store = openBackingStore();
+    long window =
+        Long.getLong(WriteBehindStore.WINDOW_PROPERTY, WriteBehindStore.DEFAULT_WINDOW.toMillis());
+    Metrics metrics = Metrics.shared();
+    if (window > 0) {
+      WriteBehindStore writeBehind = new WriteBehindStore(store, Duration.ofMillis(window));
+      metrics.gauge(
+          "airobic_write_behind_queue_depth",
+          "Paths with updates waiting to be sent.",
+          () -> writeBehind.metrics().queueDepth());
+      metrics.counter(
+          "airobic_write_behind_flushes_total",
+          "Batches of updates sent.",
+          () -> writeBehind.metrics().flushes());
+      metrics.counter(
+          "airobic_write_behind_failures_total",
+          "Attempts to send a batch of updates that failed.",
+          () -> writeBehind.metrics().failures());
+      metrics.counter(
+          "airobic_write_behind_dropped_total",
+          "Batches of updates dropped after failing to send too many times in a row.",
+          () -> writeBehind.metrics().dropped());
+      metrics.gauge(
+          "airobic_write_behind_flush_seconds_mean",
+          "Mean time taken to send a batch of updates.",
+          () -> writeBehind.metrics().meanFlushMillis() / 1000);
+      metrics.gauge(
+          "airobic_write_behind_flush_seconds_max",
+          "Longest time taken to send a batch of updates.",
+          () -> writeBehind.metrics().maxFlushMillis() / 1000);
+      store = writeBehind;
     }
+    long cacheBytes = Long.getLong(CachingStore.BYTES_PROPERTY, CachingStore.DEFAULT_MAX_BYTES);
+    if (cacheBytes > 0) {
+      CachingStore caching = new CachingStore(store, cacheBytes, CachingStore.DEFAULT_EXPIRY);
+      metrics.counter(
+          "airobic_cache_hits_total",
+          "Reads answered from a cache.",
+          () -> caching.stats().hitCount(),
+          "cache",
+          "store");
+      metrics.counter(
+          "airobic_cache_misses_total",
+          "Reads not answered from a cache.",
+          () -> caching.stats().missCount(),
+          "cache",
+          "store");
+      store = caching;
+    }
+    return store;
+  }
+
+  /**
+   * Opens the store chosen by the airobic.store property on its own, without batching or caching,
+   * for tools that read the store offline.
+   *
+   * @return the embedded store for "embedded", or the Realtime Database otherwise.
+   * @throws IOException if the embedded store's file cannot be read.
+   */
+  public static ScheduleStore openBackingStore() throws IOException {
+    if ("embedded".equals(System.getProperty(STORE_PROPERTY))) {
+      return new EmbeddedStore();
+    }
+    return new DatabaseCommands();
+  }
+
+  /**
+   * Registers the metrics read from the server's shared parts: the plan generators' queue and the
+   * model cache.
+   *
+   * @param metrics - the metrics to register in.
+   */
+  static void registerMetrics(Metrics metrics) {
+    PlanJobs jobs = PlanJobs.shared();
+    metrics.gauge("airobic_plan_jobs_queued", "Plans waiting to be generated.", jobs::queued);
+    metrics.gauge("airobic_plan_jobs_running", "Plans being generated.", jobs::running);
+    ModelCache models = ModelCache.shared();
+    metrics.counter(
+        "airobic_cache_hits_total",
+        "Reads answered from a cache.",
+        () -> models.stats().hitCount(),
+        "cache",
+        "model");
+    metrics.counter(
+        "airobic_cache_misses_total",
+        "Reads not answered from a cache.",
+        () -> models.stats().missCount(),
+        "cache",
+        "model");
   }
 }
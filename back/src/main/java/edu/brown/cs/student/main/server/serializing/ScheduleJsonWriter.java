@@ -0,0 +1,429 @@
+package edu.brown.cs.student.main.server.serializing;
+
+import edu.brown.cs.student.main.models.exceptions.InvalidScheduleException;
+import edu.brown.cs.student.main.models.formattypes.Day;
+import edu.brown.cs.student.main.models.formattypes.Schedule;
+import edu.brown.cs.student.main.models.formattypes.Week;
+import edu.brown.cs.student.main.models.markov.model.Emission;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The ScheduleJsonWriter class writes a Schedule as JSON in one of two formats. The flat format is
+ * the one plans are stored and sent in, exactly as Serializer.serializeSchedule writes the
+ * schedule's FlatSchedule, but without copying every day first:
+ *
+ * <pre>
+ * {"days":[{"date":"04-27-2023","day":"THURSDAY","numberOfWorkouts":1,"type":"day",
+ * "workoutPlan":[{"workoutType":"UT_2","minutes":60}],"workouts":[{"time":60.0,"workout":"UT2"}]}]}
+ * </pre>
+ *
+ * The other is keyed by date, with each day's workouts numbered from 1:
+ *
+ * <pre>
+ * {"04-27-2023":{"1":{"workout":"Erg 2000m test","duration":"60.0"}},"04-28-2023":{}}
+ * </pre>
+ *
+ * It streams the JSON straight to an OutputStream through its own byte buffer, rather than building
+ * a String: ASCII is copied into the buffer byte by byte, other characters are encoded as UTF-8 in
+ * place, and strings are escaped as JSON requires. Dates are formatted once per day of the calendar
+ * and kept in a table indexed by epoch day, so writing a date allocates nothing.
+ */
+public final class ScheduleJsonWriter {
+
+  public static int BUFFER_SIZE = 8192;
+
+  // room for the longest run of bytes written without checking for space (a 10 digit number)
+  private static final int MIN_BUFFER_SIZE = 16;
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MM-dd-yyyy");
+  // dates from 2000 through 2099 are formatted on first use and kept; others every time
+  private static final long FIRST_CACHED_DAY = LocalDate.of(2000, 1, 1).toEpochDay();
+  private static final AtomicReferenceArray<byte[]> DATES =
+      new AtomicReferenceArray<>((int) (LocalDate.of(2100, 1, 1).toEpochDay() - FIRST_CACHED_DAY));
+  private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] WORKOUT = bytes("\":{\"workout\":");
+  private static final byte[] DURATION = bytes(",\"duration\":\"");
+  private static final byte[] NULL = bytes("null");
+  private static final byte[] DAYS = bytes("{\"days\":[");
+  private static final byte[] DATE = bytes("{\"date\":\"");
+  private static final byte[] DAY = bytes("\",\"day\":\"");
+  private static final byte[] NUMBER_OF_WORKOUTS = bytes("\",\"numberOfWorkouts\":");
+  private static final byte[] TYPE = bytes(",\"type\":");
+  private static final byte[] WORKOUT_PLAN = bytes(",\"workoutPlan\":[");
+  private static final byte[] WORKOUT_TYPE = bytes("\"workoutType\":");
+  private static final byte[] MINUTES = bytes("\"minutes\":");
+  private static final byte[] WORKOUTS = bytes("],\"workouts\":[");
+  private static final byte[] TIME = bytes("{\"time\":");
+  private static final byte[] TITLE = bytes(",\"title\":");
+  private static final byte[] FLAT_WORKOUT = bytes(",\"workout\":");
+
+  private final OutputStream out;
+  private final byte[] buffer;
+  private int position;
+
+  private ScheduleJsonWriter(OutputStream out, int bufferSize) {
+    this.out = out;
+    this.buffer = new byte[bufferSize];
+  }
+
+  /**
+   * Writes a schedule to an output stream in the flat format. The stream is flushed but not closed.
+   *
+   * @param schedule - the schedule to write.
+   * @param out - the stream to write to.
+   * @throws IOException if the stream cannot be written to.
+   */
+  public static void writeFlat(Schedule schedule, OutputStream out) throws IOException {
+    ScheduleJsonWriter writer = new ScheduleJsonWriter(out, Math.max(MIN_BUFFER_SIZE, BUFFER_SIZE));
+    writer.flat(schedule);
+    writer.flush();
+  }
+
+  /**
+   * Writes a schedule to a String in the flat format, the same JSON as Serializer.serializeSchedule
+   * writes for the schedule's FlatSchedule.
+   *
+   * @param schedule - the schedule to write.
+   * @return the schedule's JSON.
+   */
+  public static String toFlatJson(Schedule schedule) {
+    // each day also names its day of the week, type and plan, which take about 100 bytes more
+    int size =
+        (int) Math.min(Integer.MAX_VALUE - 8, estimateSize(schedule) + 100L * days(schedule));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(size);
+    try {
+      ScheduleJsonWriter writer =
+          new ScheduleJsonWriter(bytes, Math.max(MIN_BUFFER_SIZE, Math.min(BUFFER_SIZE, size)));
+      writer.flat(schedule);
+      writer.flush();
+    } catch (IOException e) {
+      throw new IllegalStateException("Writing to memory cannot fail.", e);
+    }
+    return bytes.toString(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes a schedule to an output stream keyed by date. The stream is flushed but not closed.
+   *
+   * @param schedule - the schedule to write, every day of which must have a date.
+   * @param out - the stream to write to.
+   * @throws IOException if the stream cannot be written to.
+   * @throws InvalidScheduleException if a day in the schedule has no date.
+   */
+  public static void write(Schedule schedule, OutputStream out)
+      throws IOException, InvalidScheduleException {
+    ScheduleJsonWriter writer = new ScheduleJsonWriter(out, Math.max(MIN_BUFFER_SIZE, BUFFER_SIZE));
+    writer.schedule(schedule);
+    writer.flush();
+  }
+
+  /**
+   * Writes a schedule to a String keyed by date, in a buffer sized for the schedule up front.
+   *
+   * @param schedule - the schedule to write, every day of which must have a date.
+   * @return the schedule's JSON.
+   * @throws InvalidScheduleException if a day in the schedule has no date.
+   */
+  public static String toJson(Schedule schedule) throws InvalidScheduleException {
+    int size = estimateSize(schedule);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(size);
+    try {
+      ScheduleJsonWriter writer =
+          new ScheduleJsonWriter(bytes, Math.max(MIN_BUFFER_SIZE, Math.min(BUFFER_SIZE, size)));
+      writer.schedule(schedule);
+      writer.flush();
+    } catch (IOException e) {
+      throw new IllegalStateException("Writing to memory cannot fail.", e);
+    }
+    return bytes.toString(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Estimates the size of a schedule's JSON, in bytes, for sizing buffers: each date takes about 16
+   * bytes, and each workout about 40 bytes plus its description.
+   *
+   * @param schedule - the schedule.
+   * @return the estimated size.
+   */
+  public static int estimateSize(Schedule schedule) {
+    long size = 2;
+    for (Week week : schedule.weeks()) {
+      for (Day day : week.days()) {
+        size += 16;
+        for (Emission emission : day.getEmissionsView()) {
+          size += 40 + (emission.getWorkout() == null ? 4 : emission.getWorkout().length());
+        }
+      }
+    }
+    return (int) Math.min(Integer.MAX_VALUE - 8, size);
+  }
+
+  // The number of days in a schedule
+  private static long days(Schedule schedule) {
+    long days = 0;
+    for (Week week : schedule.weeks()) {
+      days += week.days().size();
+    }
+    return days;
+  }
+
+  // Writes the flat format: the fields of every day in name order, with null fields left out, as
+  // Moshi writes them
+  private void flat(Schedule schedule) throws IOException {
+    this.put(DAYS);
+    boolean firstDay = true;
+    for (Week week : schedule.weeks()) {
+      for (Day day : week.days()) {
+        if (!firstDay) {
+          this.put(',');
+        }
+        firstDay = false;
+        this.put(DATE);
+        Optional<LocalDate> date = day.getDate();
+        this.put(date.isPresent() ? date(date.get()) : NULL);
+        this.put(DAY);
+        this.ascii(day.getDay().name());
+        this.put(NUMBER_OF_WORKOUTS);
+        this.number(day.getNumberOfWorkouts());
+        this.put(TYPE);
+        this.string(day.getType());
+        this.put(WORKOUT_PLAN);
+        List<Day.WorkoutDescription> plan = day.getPlanView();
+        for (int i = 0; i < plan.size(); i++) {
+          Day.WorkoutDescription description = plan.get(i);
+          if (i > 0) {
+            this.put(',');
+          }
+          this.put('{');
+          if (description.workoutType() != null) {
+            this.put(WORKOUT_TYPE);
+            this.string(description.workoutType().name());
+            this.put(',');
+          }
+          this.put(MINUTES);
+          this.number(description.minutes());
+          this.put('}');
+        }
+        this.put(WORKOUTS);
+        List<Emission> emissions = day.getEmissionsView();
+        for (int i = 0; i < emissions.size(); i++) {
+          Emission emission = emissions.get(i);
+          if (i > 0) {
+            this.put(',');
+          }
+          this.put(TIME);
+          this.ascii(finite(emission.getTime()));
+          if (emission.getTitle() != null) {
+            this.put(TITLE);
+            this.string(emission.getTitle());
+          }
+          if (emission.getWorkout() != null) {
+            this.put(FLAT_WORKOUT);
+            this.string(emission.getWorkout());
+          }
+          this.put('}');
+        }
+        this.put(']');
+        this.put('}');
+      }
+    }
+    this.put(']');
+    this.put('}');
+  }
+
+  // Formats a number as Moshi does, which refuses numbers JSON cannot hold
+  private static String finite(double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+    }
+    return Double.toString(value);
+  }
+
+  private void schedule(Schedule schedule) throws IOException, InvalidScheduleException {
+    this.put('{');
+    boolean firstDay = true;
+    for (Week week : schedule.weeks()) {
+      for (Day day : week.days()) {
+        if (day.getDate().isEmpty()) {
+          throw new InvalidScheduleException(
+              "Every day must have a date to be written as JSON.", schedule);
+        }
+        if (!firstDay) {
+          this.put(',');
+        }
+        firstDay = false;
+        this.put('"');
+        this.put(date(day.getDate().get()));
+        this.put('"');
+        this.put(':');
+        this.put('{');
+        List<Emission> emissions = day.getEmissionsView();
+        for (int i = 0; i < emissions.size(); i++) {
+          Emission emission = emissions.get(i);
+          if (i > 0) {
+            this.put(',');
+          }
+          this.put('"');
+          this.number(i + 1);
+          this.put(WORKOUT);
+          this.string(emission.getWorkout());
+          this.put(DURATION);
+          this.ascii(Double.toString(emission.getTime()));
+          this.put('"');
+          this.put('}');
+        }
+        this.put('}');
+      }
+    }
+    this.put('}');
+  }
+
+  // Returns the bytes of a date, from the table if it is in range
+  private static byte[] date(LocalDate date) {
+    long index = date.toEpochDay() - FIRST_CACHED_DAY;
+    if (index < 0 || index >= DATES.length()) {
+      return bytes(date.format(DATE_FORMAT));
+    }
+    byte[] formatted = DATES.get((int) index);
+    if (formatted == null) {
+      // formatting a date twice is harmless, so racing threads may both fill the same entry
+      formatted = bytes(date.format(DATE_FORMAT));
+      DATES.set((int) index, formatted);
+    }
+    return formatted;
+  }
+
+  // Writes a string as a JSON string, in quotes, escaped and encoded as UTF-8
+  private void string(String text) throws IOException {
+    if (text == null) {
+      this.put(NULL);
+      return;
+    }
+    this.put('"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+        this.put(c);
+      } else if (c == '"' || c == '\\') {
+        this.put('\\');
+        this.put(c);
+      } else if (c == '\n') {
+        this.put('\\');
+        this.put('n');
+      } else if (c == '\t') {
+        this.put('\\');
+        this.put('t');
+      } else if (c == '\r') {
+        this.put('\\');
+        this.put('r');
+      } else if (c == '\b') {
+        this.put('\\');
+        this.put('b');
+      } else if (c == '\f') {
+        this.put('\\');
+        this.put('f');
+      } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+        this.put('\\');
+        this.put('u');
+        this.put((char) HEX[c >> 12]);
+        this.put((char) HEX[(c >> 8) & 0xf]);
+        this.put((char) HEX[(c >> 4) & 0xf]);
+        this.put((char) HEX[c & 0xf]);
+      } else if (c < 0x800) {
+        this.ensure(2);
+        this.buffer[this.position++] = (byte) (0xc0 | (c >> 6));
+        this.buffer[this.position++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < text.length()
+          && Character.isLowSurrogate(text.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, text.charAt(++i));
+        this.ensure(4);
+        this.buffer[this.position++] = (byte) (0xf0 | (codePoint >> 18));
+        this.buffer[this.position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        this.buffer[this.position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        this.buffer[this.position++] = (byte) (0x80 | (codePoint & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        // an unpaired surrogate cannot be encoded, so it is replaced, as String.getBytes does
+        this.put('?');
+      } else {
+        this.ensure(3);
+        this.buffer[this.position++] = (byte) (0xe0 | (c >> 12));
+        this.buffer[this.position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        this.buffer[this.position++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    this.put('"');
+  }
+
+  // Writes a number, without making a String of it unless it is negative
+  private void number(int value) throws IOException {
+    if (value < 0) {
+      this.ascii(Integer.toString(value));
+      return;
+    }
+    int digits = 1;
+    for (int rest = value / 10; rest > 0; rest /= 10) {
+      digits++;
+    }
+    this.ensure(digits);
+    for (int i = this.position + digits - 1; i >= this.position; i--) {
+      this.buffer[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    this.position += digits;
+  }
+
+  // Writes text that is known to be ASCII
+  private void ascii(String text) throws IOException {
+    for (int i = 0; i < text.length(); i++) {
+      this.put(text.charAt(i));
+    }
+  }
+
+  private void put(char c) throws IOException {
+    if (this.position == this.buffer.length) {
+      this.drain();
+    }
+    this.buffer[this.position++] = (byte) c;
+  }
+
+  private void put(byte[] bytes) throws IOException {
+    if (bytes.length > this.buffer.length - this.position) {
+      this.drain();
+      if (bytes.length > this.buffer.length) {
+        this.out.write(bytes);
+        return;
+      }
+    }
+    System.arraycopy(bytes, 0, this.buffer, this.position, bytes.length);
+    this.position += bytes.length;
+  }
+
+  // Makes room for a number of bytes, which must fit in the buffer
+  private void ensure(int bytes) throws IOException {
+    if (bytes > this.buffer.length - this.position) {
+      this.drain();
+    }
+  }
+
+  private void drain() throws IOException {
+    this.out.write(this.buffer, 0, this.position);
+    this.position = 0;
+  }
+
+  private void flush() throws IOException {
+    this.drain();
+    this.out.flush();
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.US_ASCII);
+  }
+}
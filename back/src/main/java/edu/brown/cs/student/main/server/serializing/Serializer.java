@@ -4,9 +4,11 @@ import com.squareup.moshi.JsonAdapter;
 import com.squareup.moshi.Moshi;
 import com.squareup.moshi.Types;
 import edu.brown.cs.student.main.models.formattypes.FlatSchedule;
+import edu.brown.cs.student.main.server.Compression;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.net.HttpURLConnection;
 import java.net.URL;
@@ -14,11 +16,41 @@ import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
-import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import spark.Request;
+import spark.Response;
 
-/** A static class containing utility methods for serializing and deserializing API responses. */
+/**
+ * A static class containing utility methods for serializing and deserializing API responses. One
+ * Moshi instance is shared by every call, so the adapters for our types (FlatSchedule, and the Day
+ * and Emission adapters inside it, and the response map) are only built once.
+ */
 public class Serializer {
 
+  private static final Moshi MOSHI =
+      new Moshi.Builder()
+          .add(
+              Types.newParameterizedType(Optional.class, LocalDate.class),
+              new LocalDateJsonAdapter())
+          .build();
+  private static final Type RESPONSE_TYPE =
+      Types.newParameterizedType(Map.class, String.class, Object.class);
+  private static final JsonAdapter<Map<String, Object>> RESPONSE_ADAPTER =
+      MOSHI.adapter(RESPONSE_TYPE);
+  private static final JsonAdapter<FlatSchedule> SCHEDULE_ADAPTER =
+      MOSHI.adapter(FlatSchedule.class);
+
+  /**
+   * Returns the Moshi instance shared by the whole server, which can serialize LocalDates.
+   *
+   * @return the shared Moshi.
+   */
+  public static Moshi moshi() {
+    return MOSHI;
+  }
+
   /**
    * This method serializes the results HashMap for returning as the API response. It also ensures
    * that LocalDates can be serialized, as we use them in our Day objects.
@@ -27,15 +59,41 @@ public class Serializer {
    * @return The serialized version of the map
    */
   public static String serialize(HashMap<String, Object> map) {
-    Moshi moshi =
-        new Moshi.Builder()
-            .add(
-                Types.newParameterizedType(Optional.class, LocalDate.class),
-                new LocalDateJsonAdapter())
-            .build();
-    Type genericMap = Types.newParameterizedType(Map.class, String.class, Object.class);
-    JsonAdapter<Map<String, Object>> adapter = moshi.adapter(genericMap);
-    return adapter.toJson(map);
+    return RESPONSE_ADAPTER.toJson(map);
+  }
+
+  /**
+   * This method serializes the results HashMap straight into an output stream, without building the
+   * whole response as a String first. The stream is flushed but not closed.
+   *
+   * @param map - The map to be serialized
+   * @param out - The stream to write the serialized map to
+   * @throws IOException if the stream cannot be written to.
+   */
+  public static void serialize(HashMap<String, Object> map, OutputStream out) throws IOException {
+    BufferedSink sink = Okio.buffer(Okio.sink(out));
+    RESPONSE_ADAPTER.toJson(sink, map);
+    sink.flush();
+  }
+
+  /**
+   * This method sends the results HashMap as the body of a response, streaming it into the
+   * response's output stream, compressed if the client accepts it (see Compression). Headers must
+   * be set before this is called, as the response may be committed while it is written.
+   *
+   * @param request - The request being answered, whose Accept-Encoding is read
+   * @param response - The response to write to
+   * @param map - The map to be serialized
+   * @return the empty String, for the route to return, as the body has been written.
+   * @throws IOException if the response cannot be written to.
+   */
+  public static Object respond(Request request, Response response, HashMap<String, Object> map)
+      throws IOException {
+    response.type("application/json");
+    try (OutputStream out = Compression.body(request, response)) {
+      serialize(map, out);
+    }
+    return "";
   }
 
   /**
@@ -45,14 +103,7 @@ public class Serializer {
    * @return The serialized version of the schedule
    */
   public static String serializeSchedule(FlatSchedule schedule) {
-    Moshi moshi =
-        new Moshi.Builder()
-            .add(
-                Types.newParameterizedType(Optional.class, LocalDate.class),
-                new LocalDateJsonAdapter())
-            .build();
-    JsonAdapter<FlatSchedule> adapter = moshi.adapter(FlatSchedule.class);
-    return adapter.toJson(schedule);
+    return SCHEDULE_ADAPTER.toJson(schedule);
   }
 
   /**
@@ -60,7 +111,7 @@ public class Serializer {
    * href="https://docs.oracle.com/javase/tutorial/extra/generics/literals.html">...</a>. This
    * method takes in a class type and an input stream, and returns the serialized version of the
    * input stream as the class type. It also ensures that LocalDates can be deserialized, as we use
-   * them in our Day objects.
+   * them in our Day objects. The stream is read as it is parsed, and closed at the end.
    *
    * @param type - Type of the deserialized response
    * @param inputStream - Input stream to be deserialized
@@ -70,14 +121,10 @@ public class Serializer {
    */
   public static <T> T getDeserializedResponse(Class<T> type, InputStream inputStream)
       throws IOException {
-    Moshi moshi =
-        new Moshi.Builder()
-            .add(
-                Types.newParameterizedType(Optional.class, LocalDate.class),
-                new LocalDateJsonAdapter())
-            .build();
-    JsonAdapter<T> adapter = moshi.adapter(type);
-    return adapter.fromJson(new Buffer().readFrom(inputStream));
+    JsonAdapter<T> adapter = MOSHI.adapter(type);
+    try (BufferedSource source = Okio.buffer(Okio.source(inputStream))) {
+      return adapter.fromJson(source);
+    }
   }
 
   /**
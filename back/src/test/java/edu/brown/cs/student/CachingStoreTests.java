@@ -0,0 +1,106 @@
+package edu.brown.cs.student;
+
+import edu.brown.cs.student.main.database.CachingStore;
+import edu.brown.cs.student.main.database.DatabaseCommands;
+import edu.brown.cs.student.main.database.ScheduleStore;
+import java.io.IOException;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** This class tests the CachingStore against a local stand-in for the database */
+public class CachingStoreTests {
+  private RealtimeDatabaseStandIn standIn;
+  private CachingStore store;
+
+  /** Starts a fresh stand-in before each test */
+  @BeforeEach
+  public void setUp() throws IOException {
+    this.standIn = new RealtimeDatabaseStandIn();
+    this.store =
+        new CachingStore(
+            new DatabaseCommands(this.standIn.url()), 1024 * 1024, Duration.ofMinutes(5));
+  }
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    this.store.close();
+    this.standIn.close();
+  }
+
+  /** Repeated reads only go to the database once */
+  @Test
+  public void testReadThrough() throws IOException, InterruptedException {
+    this.store.put("{\"days\":[]}", "users/alan/schedule");
+    this.store.put("{\"days\":[1]}", "users/alan/schedule");
+    int requests = this.standIn.requests();
+    for (int i = 0; i < 5; i++) {
+      Assertions.assertEquals("{\"days\":[1.0]}", this.store.get("users/alan/schedule"));
+    }
+    Assertions.assertEquals(requests + 1, this.standIn.requests());
+    Assertions.assertEquals(4, this.store.stats().hitCount());
+  }
+
+  /** Ranges are cached, and dropped by any write to their branch */
+  @Test
+  public void testRange() throws IOException, InterruptedException {
+    String days = "users/alan/schedule/days";
+    this.store.put("{\"0\":\"a\",\"1\":\"b\",\"2\":\"c\"}", days);
+    int requests = this.standIn.requests();
+    Assertions.assertEquals("[\"a\",\"b\"]", this.store.getRange(days, 0, 1).json());
+    Assertions.assertEquals("[\"a\",\"b\"]", this.store.getRange(days, 0, 1).json());
+    Assertions.assertEquals(requests + 1, this.standIn.requests());
+
+    this.store.put("\"z\"", days + "/2");
+    Assertions.assertEquals("[\"b\",\"z\"]", this.store.getRange(days, 1, 2).json());
+    this.store.update("{\"0\":\"y\"}", days);
+    Assertions.assertEquals("[\"y\",\"b\"]", this.store.getRange(days, 0, 1).json());
+    this.store.delete("users/alan");
+    Assertions.assertEquals("[]", this.store.getRange(days, 0, 1).json());
+  }
+
+  /** Writes through the store drop the cached reads they touch, and only those */
+  @Test
+  public void testInvalidation() throws IOException, InterruptedException {
+    this.store.update("{\"alan\":{\"valid\":\"true\"},\"grace\":{\"valid\":\"true\"}}", "users");
+    Assertions.assertEquals("\"true\"", this.store.get("users/alan/valid"));
+    Assertions.assertEquals("\"true\"", this.store.get("users/grace/valid"));
+    Assertions.assertEquals(2, this.store.size());
+
+    this.store.update("{\"alan\":{\"valid\":\"false\"}}", "users");
+    Assertions.assertEquals(1, this.store.size());
+    Assertions.assertEquals("\"false\"", this.store.get("users/alan/valid"));
+
+    this.store.update("{\"rpe\":\"7\"}", "users/alan/schedule/days/0/workouts/0/data");
+    Assertions.assertEquals("\"false\"", this.store.get("users/alan/valid"));
+    Assertions.assertEquals(
+        "{\"rpe\":\"7\"}", this.store.get("users/alan/schedule/days/0/workouts/0/data"));
+    this.store.updateLater("{\"rpe\":\"8\"}", "users/alan/schedule/days/0/workouts/0/data");
+    Assertions.assertEquals(
+        "{\"rpe\":\"8\"}", this.store.get("users/alan/schedule/days/0/workouts/0/data"));
+
+    this.store.delete("users");
+    Assertions.assertEquals(0, this.store.size());
+    Assertions.assertEquals("null", this.store.get("users/grace/valid"));
+  }
+
+  /** ETags change with the data and match If-None-Match headers */
+  @Test
+  public void testETags() throws IOException, InterruptedException {
+    this.store.put("{\"days\":[]}", "users/alan/schedule");
+    ScheduleStore.Versioned first = this.store.getVersioned("users/alan/schedule");
+    Assertions.assertSame(first, this.store.getVersioned("users/alan/schedule"));
+    Assertions.assertTrue(first.matches(first.etag()));
+    Assertions.assertTrue(first.matches("\"other\", W/" + first.etag()));
+    Assertions.assertTrue(first.matches("*"));
+    Assertions.assertFalse(first.matches(null));
+
+    this.store.put("{\"days\":[1]}", "users/alan/schedule");
+    ScheduleStore.Versioned second = this.store.getVersioned("users/alan/schedule");
+    Assertions.assertNotEquals(first.etag(), second.etag());
+    Assertions.assertFalse(second.matches(first.etag()));
+    Assertions.assertEquals(ScheduleStore.Versioned.of(second.json()), second);
+  }
+}
@@ -0,0 +1,156 @@
+package edu.brown.cs.student;
+
+import edu.brown.cs.student.main.server.Compression;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/** This class tests the compression of response bodies */
+public class CompressionTests {
+
+  /** A response that keeps its headers and body in memory, standing in for Jetty's. */
+  private static final class FakeResponse {
+    private final Map<String, String> headers = new HashMap<>();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private boolean closed;
+
+    private HttpServletResponse proxy() {
+      ServletOutputStream out =
+          new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+              FakeResponse.this.body.write(b);
+            }
+
+            @Override
+            public void close() {
+              FakeResponse.this.closed = true;
+            }
+
+            @Override
+            public boolean isReady() {
+              return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {}
+          };
+      return (HttpServletResponse)
+          Proxy.newProxyInstance(
+              HttpServletResponse.class.getClassLoader(),
+              new Class<?>[] {HttpServletResponse.class},
+              (instance, method, args) ->
+                  switch (method.getName()) {
+                    case "getOutputStream" -> out;
+                    case "setHeader", "addHeader" -> this.headers.put(
+                        (String) args[0], (String) args[1]);
+                    case "getHeader" -> this.headers.get((String) args[0]);
+                    case "containsHeader" -> this.headers.containsKey((String) args[0]);
+                    case "setContentLength" -> this.headers.put(
+                        "Content-Length", String.valueOf(args[0]));
+                    default -> null;
+                  });
+    }
+  }
+
+  private static String json(int workouts) {
+    StringBuilder json = new StringBuilder("{\"result\":\"success\",\"message\":[");
+    for (int i = 0; i < workouts; i++) {
+      json.append(i == 0 ? "" : ",").append("{\"workout\":\"UT2 steady state\",\"time\":60.0}");
+    }
+    return json.append("]}").toString();
+  }
+
+  private static FakeResponse send(String acceptEncoding, String etag, String body)
+      throws IOException {
+    FakeResponse response = new FakeResponse();
+    HttpServletResponse raw = response.proxy();
+    if (etag != null) {
+      raw.setHeader("ETag", etag);
+    }
+    try (OutputStream out = Compression.body(acceptEncoding, raw, 1024)) {
+      // written in pieces, as serializers do
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      for (int i = 0; i < bytes.length; i += 100) {
+        out.write(bytes, i, Math.min(100, bytes.length - i));
+      }
+      out.flush();
+    }
+    return response;
+  }
+
+  /** The client's preferred encoding is chosen, and refused encodings never are */
+  @Test
+  public void testNegotiate() {
+    Assertions.assertNull(Compression.negotiate(null));
+    Assertions.assertNull(Compression.negotiate("identity"));
+    Assertions.assertNull(Compression.negotiate("br"));
+    Assertions.assertEquals("gzip", Compression.negotiate("gzip, deflate, br"));
+    Assertions.assertEquals("gzip", Compression.negotiate("deflate, gzip"));
+    Assertions.assertEquals("deflate", Compression.negotiate("deflate"));
+    Assertions.assertEquals("deflate", Compression.negotiate("gzip;q=0.5, deflate;q=1.0"));
+    Assertions.assertEquals("deflate", Compression.negotiate("gzip;q=0, *"));
+    Assertions.assertEquals("gzip", Compression.negotiate("*"));
+    Assertions.assertNull(Compression.negotiate("*;q=0"));
+    Assertions.assertEquals("gzip", Compression.negotiate("X-GZIP"));
+  }
+
+  /** Long bodies are gzipped, and their ETags become weak */
+  @Test
+  public void testGzip() throws IOException {
+    String json = json(200);
+    FakeResponse response = send("gzip, deflate", "\"abc\"", json);
+    Assertions.assertEquals("gzip", response.headers.get("Content-Encoding"));
+    Assertions.assertEquals("W/\"abc\"", response.headers.get("ETag"));
+    Assertions.assertEquals("Accept-Encoding", response.headers.get("Vary"));
+    Assertions.assertTrue(response.body.size() < json.length() / 10);
+    try (GZIPInputStream in =
+        new GZIPInputStream(new ByteArrayInputStream(response.body.toByteArray()))) {
+      Assertions.assertEquals(json, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
+    // the response's own stream is left for Spark to finish
+    Assertions.assertFalse(response.closed);
+  }
+
+  /** Long bodies are deflated in the zlib format for clients that only accept deflate */
+  @Test
+  public void testDeflate() throws IOException {
+    String json = json(200);
+    FakeResponse response = send("deflate", null, json);
+    Assertions.assertEquals("deflate", response.headers.get("Content-Encoding"));
+    try (InflaterInputStream in =
+        new InflaterInputStream(new ByteArrayInputStream(response.body.toByteArray()))) {
+      Assertions.assertEquals(json, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
+  }
+
+  /** Short bodies, and bodies for clients that do not accept compression, are sent as they are */
+  @Test
+  public void testUncompressed() throws IOException {
+    String small = json(2);
+    FakeResponse response = send("gzip", "\"abc\"", small);
+    Assertions.assertNull(response.headers.get("Content-Encoding"));
+    Assertions.assertEquals("\"abc\"", response.headers.get("ETag"));
+    Assertions.assertEquals(String.valueOf(small.length()), response.headers.get("Content-Length"));
+    Assertions.assertEquals(small, response.body.toString(StandardCharsets.UTF_8));
+
+    String json = json(200);
+    response = send(null, "\"abc\"", json);
+    Assertions.assertNull(response.headers.get("Content-Encoding"));
+    Assertions.assertEquals("Accept-Encoding", response.headers.get("Vary"));
+    Assertions.assertEquals(json, response.body.toString(StandardCharsets.UTF_8));
+    Assertions.assertFalse(response.closed);
+  }
+}
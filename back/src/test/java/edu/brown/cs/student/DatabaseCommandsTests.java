@@ -0,0 +1,115 @@
+package edu.brown.cs.student;
+
+import edu.brown.cs.student.main.database.DatabaseCommands;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** This class tests DatabaseCommands against a local stand-in for the database */
+public class DatabaseCommandsTests {
+  private RealtimeDatabaseStandIn standIn;
+  private DatabaseCommands database;
+
+  /** Starts a fresh stand-in before each test */
+  @BeforeEach
+  public void setUp() throws IOException {
+    this.standIn = new RealtimeDatabaseStandIn();
+    this.database = new DatabaseCommands(this.standIn.url());
+  }
+
+  @AfterEach
+  public void tearDown() {
+    this.standIn.close();
+  }
+
+  /** Empty database test */
+  @Test
+  public void testEmpty() throws IOException, InterruptedException {
+    Assertions.assertEquals("null", this.database.get("test"));
+  }
+
+  /** Writes are finished by the time the call returns, so no waiting is needed */
+  @Test
+  public void testPutUpdateDelete() throws IOException, InterruptedException {
+    this.database.update("{\"alan\":{\"valid\":\"true\",\"schedule\":\"\"}}", "users");
+    Assertions.assertEquals("\"true\"", this.database.get("users/alan/valid"));
+
+    this.database.put("{\"days\":[]}", "users/alan/schedule");
+    this.database.update("{\"sport\":\"rowing\"}", "users/alan");
+    Assertions.assertEquals("\"rowing\"", this.database.get("users/alan/sport"));
+    Assertions.assertEquals("\"true\"", this.database.get("users/alan/valid"));
+
+    this.database.delete("users/alan/sport");
+    Assertions.assertEquals("null", this.database.get("users/alan/sport"));
+    Assertions.assertEquals("\"true\"", this.database.get("users/alan/valid"));
+  }
+
+  /** Ranges of index keys are filtered by the database, and come back as arrays in order */
+  @Test
+  public void testGetRange() throws IOException, InterruptedException {
+    this.database.put("[\"a\",\"b\",\"c\",\"d\"]", "users/alan/schedule/days");
+    Assertions.assertEquals(
+        "[\"b\",\"c\"]", this.database.getRange("users/alan/schedule/days", 1, 2).json());
+    Assertions.assertEquals(
+        "[\"d\"]", this.database.getRange("users/alan/schedule/days", 3, 100).json());
+    Assertions.assertEquals("[]", this.database.getRange("users/alan/schedule/days", 2, 1).json());
+    Assertions.assertEquals("[]", this.database.getRange("users/grace/schedule/days", 0, 6).json());
+  }
+
+  /** A shallow read lists the keys of a branch */
+  @Test
+  public void testKeys() throws IOException, InterruptedException {
+    this.database.put("{\"grace\":{\"schedule\":1},\"alan\":{\"schedule\":2}}", "users");
+    Assertions.assertEquals(List.of("alan", "grace"), this.database.keys("users"));
+    this.database.put("[\"a\",\"b\"]", "users/alan/schedule");
+    Assertions.assertEquals(List.of("0", "1"), this.database.keys("users/alan/schedule"));
+    Assertions.assertEquals(List.of(), this.database.keys("users/nobody"));
+  }
+
+  /** Names with spaces or query characters stay inside the path */
+  @Test
+  public void testEncodedPath() throws IOException, InterruptedException {
+    this.database.put("\"yes\"", "users/alan turing?x=1/valid");
+    Assertions.assertEquals("\"yes\"", this.standIn.get("users/alan turing?x=1/valid"));
+    Assertions.assertEquals("\"yes\"", this.database.get("users/alan turing?x=1/valid"));
+  }
+
+  /** Many concurrent asynchronous writes all land */
+  @Test
+  public void testAsync() throws Exception {
+    List<CompletableFuture<Void>> writes = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      writes.add(this.database.putAsync("\"" + i + "\"", "async/" + i));
+    }
+    CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).get();
+    for (int i = 0; i < 100; i += 11) {
+      Assertions.assertEquals("\"" + i + "\"", this.database.getAsync("async/" + i).get());
+    }
+  }
+
+  /** Rejected requests throw instead of being silently lost */
+  @Test
+  public void testRejected() {
+    Assertions.assertThrows(
+        IOException.class, () -> this.database.update("[\"not an object\"]", "users"));
+  }
+
+  /** Rejected asynchronous requests fail their future, and give their permit back */
+  @Test
+  public void testRejectedAsync() throws Exception {
+    for (int i = 0; i <= DatabaseCommands.MAX_CONCURRENT_REQUESTS; i++) {
+      ExecutionException e =
+          Assertions.assertThrows(
+              ExecutionException.class,
+              () -> this.database.updateAsync("[\"not an object\"]", "users").get());
+      Assertions.assertTrue(e.getCause() instanceof IOException);
+    }
+    Assertions.assertEquals("null", this.database.getAsync("users").get());
+  }
+}
@@ -0,0 +1,254 @@
+package edu.brown.cs.student;
+
+import edu.brown.cs.student.main.database.EmbeddedStore;
+import edu.brown.cs.student.main.database.ScheduleStore;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** This class tests the EmbeddedStore, which keeps the database in a local file */
+public class EmbeddedStoreTests {
+  // how many of the next writes to the file fail part way through, as on a full disk
+  private static int failingWrites = 0;
+
+  private Path directory;
+  private String file;
+  private EmbeddedStore store;
+
+  /** Opens a fresh store in a temporary directory before each test */
+  @BeforeEach
+  public void setUp() throws IOException {
+    this.directory = Files.createTempDirectory("embedded-store");
+    this.file = this.directory.resolve("store.log").toString();
+    this.store = new EmbeddedStore(this.file);
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    this.store.close();
+    try (var files = Files.list(this.directory)) {
+      for (Path path : files.toList()) {
+        Files.delete(path);
+      }
+    }
+    Files.delete(this.directory);
+  }
+
+  /** Empty store test */
+  @Test
+  public void testEmpty() {
+    Assertions.assertEquals("null", this.store.get("users/alan"));
+  }
+
+  /** The store answers like the Realtime Database */
+  @Test
+  public void testPutUpdateDelete() throws IOException {
+    this.store.update("{\"alan\":{\"valid\":\"true\",\"schedule\":\"\"}}", "users");
+    Assertions.assertEquals("\"true\"", this.store.get("users/alan/valid"));
+    Assertions.assertEquals("\"\"", this.store.get("users/alan/schedule"));
+
+    this.store.put("{\"days\":[{\"workouts\":[{\"time\":60.0}]}]}", "users/alan/schedule");
+    this.store.update("{\"sport\":\"rowing\"}", "users/alan");
+    Assertions.assertEquals("\"rowing\"", this.store.get("users/alan/sport"));
+    Assertions.assertEquals("\"true\"", this.store.get("users/alan/valid"));
+    // arrays can be written into by index, and whole numbers come back as integers
+    this.store.update("{\"rpe\":\"7\"}", "users/alan/schedule/days/0/workouts/0/data");
+    Assertions.assertEquals(
+        "{\"days\":[{\"workouts\":[{\"data\":{\"rpe\":\"7\"},\"time\":60}]}]}",
+        this.store.get("users/alan/schedule"));
+
+    // multi-path updates
+    this.store.update("{\"alan/sport\":\"running\",\"grace/valid\":\"true\"}", "users");
+    Assertions.assertEquals("\"running\"", this.store.get("users/alan/sport"));
+    Assertions.assertEquals("\"true\"", this.store.get("users/grace/valid"));
+
+    // deleting the last child deletes the parent, and updating a child to null deletes it
+    this.store.delete("users/grace/valid");
+    this.store.update("{\"sport\":null}", "users/alan");
+    Assertions.assertEquals("null", this.store.get("users/alan/sport"));
+    Assertions.assertEquals("null", this.store.get("users/grace"));
+    Assertions.assertThrows(IOException.class, () -> this.store.update("[\"no\"]", "users"));
+  }
+
+  /** Only the days in a range are read, in order, whatever their keys sort as strings */
+  @Test
+  public void testGetRange() throws IOException {
+    StringBuilder days = new StringBuilder("[");
+    for (int i = 0; i < 12; i++) {
+      days.append(i == 0 ? "" : ",").append("{\"day\":").append(i).append('}');
+    }
+    this.store.put(days.append(']').toString(), "users/alan/schedule/days");
+    Assertions.assertEquals(
+        "[{\"day\":9},{\"day\":10},{\"day\":11}]",
+        this.store.getRange("users/alan/schedule/days", 9, 20).json());
+    Assertions.assertEquals(
+        "[{\"day\":0}]", this.store.getRange("users/alan/schedule/days", -5, 0).json());
+    Assertions.assertEquals("[]", this.store.getRange("users/alan/schedule/days", 3, 2).json());
+    Assertions.assertEquals("[]", this.store.getRange("users/grace/schedule/days", 0, 6).json());
+    Assertions.assertEquals(
+        ScheduleStore.Versioned.of("[{\"day\":1}]").etag(),
+        this.store.getRange("users/alan/schedule/days", 1, 1).etag());
+  }
+
+  /** Keys are listed in the database's order, without reading their values */
+  @Test
+  public void testKeys() throws IOException {
+    this.store.put("{\"b\":{\"x\":1},\"a\":2,\"10\":3,\"9\":4}", "users");
+    Assertions.assertEquals(List.of("9", "10", "a", "b"), this.store.keys("users"));
+    Assertions.assertEquals(List.of(), this.store.keys("users/a"));
+    Assertions.assertEquals(List.of(), this.store.keys("nothing"));
+  }
+
+  /** Reopening the file gives back the same data, before and after compaction */
+  @Test
+  public void testReopen() throws IOException {
+    int compactAfter = EmbeddedStore.COMPACT_AFTER;
+    EmbeddedStore.COMPACT_AFTER = 10;
+    try {
+      for (int i = 0; i < 25; i++) {
+        this.store.put("\"" + i + "\"", "users/alan/count");
+        this.store.put("\"" + i + "\"", "users/user" + i + "/valid");
+      }
+      this.store.delete("users/user3");
+      this.store.update("{\"valid\":null}", "users/user4");
+      Assertions.assertTrue(this.store.records() < 10);
+      String before = this.store.get("");
+      this.store.close();
+
+      this.store = new EmbeddedStore(this.file);
+      Assertions.assertEquals(before, this.store.get(""));
+      Assertions.assertEquals("\"24\"", this.store.get("users/alan/count"));
+      Assertions.assertEquals("null", this.store.get("users/user3"));
+      Assertions.assertEquals("null", this.store.get("users/user4"));
+      Assertions.assertEquals("\"5\"", this.store.get("users/user5/valid"));
+    } finally {
+      EmbeddedStore.COMPACT_AFTER = compactAfter;
+    }
+  }
+
+  /** A write cut off part way through is dropped, and the store keeps working */
+  @Test
+  public void testTornWrite() throws IOException {
+    this.store.put("\"true\"", "users/alan/valid");
+    this.store.close();
+    String torn = "[\"PUT\",\"users/ada";
+    Files.writeString(Path.of(this.file), torn, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+    this.store = new EmbeddedStore(this.file);
+    Assertions.assertEquals("{\"alan\":{\"valid\":\"true\"}}", this.store.get("users"));
+    this.store.put("\"true\"", "users/ada/valid");
+    this.store.close();
+
+    this.store = new EmbeddedStore(this.file);
+    Assertions.assertEquals("\"true\"", this.store.get("users/ada/valid"));
+    Assertions.assertEquals("\"true\"", this.store.get("users/alan/valid"));
+  }
+
+  /** A corrupt line before the last is skipped, and the writes around it are kept */
+  @Test
+  public void testCorruptLine() throws IOException {
+    this.store.put("\"true\"", "users/alan/valid");
+    this.store.close();
+    Files.writeString(
+        Path.of(this.file), "not a record\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    this.store = new EmbeddedStore(this.file);
+    this.store.put("\"true\"", "users/ada/valid");
+    this.store.close();
+
+    this.store = new EmbeddedStore(this.file);
+    Assertions.assertEquals("\"true\"", this.store.get("users/alan/valid"));
+    Assertions.assertEquals("\"true\"", this.store.get("users/ada/valid"));
+  }
+
+  /** A compaction that fails leaves the write it followed in place, and the store writable */
+  @Test
+  public void testFailedCompaction() throws IOException {
+    int compactAfter = EmbeddedStore.COMPACT_AFTER;
+    EmbeddedStore.COMPACT_AFTER = 3;
+    // the compacted file cannot be written while a directory is in its way
+    Path blocked = Files.createDirectory(Path.of(this.file + ".compact"));
+    try {
+      for (int i = 0; i < 5; i++) {
+        this.store.put("\"" + i + "\"", "users/user" + i + "/valid");
+      }
+      Assertions.assertEquals(5, this.store.records());
+      Files.delete(blocked);
+      this.store.put("\"5\"", "users/user5/valid");
+      Assertions.assertEquals(1, this.store.records());
+      this.store.close();
+
+      this.store = new EmbeddedStore(this.file);
+      for (int i = 0; i < 6; i++) {
+        Assertions.assertEquals("\"" + i + "\"", this.store.get("users/user" + i + "/valid"));
+      }
+    } finally {
+      EmbeddedStore.COMPACT_AFTER = compactAfter;
+    }
+  }
+
+  /** A write that fails part way through leaves nothing behind for the next write to land on */
+  @Test
+  public void testFailedWrite() throws IOException {
+    this.store.close();
+    this.store = new FailingStore(this.file);
+    this.store.put("\"true\"", "users/ada/valid");
+    failingWrites = 1;
+    Assertions.assertThrows(
+        IOException.class, () -> this.store.put("\"true\"", "users/alan/valid"));
+    Assertions.assertEquals("null", this.store.get("users/alan/valid"));
+    this.store.put("\"true\"", "users/grace/valid");
+    this.store.close();
+
+    this.store = new EmbeddedStore(this.file);
+    Assertions.assertEquals("\"true\"", this.store.get("users/ada/valid"));
+    Assertions.assertEquals("null", this.store.get("users/alan/valid"));
+    Assertions.assertEquals("\"true\"", this.store.get("users/grace/valid"));
+    Assertions.assertEquals(2, this.store.records());
+  }
+
+  /** An EmbeddedStore whose writes fail after reaching the file half written */
+  private static class FailingStore extends EmbeddedStore {
+    FailingStore(String filename) throws IOException {
+      super(filename);
+    }
+
+    @Override
+    protected BufferedWriter writer(OutputStream stream) {
+      Writer file = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+      return new BufferedWriter(
+          new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+              if (failingWrites > 0) {
+                failingWrites--;
+                file.write(buffer, offset, length / 2);
+                file.flush();
+                throw new IOException("No space left on device");
+              }
+              file.write(buffer, offset, length);
+            }
+
+            @Override
+            public void flush() throws IOException {
+              file.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+              file.close();
+            }
+          });
+    }
+  }
+}
@@ -0,0 +1,236 @@
+package edu.brown.cs.student;
+
+import edu.brown.cs.student.main.database.EmbeddedStore;
+import edu.brown.cs.student.main.handlers.GetUserWorkouts;
+import edu.brown.cs.student.main.server.serializing.Serializer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import spark.RequestResponseFactory;
+
+/** This class tests the GetUserWorkouts handler against an embedded store */
+public class GetUserWorkoutsTests {
+  // the schedule starts on a Monday and has three whole weeks of days
+  private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+  private static final int DAYS = 21;
+
+  private Path directory;
+  private EmbeddedStore store;
+  private GetUserWorkouts handler;
+
+  /** A response that keeps its status, headers and body in memory, standing in for Jetty's. */
+  private static final class FakeResponse {
+    private final Map<String, String> headers = new HashMap<>();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private int status = 200;
+
+    private HttpServletResponse proxy() {
+      ServletOutputStream out =
+          new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+              FakeResponse.this.body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+              return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {}
+          };
+      return (HttpServletResponse)
+          Proxy.newProxyInstance(
+              HttpServletResponse.class.getClassLoader(),
+              new Class<?>[] {HttpServletResponse.class},
+              (instance, method, args) ->
+                  switch (method.getName()) {
+                    case "getOutputStream" -> out;
+                    case "setHeader", "addHeader" -> this.headers.put(
+                        (String) args[0], (String) args[1]);
+                    case "getHeader" -> this.headers.get((String) args[0]);
+                    case "containsHeader" -> this.headers.containsKey((String) args[0]);
+                    case "setStatus" -> this.status = (Integer) args[0];
+                    case "isCommitted" -> false;
+                    default -> null;
+                  });
+    }
+
+    private Map<?, ?> json() throws IOException {
+      return Serializer.moshi()
+          .adapter(Map.class)
+          .fromJson(this.body.toString(StandardCharsets.UTF_8));
+    }
+  }
+
+  /** Stores a three week schedule for alan in a fresh store before each test */
+  @BeforeEach
+  public void setUp() throws IOException {
+    this.directory = Files.createTempDirectory("get-user-workouts");
+    this.store = new EmbeddedStore(this.directory.resolve("store.log").toString());
+    DateTimeFormatter stored = DateTimeFormatter.ofPattern("MM-dd-yyyy");
+    StringBuilder days = new StringBuilder("{\"days\":[");
+    for (int day = 0; day < DAYS; day++) {
+      days.append(day == 0 ? "" : ",")
+          .append("{\"date\":\"")
+          .append(FIRST_DAY.plusDays(day).format(stored))
+          .append("\",\"day\":")
+          .append(day)
+          .append('}');
+    }
+    this.store.put(days.append("]}").toString(), "users/alan/schedule");
+    this.handler = new GetUserWorkouts(this.store);
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    this.store.close();
+    try (var files = Files.list(this.directory)) {
+      for (Path path : files.toList()) {
+        Files.delete(path);
+      }
+    }
+    Files.delete(this.directory);
+  }
+
+  private FakeResponse get(String... parameters) throws Exception {
+    Map<String, String> query = new HashMap<>();
+    for (int i = 0; i < parameters.length; i += 2) {
+      query.put(parameters[i], parameters[i + 1]);
+    }
+    HttpServletRequest raw =
+        (HttpServletRequest)
+            Proxy.newProxyInstance(
+                HttpServletRequest.class.getClassLoader(),
+                new Class<?>[] {HttpServletRequest.class},
+                (instance, method, args) ->
+                    switch (method.getName()) {
+                      case "getParameter" -> query.get((String) args[0]);
+                      case "getHeader" -> query.get((String) args[0]);
+                      default -> null;
+                    });
+    FakeResponse response = new FakeResponse();
+    this.handler.handle(
+        RequestResponseFactory.create(raw), RequestResponseFactory.create(response.proxy()));
+    return response;
+  }
+
+  // The day numbers of the days a successful response sent
+  private static List<Integer> days(FakeResponse response) throws IOException {
+    Map<?, ?> body = response.json();
+    Assertions.assertEquals("success", body.get("result"));
+    Map<?, ?> schedule =
+        Serializer.moshi().adapter(Map.class).fromJson((String) body.get("message"));
+    List<Integer> numbers = new ArrayList<>();
+    for (Object day : (List<?>) schedule.get("days")) {
+      numbers.add(((Number) ((Map<?, ?>) day).get("day")).intValue());
+    }
+    return numbers;
+  }
+
+  private static List<Integer> between(int first, int last) {
+    List<Integer> numbers = new ArrayList<>();
+    for (int day = first; day <= last; day++) {
+      numbers.add(day);
+    }
+    return numbers;
+  }
+
+  /** With no range, the whole schedule is sent with its ETag, and a current copy gets a 304 */
+  @Test
+  public void testWholeSchedule() throws Exception {
+    FakeResponse response = this.get("username", "alan");
+    Assertions.assertEquals(between(0, DAYS - 1), days(response));
+    String etag = response.headers.get("ETag");
+    Assertions.assertNotNull(etag);
+
+    FakeResponse revalidated = this.get("username", "alan", "If-None-Match", etag);
+    Assertions.assertEquals(304, revalidated.status);
+    Assertions.assertEquals(0, revalidated.body.size());
+  }
+
+  /** Dates are turned into the indices of their days, both ends included */
+  @Test
+  public void testDates() throws Exception {
+    Assertions.assertEquals(
+        between(2, 4),
+        days(this.get("username", "alan", "from", "2024-01-03", "to", "2024-01-05")));
+    Assertions.assertEquals(
+        between(3, 3),
+        days(this.get("username", "alan", "from", "2024-01-04", "to", "2024-01-04")));
+    Assertions.assertEquals(
+        List.of(), days(this.get("username", "alan", "from", "2024-01-05", "to", "2024-01-03")));
+  }
+
+  /** Leaving out from or to runs the range to that end of the schedule */
+  @Test
+  public void testOpenEnded() throws Exception {
+    Assertions.assertEquals(
+        between(18, DAYS - 1), days(this.get("username", "alan", "from", "2024-01-19")));
+    Assertions.assertEquals(between(0, 1), days(this.get("username", "alan", "to", "2024-01-02")));
+  }
+
+  /** Dates outside the schedule are cut to it, and ranges wholly outside it are empty */
+  @Test
+  public void testOutsideSchedule() throws Exception {
+    Assertions.assertEquals(
+        between(0, 2),
+        days(this.get("username", "alan", "from", "2023-12-01", "to", "2024-01-03")));
+    Assertions.assertEquals(
+        between(19, DAYS - 1),
+        days(this.get("username", "alan", "from", "2024-01-20", "to", "2030-01-01")));
+    Assertions.assertEquals(
+        List.of(), days(this.get("username", "alan", "from", "2023-01-01", "to", "2023-12-31")));
+    Assertions.assertEquals(List.of(), days(this.get("username", "alan", "from", "2024-02-01")));
+  }
+
+  /** A week is seven days from the first of the schedule, and takes precedence over dates */
+  @Test
+  public void testWeek() throws Exception {
+    Assertions.assertEquals(between(0, 6), days(this.get("username", "alan", "week", "0")));
+    Assertions.assertEquals(
+        between(7, 13),
+        days(this.get("username", "alan", "week", "1", "from", "2024-01-01", "to", "2024-01-02")));
+    Assertions.assertEquals(List.of(), days(this.get("username", "alan", "week", "3")));
+    Assertions.assertEquals(List.of(), days(this.get("username", "alan", "week", "-1")));
+  }
+
+  /** A user with no schedule gets no days for any range */
+  @Test
+  public void testNoSchedule() throws Exception {
+    Assertions.assertEquals(
+        List.of(), days(this.get("username", "grace", "from", "2024-01-01", "to", "2024-01-07")));
+    Assertions.assertEquals(List.of(), days(this.get("username", "grace", "week", "0")));
+  }
+
+  /** Dates that are not yyyy-MM-dd, weeks that are not numbers, and no username are refused */
+  @Test
+  public void testBadRequests() throws Exception {
+    for (FakeResponse response :
+        List.of(
+            this.get("username", "alan", "from", "01-03-2024"),
+            this.get("username", "alan", "to", "2024-1-3"),
+            this.get("username", "alan", "week", "one"),
+            this.get("from", "2024-01-03"))) {
+      Assertions.assertEquals("error_bad_request", response.json().get("result"));
+    }
+  }
+}
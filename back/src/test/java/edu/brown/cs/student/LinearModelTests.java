@@ -14,10 +14,12 @@ import edu.brown.cs.student.main.models.markov.model.MarkovModel;
 import edu.brown.cs.student.main.models.markov.modelbuilding.Workout;
 import edu.brown.cs.student.main.rowing.distributiongenerators.RowingWorkoutByName;
 import edu.brown.cs.student.main.rowing.modelbuilders.LinearModelBuilder;
+import edu.brown.cs.student.main.rowing.modelbuilders.ModelCache;
 import edu.brown.cs.student.main.rowing.modelbuilders.ScheduleBuilder;
 import edu.brown.cs.student.main.server.RandomGenerator;
 import java.io.IOException;
 import java.time.LocalDate;
+import java.util.Map;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -258,4 +260,84 @@ public class LinearModelTests {
           LocalDate.of(endYear, endMonth, endDay));
     }
   }
+
+  /** A method for testing that schedules with the same example week share a model */
+  @Test
+  public void testLinearModelCache()
+      throws InvalidDistributionException, InvalidScheduleException, IOException,
+          NoWorkoutTypeException {
+    ModelCache cache = new ModelCache(ModelCache.DEFAULT_MAX_BYTES, 8);
+    ScheduleBuilder builder = new ScheduleBuilder();
+    Schedule shortPlan =
+        builder.minutesWithDates(
+            600,
+            LocalDate.of(2023, 5, 1),
+            LocalDate.of(2023, 5, 20),
+            0.2,
+            Workout.of("2k"),
+            Workout.of("UT2"));
+    Schedule longPlan =
+        builder.minutesWithDates(
+            600,
+            LocalDate.of(2023, 5, 1),
+            LocalDate.of(2023, 7, 20),
+            0.2,
+            Workout.of("2k"),
+            Workout.of("UT2"));
+    Schedule otherMinutes =
+        builder.minutesWithDates(
+            300,
+            LocalDate.of(2023, 5, 1),
+            LocalDate.of(2023, 5, 20),
+            0.2,
+            Workout.of("2k"),
+            Workout.of("UT2"));
+    MarkovModel model = cache.getLinearModel(shortPlan);
+    Assertions.assertSame(model, cache.getLinearModel(longPlan));
+    Assertions.assertNotSame(model, cache.getLinearModel(otherMinutes));
+    Assertions.assertEquals(1, cache.stats().hitCount());
+  }
+
+  @Test
+  public void testLinearPlanWithEvents()
+      throws InvalidDistributionException, InvalidScheduleException, NoWorkoutTypeException,
+          IOException, FormatterFailureException {
+    Emission race = new Emission("2k race", 10.0, "2k Race");
+    LocalDate raceDay = LocalDate.of(2023, 5, 17);
+    Schedule schedule =
+        new GenerateLinearPlan()
+            .generate(
+                600,
+                LocalDate.of(2023, 5, 1),
+                LocalDate.of(2023, 5, 20),
+                Workout._2K,
+                Workout.UT_2,
+                0.2,
+                Map.of(raceDay, race));
+    int races = 0;
+    for (Week week : schedule.weeks()) {
+      for (Day day : week.days()) {
+        Assertions.assertEquals(day.getNumberOfWorkouts(), day.getEmissions().size());
+        if (day.getDate().get().equals(raceDay)) {
+          Assertions.assertEquals(race, day.getEmissions().get(0));
+        }
+        races += day.getEmissions().stream().filter(race::equals).count();
+      }
+    }
+    Assertions.assertEquals(1, races);
+
+    // Sundays are rest days, so there is no workout to pin an event to
+    Assertions.assertThrows(
+        InvalidScheduleException.class,
+        () ->
+            new GenerateLinearPlan()
+                .generate(
+                    600,
+                    LocalDate.of(2023, 5, 1),
+                    LocalDate.of(2023, 5, 20),
+                    Workout._2K,
+                    Workout.UT_2,
+                    0.2,
+                    Map.of(LocalDate.of(2023, 5, 14), race)));
+  }
 }
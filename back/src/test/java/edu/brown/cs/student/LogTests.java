@@ -0,0 +1,94 @@
+package edu.brown.cs.student;
+
+import edu.brown.cs.student.main.server.Log;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/** This class tests the asynchronous, structured Log */
+public class LogTests {
+
+  /** Lines have the event and its fields, quoted where needed, and levels below are skipped */
+  @Test
+  public void testFormat() throws InterruptedException {
+    StringBuffer out = new StringBuffer();
+    Log log = new Log(Log.Level.INFO, 0, 16, out);
+    log.debug("skipped", "a", 1);
+    log.info("plan_requested", "username", "alan", "minutes", 600, "goal", null);
+    log.warn("failed", "error", "said \"no\"\nthen left", "empty", "");
+    log.flush();
+
+    String[] lines = out.toString().split("\n");
+    Assertions.assertEquals(2, lines.length);
+    Assertions.assertTrue(lines[0].startsWith("time="));
+    Assertions.assertTrue(
+        lines[0].endsWith(" level=INFO event=plan_requested username=alan minutes=600 goal=null"));
+    Assertions.assertTrue(
+        lines[1].endsWith(
+            " level=WARN event=failed error=\"said \\\"no\\\"\\nthen left\" empty=\"\""));
+    Assertions.assertFalse(log.enabled(Log.Level.DEBUG));
+    Assertions.assertTrue(log.enabled(Log.Level.ERROR));
+  }
+
+  /** Payloads are not logged by default, and are cut off when they are */
+  @Test
+  public void testPayloads() throws InterruptedException {
+    StringBuffer off = new StringBuffer();
+    Log quiet = new Log(Log.Level.DEBUG, 0, 16, off);
+    quiet.payload("schedule_read", "{}", "username", "alan");
+    quiet.flush();
+    Assertions.assertEquals("", off.toString());
+
+    StringBuffer on = new StringBuffer();
+    Log loud = new Log(Log.Level.INFO, 1, 16, on);
+    loud.payload("schedule_read", "x".repeat(Log.MAX_PAYLOAD_CHARS + 10), "username", "alan");
+    loud.flush();
+    String line = on.toString();
+    Assertions.assertTrue(line.contains(" username=alan payload=\"xxx"));
+    Assertions.assertTrue(line.contains("... (" + (Log.MAX_PAYLOAD_CHARS + 10) + " characters)"));
+  }
+
+  /** When the ring buffer is full, lines are dropped instead of making the caller wait */
+  @Test
+  public void testDropsWhenFull() throws InterruptedException {
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    StringBuilder written = new StringBuilder();
+    Appendable slow =
+        new Appendable() {
+          @Override
+          public Appendable append(CharSequence text) {
+            writing.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            written.append(text);
+            return this;
+          }
+
+          @Override
+          public Appendable append(CharSequence text, int start, int end) {
+            return this.append(text.subSequence(start, end));
+          }
+
+          @Override
+          public Appendable append(char c) {
+            return this.append(String.valueOf(c));
+          }
+        };
+    Log log = new Log(Log.Level.INFO, 0, 4, slow);
+    log.info("first");
+    Assertions.assertTrue(writing.await(10, TimeUnit.SECONDS));
+    // the writer is stuck on the first line, so four more fill the buffer and the rest are dropped
+    for (int i = 0; i < 10; i++) {
+      log.info("more", "i", i);
+    }
+    Assertions.assertEquals(6, log.dropped());
+    release.countDown();
+    log.flush();
+    Assertions.assertEquals(5, written.toString().split("\n").length);
+  }
+}
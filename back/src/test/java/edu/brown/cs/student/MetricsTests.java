@@ -0,0 +1,105 @@
+package edu.brown.cs.student;
+
+import edu.brown.cs.student.main.database.DatabaseCommands;
+import edu.brown.cs.student.main.server.Metrics;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import spark.Route;
+
+/** This class tests the Metrics registry and its Prometheus text */
+public class MetricsTests {
+
+  /** Observations land in the right buckets, which are rendered cumulatively */
+  @Test
+  public void testHistogram() {
+    Metrics metrics = new Metrics();
+    Metrics.Histogram histogram = metrics.histogram("test_seconds", "A test.", "route", "a");
+    histogram.observeNanos(200_000); // 0.2 ms, in the first bucket
+    histogram.observeNanos(1_000_000); // exactly 1 ms, which is in the 1 ms bucket
+    histogram.observeNanos(40_000_000); // 40 ms
+    histogram.observeNanos(60_000_000_000L); // a minute, past every bucket
+    Assertions.assertEquals(4, histogram.count());
+    Assertions.assertSame(histogram, metrics.histogram("test_seconds", "A test.", "route", "a"));
+
+    String text = metrics.render();
+    Assertions.assertTrue(text.contains("# HELP test_seconds A test.\n"));
+    Assertions.assertTrue(text.contains("# TYPE test_seconds histogram\n"));
+    Assertions.assertTrue(text.contains("test_seconds_bucket{route=\"a\",le=\"0.0005\"} 1\n"));
+    Assertions.assertTrue(text.contains("test_seconds_bucket{route=\"a\",le=\"0.001\"} 2\n"));
+    Assertions.assertTrue(text.contains("test_seconds_bucket{route=\"a\",le=\"0.025\"} 2\n"));
+    Assertions.assertTrue(text.contains("test_seconds_bucket{route=\"a\",le=\"0.05\"} 3\n"));
+    Assertions.assertTrue(text.contains("test_seconds_bucket{route=\"a\",le=\"30\"} 3\n"));
+    Assertions.assertTrue(text.contains("test_seconds_bucket{route=\"a\",le=\"+Inf\"} 4\n"));
+    Assertions.assertTrue(text.contains("test_seconds_sum{route=\"a\"} 60.0412\n"));
+    Assertions.assertTrue(text.contains("test_seconds_count{route=\"a\"} 4\n"));
+  }
+
+  /** Counters, read counters and gauges render their values, and label values are escaped */
+  @Test
+  public void testCountersAndGauges() {
+    Metrics metrics = new Metrics();
+    metrics.counter("test_total", "Things.", "kind", "say \"hi\"").increment();
+    AtomicLong hits = new AtomicLong(3);
+    metrics.counter("test_hits_total", "Hits.", hits::get);
+    metrics.gauge("test_depth", "Depth.", () -> 2.5);
+    hits.set(7);
+
+    String text = metrics.render();
+    Assertions.assertTrue(text.contains("test_total{kind=\"say \\\"hi\\\"\"} 1\n"));
+    Assertions.assertTrue(text.contains("test_hits_total 7\n"));
+    Assertions.assertTrue(text.contains("# TYPE test_depth gauge\ntest_depth 2.5\n"));
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> metrics.gauge("test_total", "Things.", () -> 1));
+  }
+
+  /** Timed routes record every request, and count the ones that throw */
+  @Test
+  public void testTimedRoute() throws Exception {
+    Route ok = Metrics.timed("test-ok", (request, response) -> "ok");
+    Route failing =
+        Metrics.timed(
+            "test-failing",
+            (request, response) -> {
+              throw new IOException("no");
+            });
+    Assertions.assertEquals("ok", ok.handle(null, null));
+    Assertions.assertThrows(IOException.class, () -> failing.handle(null, null));
+
+    String text = Metrics.shared().render();
+    Assertions.assertTrue(
+        text.contains("airobic_http_request_seconds_count{route=\"test-ok\"} 1\n"));
+    Assertions.assertTrue(
+        text.contains("airobic_http_request_seconds_count{route=\"test-failing\"} 1\n"));
+    Assertions.assertTrue(text.contains("airobic_http_errors_total{route=\"test-failing\"} 1\n"));
+    Assertions.assertTrue(text.contains("airobic_http_errors_total{route=\"test-ok\"} 0\n"));
+  }
+
+  /** Database requests are timed, and rejected ones are counted as errors */
+  @Test
+  public void testDatabaseMetrics() throws Exception {
+    Metrics.Histogram deletes =
+        Metrics.shared().histogram("airobic_db_request_seconds", "", "method", "DELETE");
+    Metrics.Counter errors =
+        Metrics.shared().counter("airobic_db_errors_total", "", "method", "DELETE");
+    long before = deletes.count();
+    long errorsBefore = errors.get();
+    try (RealtimeDatabaseStandIn standIn = new RealtimeDatabaseStandIn()) {
+      DatabaseCommands commands = new DatabaseCommands(standIn.url());
+      commands.delete("users/alan");
+    }
+    Assertions.assertEquals(before + 1, deletes.count());
+    Assertions.assertEquals(errorsBefore, errors.get());
+
+    // nothing is listening once the stand-in is closed
+    try (RealtimeDatabaseStandIn standIn = new RealtimeDatabaseStandIn()) {
+      String url = standIn.url();
+      standIn.close();
+      Assertions.assertThrows(
+          IOException.class, () -> new DatabaseCommands(url).delete("users/alan"));
+    }
+    Assertions.assertEquals(before + 2, deletes.count());
+    Assertions.assertEquals(errorsBefore + 1, errors.get());
+  }
+}
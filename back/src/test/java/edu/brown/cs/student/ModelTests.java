@@ -1,16 +1,33 @@
 package edu.brown.cs.student;
 
+import edu.brown.cs.student.main.database.EmbeddedStore;
 import edu.brown.cs.student.main.models.exceptions.*;
 import edu.brown.cs.student.main.models.formatters.DefaultFormatter;
 import edu.brown.cs.student.main.models.formatters.ScheduleFormatter;
 import edu.brown.cs.student.main.models.formattypes.Day;
 import edu.brown.cs.student.main.models.formattypes.Schedule;
 import edu.brown.cs.student.main.models.formattypes.Week;
+import edu.brown.cs.student.main.models.markov.model.BaumWelch;
+import edu.brown.cs.student.main.models.markov.model.BudgetSampler;
+import edu.brown.cs.student.main.models.markov.model.ClampedSampler;
+import edu.brown.cs.student.main.models.markov.model.CompiledMarkovModel;
 import edu.brown.cs.student.main.models.markov.model.Emission;
+import edu.brown.cs.student.main.models.markov.model.EmissionCursor;
+import edu.brown.cs.student.main.models.markov.model.ForwardBackward;
 import edu.brown.cs.student.main.models.markov.model.HiddenState;
 import edu.brown.cs.student.main.models.markov.model.MarkovModel;
+import edu.brown.cs.student.main.models.markov.model.Pin;
+import edu.brown.cs.student.main.models.markov.model.ViterbiDecoder;
+import edu.brown.cs.student.main.models.markov.modelbuilding.CatalogTrainer;
+import edu.brown.cs.student.main.models.markov.modelbuilding.ModelBuilder;
+import edu.brown.cs.student.main.models.markov.modelbuilding.Workout;
+import edu.brown.cs.student.main.models.markov.modelbuilding.WorkoutCatalog;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.DayOfWeek;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -400,4 +417,687 @@ public class ModelTests {
       Assertions.assertTrue(this.emissionSet.contains(emission));
     }
   }
+
+  @Test
+  public void testCompiledLinearModel() throws InvalidDistributionException {
+    ModelBuilder builder = new ModelBuilder();
+    List<Emission> cycle = new ArrayList<>();
+    for (String name : List.of("a", "b", "c")) {
+      Emission emission = new Emission(name, 60.0, name);
+      cycle.add(emission);
+      builder.generateNewState(name);
+      builder.addEmission(name, emission, 1.0);
+    }
+    builder.addLinearTransitions();
+    builder.addStartProbability("a", 1.0);
+
+    CompiledMarkovModel compiled = builder.compile();
+    Assertions.assertEquals(3, compiled.getNumberOfStates());
+    List<Emission> sequence = compiled.generateRandomSequence(7);
+    for (int i = 0; i < sequence.size(); i++) {
+      Assertions.assertEquals(cycle.get(i % 3), sequence.get(i));
+    }
+  }
+
+  @Test
+  public void testEmissionCursor() throws InvalidDistributionException {
+    ModelBuilder builder = new ModelBuilder();
+    List<Emission> cycle = new ArrayList<>();
+    for (String name : List.of("a", "b", "c")) {
+      Emission emission = new Emission(name, 60.0, name);
+      cycle.add(emission);
+      builder.generateNewState(name);
+      builder.addEmission(name, emission, 1.0);
+    }
+    builder.addLinearTransitions();
+    builder.addStartProbability("a", 1.0);
+    MarkovModel model = builder.build();
+
+    EmissionCursor cursor = model.emissions();
+    Assertions.assertEquals(0, cursor.generated());
+    for (int i = 0; i < 5; i++) {
+      Assertions.assertTrue(cursor.hasNext());
+      Assertions.assertEquals(cycle.get(i % 3), cursor.next());
+    }
+    Assertions.assertEquals(5, cursor.generated());
+    Assertions.assertEquals(cycle.get(2), cursor.currentState().emit());
+
+    // takes workouts until 150 minutes are filled, so exactly three are generated
+    int[] minutes = {150};
+    List<Emission> week =
+        model
+            .emissionStream()
+            .takeWhile(
+                emission -> {
+                  boolean needed = minutes[0] > 0;
+                  minutes[0] -= emission.getTime();
+                  return needed;
+                })
+            .toList();
+    Assertions.assertEquals(3, week.size());
+    Assertions.assertEquals(cycle, week);
+  }
+
+  @Test
+  public void testCompiledTransitionMatrix() throws InvalidDistributionException {
+    HiddenState stateOne = new HiddenState("state 1", new HashMap<>(), new HashMap<>());
+    HiddenState stateTwo = new HiddenState("state 2", new HashMap<>(), new HashMap<>());
+    stateOne.addTransition(stateOne, 0.4);
+    stateOne.addTransition(stateTwo, 0.6);
+    stateTwo.addTransition(stateOne, 0.9);
+    stateTwo.addTransition(stateTwo, 0.1);
+    stateOne.fillEmissions(this.validEmissionDist);
+    stateTwo.fillEmissions(this.validEmissionDist);
+
+    HashMap<HiddenState, Double> startDist = new HashMap<>();
+    startDist.put(stateOne, 1.0);
+    startDist.put(stateTwo, 0.0);
+
+    CompiledMarkovModel compiled = new MarkovModel(startDist).getCompiled();
+    for (int from = 0; from < compiled.getNumberOfStates(); from++) {
+      double rowSum = 0;
+      for (int to = 0; to < compiled.getNumberOfStates(); to++) {
+        rowSum += compiled.getTransitionProbability(from, to);
+      }
+      Assertions.assertEquals(1.0, rowSum, 1e-9);
+      double expectedSelf = compiled.getState(from) == stateOne ? 0.4 : 0.1;
+      Assertions.assertEquals(expectedSelf, compiled.getTransitionProbability(from, from), 1e-9);
+    }
+  }
+
+  @Test
+  public void testFrozenStatesRejectChanges() throws InvalidDistributionException {
+    HiddenState stateOne = new HiddenState("state 1", new HashMap<>(), new HashMap<>());
+    stateOne.addTransition(stateOne, 1.0);
+    stateOne.fillEmissions(this.validEmissionDist);
+    Assertions.assertFalse(stateOne.isFrozen());
+
+    HashMap<HiddenState, Double> startDist = new HashMap<>();
+    startDist.put(stateOne, 1.0);
+    new MarkovModel(startDist);
+
+    Assertions.assertTrue(stateOne.isFrozen());
+    Assertions.assertThrows(
+        IllegalStateException.class, () -> stateOne.addTransition(stateOne, 0.5));
+    Assertions.assertThrows(
+        IllegalStateException.class, () -> stateOne.fillEmissions(this.validEmissionDist));
+    Assertions.assertTrue(this.emissionSet.contains(stateOne.emit()));
+  }
+
+  @Test
+  public void testWorkoutCatalogReload()
+      throws IOException, NoWorkoutTypeException, InvalidDistributionException {
+    Path file = Files.createTempFile("workouts", ".json");
+    String entry =
+        "{\"emission\": {\"workout\": \"%s\"}, \"minutes\": 60.0, \"title\": \"%s\", "
+            + "\"probability\": 1.0}";
+    Files.writeString(
+        file, "{\"categories\": {\"2k\": [" + String.format(entry, "first", "t") + "]}}");
+    try (WorkoutCatalog catalog = new WorkoutCatalog(file.toString())) {
+      WorkoutCatalog.Snapshot first = catalog.current();
+      Assertions.assertEquals("first", first.get(Workout._2K).outcome(0).getWorkout());
+      Assertions.assertThrows(NoWorkoutTypeException.class, () -> first.get(Workout._6K));
+
+      Files.writeString(
+          file, "{\"categories\": {\"2k\": [" + String.format(entry, "second", "t") + "]}}");
+      Assertions.assertTrue(catalog.reload());
+      Assertions.assertTrue(catalog.current().version() > first.version());
+      Assertions.assertEquals("second", catalog.current().get(Workout._2K).outcome(0).getWorkout());
+      // snapshots that were already taken do not change
+      Assertions.assertEquals("first", first.get(Workout._2K).outcome(0).getWorkout());
+
+      // an invalid edit keeps the previous version
+      Files.writeString(file, "{\"categories\": {\"2k\": [");
+      Assertions.assertFalse(catalog.reload());
+      Assertions.assertEquals("second", catalog.current().get(Workout._2K).outcome(0).getWorkout());
+
+      // a catalog of another file never has the same version, so no cached model is shared
+      Path otherFile = Files.createTempFile("workouts", ".json");
+      Files.writeString(
+          otherFile, "{\"categories\": {\"2k\": [" + String.format(entry, "first", "t") + "]}}");
+      try (WorkoutCatalog other = new WorkoutCatalog(otherFile.toString())) {
+        Assertions.assertNotEquals(catalog.current().version(), other.current().version());
+      } finally {
+        Files.delete(otherFile);
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testViterbiCycle() throws InvalidDistributionException {
+    ModelBuilder builder = new ModelBuilder();
+    List<Emission> cycle = new ArrayList<>();
+    for (String name : List.of("a", "b", "c")) {
+      Emission emission = new Emission(name, 60.0, name);
+      cycle.add(emission);
+      builder.generateNewState(name);
+      builder.addEmission(name, emission, 1.0);
+      builder.addStartProbability(name, 1.0 / 3);
+    }
+    builder.addLinearTransitions();
+    MarkovModel model = builder.build();
+
+    // logged times differ from the plan's, and a workout outside the plan is decoded by position
+    List<Emission> logged =
+        List.of(
+            cycle.get(1).setTime(45.0),
+            cycle.get(2),
+            new Emission("off script", 30.0, "off script"),
+            cycle.get(1));
+    List<HiddenState> states = model.mostLikelyStates(logged);
+    Assertions.assertEquals(4, states.size());
+    for (int i = 0; i < logged.size(); i++) {
+      Assertions.assertEquals(cycle.get((i + 1) % 3), states.get(i).emit());
+    }
+    Assertions.assertEquals(List.of(), model.mostLikelyStates(List.of()));
+  }
+
+  @Test
+  public void testViterbiMatchesBruteForce() throws InvalidDistributionException {
+    Emission first = new Emission("workout", 60.0, "title");
+    Emission second = new Emission("workout2", 80.0, "title2");
+    CompiledMarkovModel compiled = this.twoStateNoisyModel();
+
+    ViterbiDecoder decoder = compiled.decoder();
+    List<List<Emission>> sequences =
+        List.of(
+            List.of(first, second, second, first, second, second, first),
+            List.of(second, second, first),
+            List.of(first));
+    // the same decoder is reused, with sequences shorter than its buffers
+    for (List<Emission> logged : sequences) {
+      int[] path = decoder.decode(logged);
+      double best = Double.NEGATIVE_INFINITY;
+      int[] bestPath = null;
+      for (int paths = 0; paths < 1 << logged.size(); paths++) {
+        int[] candidate = new int[logged.size()];
+        double probability = 1;
+        for (int t = 0; t < logged.size(); t++) {
+          candidate[t] = (paths >> t) & 1;
+          probability *=
+              t == 0
+                  ? compiled.getStartProbability(candidate[t])
+                  : compiled.getTransitionProbability(candidate[t - 1], candidate[t]);
+          for (int e = 0; e < compiled.getNumberOfEmissions(candidate[t]); e++) {
+            if (compiled.getEmission(candidate[t], e).equals(logged.get(t))) {
+              probability *= compiled.getEmissionProbability(candidate[t], e);
+            }
+          }
+        }
+        if (Math.log(probability) > best) {
+          best = Math.log(probability);
+          bestPath = candidate;
+        }
+      }
+      Assertions.assertEquals(best, decoder.getLogProbability(), 1e-9);
+      Assertions.assertEquals(Arrays.toString(bestPath), Arrays.toString(path));
+    }
+  }
+
+  private CompiledMarkovModel twoStateNoisyModel() throws InvalidDistributionException {
+    HiddenState stateOne = new HiddenState("state 1", new HashMap<>(), new HashMap<>());
+    HiddenState stateTwo = new HiddenState("state 2", new HashMap<>(), new HashMap<>());
+    stateOne.addTransition(stateOne, 0.7);
+    stateOne.addTransition(stateTwo, 0.3);
+    stateTwo.addTransition(stateOne, 0.4);
+    stateTwo.addTransition(stateTwo, 0.6);
+    stateOne.fillEmissions(this.validEmissionDist);
+    stateTwo.addEmission(new Emission("workout", 60.0, "title"), 0.3);
+    stateTwo.addEmission(new Emission("workout2", 80.0, "title2"), 0.7);
+    HashMap<HiddenState, Double> startDist = new HashMap<>();
+    startDist.put(stateOne, 0.6);
+    startDist.put(stateTwo, 0.4);
+    return new MarkovModel(startDist).getCompiled();
+  }
+
+  // Sums the probability of every path through a two state model that emits a sequence, keeping
+  // the probability of each state at each step in marginals
+  private static double bruteForce(
+      CompiledMarkovModel compiled, List<Emission> logged, double[][] marginals) {
+    double total = 0;
+    for (int paths = 0; paths < 1 << logged.size(); paths++) {
+      double probability = 1;
+      for (int t = 0; t < logged.size(); t++) {
+        int state = (paths >> t) & 1;
+        probability *=
+            t == 0
+                ? compiled.getStartProbability(state)
+                : compiled.getTransitionProbability((paths >> (t - 1)) & 1, state);
+        for (int e = 0; e < compiled.getNumberOfEmissions(state); e++) {
+          if (compiled.getEmission(state, e).equals(logged.get(t))) {
+            probability *= compiled.getEmissionProbability(state, e);
+          }
+        }
+      }
+      total += probability;
+      for (int t = 0; t < logged.size(); t++) {
+        marginals[t][(paths >> t) & 1] += probability;
+      }
+    }
+    return total;
+  }
+
+  @Test
+  public void testForwardBackwardMatchesBruteForce() throws InvalidDistributionException {
+    CompiledMarkovModel compiled = this.twoStateNoisyModel();
+    Emission first = new Emission("workout", 60.0, "title");
+    Emission second = new Emission("workout2", 80.0, "title2");
+    ForwardBackward engine = compiled.forwardBackward();
+    for (List<Emission> logged :
+        List.of(
+            List.of(first, second, second, first, second, second, first, first),
+            List.of(second, first),
+            List.of(second))) {
+      double[][] marginals = new double[logged.size()][2];
+      double total = bruteForce(compiled, logged, marginals);
+      Assertions.assertEquals(Math.log(total), engine.logLikelihood(logged), 1e-9);
+
+      double[][] posteriors = engine.posteriors(logged);
+      Assertions.assertEquals(Math.log(total), engine.getLogLikelihood(), 1e-9);
+      for (int t = 0; t < logged.size(); t++) {
+        for (int s = 0; s < 2; s++) {
+          Assertions.assertEquals(marginals[t][s] / total, posteriors[t][s], 1e-9);
+        }
+      }
+    }
+    Assertions.assertEquals(0.0, engine.logLikelihood(List.of()));
+  }
+
+  @Test
+  public void testForwardBackwardImpossible() throws InvalidDistributionException {
+    ModelBuilder builder = new ModelBuilder();
+    Emission a = new Emission("a", 60.0, "a");
+    Emission b = new Emission("b", 60.0, "b");
+    builder.generateNewState("a");
+    builder.generateNewState("b");
+    builder.addEmission("a", a, 1.0);
+    builder.addEmission("b", b, 1.0);
+    builder.addStartProbability("a", 1.0);
+    builder.addStartProbability("b", 0.0);
+    builder.addTransition("a", "b", 1.0);
+    builder.addTransition("a", "a", 0.0);
+    builder.addTransition("b", "a", 1.0);
+    builder.addTransition("b", "b", 0.0);
+    CompiledMarkovModel compiled = builder.compile();
+    ForwardBackward engine = compiled.forwardBackward();
+
+    Assertions.assertEquals(0.0, engine.logLikelihood(List.of(a, b, a)), 1e-12);
+    // b cannot come first, a cannot follow a, and the model has no c at all
+    Emission c = new Emission("c", 60.0, "c");
+    for (List<Emission> impossible : List.of(List.of(b), List.of(a, a), List.of(a, c, a))) {
+      Assertions.assertEquals(Double.NEGATIVE_INFINITY, engine.logLikelihood(impossible));
+      Assertions.assertEquals(0, engine.posteriors(impossible).length);
+      Assertions.assertEquals(Double.NEGATIVE_INFINITY, engine.getLogLikelihood());
+    }
+
+    // an impossible season is left out of training, and an unknown workout is treated as unseen
+    BaumWelch.Result result =
+        BaumWelch.train(compiled, List.of(List.of(a, b, c), List.of(a, a)), 5, 0);
+    for (double logLikelihood : result.logLikelihoods()) {
+      Assertions.assertEquals(0.0, logLikelihood, 1e-9);
+    }
+  }
+
+  @Test
+  public void testForwardBackwardLongAndBatched() throws InvalidDistributionException {
+    CompiledMarkovModel compiled = this.twoStateNoisyModel();
+    // long enough that unscaled probabilities would underflow to 0
+    List<Emission> year = compiled.generateRandomSequence(5000);
+    double logLikelihood = compiled.forwardBackward().logLikelihood(year);
+    Assertions.assertTrue(Double.isFinite(logLikelihood));
+    Assertions.assertTrue(logLikelihood < -1000);
+
+    List<List<Emission>> plans = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      plans.add(compiled.generateRandomSequence(1 + i % 40));
+    }
+    int threshold = ForwardBackward.BATCH_THRESHOLD;
+    ForwardBackward.BATCH_THRESHOLD = 8;
+    try {
+      double[] scores = ForwardBackward.logLikelihoods(compiled, plans);
+      ForwardBackward engine = compiled.forwardBackward();
+      for (int i = 0; i < plans.size(); i++) {
+        Assertions.assertEquals(engine.logLikelihood(plans.get(i)), scores[i], 1e-12);
+      }
+    } finally {
+      ForwardBackward.BATCH_THRESHOLD = threshold;
+    }
+  }
+
+  // Builds a two state model where each state mostly emits its own workout
+  private static CompiledMarkovModel twoStateModel(double stay, double own)
+      throws InvalidDistributionException {
+    ModelBuilder builder = new ModelBuilder();
+    for (String name : List.of("a", "b")) {
+      builder.generateNewState(name);
+      builder.addEmission(name, new Emission(name, 60.0, name), own);
+      String other = name.equals("a") ? "b" : "a";
+      builder.addEmission(name, new Emission(other, 60.0, "other"), 1 - own);
+      builder.addStartProbability(name, 0.5);
+    }
+    builder.addTransition("a", "a", stay);
+    builder.addTransition("a", "b", 1 - stay);
+    builder.addTransition("b", "b", stay);
+    builder.addTransition("b", "a", 1 - stay);
+    return builder.compile();
+  }
+
+  private static int stateNamed(CompiledMarkovModel model, String name) {
+    for (int s = 0; s < model.getNumberOfStates(); s++) {
+      if (model.getState(s).getName().equals(name)) {
+        return s;
+      }
+    }
+    throw new AssertionError("no state " + name);
+  }
+
+  @Test
+  public void testBaumWelchRecoversModel() throws InvalidDistributionException {
+    CompiledMarkovModel truth = twoStateModel(0.9, 0.85);
+    List<List<Emission>> seasons = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      seasons.add(truth.generateRandomSequence(60));
+    }
+    double smoothing = BaumWelch.SMOOTHING;
+    BaumWelch.SMOOTHING = 0;
+    try {
+      BaumWelch.Result result = BaumWelch.train(twoStateModel(0.6, 0.6), seasons, 200, 1e-7);
+      // without smoothing, every iteration is at least as likely as the last
+      List<Double> history = result.logLikelihoods();
+      for (int i = 1; i < history.size(); i++) {
+        Assertions.assertTrue(history.get(i) >= history.get(i - 1) - 1e-6);
+      }
+      Assertions.assertTrue(history.size() < 200);
+
+      CompiledMarkovModel trained = result.model();
+      int a = stateNamed(trained, "a");
+      int b = stateNamed(trained, "b");
+      Assertions.assertEquals(0.9, trained.getTransitionProbability(a, a), 0.05);
+      Assertions.assertEquals(0.9, trained.getTransitionProbability(b, b), 0.05);
+      for (int e = 0; e < trained.getNumberOfEmissions(a); e++) {
+        double expected = trained.getEmission(a, e).getWorkout().equals("a") ? 0.85 : 0.15;
+        Assertions.assertEquals(expected, trained.getEmissionProbability(a, e), 0.05);
+      }
+    } finally {
+      BaumWelch.SMOOTHING = smoothing;
+    }
+  }
+
+  @Test
+  public void testBaumWelchParallelMatchesSequential() throws InvalidDistributionException {
+    CompiledMarkovModel truth = twoStateModel(0.8, 0.7);
+    List<List<Emission>> seasons = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      seasons.add(truth.generateRandomSequence(1 + i % 30));
+    }
+    int threshold = BaumWelch.BATCH_THRESHOLD;
+    BaumWelch.BATCH_THRESHOLD = 4;
+    ForkJoinPool single = new ForkJoinPool(1);
+    try {
+      CompiledMarkovModel initial = twoStateModel(0.6, 0.6);
+      BaumWelch.Result parallel = BaumWelch.train(initial, seasons, 5, 0);
+      BaumWelch.Result sequential = BaumWelch.train(initial, seasons, 5, 0, single);
+      Assertions.assertEquals(5, parallel.logLikelihoods().size());
+      for (int i = 0; i < 5; i++) {
+        Assertions.assertEquals(
+            sequential.logLikelihoods().get(i), parallel.logLikelihoods().get(i), 1e-6);
+      }
+      for (int from = 0; from < 2; from++) {
+        for (int to = 0; to < 2; to++) {
+          Assertions.assertEquals(
+              sequential.model().getTransitionProbability(from, to),
+              parallel.model().getTransitionProbability(from, to),
+              1e-9);
+        }
+      }
+    } finally {
+      BaumWelch.BATCH_THRESHOLD = threshold;
+      single.shutdown();
+    }
+  }
+
+  @Test
+  public void testCatalogTrainer() throws Exception {
+    Path directory = Files.createTempDirectory("catalog-trainer");
+    Path catalogFile = directory.resolve("workouts.json");
+    Path output = directory.resolve("trained.json");
+    String entry =
+        "{\"emission\": {\"workout\": \"%s\"}, \"minutes\": 60.0, \"title\": \"%s\", "
+            + "\"probability\": 0.5}";
+    Files.writeString(
+        catalogFile,
+        "{\"categories\": {\"2k\": ["
+            + String.format(entry, "2k one", "A")
+            + ","
+            + String.format(entry, "2k two", "B")
+            + "], \"6k\": ["
+            + String.format(entry, "6k one", "C")
+            + ","
+            + String.format(entry, "6k two", "D")
+            + "]}}");
+    // only workouts with data were done; the last day's workout was not
+    String day =
+        "{\"date\":\"05-0%d-2023\",\"workouts\":[{\"time\":45,\"title\":\"%s\","
+            + "\"workout\":\"%s\",\"data\":{\"rpe\":\"7\"}}]}";
+    String days =
+        "["
+            + String.format(day, 1, "A", "2k one")
+            + ","
+            + String.format(day, 2, "C", "6k one")
+            + ","
+            + String.format(day, 3, "A", "2k one")
+            + ",{\"date\":\"05-04-2023\",\"workouts\":[{\"time\":60,\"title\":\"D\","
+            + "\"workout\":\"6k two\"}]}]";
+    try (EmbeddedStore store = new EmbeddedStore(directory.resolve("store.log").toString())) {
+      store.put("{\"schedule\":{\"days\":" + days + "}}", "users/alan");
+      store.put("{\"schedule\":{\"days\":" + days + "}}", "users/grace");
+      store.put("{\"valid\":\"true\"}", "users/nobody");
+
+      List<List<Emission>> logged = CatalogTrainer.loggedSequences(store);
+      Assertions.assertEquals(2, logged.size());
+      Assertions.assertEquals(
+          List.of(
+              new Emission("2k one", 45.0, "A"),
+              new Emission("6k one", 45.0, "C"),
+              new Emission("2k one", 45.0, "A")),
+          logged.get(0));
+
+      BaumWelch.Result result = CatalogTrainer.train(catalogFile.toString(), store, output, 20);
+      Assertions.assertFalse(result.logLikelihoods().isEmpty());
+    }
+    try (WorkoutCatalog trained = new WorkoutCatalog(output.toString())) {
+      HashMap<Emission, Double> twoK = trained.current().get(Workout._2K).toHashMap();
+      Assertions.assertTrue(
+          twoK.get(new Emission("2k one", 60.0, "A"))
+              > twoK.get(new Emission("2k two", 60.0, "B")));
+      // workouts nobody logged keep a small share
+      Assertions.assertTrue(twoK.get(new Emission("2k two", 60.0, "B")) > 0);
+      HashMap<Emission, Double> sixK = trained.current().get(Workout._6K).toHashMap();
+      Assertions.assertTrue(
+          sixK.get(new Emission("6k one", 60.0, "C"))
+              > sixK.get(new Emission("6k two", 60.0, "D")));
+      Assertions.assertTrue(Files.readString(output).contains("\"transitions\""));
+    } finally {
+      try (var files = Files.list(directory)) {
+        for (Path path : files.toList()) {
+          Files.delete(path);
+        }
+      }
+      Files.delete(directory);
+    }
+  }
+
+  @Test
+  public void testBudgetSamplerMatchesConditional() throws InvalidDistributionException {
+    ModelBuilder builder = new ModelBuilder();
+    builder.generateNewState("short");
+    builder.generateNewState("long");
+    builder.addEmission("short", new Emission("20", 20.0, "20"), 0.5);
+    builder.addEmission("short", new Emission("30", 30.0, "30"), 0.5);
+    builder.addEmission("long", new Emission("30", 30.0, "30"), 0.4);
+    builder.addEmission("long", new Emission("50", 50.0, "50"), 0.6);
+    builder.addTransition("short", "short", 0.3);
+    builder.addTransition("short", "long", 0.7);
+    builder.addTransition("long", "short", 0.5);
+    builder.addTransition("long", "long", 0.5);
+    builder.addStartProbability("short", 0.5);
+    builder.addStartProbability("long", 0.5);
+    CompiledMarkovModel compiled = builder.compile();
+
+    // every sequence of workouts adding up to exactly 100 minutes, with the probability of a walk
+    // starting with it
+    HashMap<String, Double> expected = new HashMap<>();
+    List<List<Emission>> open = new ArrayList<>(List.of(List.of()));
+    double total = 0;
+    while (!open.isEmpty()) {
+      List<Emission> prefix = open.remove(open.size() - 1);
+      double minutes = minutes(prefix);
+      if (minutes == 100) {
+        double probability = Math.exp(compiled.forwardBackward().logLikelihood(prefix));
+        expected.put(prefix.toString(), probability);
+        total += probability;
+        continue;
+      }
+      for (int length : new int[] {20, 30, 50}) {
+        if (minutes + length <= 100) {
+          List<Emission> next = new ArrayList<>(prefix);
+          next.add(new Emission(String.valueOf(length), length, String.valueOf(length)));
+          open.add(next);
+        }
+      }
+    }
+
+    BudgetSampler sampler = compiled.budgetSampler(0);
+    Assertions.assertEquals(total, sampler.probability(100), 1e-12);
+    int draws = 40000;
+    HashMap<String, Integer> counts = new HashMap<>();
+    for (int i = 0; i < draws; i++) {
+      List<Emission> walk = sampler.sample(100);
+      Assertions.assertEquals(100, minutes(walk));
+      counts.merge(walk.toString(), 1, Integer::sum);
+    }
+    Assertions.assertTrue(expected.keySet().containsAll(counts.keySet()));
+    for (String walk : expected.keySet()) {
+      Assertions.assertEquals(
+          expected.get(walk) / total, counts.getOrDefault(walk, 0) / (double) draws, 0.01);
+    }
+  }
+
+  @Test
+  public void testBudgetSamplerNearestTotal() throws InvalidDistributionException {
+    CompiledMarkovModel compiled = twoStateModel(0.5, 0.5);
+    BudgetSampler sampler = compiled.budgetSampler(15);
+    Assertions.assertEquals(List.of(), sampler.sample(0));
+    HashSet<Double> totals = new HashSet<>();
+    for (int i = 0; i < 200; i++) {
+      // 60 and 120 are the nearest totals to 90, and 120 the nearest to 100 and 130
+      Assertions.assertEquals(120, minutes(sampler.sample(130)));
+      Assertions.assertEquals(120, minutes(sampler.sample(100)));
+      totals.add(minutes(sampler.sample(90)));
+      Assertions.assertEquals(1, sampler.sample(20).size());
+    }
+    Assertions.assertEquals(Set.of(60.0, 120.0), totals);
+  }
+
+  @Test
+  public void testClampedSamplerMatchesConditional() throws InvalidDistributionException {
+    CompiledMarkovModel compiled = this.twoStateNoisyModel();
+    int two = stateNamed(compiled, "state 2");
+    Emission longer = new Emission("workout2", 80.0, "title2");
+    Map<Integer, Pin> pins = Map.of(1, Pin.state(compiled.getState(two)), 3, Pin.emission(longer));
+
+    // the probability of every path through the model given the pins
+    int length = 5;
+    double[] expected = new double[1 << length];
+    double total = 0;
+    for (int paths = 0; paths < expected.length; paths++) {
+      double probability = 1;
+      for (int t = 0; t < length; t++) {
+        int state = (paths >> t) & 1;
+        probability *=
+            t == 0
+                ? compiled.getStartProbability(state)
+                : compiled.getTransitionProbability((paths >> (t - 1)) & 1, state);
+      }
+      if (((paths >> 1) & 1) != two) {
+        probability = 0;
+      }
+      int third = (paths >> 3) & 1;
+      for (int e = 0; e < compiled.getNumberOfEmissions(third); e++) {
+        if (compiled.getEmission(third, e).equals(longer)) {
+          probability *= compiled.getEmissionProbability(third, e);
+        }
+      }
+      expected[paths] = probability;
+      total += probability;
+    }
+
+    ClampedSampler sampler = compiled.clampedSampler();
+    int draws = 40000;
+    int[] counts = new int[expected.length];
+    for (int i = 0; i < draws; i++) {
+      int[] path = sampler.sampleStates(length, pins);
+      int paths = 0;
+      for (int t = 0; t < length; t++) {
+        paths |= path[t] << t;
+      }
+      counts[paths]++;
+    }
+    for (int paths = 0; paths < expected.length; paths++) {
+      Assertions.assertEquals(expected[paths] / total, counts[paths] / (double) draws, 0.01);
+    }
+
+    List<Emission> sequence = sampler.sample(length, pins);
+    Assertions.assertEquals(length, sequence.size());
+    Assertions.assertSame(longer, sequence.get(3));
+  }
+
+  @Test
+  public void testClampedSamplerPins() throws InvalidDistributionException {
+    ModelBuilder builder = new ModelBuilder();
+    builder.generateNewState("on");
+    builder.generateNewState("off");
+    builder.addEmission("on", new Emission("on", 60.0, "on"), 1.0);
+    builder.addEmission("off", new Emission("off", 30.0, "off"), 1.0);
+    builder.addTransition("on", "on", 0.0);
+    builder.addTransition("on", "off", 1.0);
+    builder.addTransition("off", "on", 1.0);
+    builder.addTransition("off", "off", 0.0);
+    builder.addStartProbability("on", 0.5);
+    builder.addStartProbability("off", 0.5);
+    CompiledMarkovModel alternating = builder.compile();
+    HiddenState on = alternating.getState(stateNamed(alternating, "on"));
+    ClampedSampler sampler = alternating.clampedSampler();
+
+    // pinning one position fixes every other, as the states alternate
+    for (int i = 0; i < 50; i++) {
+      List<Emission> sequence = sampler.sample(6, Map.of(4, Pin.state(on)));
+      Assertions.assertEquals(
+          List.of("on", "off", "on", "off", "on", "off"),
+          sequence.stream().map(Emission::getWorkout).toList());
+    }
+    // a race the model cannot emit is placed as it is, and says nothing about the states
+    Emission race = new Emission("race", 10.0, "race");
+    HashSet<String> firsts = new HashSet<>();
+    for (int i = 0; i < 50; i++) {
+      List<Emission> sequence = sampler.sample(3, Map.of(1, Pin.emission(race)));
+      Assertions.assertSame(race, sequence.get(1));
+      Assertions.assertEquals(sequence.get(0).getWorkout(), sequence.get(2).getWorkout());
+      firsts.add(sequence.get(0).getWorkout());
+    }
+    Assertions.assertEquals(Set.of("on", "off"), firsts);
+
+    Assertions.assertThrows(
+        InvalidDistributionException.class,
+        () -> sampler.sample(4, Map.of(0, Pin.state(on), 1, Pin.state(on))));
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> sampler.sample(2, Map.of(2, Pin.state(on))));
+    Assertions.assertEquals(List.of(), sampler.sample(0, Map.of()));
+  }
+
+  private static double minutes(List<Emission> workouts) {
+    return workouts.stream().mapToDouble(Emission::getTime).sum();
+  }
 }
@@ -0,0 +1,72 @@
+package edu.brown.cs.student;
+
+import edu.brown.cs.student.main.handlers.PlanJobs;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/** This class tests PlanJobs, which generates plans off the request threads */
+public class PlanJobsTests {
+
+  /** Jobs move from queued to running to done (or failed), and can be looked up by id */
+  @Test
+  public void testStatus() throws Exception {
+    PlanJobs jobs = new PlanJobs(1, 4);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    PlanJobs.Job first =
+        jobs.submit(
+            "alan",
+            () -> {
+              started.countDown();
+              release.await();
+              return null;
+            });
+    PlanJobs.Job second =
+        jobs.submit(
+            "grace",
+            () -> {
+              throw new IllegalStateException("no plan");
+            });
+    started.await();
+    Assertions.assertEquals(PlanJobs.Status.RUNNING, first.status());
+    Assertions.assertEquals(PlanJobs.Status.QUEUED, second.status());
+    Assertions.assertEquals(1, jobs.queued());
+    Assertions.assertSame(second, jobs.get(second.id()));
+
+    release.countDown();
+    first.await();
+    Assertions.assertEquals(PlanJobs.Status.DONE, first.status());
+    ExecutionException failure = Assertions.assertThrows(ExecutionException.class, second::await);
+    Assertions.assertEquals("no plan", failure.getCause().getMessage());
+    Assertions.assertEquals(PlanJobs.Status.FAILED, second.status());
+    Assertions.assertEquals("no plan", second.error());
+    Assertions.assertNull(jobs.get("not a job"));
+  }
+
+  /** Past the queue bound, jobs are rejected rather than queued */
+  @Test
+  public void testBounded() throws Exception {
+    PlanJobs jobs = new PlanJobs(1, 1);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    PlanJobs.Job running =
+        jobs.submit(
+            "alan",
+            () -> {
+              started.countDown();
+              release.await();
+              return null;
+            });
+    started.await();
+    PlanJobs.Job queued = jobs.submit("grace", () -> null);
+    Assertions.assertThrows(RejectedExecutionException.class, () -> jobs.submit("ada", () -> null));
+
+    release.countDown();
+    running.await();
+    queued.await();
+    Assertions.assertEquals(PlanJobs.Status.DONE, queued.status());
+  }
+}
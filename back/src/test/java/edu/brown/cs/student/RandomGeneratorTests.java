@@ -3,10 +3,12 @@ package edu.brown.cs.student;
 import edu.brown.cs.student.main.models.exceptions.InvalidDistributionException;
 import edu.brown.cs.student.main.models.exceptions.InvalidScheduleException;
 import edu.brown.cs.student.main.models.formattypes.Day;
+import edu.brown.cs.student.main.server.AliasSampler;
 import edu.brown.cs.student.main.server.RandomGenerator;
 import java.time.DayOfWeek;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -235,4 +237,71 @@ public class RandomGeneratorTests {
             });
     Assertions.assertEquals(exn.getMessage(), "Distribution probabilities did not sum to 1.");
   }
+
+  /** Tests that an AliasSampler built from a single element distribution always emits it. */
+  @Test
+  public void testAliasSamplerSingle() throws InvalidDistributionException {
+    AliasSampler<String> sampler = AliasSampler.of(String.class, this.validDistOne);
+    for (int i = 0; i < NUM_TRIALS; i++) {
+      Assertions.assertEquals("this", sampler.sample());
+    }
+  }
+
+  /**
+   * Tests that an AliasSampler never emits outcomes with probability 0, and emits the others at
+   * roughly the right frequencies.
+   */
+  @Test
+  public void testAliasSamplerFrequencies() throws InvalidDistributionException {
+    HashMap<String, Double> dist = new HashMap<>(this.validDistMultiple);
+    dist.put("never", 0.0);
+    AliasSampler<String> sampler = AliasSampler.of(String.class, dist);
+    HashMap<String, Integer> counts = new HashMap<>();
+    int draws = 100000;
+    for (int i = 0; i < draws; i++) {
+      counts.merge(sampler.sample(), 1, Integer::sum);
+    }
+    Assertions.assertFalse(counts.containsKey("never"));
+    Assertions.assertEquals(0.5, counts.get("this") / (double) draws, 0.02);
+    Assertions.assertEquals(0.2, counts.get("that") / (double) draws, 0.02);
+    Assertions.assertEquals(0.3, counts.get("those") / (double) draws, 0.02);
+  }
+
+  /** Tests that an AliasSampler cannot be built from an invalid distribution. */
+  @Test
+  public void testAliasSamplerInvalid() {
+    Exception exn =
+        Assertions.assertThrows(
+            InvalidDistributionException.class,
+            () -> {
+              AliasSampler.of(Double.class, this.invalidDistNoSumHigh);
+            });
+    Assertions.assertEquals(exn.getMessage(), "Distribution probabilities did not sum to 1.");
+  }
+
+  /** Tests that an AliasSampler cannot be built from weights that are not finite. */
+  @Test
+  public void testAliasSamplerNotFinite() {
+    Exception exn =
+        Assertions.assertThrows(
+            InvalidDistributionException.class,
+            () -> {
+              new AliasSampler<>(List.of("this", "that"), new double[] {0.5, Double.NaN});
+            });
+    Assertions.assertEquals(
+        exn.getMessage(), "The probability associated with the output that was not finite.");
+  }
+
+  /** Tests that an AliasSampler cannot be built from weights that are all 0. */
+  @Test
+  public void testAliasSamplerNoPositive() {
+    Exception exn =
+        Assertions.assertThrows(
+            InvalidDistributionException.class,
+            () -> {
+              new AliasSampler<>(List.of("this", "that"), new double[] {0, 0});
+            });
+    Assertions.assertEquals(
+        exn.getMessage(), "No output of the distribution had a positive probability.");
+  }
 }
@@ -0,0 +1,224 @@
+package edu.brown.cs.student;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small in-process stand-in for the Realtime Database REST API, for testing DatabaseCommands
+ * without the network. It keeps one JSON tree in memory and supports GET, PUT, PATCH (including
+ * multi-path updates) and DELETE on any path ending in .json, GETs of a range of index keys
+ * (orderBy="$key" with startAt and endAt), and shallow GETs (shallow=true).
+ */
+public class RealtimeDatabaseStandIn implements AutoCloseable {
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final JsonAdapter<Object> json = new Moshi.Builder().build().adapter(Object.class);
+  private final AtomicInteger requests = new AtomicInteger();
+  private Map<String, Object> root = new LinkedHashMap<>();
+
+  /** Starts the stand-in on a free local port. */
+  public RealtimeDatabaseStandIn() throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    this.server.createContext("/", this::handle);
+    this.executor =
+        Executors.newFixedThreadPool(
+            8,
+            runnable -> {
+              Thread thread = new Thread(runnable, "database-stand-in");
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.server.setExecutor(this.executor);
+    this.server.start();
+  }
+
+  /** The base url to give to DatabaseCommands. */
+  public String url() {
+    return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/";
+  }
+
+  /** The number of requests handled so far. */
+  public int requests() {
+    return this.requests.get();
+  }
+
+  /** The JSON stored at a path, as the REST API would return it. */
+  public synchronized String get(String where) {
+    return this.json.toJson(this.find(segments(where)));
+  }
+
+  @Override
+  public void close() {
+    this.server.stop(0);
+    this.executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    this.requests.incrementAndGet();
+    String path = exchange.getRequestURI().getRawPath();
+    if (!path.endsWith(".json")) {
+      this.respond(exchange, 400, "{\"error\":\"missing .json\"}");
+      return;
+    }
+    List<String> where = segments(path.substring(0, path.length() - ".json".length()));
+    String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    String response;
+    synchronized (this) {
+      switch (exchange.getRequestMethod()) {
+        case "GET" -> response =
+            this.json.toJson(keyRange(this.find(where), exchange.getRequestURI().getRawQuery()));
+        case "PUT" -> {
+          this.set(where, this.json.fromJson(body));
+          response = body;
+        }
+        case "PATCH" -> {
+          Object parsed = this.json.fromJson(body);
+          if (!(parsed instanceof Map<?, ?> children)) {
+            this.respond(exchange, 400, "{\"error\":\"PATCH needs an object\"}");
+            return;
+          }
+          for (Map.Entry<?, ?> child : children.entrySet()) {
+            List<String> childPath = new ArrayList<>(where);
+            childPath.addAll(segments((String) child.getKey()));
+            this.set(childPath, child.getValue());
+          }
+          response = body;
+        }
+        case "DELETE" -> {
+          this.set(where, null);
+          response = "null";
+        }
+        default -> {
+          this.respond(exchange, 405, "{\"error\":\"unsupported method\"}");
+          return;
+        }
+      }
+    }
+    this.respond(exchange, 200, response);
+  }
+
+  private void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  // Filters a value to the children whose index keys are between startAt and endAt, as the REST
+  // API does for orderBy="$key"; the answer is an object, even for arrays
+  private static Object keyRange(Object value, String rawQuery) {
+    if (rawQuery == null) {
+      return value;
+    }
+    Map<String, String> query = new LinkedHashMap<>();
+    for (String parameter : rawQuery.split("&")) {
+      String[] pair = URLDecoder.decode(parameter, StandardCharsets.UTF_8).split("=", 2);
+      query.put(pair[0], pair.length == 2 ? pair[1].replace("\"", "") : "");
+    }
+    if ("true".equals(query.get("shallow"))) {
+      return shallow(value);
+    } else if (!"$key".equals(query.get("orderBy"))) {
+      return value;
+    }
+    long start = Long.parseLong(query.getOrDefault("startAt", "0"));
+    long end = Long.parseLong(query.getOrDefault("endAt", String.valueOf(Long.MAX_VALUE)));
+    Map<String, Object> children = new LinkedHashMap<>();
+    if (value instanceof List<?> list) {
+      for (int i = 0; i < list.size(); i++) {
+        if (i >= start && i <= end && list.get(i) != null) {
+          children.put(Integer.toString(i), list.get(i));
+        }
+      }
+    } else if (value instanceof Map<?, ?> map) {
+      for (Map.Entry<?, ?> child : map.entrySet()) {
+        String key = (String) child.getKey();
+        if (key.matches("\\d{1,9}") && Long.parseLong(key) >= start && Long.parseLong(key) <= end) {
+          children.put(key, child.getValue());
+        }
+      }
+    }
+    return children;
+  }
+
+  // Replaces the value of every child with true, as the REST API does for shallow=true; values that
+  // are not objects are answered as they are
+  private static Object shallow(Object value) {
+    Map<String, Object> children = new LinkedHashMap<>();
+    if (value instanceof List<?> list) {
+      for (int i = 0; i < list.size(); i++) {
+        if (list.get(i) != null) {
+          children.put(Integer.toString(i), true);
+        }
+      }
+    } else if (value instanceof Map<?, ?> map) {
+      for (Object key : map.keySet()) {
+        children.put((String) key, true);
+      }
+    } else {
+      return value;
+    }
+    return children;
+  }
+
+  private Object find(List<String> where) {
+    Object node = this.root;
+    for (String key : where) {
+      if (!(node instanceof Map<?, ?> map)) {
+        return null;
+      }
+      node = map.get(key);
+    }
+    return node;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void set(List<String> where, Object value) {
+    if (where.isEmpty()) {
+      this.root = value instanceof Map ? (Map<String, Object>) value : new LinkedHashMap<>();
+      return;
+    }
+    Map<String, Object> node = this.root;
+    for (String key : where.subList(0, where.size() - 1)) {
+      Object child = node.get(key);
+      if (!(child instanceof Map)) {
+        if (value == null) {
+          return;
+        }
+        child = new LinkedHashMap<String, Object>();
+        node.put(key, child);
+      }
+      node = (Map<String, Object>) child;
+    }
+    if (value == null) {
+      node.remove(where.get(where.size() - 1));
+    } else {
+      node.put(where.get(where.size() - 1), value);
+    }
+  }
+
+  private static List<String> segments(String path) {
+    List<String> segments = new ArrayList<>();
+    for (String segment : path.split("/")) {
+      if (!segment.isEmpty()) {
+        segments.add(URLDecoder.decode(segment, StandardCharsets.UTF_8));
+      }
+    }
+    return segments;
+  }
+}
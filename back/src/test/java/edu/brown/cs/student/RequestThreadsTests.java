@@ -0,0 +1,75 @@
+package edu.brown.cs.student;
+
+import edu.brown.cs.student.main.server.LoadDriver;
+import edu.brown.cs.student.main.server.RequestThreads;
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/** This class tests the request threads and the load driver used to compare them */
+public class RequestThreadsTests {
+
+  /** Virtual threads are found exactly when the running Java has them */
+  @Test
+  public void testVirtualThreadFactory() throws InterruptedException {
+    ThreadFactory factory = RequestThreads.virtualThreadFactory("test-");
+    if (Runtime.version().feature() < 21) {
+      Assertions.assertNull(factory);
+      Assertions.assertEquals(RequestThreads.PLATFORM, RequestThreads.configure("virtual"));
+      return;
+    }
+    Assertions.assertNotNull(factory);
+    CountDownLatch ran = new CountDownLatch(1);
+    Thread thread = factory.newThread(ran::countDown);
+    Assertions.assertTrue(thread.getName().startsWith("test-"));
+    thread.start();
+    Assertions.assertTrue(ran.await(10, TimeUnit.SECONDS));
+  }
+
+  /** Every task gets its own thread, and the pool never runs low */
+  @Test
+  public void testThreadPerTaskPool() throws Exception {
+    RequestThreads.ThreadPerTaskPool pool =
+        new RequestThreads.ThreadPerTaskPool(runnable -> new Thread(runnable, "task"));
+    pool.start();
+    Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    CountDownLatch started = new CountDownLatch(50);
+    CountDownLatch release = new CountDownLatch(1);
+    for (int i = 0; i < 50; i++) {
+      pool.execute(
+          () -> {
+            threads.add(Thread.currentThread());
+            started.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          });
+    }
+    Assertions.assertTrue(started.await(10, TimeUnit.SECONDS));
+    Assertions.assertEquals(50, threads.size());
+    Assertions.assertEquals(50, pool.getThreads());
+    Assertions.assertFalse(pool.isLowOnThreads());
+    release.countDown();
+    pool.stop();
+    pool.join();
+  }
+
+  /** The load driver sends every request and times each one */
+  @Test
+  public void testLoadDriver() throws Exception {
+    try (RealtimeDatabaseStandIn standIn = new RealtimeDatabaseStandIn()) {
+      LoadDriver.Result result = LoadDriver.run(URI.create(standIn.url() + "users.json"), 8, 100);
+      Assertions.assertEquals(100, result.requests());
+      Assertions.assertEquals(0, result.errors());
+      Assertions.assertEquals(100, standIn.requests());
+      Assertions.assertTrue(result.p50Millis() <= result.p99Millis());
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package edu.brown.cs.student;
+
+import edu.brown.cs.student.main.handlers.ConvertToJson;
+import edu.brown.cs.student.main.models.exceptions.InvalidScheduleException;
+import edu.brown.cs.student.main.models.formattypes.Day;
+import edu.brown.cs.student.main.models.formattypes.Schedule;
+import edu.brown.cs.student.main.models.formattypes.Week;
+import edu.brown.cs.student.main.models.markov.model.Emission;
+import edu.brown.cs.student.main.models.markov.modelbuilding.Workout;
+import edu.brown.cs.student.main.server.serializing.ScheduleJsonWriter;
+import edu.brown.cs.student.main.server.serializing.Serializer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/** This class tests the ScheduleJsonWriter, which streams schedules as JSON */
+public class ScheduleJsonWriterTests {
+
+  private static Day day(LocalDate date, List<Emission> workouts) throws InvalidScheduleException {
+    return new Day(
+        "day",
+        workouts,
+        workouts.size(),
+        date == null ? DayOfWeek.MONDAY : date.getDayOfWeek(),
+        Optional.ofNullable(date),
+        new ArrayList<>());
+  }
+
+  private static Schedule schedule(Day... days) throws InvalidScheduleException {
+    Week week = new Week("week", List.of(days));
+    return new Schedule("schedule", List.of(week), week);
+  }
+
+  /** Days are keyed by date, and their workouts are numbered from 1 */
+  @Test
+  public void testFormat() throws InvalidScheduleException {
+    Schedule schedule =
+        schedule(
+            day(
+                LocalDate.of(2023, 4, 27),
+                List.of(new Emission("2k test", 60, "2k"), new Emission("UT2", 45.5, "UT2"))),
+            day(LocalDate.of(2023, 4, 28), List.of()),
+            day(LocalDate.of(1999, 12, 31), List.of(new Emission("old", 1, "old"))));
+    Assertions.assertEquals(
+        "{\"04-27-2023\":{\"1\":{\"workout\":\"2k test\",\"duration\":\"60.0\"},"
+            + "\"2\":{\"workout\":\"UT2\",\"duration\":\"45.5\"}},"
+            + "\"04-28-2023\":{},"
+            + "\"12-31-1999\":{\"1\":{\"workout\":\"old\",\"duration\":\"1.0\"}}}",
+        ConvertToJson.convert(schedule));
+  }
+
+  /** Strings are escaped and encoded so that the JSON parses back to the same text */
+  @Test
+  public void testEscaping() throws IOException, InvalidScheduleException {
+    String workout = "say \"hi\" \\ then\nrow\t5k \u0001 café ☃ 🚣";
+    Schedule schedule =
+        schedule(day(LocalDate.of(2023, 5, 1), List.of(new Emission(workout, 30, "w"))));
+    Map<?, ?> parsed =
+        Serializer.moshi().adapter(Map.class).fromJson(ScheduleJsonWriter.toJson(schedule));
+    Map<?, ?> first = (Map<?, ?>) ((Map<?, ?>) parsed.get("05-01-2023")).get("1");
+    Assertions.assertEquals(workout, first.get("workout"));
+  }
+
+  /** Streaming through a tiny buffer writes the same bytes as writing to a String */
+  @Test
+  public void testSmallBuffer() throws IOException, InvalidScheduleException {
+    List<Day> days = new ArrayList<>();
+    for (int i = 0; i < 30; i++) {
+      days.add(
+          day(
+              LocalDate.of(2023, 6, 1).plusDays(i),
+              List.of(new Emission("workout é " + i, i, "w"), new Emission(null, 0, "n"))));
+    }
+    Schedule schedule = schedule(days.toArray(new Day[0]));
+    int bufferSize = ScheduleJsonWriter.BUFFER_SIZE;
+    ScheduleJsonWriter.BUFFER_SIZE = 1;
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      ScheduleJsonWriter.write(schedule, out);
+    } finally {
+      ScheduleJsonWriter.BUFFER_SIZE = bufferSize;
+    }
+    Assertions.assertEquals(
+        ScheduleJsonWriter.toJson(schedule), out.toString(StandardCharsets.UTF_8));
+    Assertions.assertTrue(out.toString(StandardCharsets.UTF_8).contains("{\"workout\":null,"));
+  }
+
+  /** The flat format is exactly what Moshi writes for the flattened schedule */
+  @Test
+  public void testFlatMatchesSerializer() throws IOException, InvalidScheduleException {
+    List<Day> days = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      days.add(
+          day(
+              LocalDate.of(2023, 6, 1).plusDays(i),
+              new ArrayList<>(
+                  List.of(
+                      new Emission("workout é " + i, i * 7.5, "w" + i),
+                      new Emission(null, 0, null)))));
+    }
+    days.add(
+        day(
+            LocalDate.of(2023, 6, 11),
+            List.of(new Emission("say \"hi\" \\\b\f\n\r\t\u0001\u2028 ☃ 🚣 \uD800", 30, ""))));
+    days.add(day(null, List.of()));
+    Day planned = day(LocalDate.of(2023, 6, 12), List.of());
+    planned.addFirstIntensity(new Day.WorkoutDescription(Workout.UT_2, 60));
+    planned.addFirstIntensity(new Day.WorkoutDescription(null, 0));
+    days.add(planned);
+    Schedule schedule = schedule(days.toArray(new Day[0]));
+
+    String expected = Serializer.serializeSchedule(schedule.flatten());
+    Assertions.assertEquals(expected, ScheduleJsonWriter.toFlatJson(schedule));
+    int bufferSize = ScheduleJsonWriter.BUFFER_SIZE;
+    ScheduleJsonWriter.BUFFER_SIZE = 1;
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      ScheduleJsonWriter.writeFlat(schedule, out);
+    } finally {
+      ScheduleJsonWriter.BUFFER_SIZE = bufferSize;
+    }
+    Assertions.assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+  }
+
+  /** Days without dates cannot be keyed, so are rejected */
+  @Test
+  public void testMissingDate() throws InvalidScheduleException {
+    Schedule schedule = schedule(day(null, List.of()));
+    Assertions.assertThrows(InvalidScheduleException.class, () -> ConvertToJson.convert(schedule));
+  }
+}
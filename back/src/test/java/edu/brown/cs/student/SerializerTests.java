@@ -8,10 +8,13 @@ import edu.brown.cs.student.main.models.formattypes.FlatSchedule;
 import edu.brown.cs.student.main.models.markov.model.Emission;
 import edu.brown.cs.student.main.models.markov.modelbuilding.Workout;
 import edu.brown.cs.student.main.server.serializing.Serializer;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.DayOfWeek;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
 import org.junit.jupiter.api.Assertions;
@@ -174,4 +177,15 @@ public class SerializerTests {
     String serialized = Serializer.serializeSchedule(new FlatSchedule(List.of()));
     Assertions.assertEquals(serialized, "{\"days\":[]}");
   }
+
+  /** Tests that streaming a response writes the same JSON as serializing it to a String. */
+  @Test
+  public void testSerializeToStream() throws IOException {
+    HashMap<String, Object> output = new HashMap<>();
+    output.put("result", "success");
+    output.put("message", "{\"days\":[]} \u00e9");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Serializer.serialize(output, out);
+    Assertions.assertEquals(Serializer.serialize(output), out.toString(StandardCharsets.UTF_8));
+  }
 }
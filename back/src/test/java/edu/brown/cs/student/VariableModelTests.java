@@ -4,15 +4,21 @@ import edu.brown.cs.student.main.handlers.GenerateGraphLikePlan;
 import edu.brown.cs.student.main.models.exceptions.*;
 import edu.brown.cs.student.main.models.formatters.DefaultFormatter;
 import edu.brown.cs.student.main.models.formattypes.Day;
+import edu.brown.cs.student.main.models.formattypes.Day.WorkoutDescription;
 import edu.brown.cs.student.main.models.formattypes.Schedule;
 import edu.brown.cs.student.main.models.formattypes.Week;
 import edu.brown.cs.student.main.models.markov.model.Emission;
+import edu.brown.cs.student.main.models.markov.model.FrozenDistribution;
 import edu.brown.cs.student.main.models.markov.model.MarkovModel;
 import edu.brown.cs.student.main.models.markov.modelbuilding.Workout;
 import edu.brown.cs.student.main.rowing.distributiongenerators.RowingWorkoutByName;
+import edu.brown.cs.student.main.rowing.distributiongenerators.UT2DistributionGenerator;
+import edu.brown.cs.student.main.rowing.modelbuilders.ModelCache;
+import edu.brown.cs.student.main.rowing.modelbuilders.ScheduleBuilder;
 import edu.brown.cs.student.main.rowing.modelbuilders.VariableModelBuilder;
 import edu.brown.cs.student.main.server.RandomGenerator;
 import java.io.IOException;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Set;
@@ -283,4 +289,79 @@ public class VariableModelTests {
           LocalDate.of(endYear, endMonth, endDay));
     }
   }
+
+  @Test
+  public void testVariableModelCache()
+      throws IOException, InvalidScheduleException, InvalidDistributionException,
+          NoWorkoutTypeException {
+    ModelCache cache = new ModelCache(ModelCache.DEFAULT_MAX_BYTES, 2);
+    MarkovModel first =
+        cache.getVariableModel(Set.of(Workout.UT_2), Set.of(Workout._2K, Workout._6K), 420, 0.2);
+    MarkovModel second =
+        cache.getVariableModel(Set.of(Workout.UT_2), Set.of(Workout._6K, Workout._2K), 420, 0.2);
+    Assertions.assertSame(first, second);
+    Assertions.assertEquals(1, cache.stats().hitCount());
+    Assertions.assertEquals(1, cache.stats().missCount());
+
+    MarkovModel other =
+        cache.getVariableModel(Set.of(Workout.UT_2), Set.of(Workout._2K, Workout._6K), 600, 0.2);
+    Assertions.assertNotSame(first, other);
+
+    // the cache holds at most two models
+    cache.getVariableModel(Set.of(Workout.UT_2), Set.of(Workout._2K), 420, 0.2);
+    Assertions.assertTrue(cache.size() <= 2);
+
+    Assertions.assertThrows(
+        NoWorkoutTypeException.class,
+        () -> cache.getVariableModel(Set.of(), Set.of(Workout._2K), 420, 0.2));
+  }
+
+  @Test
+  public void testUT2Tables() throws InvalidDistributionException {
+    int min = UT2DistributionGenerator.MIN_TABLE_LENGTH;
+    int max = UT2DistributionGenerator.MAX_TABLE_LENGTH;
+    Assertions.assertEquals(60, min);
+    Assertions.assertEquals(160, max);
+    for (int minutes = min - 5; minutes <= max + 5; minutes++) {
+      FrozenDistribution<Emission> frozen =
+          UT2DistributionGenerator.getFrozenLowIntensityDistributionByTime(minutes);
+      Assertions.assertEquals(
+          UT2DistributionGenerator.getLowIntensityDistributionByTime(minutes), frozen.toHashMap());
+      for (int i = 0; i < frozen.size(); i++) {
+        Assertions.assertTrue(frozen.outcome(i).getTime() <= minutes);
+      }
+    }
+    // lengths in the table are shared rather than rebuilt
+    Assertions.assertSame(
+        UT2DistributionGenerator.getFrozenLowIntensityDistributionByTime(90),
+        UT2DistributionGenerator.getFrozenLowIntensityDistributionByTime(90));
+  }
+
+  @Test
+  public void testUT2TablesCoverLongestSession()
+      throws InvalidDistributionException, InvalidScheduleException {
+    // the most minutes with enough high intensity work for the most high intensity sessions
+    Schedule schedule =
+        new ScheduleBuilder()
+            .minutes(
+                ScheduleBuilder.MAX_MINUTES,
+                1,
+                0.2,
+                DayOfWeek.MONDAY,
+                DayOfWeek.SUNDAY,
+                Workout.of("2k"),
+                Workout.of("UT2"));
+    int longest = 0;
+    for (Day day : schedule.example().days()) {
+      for (WorkoutDescription description : day.getPlanView()) {
+        if (description.workoutType().equals(Workout.of("UT2"))) {
+          longest = Math.max(longest, description.minutes());
+        }
+      }
+    }
+    Assertions.assertEquals(UT2DistributionGenerator.MAX_TABLE_LENGTH, longest);
+    Assertions.assertSame(
+        UT2DistributionGenerator.getFrozenLowIntensityDistributionByTime(longest),
+        UT2DistributionGenerator.getFrozenLowIntensityDistributionByTime(longest));
+  }
 }
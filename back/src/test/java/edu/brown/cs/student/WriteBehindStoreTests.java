@@ -0,0 +1,214 @@
+package edu.brown.cs.student;
+
+import edu.brown.cs.student.main.database.DatabaseCommands;
+import edu.brown.cs.student.main.database.ScheduleStore;
+import edu.brown.cs.student.main.database.WriteBehindStore;
+import java.io.IOException;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** This class tests the WriteBehindStore against a local stand-in for the database */
+public class WriteBehindStoreTests {
+  private RealtimeDatabaseStandIn standIn;
+  private WriteBehindStore store;
+
+  /** Starts a fresh stand-in, with a window long enough that nothing is sent on its own */
+  @BeforeEach
+  public void setUp() throws IOException {
+    this.standIn = new RealtimeDatabaseStandIn();
+    this.store =
+        new WriteBehindStore(new DatabaseCommands(this.standIn.url()), Duration.ofHours(1));
+  }
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    this.store.close();
+    this.standIn.close();
+  }
+
+  /** A burst of updates is sent as one request per user, and is read back before it is sent */
+  @Test
+  public void testCoalesce() throws Exception {
+    for (int workout = 0; workout < 10; workout++) {
+      String where = "users/alan/schedule/days/0/workouts/" + workout + "/data";
+      this.store.updateLater("{\"rpe\":\"" + workout + "\",\"split\":\"2:00\"}", where);
+    }
+    this.store.updateLater("{\"rpe\":\"9\"}", "users/alan/schedule/days/0/workouts/3/data");
+    this.store.updateLater("{\"valid\":\"true\"}", "users/grace");
+
+    Assertions.assertEquals(0, this.standIn.requests());
+    Assertions.assertEquals(21, this.store.metrics().queueDepth());
+    Assertions.assertEquals(
+        "{\"rpe\":\"9\",\"split\":\"2:00\"}",
+        this.store.get("users/alan/schedule/days/0/workouts/3/data"));
+    Assertions.assertEquals("\"true\"", this.store.get("users/grace/valid"));
+    Assertions.assertEquals("null", this.standIn.get("users/grace/valid"));
+
+    int reads = this.standIn.requests();
+    this.store.flush();
+    Assertions.assertEquals(reads + 2, this.standIn.requests());
+    Assertions.assertEquals(
+        "{\"rpe\":\"9\",\"split\":\"2:00\"}",
+        this.standIn.get("users/alan/schedule/days/0/workouts/3/data"));
+    Assertions.assertEquals("\"true\"", this.standIn.get("users/grace/valid"));
+
+    WriteBehindStore.Metrics metrics = this.store.metrics();
+    Assertions.assertEquals(0, metrics.queueDepth());
+    Assertions.assertEquals(12, metrics.writes());
+    Assertions.assertEquals(2, metrics.flushes());
+    Assertions.assertEquals(0, metrics.failures());
+  }
+
+  /** Held updates are laid over what the database already has */
+  @Test
+  public void testOverlay() throws Exception {
+    new DatabaseCommands(this.standIn.url())
+        .put("{\"valid\":\"true\",\"sport\":\"rowing\"}", "users/alan");
+    this.store.updateLater("{\"sport\":\"running\",\"schedule\":null}", "users/alan");
+    this.store.updateLater("{\"valid\":null}", "users/alan");
+    Assertions.assertEquals("{\"sport\":\"running\"}", this.store.get("users/alan"));
+    Assertions.assertEquals("{\"alan\":{\"sport\":\"running\"}}", this.store.get("users"));
+    Assertions.assertEquals("null", this.store.get("users/alan/valid"));
+
+    this.store.flush();
+    Assertions.assertEquals("{\"sport\":\"running\"}", this.standIn.get("users/alan"));
+  }
+
+  /** Ranges see held updates, and are read from the database alone when there are none */
+  @Test
+  public void testRange() throws Exception {
+    new DatabaseCommands(this.standIn.url())
+        .put("[{\"rpe\":\"1\"},{\"rpe\":\"2\"},{\"rpe\":\"3\"}]", "users/alan/schedule/days");
+    Assertions.assertEquals(
+        "[{\"rpe\":\"2\"},{\"rpe\":\"3\"}]",
+        this.store.getRange("users/alan/schedule/days", 1, 2).json());
+
+    this.store.updateLater("{\"rpe\":\"7\"}", "users/alan/schedule/days/2");
+    Assertions.assertEquals(
+        "[{\"rpe\":\"2\"},{\"rpe\":\"7\"}]",
+        this.store.getRange("users/alan/schedule/days", 1, 2).json());
+    Assertions.assertEquals(
+        "[{\"rpe\":\"1\"}]", this.store.getRange("users/alan/schedule/days", 0, 0).json());
+  }
+
+  /** Puts, deletes and updates send the held updates they touch first, so they land in order */
+  @Test
+  public void testOrdering() throws Exception {
+    this.store.updateLater("{\"rpe\":\"7\"}", "users/alan/schedule/days/0/workouts/0/data");
+    this.store.put("\"\"", "users/alan/schedule");
+    Assertions.assertEquals("\"\"", this.standIn.get("users/alan/schedule"));
+
+    this.store.updateLater("{\"valid\":\"true\"}", "users/grace");
+    this.store.delete("users");
+    Assertions.assertEquals("null", this.standIn.get("users"));
+    Assertions.assertEquals("null", this.store.get("users"));
+
+    this.store.updateLater("{\"sport\":\"rowing\"}", "users/ada");
+    this.store.update("{\"sport\":\"running\",\"valid\":\"true\"}", "users/ada");
+    Assertions.assertEquals(
+        "{\"sport\":\"running\",\"valid\":\"true\"}", this.standIn.get("users/ada"));
+    Assertions.assertEquals(0, this.store.metrics().queueDepth());
+  }
+
+  /** A batch that keeps failing is dropped, so it does not hold up the writes after it */
+  @Test
+  public void testDropped() throws Exception {
+    int maxAttempts = WriteBehindStore.MAX_ATTEMPTS;
+    WriteBehindStore.MAX_ATTEMPTS = 2;
+    // nothing listens on port 1, so every send fails
+    WriteBehindStore failing =
+        new WriteBehindStore(new DatabaseCommands("http://localhost:1/"), Duration.ofHours(1));
+    try {
+      failing.updateLater("{\"valid\":\"true\"}", "users/alan");
+      Assertions.assertThrows(IOException.class, failing::flush);
+      Assertions.assertEquals(1, failing.metrics().queueDepth());
+      failing.flush();
+      WriteBehindStore.Metrics metrics = failing.metrics();
+      Assertions.assertEquals(0, metrics.queueDepth());
+      Assertions.assertEquals(2, metrics.failures());
+      Assertions.assertEquals(1, metrics.dropped());
+    } finally {
+      WriteBehindStore.MAX_ATTEMPTS = maxAttempts;
+      failing.close();
+    }
+  }
+
+  /** Held updates are sent once the window passes, and when the store is closed */
+  @Test
+  public void testWindowAndClose() throws Exception {
+    this.store.close();
+    this.store =
+        new WriteBehindStore(new DatabaseCommands(this.standIn.url()), Duration.ofMillis(20));
+    this.store.updateLater("{\"valid\":\"true\"}", "users/alan");
+    for (int i = 0; i < 200 && this.standIn.get("users/alan/valid").equals("null"); i++) {
+      Thread.sleep(10);
+    }
+    Assertions.assertEquals("\"true\"", this.standIn.get("users/alan/valid"));
+
+    this.store.close();
+    this.store =
+        new WriteBehindStore(new DatabaseCommands(this.standIn.url()), Duration.ofHours(1));
+    this.store.updateLater("{\"valid\":\"true\"}", "users/grace");
+    this.store.close();
+    Assertions.assertEquals("\"true\"", this.standIn.get("users/grace/valid"));
+  }
+
+  /** Closing sends every group it can, then closes the other store and throws the first failure */
+  @Test
+  public void testCloseFailure() throws Exception {
+    RefusingStore refusing = new RefusingStore(new DatabaseCommands(this.standIn.url()), "alan");
+    WriteBehindStore store = new WriteBehindStore(refusing, Duration.ofHours(1));
+    store.updateLater("{\"valid\":\"true\"}", "users/ada");
+    store.updateLater("{\"valid\":\"true\"}", "users/alan");
+    store.updateLater("{\"valid\":\"true\"}", "users/grace");
+
+    Assertions.assertThrows(IOException.class, store::close);
+    Assertions.assertEquals("\"true\"", this.standIn.get("users/ada/valid"));
+    Assertions.assertEquals("null", this.standIn.get("users/alan/valid"));
+    Assertions.assertEquals("\"true\"", this.standIn.get("users/grace/valid"));
+    Assertions.assertTrue(refusing.closed);
+  }
+
+  /** A store that refuses every update to one user, and records whether it has been closed */
+  private static final class RefusingStore implements ScheduleStore, AutoCloseable {
+    private final ScheduleStore delegate;
+    private final String refused;
+    private boolean closed;
+
+    RefusingStore(ScheduleStore delegate, String refused) {
+      this.delegate = delegate;
+      this.refused = refused;
+    }
+
+    @Override
+    public void put(String data, String where) throws IOException, InterruptedException {
+      this.delegate.put(data, where);
+    }
+
+    @Override
+    public void update(String data, String where) throws IOException, InterruptedException {
+      if (data.contains("\"" + this.refused) || where.contains(this.refused)) {
+        throw new IOException("Updates to " + this.refused + " are refused");
+      }
+      this.delegate.update(data, where);
+    }
+
+    @Override
+    public void delete(String where) throws IOException, InterruptedException {
+      this.delegate.delete(where);
+    }
+
+    @Override
+    public String get(String where) throws IOException, InterruptedException {
+      return this.delegate.get(where);
+    }
+
+    @Override
+    public void close() {
+      this.closed = true;
+    }
+  }
+}